@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.surevine.alfresco.connector.AlfrescoHttpConnector;
+import com.surevine.alfresco.dashboard.CompiledDashboardDefinition;
+import com.surevine.alfresco.dashboard.DashboardDefinition;
+import com.surevine.alfresco.user.AlfrescoUserManager;
+
+/**
+ * Serialising the request of
+ * {@link AlfrescoUserManager#setUserDashboard(String, DashboardDefinition)},
+ * alone and as part of the full call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DashboardBenchmark
+{
+	/**
+	 * The number of dashlets in each of the three columns.
+	 */
+	@Param({ "2", "10" })
+	public int dashletsPerColumn;
+
+	private AlfrescoUserManager userManager;
+
+	private DashboardDefinition definition;
+
+	private CompiledDashboardDefinition compiled;
+
+	@Setup
+	public void setUp() throws Exception
+	{
+		userManager = new AlfrescoUserManager(new AlfrescoHttpConnector(Fixtures.createProperties(),
+				Fixtures.AUTHENTICATOR, new StubHttpClient(Fixtures.utf8("{\"success\":true}"))));
+
+		definition = new DashboardDefinition("dashboard-3-columns", 3);
+
+		for (int column = 0; column < 3; column++) {
+			for (int row = 0; row < dashletsPerColumn; row++) {
+				definition.addDashlet(column, "/components/dashlets/dashlet-" + column + "-" + row);
+			}
+		}
+
+		compiled = new CompiledDashboardDefinition(definition);
+	}
+
+	@Benchmark
+	public String compileAndSerialise()
+	{
+		return new CompiledDashboardDefinition(definition).createRequest("user1").toString();
+	}
+
+	@Benchmark
+	public String serialiseCompiled()
+	{
+		return compiled.createRequest("user1").toString();
+	}
+
+	@Benchmark
+	public void setUserDashboard() throws Exception
+	{
+		userManager.setUserDashboard("user1", definition);
+	}
+
+	@Benchmark
+	public void setUserDashboardCompiled() throws Exception
+	{
+		userManager.setUserDashboard("user1", compiled);
+	}
+}
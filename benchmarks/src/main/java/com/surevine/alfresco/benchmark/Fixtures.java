@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.benchmark;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ListResourceBundle;
+
+import org.apache.http.client.HttpClient;
+
+import com.surevine.alfresco.Authenticator;
+import com.surevine.alfresco.PropertyWrapper;
+
+/**
+ * Shared configuration and payloads for the benchmarks.
+ */
+final class Fixtures
+{
+	/**
+	 * An authenticator which always succeeds without a server.
+	 */
+	static final Authenticator AUTHENTICATOR = new Authenticator() {
+		public boolean authenticate(final HttpClient client)
+		{
+			return true;
+		}
+	};
+
+	private Fixtures()
+	{
+	}
+
+	/**
+	 * @return Properties pointing the connectors at a fictional server
+	 */
+	static PropertyWrapper createProperties()
+	{
+		return new PropertyWrapper(new ListResourceBundle() {
+			@Override
+			protected Object[][] getContents()
+			{
+				return new Object[][] {
+						{ "alfresco.url.base", "http://alfresco.example.com/alfresco/service" },
+						{ "alfresco.url.service", "http://alfresco.example.com/alfresco/service/" },
+						{ "alfresco.share.url.service", "http://alfresco.example.com/share/service/" },
+						{ "cas.url.login", "https://cas.example.com/cas/login" } };
+			}
+		});
+	}
+
+	/**
+	 * Build a JSON array of people shaped like the output of api/people.
+	 * 
+	 * @param count
+	 *          the number of people
+	 * @return The array as JSON text
+	 */
+	static String createPeopleArray(final int count)
+	{
+		final StringBuilder json = new StringBuilder(count * 256).append('[');
+
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+
+			json.append("{\"url\":\"/alfresco/service/api/people/user").append(i)
+					.append("\",\"userName\":\"user").append(i)
+					.append("\",\"enabled\":true,\"firstName\":\"First").append(i)
+					.append("\",\"lastName\":\"Last").append(i)
+					.append("\",\"jobtitle\":\"Engineer\",\"organization\":\"Surevine\"")
+					.append(",\"location\":\"Guildford\",\"telephone\":\"01483 000000\"")
+					.append(",\"email\":\"user").append(i).append("@example.com\"")
+					.append(",\"quota\":-1,\"sizeCurrent\":").append(i * 1024L)
+					.append(",\"persondescription\":\"Caf\\u00e9 owner \\\"").append(i).append("\\\"\"}");
+		}
+
+		return json.append(']').toString();
+	}
+
+	/**
+	 * @param json
+	 *          JSON text
+	 * @return The text encoded as UTF-8
+	 */
+	static byte[] utf8(final String json)
+	{
+		try {
+			return json.getBytes("UTF-8");
+		} catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
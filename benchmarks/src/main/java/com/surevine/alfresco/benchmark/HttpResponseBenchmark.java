@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.surevine.alfresco.connector.json.JsonCodec;
+import com.surevine.alfresco.connector.json.JsonCodecs;
+import com.surevine.alfresco.connector.model.AlfrescoHttpResponse;
+import com.surevine.alfresco.connector.model.JsonArrayIterator;
+
+/**
+ * Decoding of response bodies by {@link AlfrescoHttpResponse}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpResponseBenchmark
+{
+	/**
+	 * The number of people in the response.
+	 */
+	@Param({ "10", "1000", "20000" })
+	public int people;
+
+	/**
+	 * The JSON codec, as named by <code>alfresco.json.codec</code>.
+	 */
+	@Param({ "org.json", "fast" })
+	public String codec;
+
+	/**
+	 * The codec named by {@link #codec}.
+	 */
+	private JsonCodec jsonCodec;
+
+	/**
+	 * The decoded object body, to encode.
+	 */
+	private JSONObject object;
+
+	/**
+	 * A response body holding an object with a "people" array.
+	 */
+	private byte[] objectBody;
+
+	/**
+	 * A response body holding a bare array.
+	 */
+	private byte[] arrayBody;
+
+	@Setup
+	public void setUp()
+	{
+		final String array = Fixtures.createPeopleArray(people);
+
+		objectBody = Fixtures.utf8("{\"people\":" + array + "}");
+		arrayBody = Fixtures.utf8(array);
+		jsonCodec = "fast".equals(codec) ? JsonCodecs.FAST : JsonCodecs.DEFAULT;
+
+		try {
+			object = new JSONObject("{\"people\":" + array + "}");
+		} catch (final Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Benchmark
+	public JSONObject asJsonObject() throws Exception
+	{
+		return new AlfrescoHttpResponse(StubHttpClient.createResponse(objectBody), jsonCodec).asJsonObject();
+	}
+
+	@Benchmark
+	public JSONArray asJsonArray() throws Exception
+	{
+		return new AlfrescoHttpResponse(StubHttpClient.createResponse(arrayBody), jsonCodec).asJsonArray();
+	}
+
+	@Benchmark
+	public String asString() throws Exception
+	{
+		return new AlfrescoHttpResponse(StubHttpClient.createResponse(objectBody), jsonCodec).asString();
+	}
+
+	@Benchmark
+	public int iterateJsonArray() throws Exception
+	{
+		final JsonArrayIterator iterator = new AlfrescoHttpResponse(StubHttpClient.createResponse(objectBody),
+				jsonCodec).iterateJsonArray("people");
+
+		int count = 0;
+
+		while (iterator.hasNext()) {
+			iterator.next();
+			count++;
+		}
+
+		return count;
+	}
+
+	@Benchmark
+	public byte[] encode() throws Exception
+	{
+		return jsonCodec.encode(object);
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.surevine.alfresco.AlfrescoConnector;
+
+/**
+ * Building and sending the request of
+ * {@link AlfrescoConnector#updateRmConstraint(String, String, java.util.Collection)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RmConstraintBenchmark
+{
+	/**
+	 * The number of users in the constraint group.
+	 */
+	@Param({ "10", "1000", "20000" })
+	public int users;
+
+	private AlfrescoConnector connector;
+
+	private List<String> userNames;
+
+	@Setup
+	public void setUp() throws Exception
+	{
+		connector = new AlfrescoConnector(Fixtures.createProperties(), Fixtures.AUTHENTICATOR,
+				new StubHttpClient(Fixtures.utf8("{}")));
+
+		userNames = new ArrayList<String>(users);
+
+		for (int i = 0; i < users; i++) {
+			userNames.add("user" + i);
+		}
+	}
+
+	@Benchmark
+	public void updateRmConstraint() throws Exception
+	{
+		connector.updateRmConstraint("securityGroups", "group", userNames);
+	}
+}
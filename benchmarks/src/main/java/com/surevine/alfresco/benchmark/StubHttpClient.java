@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * An {@link HttpClient} which answers every request with the same in-memory
+ * body, so that benchmarks measure the connector rather than the network.
+ * 
+ * Request bodies are written to a discarding stream, as they would be to a
+ * socket.
+ */
+public class StubHttpClient implements HttpClient
+{
+	/**
+	 * Discards everything written to it.
+	 */
+	private static final OutputStream NULL_OUTPUT = new OutputStream() {
+		@Override
+		public void write(final int b)
+		{
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len)
+		{
+		}
+	};
+
+	/**
+	 * The client parameters.
+	 */
+	private final HttpParams params = new BasicHttpParams();
+
+	/**
+	 * The body of every response.
+	 */
+	private volatile byte[] body;
+
+	/**
+	 * @param body
+	 *          the body of every response
+	 */
+	public StubHttpClient(final byte[] body)
+	{
+		this.body = body;
+	}
+
+	/**
+	 * @param body
+	 *          the body of every subsequent response
+	 */
+	public void setBody(final byte[] body)
+	{
+		this.body = body;
+	}
+
+	/**
+	 * Build a JSON response around a body.
+	 * 
+	 * @param body
+	 *          the response body
+	 * @return A new response which can be read once
+	 */
+	public static HttpResponse createResponse(final byte[] body)
+	{
+		final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		final ByteArrayEntity entity = new ByteArrayEntity(body);
+		entity.setContentType("application/json;charset=UTF-8");
+		response.setEntity(entity);
+
+		return response;
+	}
+
+	public HttpParams getParams()
+	{
+		return params;
+	}
+
+	public ClientConnectionManager getConnectionManager()
+	{
+		return null;
+	}
+
+	public HttpResponse execute(final HttpUriRequest request) throws IOException
+	{
+		return execute(null, request, (HttpContext) null);
+	}
+
+	public HttpResponse execute(final HttpUriRequest request, final HttpContext context) throws IOException
+	{
+		return execute(null, request, context);
+	}
+
+	public HttpResponse execute(final HttpHost target, final HttpRequest request) throws IOException
+	{
+		return execute(target, request, (HttpContext) null);
+	}
+
+	public HttpResponse execute(final HttpHost target, final HttpRequest request, final HttpContext context)
+			throws IOException
+	{
+		if (request instanceof HttpEntityEnclosingRequest) {
+			final HttpEntityEnclosingRequest enclosing = (HttpEntityEnclosingRequest) request;
+
+			if (enclosing.getEntity() != null) {
+				enclosing.getEntity().writeTo(NULL_OUTPUT);
+			}
+		}
+
+		return createResponse(body);
+	}
+
+	public <T> T execute(final HttpUriRequest request, final ResponseHandler<? extends T> handler)
+			throws IOException
+	{
+		return handler.handleResponse(execute(request));
+	}
+
+	public <T> T execute(final HttpUriRequest request, final ResponseHandler<? extends T> handler,
+			final HttpContext context) throws IOException
+	{
+		return handler.handleResponse(execute(request, context));
+	}
+
+	public <T> T execute(final HttpHost target, final HttpRequest request,
+			final ResponseHandler<? extends T> handler) throws IOException
+	{
+		return handler.handleResponse(execute(target, request));
+	}
+
+	public <T> T execute(final HttpHost target, final HttpRequest request,
+			final ResponseHandler<? extends T> handler, final HttpContext context) throws IOException
+	{
+		return handler.handleResponse(execute(target, request, context));
+	}
+}
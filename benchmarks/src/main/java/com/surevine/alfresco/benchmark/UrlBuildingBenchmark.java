@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.surevine.alfresco.connector.AlfrescoHttpConnector;
+
+/**
+ * A GET through {@link AlfrescoHttpConnector} with query parameters, which
+ * exercises URL building. The response is an empty object, so the
+ * difference between parameter counts is the cost of building the URL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlBuildingBenchmark
+{
+	/**
+	 * The number of query parameters.
+	 */
+	@Param({ "0", "3", "10" })
+	public int parameterCount;
+
+	private AlfrescoHttpConnector connector;
+
+	private Map<String, String> parameters;
+
+	@Setup
+	public void setUp() throws Exception
+	{
+		connector = new AlfrescoHttpConnector(Fixtures.createProperties(), Fixtures.AUTHENTICATOR,
+				new StubHttpClient(Fixtures.utf8("{}")));
+
+		parameters = new LinkedHashMap<String, String>();
+
+		for (int i = 0; i < parameterCount; i++) {
+			parameters.put("param " + i, "value" + i);
+		}
+	}
+
+	@Benchmark
+	public JSONObject doGet() throws Exception
+	{
+		return connector.doGet("api/people", parameters);
+	}
+}
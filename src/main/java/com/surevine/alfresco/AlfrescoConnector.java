@@ -21,30 +21,52 @@
 */
 package com.surevine.alfresco;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
-import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.util.EntityUtils;
 
 import org.apache.log4j.Logger;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
+
+import com.surevine.alfresco.connector.HttpClientFactory;
+import com.surevine.alfresco.connector.RequestEntities;
+import com.surevine.alfresco.connector.RequestPipeline;
+import com.surevine.alfresco.connector.json.JsonCodec;
+import com.surevine.alfresco.connector.json.JsonCodecs;
+import com.surevine.alfresco.connector.json.RawJson;
+import com.surevine.alfresco.connector.model.AlfrescoHttpResponse;
+import com.surevine.alfresco.connector.model.GroupMember;
+import com.surevine.alfresco.connector.model.JsonElementVisitor;
+import com.surevine.alfresco.connector.model.RawJsonVisitor;
+import com.surevine.alfresco.connector.model.RmConstraintValue;
+import com.surevine.alfresco.connector.model.SiteMembership;
+import com.surevine.alfresco.limit.RequestThrottle;
+import com.surevine.alfresco.metrics.ConnectorMetrics;
 
 /**
  * Connect to an Alfresco instance.
@@ -58,15 +80,56 @@ public class AlfrescoConnector {
         /**
          * Collaborator.
          */
-        COLLABORATOR,
+        COLLABORATOR("SiteCollaborator"),
         /**
          * Manager.
          */
-        MANAGER
+        MANAGER("SiteManager"),
+        /**
+         * Contributor.
+         */
+        CONTRIBUTOR("SiteContributor"),
+        /**
+         * Consumer.
+         */
+        CONSUMER("SiteConsumer");
+
+        /**
+         * The name Alfresco uses for the role.
+         */
+        private final String siteRole;
+
+        /**
+         * @param siteRole The name Alfresco uses for the role
+         */
+        private RoleType(final String siteRole) {
+            this.siteRole = siteRole;
+        }
+
+        /**
+         * @return The name Alfresco uses for the role (e.g. "SiteManager")
+         */
+        public String getSiteRole() {
+            return siteRole;
+        }
+
+        /**
+         * @param siteRole The name Alfresco uses for a role
+         * @return The matching role, or null if the role is not recognised
+         */
+        public static RoleType fromSiteRole(final String siteRole) {
+            for (RoleType role : values()) {
+                if (role.siteRole.equals(siteRole)) {
+                    return role;
+                }
+            }
+
+            return null;
+        }
     };
 
     /**
-     * Initial size of hash sets (based on typical group size).
+     * Initial size of hash maps (based on typical group size).
      */
     private static final int  HASH_SIZE = 128;
 
@@ -79,7 +142,17 @@ public class AlfrescoConnector {
     /**
      * Client for connecting to websites.
      */
-    private DefaultHttpClient client;
+    private final HttpClient client;
+
+    /**
+     * Retries, throttles, measures and sends each request.
+     */
+    private final RequestPipeline pipeline;
+
+    /**
+     * Decodes and encodes JSON bodies.
+     */
+    private final JsonCodec codec;
 
     /**
      * URL for Alfresco API for manipulating sites.
@@ -101,6 +174,31 @@ public class AlfrescoConnector {
      */
     private String 			  alfrescoUrlBase;
 
+    /**
+     * Default number of changes made at once when synchronising memberships.
+     */
+    private static final int  DEFAULT_SYNC_PARALLELISM = 4;
+
+    /**
+     * Number of changes made at once when synchronising memberships.
+     */
+    private final int         syncParallelism;
+
+    /**
+     * Default time for which a user's site memberships are cached, in milliseconds.
+     */
+    private static final int  DEFAULT_SITE_INDEX_TTL = 60000;
+
+    /**
+     * Size in characters above which JSON request bodies are compressed, or -1 to never compress them.
+     */
+    private final int         compressionThreshold;
+
+    /**
+     * Cache of the sites each user is a member of.
+     */
+    private final SiteMembershipIndex siteIndex;
+
     /**
      * Logging instance.
      */
@@ -113,18 +211,44 @@ public class AlfrescoConnector {
      */
     public AlfrescoConnector(final PropertyWrapper properties, final Authenticator auth)
             throws AlfrescoException {
+        this(properties, auth, HttpClientFactory.createHttpClient(properties));
+    }
+
+    /**
+     * @param properties Contains configuration for the Alfresco server to connect to
+     * @param auth A mechanism for authenticating the connection to Alfresco
+     * @param httpClient The HTTP client to use for communication
+     * @throws AlfrescoException If required properties are not present or if authentication fails
+     */
+    public AlfrescoConnector(final PropertyWrapper properties, final Authenticator auth,
+            final HttpClient httpClient) throws AlfrescoException {
         try {
             // read and save properties needed elsewhere
             alfrescoUrlBase = properties.getProperty("alfresco.url.base");
             alfrescoUrlSites = alfrescoUrlBase+"/api/sites/";
             alfrescoUrlRmConstraint = alfrescoUrlBase+"/api/rma/admin/rmconstraints/";
             alfrescoUrlProfile = alfrescoUrlBase+"/sv-theme/user-profile/internal-profile";
+            syncParallelism = properties.getIntProperty("alfresco.sync.parallelism", DEFAULT_SYNC_PARALLELISM);
+            compressionThreshold = properties.getIntProperty("alfresco.http.compressRequestsOver", -1);
+            siteIndex = new SiteMembershipIndex(properties.getIntProperty("alfresco.cache.siteMemberships.ttl",
+                    DEFAULT_SITE_INDEX_TTL));
         } catch (PropertyException e) {
             throw new AlfrescoException("Cannot find a required property", e);
         }
 
-        // create HTTP client
-        client = new DefaultHttpClient();
+        client = httpClient;
+
+        try {
+            pipeline = RequestPipeline.create(properties, client, getClass());
+        } catch (PropertyException e) {
+            throw new AlfrescoException("Invalid request pipeline configuration", e);
+        }
+
+        try {
+            codec = JsonCodecs.create(properties);
+        } catch (PropertyException e) {
+            throw new AlfrescoException("Invalid JSON codec configuration", e);
+        }
 
         // login
         if (!auth.authenticate(client)) {
@@ -132,6 +256,28 @@ public class AlfrescoConnector {
         }
     }
 
+    /**
+     * @return The latency and traffic of each endpoint used by this connector
+     */
+    public ConnectorMetrics getMetrics() {
+        return pipeline.getMetrics();
+    }
+
+    /**
+     * @return The throttle holding requests back when Alfresco is struggling
+     */
+    public RequestThrottle getThrottle() {
+        return pipeline.getThrottle();
+    }
+
+    /**
+     * Release what this connector registered outside itself: its metrics are removed from JMX. The HTTP client
+     * is left open, as it may be shared.
+     */
+    public void close() {
+        pipeline.getMetrics().unpublish();
+    }
+
     /**
      * Add a member to an Alfresco site.
      * @param site The name of the site (must already exist in Alfresco)
@@ -141,23 +287,43 @@ public class AlfrescoConnector {
      */
     public void addMemberToSite(final String site, final String username, final RoleType role)
             throws AlfrescoException {
+        doHttpPost(alfrescoUrlSites + site + "/memberships", createSiteMembershipRequest(username, role));
+        siteIndex.siteAdded(username, site);
+    }
+
+    /**
+     * Change the role of an existing member of an Alfresco site.
+     * @param site The name of the site (must already exist in Alfresco)
+     * @param username The name of the user (must already be a member of the site)
+     * @param role The new role for the user within the site
+     * @throws AlfrescoException On any Alfresco error
+     */
+    public void changeSiteMemberRole(final String site, final String username, final RoleType role)
+            throws AlfrescoException {
+        doHttpPut(alfrescoUrlSites + site + "/memberships", createSiteMembershipRequest(username, role));
+    }
+
+    /**
+     * Build the JSON used to add a member to a site or change their role.
+     * @param username The name of the user
+     * @param role The role to give the user within the site
+     * @return The request JSON
+     * @throws AlfrescoException If the JSON cannot be built
+     */
+    private JSONObject createSiteMembershipRequest(final String username, final RoleType role)
+            throws AlfrescoException {
         JSONObject request = new JSONObject();
 
         try {
             JSONObject person = new JSONObject();
             person.put("userName", username);
             request.put("person", person);
-
-            if (role == RoleType.MANAGER) {
-                request.put("role", "SiteManager");
-            } else {
-                request.put("role", "SiteCollaborator");
-            }
+            request.put("role", role.getSiteRole());
         } catch (JSONException e) {
             throw new AlfrescoException("Cannot add a member", e);
         }
 
-        doHttpPost(alfrescoUrlSites + site + "/memberships", request);
+        return request;
     }
     
     /**
@@ -169,8 +335,6 @@ public class AlfrescoConnector {
      */
     public void addMemberToGroup(final String userName, final String groupName) throws AlfrescoException
     {
-        JSONObject request = new JSONObject();
-
         //First, try and remove the user from the group, but ignore any errors.  We need to do this as Alfresco doesn't like us
         //adding a user to a group they're already a member of
         try {
@@ -180,56 +344,224 @@ public class AlfrescoConnector {
         	LOGGER.warn("Exception thrown removing "+userName+" from "+groupName+": "+e, e);
         }
         
+        changeGroupMembership(userName, groupName, "addGroups");
+    }
+    
+    public void removeMemberFromGroupIfPresent(final String userName, final String groupName) throws AlfrescoException
+    {
+        changeGroupMembership(userName, groupName, "removeGroups");
+    }
+
+    /**
+     * Make the membership of a group match the given set of users, changing only the memberships which differ.
+     * The current members are read once, then the missing users are added and the extra users removed using
+     * up to <code>alfresco.sync.parallelism</code> concurrent requests.
+     * @param groupName Name of a group within alfresco, without the "GROUP_" prefix
+     * @param desiredUsers The users who should be members of the group
+     * @return The changes made and any which failed
+     * @throws AlfrescoException If the current members of the group cannot be read
+     */
+    public MembershipSyncResult syncGroupMembers(final String groupName, final Collection<String> desiredUsers)
+            throws AlfrescoException {
+        return syncGroupMembers(groupName, desiredUsers, syncParallelism);
+    }
+
+    /**
+     * Make the membership of a group match the given set of users, changing only the memberships which differ.
+     * @param groupName Name of a group within alfresco, without the "GROUP_" prefix
+     * @param desiredUsers The users who should be members of the group
+     * @param parallelism The maximum number of changes to make at once. This is reduced to one unless the
+     * connector was created with a pooled HTTP client.
+     * @return The changes made and any which failed
+     * @throws AlfrescoException If the current members of the group cannot be read
+     */
+    public MembershipSyncResult syncGroupMembers(final String groupName, final Collection<String> desiredUsers,
+            final int parallelism) throws AlfrescoException {
+        // Alfresco usernames are case insensitive, so diff on lower case names but send the names as given
+        final Map<String, String> current = byLowerCaseName(getMembershipOfGroup(groupName));
+        final Map<String, String> desired = byLowerCaseName(desiredUsers);
+
+        final List<String> toAdd = new ArrayList<String>();
+        final List<String> toRemove = new ArrayList<String>();
+
+        for (String name : UsernameSet.copyOf(desired.keySet()).difference(current.keySet())) {
+            toAdd.add(desired.get(name));
+        }
+
+        for (String name : UsernameSet.copyOf(current.keySet()).difference(desired.keySet())) {
+            toRemove.add(current.get(name));
+        }
+
+        final Map<String, AlfrescoException> failures = new LinkedHashMap<String, AlfrescoException>();
+
+        // the user is known not to be a member, so skip the defensive removal done by addMemberToGroup
+        failures.putAll(BulkOperationRunner.run(toAdd, new BulkOperation<String>() {
+            public void apply(final String userName) throws AlfrescoException {
+                changeGroupMembership(userName, groupName, "addGroups");
+            }
+        }, getEffectiveParallelism(parallelism)));
+
+        failures.putAll(BulkOperationRunner.run(toRemove, new BulkOperation<String>() {
+            public void apply(final String userName) throws AlfrescoException {
+                changeGroupMembership(userName, groupName, "removeGroups");
+            }
+        }, getEffectiveParallelism(parallelism)));
+
+        final MembershipSyncResult result = new MembershipSyncResult(
+                BulkOperationRunner.succeeded(toAdd, failures), BulkOperationRunner.succeeded(toRemove, failures),
+                new ArrayList<String>(), failures);
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Synchronised members of group " + groupName + ": " + result);
+        }
+
+        return result;
+    }
+
+    /**
+     * @param userNames Usernames in any case. Nulls are ignored.
+     * @return The usernames keyed by their lower case form, in the order given. Where names differ only in case
+     * the first is kept.
+     */
+    private static Map<String, String> byLowerCaseName(final Collection<String> userNames) {
+        final Map<String, String> byLowerCase = new LinkedHashMap<String, String>(userNames.size() * 2);
+
+        for (String userName : userNames) {
+            if (userName == null) {
+                continue;
+            }
+
+            final String key = userName.toLowerCase(Locale.ENGLISH);
+
+            if (!byLowerCase.containsKey(key)) {
+                byLowerCase.put(key, userName);
+            }
+        }
+
+        return byLowerCase;
+    }
+
+    /**
+     * Add a user to, and remove a user from, several groups in a single request. Alfresco rejects the
+     * whole request if the user is already a member of a group being added.
+     * @param userName Name of a user within alfresco
+     * @param addGroups Names of groups to add the user to, without the "GROUP_" prefix
+     * @param removeGroups Names of groups to remove the user from, without the "GROUP_" prefix
+     * @throws AlfrescoException On any Alfresco error
+     */
+    public void updateGroupMembership(final String userName, final Collection<String> addGroups,
+            final Collection<String> removeGroups) throws AlfrescoException {
+        if (addGroups.isEmpty() && removeGroups.isEmpty()) {
+            return;
+        }
+
+        JSONObject request = new JSONObject();
+
         try {
-            JSONArray groupsList = new JSONArray();
-            groupsList.put("GROUP_"+groupName);
-            request.put("addGroups", groupsList);
+            if (!addGroups.isEmpty()) {
+                request.put("addGroups", toGroupAuthorities(addGroups));
+            }
 
+            if (!removeGroups.isEmpty()) {
+                request.put("removeGroups", toGroupAuthorities(removeGroups));
+            }
         } catch (JSONException e) {
-            throw new AlfrescoException("Cannot Create JSON to add "+userName+" to the group "+groupName, e);
+            throw new AlfrescoException("Cannot Create JSON to change group membership of "+userName, e);
         }
 
         doHttpPut(alfrescoUrlBase +"/api/people/"+userName, request);
     }
-    
-    public void removeMemberFromGroupIfPresent(final String userName, final String groupName) throws AlfrescoException
-    {
-    	JSONObject request = new JSONObject();
 
-        try {
-            JSONArray groupsList = new JSONArray();
+    /**
+     * Add a user to, or remove a user from, a single group.
+     * @param userName Name of a user within alfresco
+     * @param groupName Name of a group within alfresco, without the "GROUP_" prefix
+     * @param listName Either "addGroups" or "removeGroups"
+     * @throws AlfrescoException On any Alfresco error
+     */
+    private void changeGroupMembership(final String userName, final String groupName, final String listName)
+            throws AlfrescoException {
+        final Collection<String> group = Collections.singleton(groupName);
+        final Collection<String> none = Collections.emptySet();
+
+        if ("addGroups".equals(listName)) {
+            updateGroupMembership(userName, group, none);
+        } else {
+            updateGroupMembership(userName, none, group);
+        }
+    }
+
+    /**
+     * @param groupNames Names of groups without the "GROUP_" prefix
+     * @return The authority names of the groups
+     */
+    private static JSONArray toGroupAuthorities(final Collection<String> groupNames) {
+        JSONArray groupsList = new JSONArray();
+
+        for (String groupName : groupNames) {
             groupsList.put("GROUP_"+groupName);
-            request.put("removeGroups", groupsList);
+        }
 
-        } catch (JSONException e) {
-            throw new AlfrescoException("Cannot Create JSON to remove "+userName+" from the group "+groupName, e);
+        return groupsList;
+    }
+
+    /**
+     * Requests sharing a single connection must be made one at a time, so parallel work is only possible
+     * when the HTTP client pools its connections.
+     * @param parallelism The requested parallelism
+     * @return The parallelism which can safely be used with this connector's HTTP client
+     */
+    private int getEffectiveParallelism(final int parallelism) {
+        if (client.getConnectionManager() instanceof ThreadSafeClientConnManager) {
+            return parallelism;
         }
 
-        doHttpPut(alfrescoUrlBase +"/api/people/"+userName, request);
+        return 1;
     }
     
+    /**
+     * Returns the usernames of the users who are members of an Alfresco group.
+     * @param groupName The short name of the group
+     * @return An immutable, sorted {@link UsernameSet} of the members
+     * @throws AlfrescoException On any Alfresco error
+     */
     public Collection<String> getMembershipOfGroup(final String groupName) throws AlfrescoException {
-    	
-    	JSONObject jsonObj = doHttpGet(alfrescoUrlBase + "/api/groups/" + groupName + "/children?authorityType=USER");
-        Collection<String> memberList = new HashSet<String>(HASH_SIZE);
-        
-    	JSONArray jsonArray;
-		try {
-			jsonArray = jsonObj.getJSONArray("data");
+        final UsernameSet.Builder memberList = new UsernameSet.Builder();
 
-	    	
-	        for (int x = 0; x < jsonArray.length(); x++) {
-	            JSONObject member = jsonArray.optJSONObject(x);
+        doHttpGetEachRaw(alfrescoUrlBase + "/api/groups/" + groupName + "/children?authorityType=USER", "data",
+                new RawJsonVisitor() {
+                    public void visit(final RawJson json) throws AlfrescoException {
+                        String shortName = new GroupMember(json).getShortName();
 
-	            if (member != null) {
-	            	memberList.add(member.getString("shortName"));
-	            }
-	        }
-		} catch (JSONException e) {
-			throw new AlfrescoException("Failed to get members of group" + groupName, e);
-		}
+                        if (shortName == null) {
+                            throw new AlfrescoException("Failed to get members of group" + groupName);
+                        }
 
-		return memberList;
+                        memberList.add(shortName);
+                    }
+                });
+
+        return memberList.build();
+    }
+
+    /**
+     * Returns the users who are members of an Alfresco group. Each member is decoded only as its fields are
+     * read.
+     * @param groupName The short name of the group
+     * @return The members of the group
+     * @throws AlfrescoException On any Alfresco error
+     */
+    public List<GroupMember> getGroupMembers(final String groupName) throws AlfrescoException {
+        final List<GroupMember> members = new ArrayList<GroupMember>();
+
+        doHttpGetEachRaw(alfrescoUrlBase + "/api/groups/" + groupName + "/children?authorityType=USER", "data",
+                new RawJsonVisitor() {
+                    public void visit(final RawJson json) {
+                        members.add(new GroupMember(json));
+                    }
+                });
+
+        return members;
     }
 
     /**
@@ -241,6 +573,7 @@ public class AlfrescoConnector {
     public void removeMemberFromSite(final String site, final String username)
             throws AlfrescoException {
         doHttpDelete(alfrescoUrlSites + site + "/memberships/" + username);
+        siteIndex.siteRemoved(username, site);
     }
     
     /** 
@@ -250,58 +583,204 @@ public class AlfrescoConnector {
      * @throws AlfrescoException On any Alfresco error
      */
     public void removeMemberFromSiteIfPresent(final String site, final String username) throws AlfrescoException {
-    	JSONArray jsonArray = doHttpGetArray(alfrescoUrlBase + "/api/people/" + username + "/sites");
-    	
-    	for (int i = 0; i < jsonArray.length(); i++) {
-    		JSONObject jsonSite;
-			try {
-				jsonSite = jsonArray.getJSONObject(i);
-	    		
-	    		if (jsonSite != null) {
-	    			if (site.equalsIgnoreCase(jsonSite.getString("shortName"))) {
-	    				// the member does exist in the site, so remove them.
-	    				removeMemberFromSite(site, username);
-	    			}
-	    		}
-			} catch (JSONException e) {
-				throw new AlfrescoException("Error parsing JSON when getting site access for " + username, e);
-			}
-
-    	}
+        final Set<String> cached = siteIndex.getSites(username);
+        final String siteName = SiteMembershipIndex.normalise(site);
+
+        // a cached membership is trusted, but the server is asked before skipping the removal
+        if ((cached != null && cached.contains(siteName)) || fetchSitesOfUser(username).contains(siteName)) {
+            // the member does exist in the site, so remove them.
+            removeMemberFromSite(site, username);
+        }
+    }
+
+    /**
+     * Forget the cached site memberships of a user, for example after changing them outside this connector.
+     * @param username The name of the user
+     */
+    public void invalidateSiteMemberships(final String username) {
+        siteIndex.invalidate(username);
+    }
+
+    /**
+     * Get the sites a user is a member of from Alfresco, and cache them.
+     * @param username The name of the user
+     * @return The lower case names of the user's sites
+     * @throws AlfrescoException On any Alfresco error
+     */
+    private Set<String> fetchSitesOfUser(final String username) throws AlfrescoException {
+        final long version = siteIndex.getVersion();
+        final Set<String> fetched = new HashSet<String>();
+
+        doHttpGetEach(alfrescoUrlBase + "/api/people/" + username + "/sites", null, new JsonElementVisitor() {
+            public void visit(final JSONObject jsonSite) {
+                String shortName = jsonSite.optString("shortName");
+
+                if (shortName.length() > 0) {
+                    fetched.add(SiteMembershipIndex.normalise(shortName));
+                }
+            }
+        });
+
+        siteIndex.putSites(username, fetched, version);
+
+        return fetched;
     }
 
     /**
      * Returns a list of all the current members of an Alfresco site.
      * @param site The name of the site (must exist in Alfresco)
-     * @return A list of usernames of the members
+     * @return An immutable, sorted {@link UsernameSet} of the usernames of the members
      * @throws AlfrescoException On any Alfresco error
      */
     public Collection<String> getSiteMemberList(final String site)
             throws AlfrescoException {
-        Collection<String> memberList = new HashSet<String>(HASH_SIZE);
+        final UsernameSet.Builder memberList = new UsernameSet.Builder();
 
-        JSONArray jsonArray = doHttpGetArray(alfrescoUrlSites + site
-                + "/memberships?authorityType=USER");
+        doHttpGetEachRaw(alfrescoUrlSites + site + "/memberships?authorityType=USER", null,
+                new RawJsonVisitor() {
+                    public void visit(final RawJson json) {
+                        String username = new SiteMembership(json).getUserName();
 
-        for (int x = 0; x < jsonArray.length(); x++) {
-            JSONObject member = jsonArray.optJSONObject(x);
+                        if (username != null && username.length() > 0) {
+                            memberList.add(username);
+                        }
+                    }
+                });
 
-            if (member != null) {
-                JSONObject authority = member.optJSONObject("authority");
+        return memberList.build();
+    }
 
-                if (authority != null) {
-                    String username = authority.optString("userName");
+    /**
+     * Returns the user memberships of an Alfresco site. Each membership is decoded only as its fields are read.
+     * @param site The name of the site (must exist in Alfresco)
+     * @return The memberships of the site
+     * @throws AlfrescoException On any Alfresco error
+     */
+    public List<SiteMembership> getSiteMemberships(final String site)
+            throws AlfrescoException {
+        final List<SiteMembership> memberships = new ArrayList<SiteMembership>();
 
-                    if (username.length() > 0) {
-                        memberList.add(username);
+        doHttpGetEachRaw(alfrescoUrlSites + site + "/memberships?authorityType=USER", null,
+                new RawJsonVisitor() {
+                    public void visit(final RawJson json) {
+                        memberships.add(new SiteMembership(json));
                     }
-                }
+                });
+
+        return memberships;
+    }
+
+
+    /**
+     * Returns all the current members of an Alfresco site along with their roles.
+     * @param site The name of the site (must exist in Alfresco)
+     * @return The usernames of the members mapped to their roles. A role Alfresco reports which is not one of
+     * the {@link RoleType}s is mapped to null.
+     * @throws AlfrescoException On any Alfresco error
+     */
+    public Map<String, RoleType> getSiteMemberRoles(final String site)
+            throws AlfrescoException {
+        final Map<String, RoleType> memberRoles = new HashMap<String, RoleType>(HASH_SIZE);
+
+        doHttpGetEachRaw(alfrescoUrlSites + site + "/memberships?authorityType=USER", null,
+                new RawJsonVisitor() {
+                    public void visit(final RawJson json) {
+                        SiteMembership membership = new SiteMembership(json);
+                        String username = membership.getUserName();
+
+                        if (username != null && username.length() > 0) {
+                            memberRoles.put(username, membership.getRoleType());
+                        }
+                    }
+                });
+
+        return memberRoles;
+    }
+
+    /**
+     * Make the membership of an Alfresco site match the given users and roles, changing only what differs.
+     * The current memberships are read once, then missing users are added, extra users removed and users with
+     * the wrong role updated, using up to <code>alfresco.sync.parallelism</code> concurrent requests. Usernames
+     * are compared ignoring case, and changes are sent using the names given.
+     * @param site The name of the site (must exist in Alfresco)
+     * @param desiredMembers The users who should be members of the site, mapped to their roles
+     * @return The changes made and any which failed
+     * @throws AlfrescoException If the current members of the site cannot be read
+     */
+    public MembershipSyncResult reconcileSiteMembers(final String site, final Map<String, RoleType> desiredMembers)
+            throws AlfrescoException {
+        return reconcileSiteMembers(site, desiredMembers, syncParallelism);
+    }
+
+    /**
+     * Make the membership of an Alfresco site match the given users and roles, changing only what differs.
+     * @param site The name of the site (must exist in Alfresco)
+     * @param desiredMembers The users who should be members of the site, mapped to their roles
+     * @param parallelism The maximum number of changes to make at once. This is reduced to one unless the
+     * connector was created with a pooled HTTP client.
+     * @return The changes made and any which failed
+     * @throws AlfrescoException If the current members of the site cannot be read
+     */
+    public MembershipSyncResult reconcileSiteMembers(final String site, final Map<String, RoleType> desiredMembers,
+            final int parallelism) throws AlfrescoException {
+        final Map<String, RoleType> current = getSiteMemberRoles(site);
+
+        // as in syncGroupMembers, a member whose name differs only in case is the same user
+        final Map<String, String> currentNames = byLowerCaseName(current.keySet());
+        final Map<String, String> desiredNames = byLowerCaseName(desiredMembers.keySet());
+
+        final List<String> toAdd = new ArrayList<String>();
+        final List<String> toChange = new ArrayList<String>();
+        final List<String> toRemove = new ArrayList<String>();
+
+        for (Map.Entry<String, String> desired : desiredNames.entrySet()) {
+            final String currentName = currentNames.get(desired.getKey());
+
+            if (currentName == null) {
+                toAdd.add(desired.getValue());
+            } else if (current.get(currentName) != desiredMembers.get(desired.getValue())) {
+                toChange.add(desired.getValue());
             }
         }
 
-        return memberList;
-    }
+        for (Map.Entry<String, String> member : currentNames.entrySet()) {
+            if (!desiredNames.containsKey(member.getKey())) {
+                toRemove.add(member.getValue());
+            }
+        }
+
+        final List<String> toUpdate = new ArrayList<String>(toAdd.size() + toChange.size() + toRemove.size());
+        toUpdate.addAll(toAdd);
+        toUpdate.addAll(toChange);
+        toUpdate.addAll(toRemove);
+
+        final Set<String> additions = new HashSet<String>(toAdd);
+        final Set<String> removals = new HashSet<String>(toRemove);
+
+        // each user needs at most one request, so all three kinds of change can run together
+        final Map<String, AlfrescoException> failures = BulkOperationRunner.run(toUpdate,
+                new BulkOperation<String>() {
+                    public void apply(final String username) throws AlfrescoException {
+                        if (removals.contains(username)) {
+                            removeMemberFromSite(site, username);
+                        } else if (additions.contains(username)) {
+                            addMemberToSite(site, username, desiredMembers.get(username));
+                        } else {
+                            changeSiteMemberRole(site, username, desiredMembers.get(username));
+                        }
+                    }
+                }, getEffectiveParallelism(parallelism));
 
+        final MembershipSyncResult result = new MembershipSyncResult(
+                BulkOperationRunner.succeeded(toAdd, failures), BulkOperationRunner.succeeded(toRemove, failures),
+                BulkOperationRunner.succeeded(toChange, failures), failures);
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Reconciled members of site " + site + ": " + result);
+        }
+
+        return result;
+    }
 
     /**
      * Update a profile.
@@ -362,41 +841,64 @@ public class AlfrescoConnector {
     }
 
     /**
-     * Visit a URL using an HTTP GET and parse out a JSON array from the response.
+     * Returns the values of a Records Management Constraint in Alfresco, with the authorities allowed each.
+     * @param constraint The name of the constraint type
+     * @return The values of the constraint
+     * @throws AlfrescoException On any Alfresco error
+     */
+    public List<RmConstraintValue> getRmConstraintValues(final String constraint) throws AlfrescoException {
+        HttpGet get = new HttpGet(alfrescoUrlRmConstraint + constraint + "/values");
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        new AlfrescoHttpResponse(execute(get), codec).writeTo(body);
+
+        RawJson data = new RawJson(body.toByteArray()).getObject("data");
+
+        if (data == null) {
+            throw new AlfrescoException("Alfresco returned no values for RM constraint " + constraint);
+        }
+
+        List<RmConstraintValue> values = new ArrayList<RmConstraintValue>();
+
+        for (RawJson value : data.getObjects("values")) {
+            values.add(new RmConstraintValue(value));
+        }
+
+        return values;
+    }
+
+    /**
+     * Visit a URL using an HTTP GET and pass each object of a JSON array in the response to a visitor
+     * as it is decoded.
      * @param url URL to visit
-     * @return The JSON array response
+     * @param arrayKey The key of the array in the response, or null if the response is an array
+     * @param visitor Receives each object in turn
      * @throws AlfrescoException On any HTTP error
      */
-    private JSONArray doHttpGetArray(final String url) throws AlfrescoException {
+    private void doHttpGetEach(final String url, final String arrayKey, final JsonElementVisitor visitor)
+            throws AlfrescoException {
         HttpGet get = new HttpGet(url);
 
-        HttpResponse response;
+        HttpResponse response = execute(get);
 
-        try {
-            response = client.execute(get);
-        } catch (ClientProtocolException e) {
-            throw new AlfrescoException("Failed on HTTP GET", e);
-        } catch (IOException e) {
-            throw new AlfrescoException("Failed on HTTP GET", e);
-        }
-
-        return getJsonArrayFromResponse(response);
+        new AlfrescoHttpResponse(response, codec).streamJsonArray(arrayKey, visitor);
     }
-    
-    private JSONObject doHttpGet(final String url) throws AlfrescoException {
-    	HttpGet get = new HttpGet(url);
-    	
-    	HttpResponse response;
-    	
-        try {
-            response = client.execute(get);
-        } catch (ClientProtocolException e) {
-            throw new AlfrescoException("Failed on HTTP GET", e);
-        } catch (IOException e) {
-            throw new AlfrescoException("Failed on HTTP GET", e);
-        }
 
-        return getJsonObjectFromResponse(response);
+    /**
+     * Visit a URL using an HTTP GET and pass each object of a JSON array in the response to a visitor
+     * undecoded.
+     * @param url URL to visit
+     * @param arrayKey The key of the array in the response, or null if the response is an array
+     * @param visitor Receives each object in turn
+     * @throws AlfrescoException On any HTTP error
+     */
+    private void doHttpGetEachRaw(final String url, final String arrayKey, final RawJsonVisitor visitor)
+            throws AlfrescoException {
+        HttpGet get = new HttpGet(url);
+
+        HttpResponse response = execute(get);
+
+        new AlfrescoHttpResponse(response, codec).streamRawJsonArray(arrayKey, visitor);
     }
 
     /**
@@ -421,11 +923,11 @@ public class AlfrescoConnector {
             }
         }
 
-        StringEntity jsonEnt;
+        HttpEntity jsonEnt;
 
         try {
-            jsonEnt = new StringEntity(json.toString());
-        } catch (UnsupportedEncodingException e) {
+            jsonEnt = RequestEntities.createJsonEntity(json, codec, compressionThreshold);
+        } catch (JSONException e) {
             throw new AlfrescoException("Failed on HTTP POST", e);
         }
 
@@ -454,11 +956,11 @@ public class AlfrescoConnector {
             }
         }
 
-        StringEntity jsonEnt;
+        HttpEntity jsonEnt;
 
         try {
-            jsonEnt = new StringEntity(json.toString());
-        } catch (UnsupportedEncodingException e) {
+            jsonEnt = RequestEntities.createJsonEntity(json, codec, compressionThreshold);
+        } catch (JSONException e) {
             throw new AlfrescoException("Failed on HTTP POST", e);
         }
 
@@ -472,22 +974,15 @@ public class AlfrescoConnector {
      * @return The JSON response
      * @throws AlfrescoException On any HTTP error
      */
-    private JSONObject doHttpPost(final String url, final StringEntity jsonEnt)
+    private JSONObject doHttpPost(final String url, final HttpEntity jsonEnt)
             throws AlfrescoException {
         HttpPost post = new HttpPost(url);
         post.setEntity(jsonEnt);
         post.setHeader("Accept", "application/json");
-        post.setHeader("Content-type", "application/json");
+        post.setHeader("Content-type", RequestEntities.getJsonContentType(jsonEnt));
 
         // post it
-        HttpResponse response;
-        try {
-            response = client.execute(post);
-        } catch (ClientProtocolException e) {
-            throw new AlfrescoException("Failed on HTTP POST", e);
-        } catch (IOException e) {
-            throw new AlfrescoException("Failed on HTTP POST", e);
-        }
+        HttpResponse response = execute(post);
 
         // check status code and content of response
         return getJsonObjectFromResponse(response);
@@ -500,22 +995,15 @@ public class AlfrescoConnector {
      * @return The JSON response
      * @throws AlfrescoException On any HTTP error
      */
-    private JSONObject doHttpPut(final String url, final StringEntity jsonEnt)
+    private JSONObject doHttpPut(final String url, final HttpEntity jsonEnt)
             throws AlfrescoException {
         HttpPut put = new HttpPut(url);
         put.setEntity(jsonEnt);
         put.setHeader("Accept", "application/json");
-        put.setHeader("Content-type", "application/json");
+        put.setHeader("Content-type", RequestEntities.getJsonContentType(jsonEnt));
 
         // post it
-        HttpResponse response;
-        try {
-            response = client.execute(put);
-        } catch (ClientProtocolException e) {
-            throw new AlfrescoException("Failed on HTTP PUT", e);
-        } catch (IOException e) {
-            throw new AlfrescoException("Failed on HTTP PUT", e);
-        }
+        HttpResponse response = execute(put);
 
         // check status code and content of response
         return getJsonObjectFromResponse(response);
@@ -543,11 +1031,11 @@ public class AlfrescoConnector {
             }
         }
 
-        StringEntity jsonEnt;
+        HttpEntity jsonEnt;
 
         try {
-            jsonEnt = new StringEntity(json.toString());
-        } catch (UnsupportedEncodingException e) {
+            jsonEnt = RequestEntities.createJsonEntity(json, codec, compressionThreshold);
+        } catch (JSONException e) {
             throw new AlfrescoException("Failed on HTTP PUT", e);
         }
 
@@ -565,19 +1053,22 @@ public class AlfrescoConnector {
         HttpDelete delete = new HttpDelete(url);
 
         // send it
-        HttpResponse response;
-        try {
-            response = client.execute(delete);
-        } catch (ClientProtocolException e) {
-            throw new AlfrescoException("Failed on HTTP DELETE", e);
-        } catch (IOException e) {
-            throw new AlfrescoException("Failed on HTTP DELETE", e);
-        }
+        HttpResponse response = execute(delete);
 
         // check status code and content of response
         return getJsonObjectFromResponse(response);
     }
 
+    /**
+     * Send a request through the {@link RequestPipeline}.
+     * @param request The request to send
+     * @return The response
+     * @throws AlfrescoException If no response was received
+     */
+    private HttpResponse execute(final HttpUriRequest request) throws AlfrescoException {
+        return pipeline.execute(request, null);
+    }
+
     /**
      * Parse out a JSON object from an HTTP response.
      * @param response The response from an HTTP account
@@ -595,8 +1086,10 @@ public class AlfrescoConnector {
 
         if (responseEnt != null) {
             try {
-                jsonResponse = new JSONObject(new JSONTokener(
-                        new InputStreamReader(responseEnt.getContent())));
+                Object value = codec.createParser(responseEnt.getContent(),
+                        getCharset(responseEnt)).nextValue();
+
+                jsonResponse = value instanceof JSONObject ? (JSONObject) value : null;
             } catch (JSONException e) {
                 jsonResponse = null;
             } catch (IOException e) {
@@ -642,58 +1135,13 @@ public class AlfrescoConnector {
     }
 
     /**
-     * Parse out a JSON array from an HTTP response.
-     * @param response The response from an HTTP account
-     * @return The JSON response
-     * @throws AlfrescoException If the HTTP response had an error or did not contain valid JSON
+     * @param ent The HTTP entity being read
+     * @return The character set declared for the entity, or UTF-8 if none is
      */
-    private JSONArray getJsonArrayFromResponse(final HttpResponse response)
-            throws AlfrescoException {
-        // check status code and content of response
-
-        StatusLine status = response.getStatusLine();
-        HttpEntity responseEnt = response.getEntity();
-
-        JSONArray jsonResponse = null;
-
-        if (responseEnt != null) {
-            try {
-                jsonResponse = new JSONArray(new JSONTokener(
-                        new InputStreamReader(responseEnt.getContent())));
-            } catch (JSONException e) {
-                jsonResponse = null;
-            } catch (IOException e) {
-                throw new AlfrescoException("Failed parsing HTTP response", e);
-            }
-
-            // make sure response buffer is flushed so we can use the client
-            // again
-            flushBuffer(responseEnt);
-
-            // debugging
-            if (jsonResponse != null && LOGGER.isDebugEnabled()) {
-                LOGGER.debug("Alfresco response:");
-
-                try {
-                    final int indent = 4;
-                    LOGGER.debug(jsonResponse.toString(indent));
-                } catch (JSONException e) {
-                    LOGGER.debug("Can't output JSON");
-                }
-            }
-        }
+    private static String getCharset(final HttpEntity ent) {
+        String charset = EntityUtils.getContentCharSet(ent);
 
-        // if any errors throw an exception with error message
-
-        if (status == null) {
-            throw new AlfrescoException(
-                    "Alfresco action failed to return a status");
-        } else if (jsonResponse == null || status.getStatusCode() >= HTTP_ERROR_CODE) {
-            throw new AlfrescoException("Alfresco action failed: "
-                    + status.getStatusCode() + ": " + status.getReasonPhrase());
-        }
-
-        return jsonResponse;
+        return charset == null ? "UTF-8" : charset;
     }
 
     /**
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Applies a {@link BulkOperation} to a collection of items using a bounded number of threads.
+ *
+ * A failure for one item does not stop the others; all failures are collected and returned.
+ */
+public final class BulkOperationRunner {
+
+    private BulkOperationRunner() {
+    }
+
+    /**
+     * Apply an operation to every item.
+     * @param items The items to operate on
+     * @param operation The operation to apply
+     * @param parallelism The maximum number of items to operate on at once
+     * @param <T> The type of item operated on
+     * @return The items which failed, mapped to the reason they failed, in the order of the items
+     * @throws AlfrescoException If the calling thread was interrupted while waiting
+     */
+    public static <T> Map<T, AlfrescoException> run(final Collection<T> items,
+            final BulkOperation<T> operation, final int parallelism) throws AlfrescoException {
+        final Map<T, AlfrescoException> failures = new LinkedHashMap<T, AlfrescoException>();
+
+        if (items.isEmpty()) {
+            return failures;
+        }
+
+        if (parallelism <= 1 || items.size() == 1) {
+            for (T item : items) {
+                try {
+                    operation.apply(item);
+                } catch (AlfrescoException e) {
+                    failures.put(item, e);
+                }
+            }
+
+            return failures;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, items.size()));
+
+        try {
+            final List<T> submitted = new ArrayList<T>(items);
+            final List<Future<AlfrescoException>> results =
+                new ArrayList<Future<AlfrescoException>>(submitted.size());
+
+            for (final T item : submitted) {
+                results.add(executor.submit(new Callable<AlfrescoException>() {
+                    public AlfrescoException call() {
+                        try {
+                            operation.apply(item);
+                            return null;
+                        } catch (AlfrescoException e) {
+                            return e;
+                        }
+                    }
+                }));
+            }
+
+            for (int i = 0; i < submitted.size(); i++) {
+                AlfrescoException failure;
+
+                try {
+                    failure = results.get(i).get();
+                } catch (ExecutionException e) {
+                    failure = new AlfrescoException("Bulk operation failed", e.getCause());
+                }
+
+                if (failure != null) {
+                    failures.put(submitted.get(i), failure);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AlfrescoException("Interrupted during bulk operation", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return failures;
+    }
+
+    /**
+     * @param items The items which were operated on
+     * @param failures The failures returned by {@link #run(Collection, BulkOperation, int)}
+     * @param <T> The type of item operated on
+     * @return The items which succeeded, in their original order
+     */
+    public static <T> List<T> succeeded(final Collection<T> items, final Map<T, AlfrescoException> failures) {
+        if (failures.isEmpty()) {
+            return Collections.unmodifiableList(new ArrayList<T>(items));
+        }
+
+        final List<T> result = new ArrayList<T>(items.size());
+
+        for (T item : items) {
+            if (!failures.containsKey(item)) {
+                result.add(item);
+            }
+        }
+
+        return Collections.unmodifiableList(result);
+    }
+}
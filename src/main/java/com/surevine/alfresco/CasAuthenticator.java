@@ -21,10 +21,12 @@
 */
 package com.surevine.alfresco;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -34,11 +36,17 @@ import org.apache.http.NameValuePair;
 import org.apache.http.ParseException;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.CookieStore;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 
 import org.apache.log4j.Logger;
@@ -79,6 +87,11 @@ public class CasAuthenticator implements Authenticator {
      */
     private String password;
 
+    /**
+     * Where the session is kept between runs, or null if it is not kept.
+     */
+    private CasSessionStore sessionStore;
+
     /**
      * Logging instance.
      */
@@ -94,14 +107,63 @@ public class CasAuthenticator implements Authenticator {
         urlPostlogin = properties.getProperty("cas.url.postlogin");
         username = properties.getProperty("alfresco.username");
         password = properties.getProperty("alfresco.password");
+
+        String sessionFile = properties.getProperty("cas.session.store", null);
+
+        if (sessionFile != null) {
+            sessionStore = new CasSessionStore(new File(sessionFile));
+        }
     }
 
     /**
      * Attempt to authenticate the client.
+     *
+     * If a session store is configured (<code>cas.session.store</code>) and the client has no session yet, a
+     * stored session is restored and checked by visiting the protected page once. If the visit ends at the CAS
+     * login page the stored session is discarded and a full login done instead. When the client already holds
+     * cookies a full login is always done and the stored session replaced.
      * @param client The HTTP client to authenticate
      * @return True if authentication was successful, otherwise false
      */
     public boolean authenticate(final HttpClient client) {
+        CookieStore cookieStore = null;
+
+        if (sessionStore != null && client instanceof AbstractHttpClient) {
+            cookieStore = ((AbstractHttpClient) client).getCookieStore();
+
+            if (cookieStore.getCookies().isEmpty() && sessionStore.restore(cookieStore)) {
+                if (isSessionValid(client)) {
+                    LOGGER.info("Reusing stored CAS session");
+                    return true;
+                }
+
+                LOGGER.info("Stored CAS session has expired, logging in again");
+                sessionStore.clear();
+                cookieStore.clear();
+            }
+        }
+
+        if (!loginToCas(client)) {
+            if (sessionStore != null) {
+                sessionStore.clear();
+            }
+
+            return false;
+        }
+
+        if (cookieStore != null) {
+            sessionStore.save(cookieStore);
+        }
+
+        return true;
+    }
+
+    /**
+     * Log into CAS and establish a session with the protected application.
+     * @param client The HTTP client to authenticate
+     * @return True if authentication was successful, otherwise false
+     */
+    private boolean loginToCas(final HttpClient client) {
         String loginTicket = getLoginTicket(client, urlLogin);
 
         if (loginTicket == null) {
@@ -125,6 +187,50 @@ public class CasAuthenticator implements Authenticator {
         return true;
     }
 
+    /**
+     * Check that the client's session is still accepted by visiting the protected page. An expired session is
+     * redirected to the CAS login page, which is followed to a page that does not require authentication.
+     * @param client The HTTP client holding the session
+     * @return True if the protected page was reached, otherwise false
+     */
+    private boolean isSessionValid(final HttpClient client) {
+        HttpGet get = new HttpGet(urlPostlogin);
+        HttpContext context = new BasicHttpContext();
+        HttpResponse response;
+
+        try {
+            response = client.execute(get, context);
+        } catch (ClientProtocolException e) {
+            logError("Failed to execute HTTP GET", e);
+            return false;
+        } catch (IOException e) {
+            logError("Failed to execute HTTP GET", e);
+            return false;
+        }
+
+        HttpEntity responseEnt = response.getEntity();
+
+        if (responseEnt != null && !flushBuffer(responseEnt)) {
+            return false;
+        }
+
+        if (response.getStatusLine().getStatusCode() != HTTP_SUCCESS_CODE) {
+            return false;
+        }
+
+        // redirects followed by the client leave the last request in the context
+        Object finalRequest = context.getAttribute(ExecutionContext.HTTP_REQUEST);
+
+        if (finalRequest instanceof HttpUriRequest) {
+            String finalPath = ((HttpUriRequest) finalRequest).getURI().getPath();
+            String loginPath = URI.create(urlLogin).getPath();
+
+            return finalPath == null || loginPath == null || !finalPath.startsWith(loginPath);
+        }
+
+        return true;
+    }
+
     /**
      * Get the CAS login ticket from the CAS login page (it's a required field to post to the login form).
      * @param client The HTTP client
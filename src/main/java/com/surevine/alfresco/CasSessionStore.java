@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.cookie.BasicClientCookie;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the cookies of an authenticated session (e.g. the CAS TGC and the Alfresco JSESSIONID) in a file, so
+ * that a new process can pick up the session instead of logging in again.
+ *
+ * Each cookie is kept as one line of text holding its name, value, domain, path, expiry and secure flag. The
+ * file is written in a private directory and made readable and writable by its owner only before it is moved
+ * into place, as anyone who can read it can use the session. A file which is owned by another user, or which
+ * other users can read or write, is not restored. Java 6 cannot read the owner or permissions of a file, so
+ * there only the format of the file is checked.
+ */
+public class CasSessionStore {
+
+    /**
+     * Logging instance.
+     */
+    private static final Logger LOGGER = Logger.getLogger(CasSessionStore.class);
+
+    /**
+     * The first line of a stored session.
+     */
+    private static final String HEADER = "# CAS session v1";
+
+    /**
+     * Separates the fields of a cookie.
+     */
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * The number of fields of a cookie.
+     */
+    private static final int FIELD_COUNT = 6;
+
+    /**
+     * Character set of the file, and of the encoded fields.
+     */
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * The file the session is kept in.
+     */
+    private final File file;
+
+    /**
+     * @param file The file to keep the session in
+     */
+    public CasSessionStore(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Copy the stored session, if any, into a cookie store. Cookies which have expired are skipped.
+     * @param cookieStore The cookie store to restore into
+     * @return True if any cookies were restored
+     */
+    public boolean restore(final CookieStore cookieStore) {
+        if (!file.isFile()) {
+            return false;
+        }
+
+        if (!isPrivate(file)) {
+            LOGGER.warn("Not restoring session from " + file
+                + " as it is owned by another user or other users can access it");
+            return false;
+        }
+
+        final List<Cookie> cookies;
+
+        try {
+            cookies = readCookies(file);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read stored session from " + file + ", discarding it", e);
+            clear();
+            return false;
+        }
+
+        final Date now = new Date();
+        boolean restored = false;
+
+        for (Cookie cookie : cookies) {
+            if (!cookie.isExpired(now)) {
+                cookieStore.addCookie(cookie);
+                restored = true;
+            }
+        }
+
+        return restored;
+    }
+
+    /**
+     * Store the cookies of a session, replacing any previously stored session.
+     * @param cookieStore The cookie store holding the session
+     */
+    public void save(final CookieStore cookieStore) {
+        final File directory = new File(file.getPath() + ".d");
+        final File temp = new File(directory, file.getName());
+
+        try {
+            createPrivateDirectory(directory);
+            createEmptyFile(temp);
+
+            final Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), CHARSET));
+
+            try {
+                writeCookies(out, cookieStore.getCookies());
+            } finally {
+                out.close();
+            }
+
+            restrictToOwner(temp);
+
+            if (!temp.renameTo(file)) {
+                // some platforms will not rename over an existing file
+                if (!file.delete() || !temp.renameTo(file)) {
+                    throw new IOException("Cannot rename " + temp + " to " + file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot store session in " + file, e);
+
+            if (!temp.delete() && temp.exists()) {
+                LOGGER.warn("Cannot delete " + temp);
+            }
+        }
+
+        if (!directory.delete() && directory.exists()) {
+            LOGGER.warn("Cannot delete " + directory);
+        }
+    }
+
+    /**
+     * Discard the stored session.
+     */
+    public void clear() {
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Cannot delete stored session " + file);
+        }
+    }
+
+    /**
+     * @param out Where to write the cookies
+     * @param cookies The cookies to write
+     * @throws IOException If the cookies cannot be written
+     */
+    private static void writeCookies(final Writer out, final Collection<Cookie> cookies) throws IOException {
+        out.write(HEADER);
+        out.write('\n');
+
+        for (Cookie cookie : cookies) {
+            final Date expiry = cookie.getExpiryDate();
+
+            out.write(encode(cookie.getName()));
+            out.write(SEPARATOR);
+            out.write(encode(cookie.getValue()));
+            out.write(SEPARATOR);
+            out.write(encode(cookie.getDomain()));
+            out.write(SEPARATOR);
+            out.write(encode(cookie.getPath()));
+            out.write(SEPARATOR);
+            out.write(expiry == null ? "" : Long.toString(expiry.getTime()));
+            out.write(SEPARATOR);
+            out.write(Boolean.toString(cookie.isSecure()));
+            out.write('\n');
+        }
+    }
+
+    /**
+     * @param source The file to read
+     * @return The cookies in the file
+     * @throws IOException If the file cannot be read or is not a stored session
+     */
+    private static List<Cookie> readCookies(final File source) throws IOException {
+        final BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(source), CHARSET));
+
+        try {
+            if (!HEADER.equals(in.readLine())) {
+                throw new IOException("Unexpected stored session format");
+            }
+
+            final List<Cookie> cookies = new ArrayList<Cookie>();
+            String line;
+
+            while ((line = in.readLine()) != null) {
+                if (line.length() > 0) {
+                    cookies.add(parseCookie(line));
+                }
+            }
+
+            return cookies;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param line A line written by {@link #writeCookies(Writer, Collection)}
+     * @return The cookie
+     * @throws IOException If the line is not a cookie
+     */
+    private static Cookie parseCookie(final String line) throws IOException {
+        final String[] fields = line.split(SEPARATOR, -1);
+
+        if (fields.length != FIELD_COUNT || fields[0].length() == 0) {
+            throw new IOException("Malformed stored cookie");
+        }
+
+        final BasicClientCookie cookie = new BasicClientCookie(decode(fields[0]), decode(fields[1]));
+        cookie.setDomain(decode(fields[2]));
+        cookie.setPath(decode(fields[3]));
+        cookie.setSecure(Boolean.parseBoolean(fields[5]));
+
+        if (fields[4].length() > 0) {
+            try {
+                cookie.setExpiryDate(new Date(Long.parseLong(fields[4])));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed stored cookie expiry: " + fields[4]);
+            }
+        }
+
+        return cookie;
+    }
+
+    /**
+     * @param field A cookie field, or null
+     * @return The field encoded so that it holds no separators, empty for null
+     * @throws IOException If the field cannot be encoded
+     */
+    private static String encode(final String field) throws IOException {
+        if (field == null) {
+            return "";
+        }
+
+        // a leading marker tells an empty field from a missing one
+        return "=" + URLEncoder.encode(field, CHARSET);
+    }
+
+    /**
+     * @param field A field written by {@link #encode(String)}
+     * @return The original field, or null if it was missing
+     * @throws IOException If the field is malformed
+     */
+    private static String decode(final String field) throws IOException {
+        if (field.length() == 0) {
+            return null;
+        }
+
+        if (field.charAt(0) != '=') {
+            throw new IOException("Malformed stored cookie field");
+        }
+
+        try {
+            return URLDecoder.decode(field.substring(1), CHARSET);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed stored cookie field");
+        }
+    }
+
+    /**
+     * Create a directory, or reuse one left behind, which only its owner can use.
+     * @param directory The directory
+     * @throws IOException If the directory cannot be created
+     */
+    private static void createPrivateDirectory(final File directory) throws IOException {
+        if (!directory.mkdir() && !directory.isDirectory()) {
+            throw new IOException("Cannot create " + directory);
+        }
+
+        restrictToOwner(directory);
+
+        if (!directory.setExecutable(false, false) || !directory.setExecutable(true, true)) {
+            throw new IOException("Cannot restrict permissions of " + directory);
+        }
+
+        if (!isPrivate(directory)) {
+            throw new IOException(directory + " is owned by another user");
+        }
+    }
+
+    /**
+     * Create an empty file, replacing anything already there.
+     * @param target The file to create
+     * @throws IOException If the file cannot be created
+     */
+    private static void createEmptyFile(final File target) throws IOException {
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Cannot replace " + target);
+        }
+
+        if (!target.createNewFile()) {
+            throw new IOException("Cannot create " + target);
+        }
+    }
+
+    /**
+     * Make a file readable and writable by its owner only.
+     * @param target The file
+     * @throws IOException If the permissions cannot be changed
+     */
+    private static void restrictToOwner(final File target) throws IOException {
+        // remove access for everyone, then grant it back to the owner
+        if (!target.setReadable(false, false) || !target.setReadable(true, true)
+                || !target.setWritable(false, false) || !target.setWritable(true, true)) {
+            throw new IOException("Cannot restrict permissions of " + target);
+        }
+    }
+
+    /**
+     * Check that a file belongs to the current user and that no other user can access it. The check uses
+     * java.nio.file when it is available (Java 7 and later); permissions are only checked on file systems
+     * which support POSIX permissions.
+     * @param target The file to check
+     * @return False if the file is known to belong to another user or to be accessible to other users
+     */
+    static boolean isPrivate(final File target) {
+        final Object path;
+        final Class<?> pathClass;
+        final Class<?> files;
+        final Object noFollowLinks;
+
+        try {
+            path = File.class.getMethod("toPath").invoke(target);
+            pathClass = Class.forName("java.nio.file.Path");
+            files = Class.forName("java.nio.file.Files");
+
+            final Class<?> linkOption = Class.forName("java.nio.file.LinkOption");
+            noFollowLinks = Array.newInstance(linkOption, 1);
+            Array.set(noFollowLinks, 0, linkOption.getField("NOFOLLOW_LINKS").get(null));
+        } catch (Exception e) {
+            // Java 6
+            return true;
+        }
+
+        try {
+            final Object owner = files.getMethod("getOwner", pathClass, noFollowLinks.getClass())
+                .invoke(null, path, noFollowLinks);
+
+            final Object fileSystem = pathClass.getMethod("getFileSystem").invoke(path);
+            final Object lookup = Class.forName("java.nio.file.FileSystem")
+                .getMethod("getUserPrincipalLookupService").invoke(fileSystem);
+            final Object currentUser = Class.forName("java.nio.file.attribute.UserPrincipalLookupService")
+                .getMethod("lookupPrincipalByName", String.class).invoke(lookup, System.getProperty("user.name"));
+
+            if (!owner.equals(currentUser)) {
+                return false;
+            }
+
+            final Collection<?> permissions;
+
+            try {
+                permissions = (Collection<?>) files.getMethod("getPosixFilePermissions", pathClass,
+                    noFollowLinks.getClass()).invoke(null, path, noFollowLinks);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof UnsupportedOperationException) {
+                    return true;
+                }
+
+                throw e;
+            }
+
+            for (Object permission : permissions) {
+                if (!permission.toString().startsWith("OWNER_")) {
+                    return false;
+                }
+            }
+
+            return true;
+        } catch (Exception e) {
+            LOGGER.warn("Cannot check the owner and permissions of " + target, e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Buffers group membership changes for each user and sends them to Alfresco as a single
+ * {@link AlfrescoConnector#updateGroupMembership(String, java.util.Collection, java.util.Collection)}
+ * request, once the first change for the user is a window old or the user has a full batch of changes.
+ *
+ * Only the last change to each group is sent: an addition followed by a removal of the same group becomes
+ * a removal, and a removal followed by an addition becomes an addition. If the combined request fails, for
+ * example because the user is already a member of one of the groups, each change is retried on its own
+ * using {@link AlfrescoConnector#addMemberToGroup} and {@link AlfrescoConnector#removeMemberFromGroupIfPresent}.
+ *
+ * Changes are sent one request at a time, so the connector's HTTP client need not be pooled. Failures of
+ * changes sent on the background thread are kept and returned by the next call to {@link #flush()} or
+ * {@link #close()}.
+ */
+public class GroupMembershipCoalescer {
+
+    private static final Logger LOGGER = Logger.getLogger(GroupMembershipCoalescer.class);
+
+    /**
+     * The connector used to send the changes.
+     */
+    private final AlfrescoConnector connector;
+
+    /**
+     * How long to wait for further changes after a user's first change, in milliseconds.
+     */
+    private final long windowMillis;
+
+    /**
+     * The number of changes for one user which are sent without waiting for the window to end.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * Sends the changes once their window ends.
+     */
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * The changes not yet sent, by user. Guarded by itself.
+     */
+    private final Map<String, PendingChanges> pending = new HashMap<String, PendingChanges>();
+
+    /**
+     * Failures of changes sent on the background thread, by user, not yet returned. Guarded by itself.
+     */
+    private final Map<String, AlfrescoException> backgroundFailures = new LinkedHashMap<String, AlfrescoException>();
+
+    /**
+     * Held while sending changes, so that the connector is used by one thread at a time.
+     */
+    private final Object sendLock = new Object();
+
+    /**
+     * @param connector The connector used to send the changes
+     * @param windowMillis How long to wait for further changes after a user's first change, in milliseconds
+     * @param maxBatchSize The number of changes for one user which are sent without waiting for the window
+     */
+    public GroupMembershipCoalescer(final AlfrescoConnector connector, final long windowMillis,
+            final int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+
+        this.connector = connector;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "alfresco-group-coalescer");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+
+        // close() sends whatever is still waiting itself
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Queue the addition of a user to a group.
+     * @param userName Name of a user within alfresco
+     * @param groupName Name of a group within alfresco, without the "GROUP_" prefix
+     * @throws AlfrescoException If the change filled a batch which could not be sent
+     */
+    public void addMemberToGroup(final String userName, final String groupName) throws AlfrescoException {
+        queue(userName, groupName, true);
+    }
+
+    /**
+     * Queue the removal of a user from a group.
+     * @param userName Name of a user within alfresco
+     * @param groupName Name of a group within alfresco, without the "GROUP_" prefix
+     * @throws AlfrescoException If the change filled a batch which could not be sent
+     */
+    public void removeMemberFromGroup(final String userName, final String groupName) throws AlfrescoException {
+        queue(userName, groupName, false);
+    }
+
+    /**
+     * Send every outstanding change now.
+     * @return The users whose changes could not all be made, mapped to the last failure. Users whose
+     * changes failed on the background thread since the last call come first, followed by the users whose
+     * changes were sent now in the order they were queued. Empty if all succeeded.
+     */
+    public Map<String, AlfrescoException> flush() {
+        final Map<String, PendingChanges> toSend;
+
+        synchronized (pending) {
+            toSend = new LinkedHashMap<String, PendingChanges>(pending);
+            pending.clear();
+        }
+
+        final Map<String, AlfrescoException> failures = new LinkedHashMap<String, AlfrescoException>();
+
+        synchronized (backgroundFailures) {
+            failures.putAll(backgroundFailures);
+            backgroundFailures.clear();
+        }
+
+        for (Map.Entry<String, PendingChanges> entry : toSend.entrySet()) {
+            final AlfrescoException failure = send(entry.getKey(), entry.getValue());
+
+            if (failure != null) {
+                failures.put(entry.getKey(), failure);
+            }
+        }
+
+        return failures;
+    }
+
+    /**
+     * Stop the background thread, waiting for any changes it is sending, and send every outstanding change.
+     * @return The users whose changes could not all be made, as for {@link #flush()}
+     */
+    public Map<String, AlfrescoException> close() {
+        scheduler.shutdown();
+
+        try {
+            while (!scheduler.awaitTermination(windowMillis + 1, TimeUnit.MILLISECONDS)) {
+                LOGGER.debug("Waiting for group changes in progress to be sent");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return flush();
+    }
+
+    /**
+     * @return The number of users with changes not yet sent
+     */
+    public int getPendingUserCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Record a change, sending the user's changes if the batch is full.
+     * @param userName Name of a user within alfresco
+     * @param groupName Name of a group within alfresco, without the "GROUP_" prefix
+     * @param add True to add the user to the group, false to remove them
+     * @throws AlfrescoException If the batch was full and could not be sent
+     */
+    private void queue(final String userName, final String groupName, final boolean add) throws AlfrescoException {
+        final PendingChanges full;
+
+        synchronized (pending) {
+            PendingChanges changes = pending.get(userName);
+
+            if (changes == null) {
+                changes = new PendingChanges();
+                pending.put(userName, changes);
+                scheduleFlush(userName, changes);
+            }
+
+            if (add) {
+                changes.add(groupName);
+            } else {
+                changes.remove(groupName);
+            }
+
+            if (changes.size() < maxBatchSize) {
+                return;
+            }
+
+            pending.remove(userName);
+            full = changes;
+        }
+
+        final AlfrescoException failure = send(userName, full);
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Arrange for a user's changes to be sent when the window ends, unless they have been sent already.
+     * @param userName Name of a user within alfresco
+     * @param changes The user's changes
+     */
+    private void scheduleFlush(final String userName, final PendingChanges changes) {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+
+        scheduler.schedule(new Runnable() {
+            public void run() {
+                synchronized (pending) {
+                    if (pending.get(userName) != changes) {
+                        return;
+                    }
+
+                    pending.remove(userName);
+                }
+
+                final AlfrescoException failure = send(userName, changes);
+
+                if (failure != null) {
+                    LOGGER.error("Cannot change group membership of " + userName, failure);
+
+                    synchronized (backgroundFailures) {
+                        backgroundFailures.put(userName, failure);
+                    }
+                }
+            }
+        }, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a user's changes, one user at a time.
+     * @param userName Name of a user within alfresco
+     * @param changes The user's changes
+     * @return The last failure, or null if every change was made
+     */
+    private AlfrescoException send(final String userName, final PendingChanges changes) {
+        if (changes.size() == 0) {
+            return null;
+        }
+
+        synchronized (sendLock) {
+            return sendChanges(userName, changes);
+        }
+    }
+
+    /**
+     * Send a user's changes in one request, falling back to one request per change if that fails.
+     * @param userName Name of a user within alfresco
+     * @param changes The user's changes
+     * @return The last failure, or null if every change was made
+     */
+    private AlfrescoException sendChanges(final String userName, final PendingChanges changes) {
+        try {
+            connector.updateGroupMembership(userName, changes.adds, changes.removes);
+            return null;
+        } catch (AlfrescoException e) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Combined group change failed for " + userName + ", making changes one at a time", e);
+            }
+        }
+
+        AlfrescoException failure = null;
+
+        for (String groupName : changes.removes) {
+            try {
+                connector.removeMemberFromGroupIfPresent(userName, groupName);
+            } catch (AlfrescoException e) {
+                failure = e;
+            }
+        }
+
+        for (String groupName : changes.adds) {
+            try {
+                connector.addMemberToGroup(userName, groupName);
+            } catch (AlfrescoException e) {
+                failure = e;
+            }
+        }
+
+        return failure;
+    }
+
+    /**
+     * The changes waiting to be sent for one user.
+     */
+    private static class PendingChanges {
+        /**
+         * Groups to add the user to.
+         */
+        private final Set<String> adds = new LinkedHashSet<String>();
+
+        /**
+         * Groups to remove the user from.
+         */
+        private final Set<String> removes = new LinkedHashSet<String>();
+
+        /**
+         * @param groupName A group to add the user to
+         */
+        void add(final String groupName) {
+            removes.remove(groupName);
+            adds.add(groupName);
+        }
+
+        /**
+         * @param groupName A group to remove the user from
+         */
+        void remove(final String groupName) {
+            // the user may have been a member before the addition, so the removal must still be sent
+            adds.remove(groupName);
+            removes.add(groupName);
+        }
+
+        /**
+         * @return The number of changes
+         */
+        int size() {
+            return adds.size() + removes.size();
+        }
+    }
+}
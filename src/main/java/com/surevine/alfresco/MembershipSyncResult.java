@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of synchronising the membership of a group or site with a desired state.
+ */
+public class MembershipSyncResult {
+
+    /**
+     * Users added as members.
+     */
+    private final List<String> added;
+
+    /**
+     * Users removed from membership.
+     */
+    private final List<String> removed;
+
+    /**
+     * Users who stayed members but whose role was changed.
+     */
+    private final List<String> changed;
+
+    /**
+     * Users for whom the required change failed.
+     */
+    private final Map<String, AlfrescoException> failures;
+
+    /**
+     * @param added Users added as members
+     * @param removed Users removed from membership
+     * @param changed Users whose role was changed
+     * @param failures Users for whom the required change failed
+     */
+    public MembershipSyncResult(final List<String> added, final List<String> removed,
+            final List<String> changed, final Map<String, AlfrescoException> failures) {
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.changed = Collections.unmodifiableList(changed);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return The users successfully added as members
+     */
+    public List<String> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return The users successfully removed from membership
+     */
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return The users whose role was successfully changed
+     */
+    public List<String> getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return The users for whom the required change failed, mapped to the reason
+     */
+    public Map<String, AlfrescoException> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return True if every required change was made
+     */
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * @return True if no changes were attempted
+     */
+    public boolean isUnchanged() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty() && failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "added=" + added.size() + ", removed=" + removed.size() + ", changed=" + changed.size()
+            + ", failed=" + failures.keySet();
+    }
+}
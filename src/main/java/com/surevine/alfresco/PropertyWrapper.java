@@ -88,7 +88,28 @@ public class PropertyWrapper implements IPropertyProvider {
 
         return value;
     }
-    
+
+    /**
+     * Get an optional integer property.
+     * @param key The property name
+     * @param defaultValue A default value to use if the property wasn't found
+     * @return The property value
+     * @throws PropertyException If the property exists but is not an integer
+     */
+    public int getIntProperty(final String key, final int defaultValue) throws PropertyException {
+        String value = getPropertyIfExists(key);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new PropertyException("Property " + key + " is not an integer: " + value, e);
+        }
+    }
+
     /**
      * Return all keys in the property file which match a regular expression.
      * @param regex Regular expression to filter the keys.
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Short lived cache of the sites each user is a member of.
+ *
+ * Usernames and site names are compared ignoring case, as Alfresco does. Entries expire after a fixed time so
+ * that changes made outside this connector are eventually seen.
+ *
+ * A fetched list of sites may already be out of date when it arrives, if a membership changed while it was
+ * being read. Every change therefore increments a counter, and a fetched list is only cached if nothing has
+ * changed since the fetch began (see {@link #getVersion()}).
+ */
+class SiteMembershipIndex {
+
+    /**
+     * How long entries remain valid, in milliseconds.
+     */
+    private final long ttlMillis;
+
+    /**
+     * Cached site memberships by lower case username.
+     */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * The number of changes made, guarded by this index.
+     */
+    private long version;
+
+    /**
+     * @param ttlMillis How long entries remain valid, in milliseconds. Zero or less disables the cache.
+     */
+    SiteMembershipIndex(final long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @param username The user to look up
+     * @return The (lower case) names of the user's sites, or null if they are not cached
+     */
+    Set<String> getSites(final String username) {
+        final String key = normalise(username);
+        final Entry entry = entries.get(key);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.isExpired()) {
+            entries.remove(key, entry);
+            return null;
+        }
+
+        return Collections.unmodifiableSet(entry.sites);
+    }
+
+    /**
+     * @return A value to pass to {@link #putSites} once the sites of a user have been fetched. It must be read
+     * before the fetch begins.
+     */
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Cache the complete list of sites of a user, replacing any cached entry, unless a membership has changed
+     * since the list was fetched.
+     * @param username The user
+     * @param sites The names of all of the user's sites
+     * @param fetchedAt The value of {@link #getVersion()} before the sites were fetched
+     */
+    synchronized void putSites(final String username, final Collection<String> sites, final long fetchedAt) {
+        if (ttlMillis <= 0 || fetchedAt != version) {
+            return;
+        }
+
+        final Entry entry = new Entry(System.currentTimeMillis() + ttlMillis);
+
+        for (String site : sites) {
+            entry.sites.add(normalise(site));
+        }
+
+        entries.put(normalise(username), entry);
+    }
+
+    /**
+     * Record that a user has joined a site. Users who are not cached are ignored.
+     * @param username The user
+     * @param site The site joined
+     */
+    synchronized void siteAdded(final String username, final String site) {
+        version++;
+
+        final Entry entry = entries.get(normalise(username));
+
+        if (entry != null) {
+            entry.sites.add(normalise(site));
+        }
+    }
+
+    /**
+     * Record that a user has left a site. Users who are not cached are ignored.
+     * @param username The user
+     * @param site The site left
+     */
+    synchronized void siteRemoved(final String username, final String site) {
+        version++;
+
+        final Entry entry = entries.get(normalise(username));
+
+        if (entry != null) {
+            entry.sites.remove(normalise(site));
+        }
+    }
+
+    /**
+     * Forget everything cached about a user.
+     * @param username The user
+     */
+    synchronized void invalidate(final String username) {
+        version++;
+        entries.remove(normalise(username));
+    }
+
+    /**
+     * Forget everything cached.
+     */
+    synchronized void clear() {
+        version++;
+        entries.clear();
+    }
+
+    /**
+     * @param name A site or user name
+     * @return The form of the name held in the cache
+     */
+    static String normalise(final String name) {
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * The sites of one user.
+     */
+    private static class Entry {
+
+        /**
+         * When the entry stops being valid.
+         */
+        private final long expires;
+
+        /**
+         * The (lower case) site names.
+         */
+        private final Set<String> sites = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        /**
+         * @param expires When the entry stops being valid
+         */
+        Entry(final long expires) {
+            this.expires = expires;
+        }
+
+        /**
+         * @return True if the entry is no longer valid
+         */
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expires;
+        }
+    }
+}
@@ -0,0 +1,502 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable, sorted set of usernames packed into a single character array.
+ *
+ * Large group and site memberships cost a few bytes per name rather than a hash entry and a string object each.
+ * Names are held in {@link String#compareTo(String)} order, so {@link #contains(Object)} is a binary search and
+ * {@link #union}, {@link #difference} and {@link #intersection} are linear merges.
+ */
+public final class UsernameSet extends AbstractSet<String> {
+
+    /**
+     * The set with no names.
+     */
+    public static final UsernameSet EMPTY = new UsernameSet(new char[0], new int[] {0});
+
+    /**
+     * The characters of every name, one after another.
+     */
+    private final char[] chars;
+
+    /**
+     * The start of each name in {@link #chars}, followed by the end of the last name.
+     */
+    private final int[] offsets;
+
+    /**
+     * Lazily calculated hash code, or zero if not yet known.
+     */
+    private int hash;
+
+    /**
+     * @param chars The characters of every name
+     * @param offsets The start of each name, followed by the end of the last
+     */
+    private UsernameSet(final char[] chars, final int[] offsets) {
+        this.chars = chars;
+        this.offsets = offsets;
+    }
+
+    /**
+     * @param names The names to include, in any order and possibly repeated. Nulls are ignored.
+     * @return A set of the names
+     */
+    public static UsernameSet copyOf(final Collection<String> names) {
+        if (names instanceof UsernameSet) {
+            return (UsernameSet) names;
+        }
+
+        final Builder builder = new Builder();
+
+        for (String name : names) {
+            builder.add(name);
+        }
+
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @param index The position of a name in sorted order
+     * @return The name
+     */
+    public String get(final int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+
+        return new String(chars, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+
+        final String name = (String) o;
+        int low = 0;
+        int high = size() - 1;
+
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = compare(mid, name);
+
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int next;
+
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return get(next++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("UsernameSet is immutable");
+            }
+        };
+    }
+
+    /**
+     * @param other Another collection of names
+     * @return The names in either this set or the other
+     */
+    public UsernameSet union(final Collection<String> other) {
+        final UsernameSet that = copyOf(other);
+
+        if (that.isEmpty()) {
+            return this;
+        }
+
+        if (isEmpty()) {
+            return that;
+        }
+
+        final Packer packer = new Packer(chars.length + that.chars.length, size() + that.size());
+        int i = 0;
+        int j = 0;
+
+        while (i < size() && j < that.size()) {
+            final int cmp = compare(i, that, j);
+
+            if (cmp < 0) {
+                packer.add(this, i++);
+            } else if (cmp > 0) {
+                packer.add(that, j++);
+            } else {
+                packer.add(this, i++);
+                j++;
+            }
+        }
+
+        while (i < size()) {
+            packer.add(this, i++);
+        }
+
+        while (j < that.size()) {
+            packer.add(that, j++);
+        }
+
+        return packer.build();
+    }
+
+    /**
+     * @param other Another collection of names
+     * @return The names in this set but not in the other
+     */
+    public UsernameSet difference(final Collection<String> other) {
+        final UsernameSet that = copyOf(other);
+
+        if (isEmpty() || that.isEmpty()) {
+            return this;
+        }
+
+        final Packer packer = new Packer(chars.length, size());
+        int i = 0;
+        int j = 0;
+
+        while (i < size() && j < that.size()) {
+            final int cmp = compare(i, that, j);
+
+            if (cmp < 0) {
+                packer.add(this, i++);
+            } else if (cmp > 0) {
+                j++;
+            } else {
+                i++;
+                j++;
+            }
+        }
+
+        while (i < size()) {
+            packer.add(this, i++);
+        }
+
+        return packer.build();
+    }
+
+    /**
+     * @param other Another collection of names
+     * @return The names in both this set and the other
+     */
+    public UsernameSet intersection(final Collection<String> other) {
+        final UsernameSet that = copyOf(other);
+
+        if (isEmpty() || that.isEmpty()) {
+            return EMPTY;
+        }
+
+        final Packer packer = new Packer(Math.min(chars.length, that.chars.length), Math.min(size(), that.size()));
+        int i = 0;
+        int j = 0;
+
+        while (i < size() && j < that.size()) {
+            final int cmp = compare(i, that, j);
+
+            if (cmp < 0) {
+                i++;
+            } else if (cmp > 0) {
+                j++;
+            } else {
+                packer.add(this, i++);
+                j++;
+            }
+        }
+
+        return packer.build();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o == this) {
+            return true;
+        }
+
+        if (o instanceof UsernameSet) {
+            final UsernameSet that = (UsernameSet) o;
+
+            // the packed form of a set of names is unique
+            return Arrays.equals(offsets, that.offsets) && Arrays.equals(chars, that.chars);
+        }
+
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+
+        if (h == 0) {
+            // the sum of the names' String hash codes, as required by Set
+            for (int i = 0; i < size(); i++) {
+                int nameHash = 0;
+
+                for (int c = offsets[i]; c < offsets[i + 1]; c++) {
+                    nameHash = 31 * nameHash + chars[c];
+                }
+
+                h += nameHash;
+            }
+
+            hash = h;
+        }
+
+        return h;
+    }
+
+    @Override
+    public boolean add(final String name) {
+        throw new UnsupportedOperationException("UsernameSet is immutable");
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        throw new UnsupportedOperationException("UsernameSet is immutable");
+    }
+
+    @Override
+    public boolean addAll(final Collection<? extends String> names) {
+        throw new UnsupportedOperationException("UsernameSet is immutable");
+    }
+
+    @Override
+    public boolean removeAll(final Collection<?> names) {
+        throw new UnsupportedOperationException("UsernameSet is immutable");
+    }
+
+    @Override
+    public boolean retainAll(final Collection<?> names) {
+        throw new UnsupportedOperationException("UsernameSet is immutable");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("UsernameSet is immutable");
+    }
+
+    /**
+     * Compare one of the names in this set with a string, in the same way as {@link String#compareTo(String)}.
+     * @param index The position of the name in this set
+     * @param name The string to compare with
+     * @return Negative, zero or positive as the name is less than, equal to or greater than the string
+     */
+    private int compare(final int index, final String name) {
+        final int start = offsets[index];
+        final int length = offsets[index + 1] - start;
+        final int common = Math.min(length, name.length());
+
+        for (int c = 0; c < common; c++) {
+            final int diff = chars[start + c] - name.charAt(c);
+
+            if (diff != 0) {
+                return diff;
+            }
+        }
+
+        return length - name.length();
+    }
+
+    /**
+     * Compare one of the names in this set with one in another, in the same way as
+     * {@link String#compareTo(String)}.
+     * @param index The position of the name in this set
+     * @param that The other set
+     * @param thatIndex The position of the name in the other set
+     * @return Negative, zero or positive as this name is less than, equal to or greater than the other
+     */
+    private int compare(final int index, final UsernameSet that, final int thatIndex) {
+        final int start = offsets[index];
+        final int length = offsets[index + 1] - start;
+        final int thatStart = that.offsets[thatIndex];
+        final int thatLength = that.offsets[thatIndex + 1] - thatStart;
+        final int common = Math.min(length, thatLength);
+
+        for (int c = 0; c < common; c++) {
+            final int diff = chars[start + c] - that.chars[thatStart + c];
+
+            if (diff != 0) {
+                return diff;
+            }
+        }
+
+        return length - thatLength;
+    }
+
+    /**
+     * Collects names in any order and builds a {@link UsernameSet} of them. Not thread safe.
+     */
+    public static final class Builder {
+
+        /**
+         * The names added so far.
+         */
+        private final List<String> names = new ArrayList<String>();
+
+        /**
+         * @param name A name to include. Nulls are ignored.
+         * @return This builder
+         */
+        public Builder add(final String name) {
+            if (name != null) {
+                names.add(name);
+            }
+
+            return this;
+        }
+
+        /**
+         * @return A set of the names added, sorted and without duplicates
+         */
+        public UsernameSet build() {
+            if (names.isEmpty()) {
+                return EMPTY;
+            }
+
+            final String[] sorted = names.toArray(new String[names.size()]);
+            Arrays.sort(sorted);
+
+            int length = 0;
+
+            for (String name : sorted) {
+                length += name.length();
+            }
+
+            final Packer packer = new Packer(length, sorted.length);
+            String previous = null;
+
+            for (String name : sorted) {
+                if (!name.equals(previous)) {
+                    packer.add(name);
+                    previous = name;
+                }
+            }
+
+            return packer.build();
+        }
+    }
+
+    /**
+     * Appends names, already in order and without duplicates, to a packed array.
+     */
+    private static final class Packer {
+
+        /**
+         * The characters of the names added so far.
+         */
+        private char[] chars;
+
+        /**
+         * The start of each name added so far, followed by the end of the last.
+         */
+        private int[] offsets;
+
+        /**
+         * The number of names added so far.
+         */
+        private int count;
+
+        /**
+         * @param maxChars The most characters which will be added
+         * @param maxNames The most names which will be added
+         */
+        Packer(final int maxChars, final int maxNames) {
+            chars = new char[maxChars];
+            offsets = new int[maxNames + 1];
+        }
+
+        /**
+         * @param name The next name
+         */
+        void add(final String name) {
+            final int start = offsets[count];
+            name.getChars(0, name.length(), chars, start);
+            offsets[++count] = start + name.length();
+        }
+
+        /**
+         * @param set A set holding the next name
+         * @param index The position of the name in the set
+         */
+        void add(final UsernameSet set, final int index) {
+            final int start = offsets[count];
+            final int length = set.offsets[index + 1] - set.offsets[index];
+            System.arraycopy(set.chars, set.offsets[index], chars, start, length);
+            offsets[++count] = start + length;
+        }
+
+        /**
+         * @return A set of the names added, trimmed to size
+         */
+        UsernameSet build() {
+            if (count == 0) {
+                return EMPTY;
+            }
+
+            final int length = offsets[count];
+
+            if (length != chars.length) {
+                chars = Arrays.copyOf(chars, length);
+            }
+
+            if (count + 1 != offsets.length) {
+                offsets = Arrays.copyOf(offsets, count + 1);
+            }
+
+            return new UsernameSet(chars, offsets);
+        }
+    }
+}
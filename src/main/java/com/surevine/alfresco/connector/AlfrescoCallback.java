@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import com.surevine.alfresco.AlfrescoException;
+
+/**
+ * Receives the outcome of an {@link AlfrescoFuture}.
+ * 
+ * @param <T>
+ *          the type of the result
+ */
+public interface AlfrescoCallback<T>
+{
+	/**
+	 * Called when the operation completed successfully.
+	 * 
+	 * @param result
+	 *          the result of the operation
+	 */
+	void onSuccess(T result);
+
+	/**
+	 * Called when the operation failed or was cancelled.
+	 * 
+	 * @param e
+	 *          the reason for the failure
+	 */
+	void onFailure(AlfrescoException e);
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import com.surevine.alfresco.AlfrescoException;
+
+/**
+ * Converts the result of one {@link AlfrescoFuture} into the result of
+ * another.
+ * 
+ * @param <F>
+ *          the input type
+ * @param <T>
+ *          the output type
+ */
+public interface AlfrescoFunction<F, T>
+{
+	/**
+	 * @param input
+	 *          the result of the previous operation
+	 * @return The transformed result
+	 * @throws AlfrescoException
+	 *           If the transformation fails
+	 */
+	T apply(F input) throws AlfrescoException;
+}
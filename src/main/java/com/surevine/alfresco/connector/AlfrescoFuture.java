@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import java.util.concurrent.Future;
+
+import com.surevine.alfresco.AlfrescoException;
+
+/**
+ * The pending result of an asynchronous call to Alfresco.
+ * 
+ * @param <T>
+ *          the type of the result
+ */
+public interface AlfrescoFuture<T> extends Future<T>
+{
+	/**
+	 * Wait for the operation to complete and return its result.
+	 * 
+	 * @return The result of the operation
+	 * @throws AlfrescoException
+	 *           If the operation failed, was cancelled or the wait was
+	 *           interrupted
+	 */
+	T getResult() throws AlfrescoException;
+
+	/**
+	 * Register a callback to be run when the operation completes. If it has
+	 * already completed the callback is run immediately on the calling thread,
+	 * otherwise it is run on the thread which completes the operation.
+	 * 
+	 * @param callback
+	 *          the callback to run
+	 */
+	void addCallback(AlfrescoCallback<? super T> callback);
+
+	/**
+	 * Chain a further step onto this operation.
+	 * 
+	 * @param function
+	 *          the function to apply to the result of this operation
+	 * @return A future holding the result of the function, or the failure of
+	 *         this operation
+	 */
+	<R> AlfrescoFuture<R> transform(AlfrescoFunction<? super T, ? extends R> function);
+}
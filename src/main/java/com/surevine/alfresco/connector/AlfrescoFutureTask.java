@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+
+import com.surevine.alfresco.AlfrescoException;
+
+/**
+ * A {@link FutureTask} implementation of {@link AlfrescoFuture}.
+ * 
+ * @param <T>
+ *          the type of the result
+ */
+public class AlfrescoFutureTask<T> extends FutureTask<T> implements AlfrescoFuture<T>
+{
+	private static final Logger LOG = Logger.getLogger(AlfrescoFutureTask.class);
+
+	/**
+	 * Callbacks waiting for completion, or null once they have been run.
+	 */
+	private List<AlfrescoCallback<? super T>> callbacks = new ArrayList<AlfrescoCallback<? super T>>();
+
+	/**
+	 * @param callable
+	 *          the operation to run
+	 */
+	public AlfrescoFutureTask(final Callable<T> callable)
+	{
+		super(callable);
+	}
+
+	/**
+	 * Create a task which is never run, but is completed by another task.
+	 */
+	private AlfrescoFutureTask()
+	{
+		super(new Callable<T>() {
+			public T call()
+			{
+				throw new IllegalStateException("Dependent task cannot be run directly");
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public T getResult() throws AlfrescoException
+	{
+		try {
+			return get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AlfrescoException("Interrupted waiting for Alfresco", e);
+		} catch (final ExecutionException e) {
+			throw toAlfrescoException(e.getCause());
+		} catch (final CancellationException e) {
+			throw new AlfrescoException("Alfresco operation was cancelled", e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void addCallback(final AlfrescoCallback<? super T> callback)
+	{
+		synchronized (this) {
+			if (callbacks != null) {
+				callbacks.add(callback);
+				return;
+			}
+		}
+
+		runCallback(callback);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public <R> AlfrescoFuture<R> transform(final AlfrescoFunction<? super T, ? extends R> function)
+	{
+		final AlfrescoFutureTask<R> result = new AlfrescoFutureTask<R>();
+
+		addCallback(new AlfrescoCallback<T>() {
+			public void onSuccess(final T value)
+			{
+				try {
+					result.set(function.apply(value));
+				} catch (final AlfrescoException e) {
+					result.setException(e);
+				} catch (final RuntimeException e) {
+					result.setException(e);
+				}
+			}
+
+			public void onFailure(final AlfrescoException e)
+			{
+				result.setException(e);
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Complete the task with a failure without running it.
+	 * 
+	 * @param e
+	 *          the reason the task failed
+	 */
+	void fail(final AlfrescoException e)
+	{
+		setException(e);
+	}
+
+	/**
+	 * Run the registered callbacks once the task is complete.
+	 */
+	@Override
+	protected void done()
+	{
+		final List<AlfrescoCallback<? super T>> toRun;
+
+		synchronized (this) {
+			toRun = callbacks;
+			callbacks = null;
+		}
+
+		for (final AlfrescoCallback<? super T> callback : toRun) {
+			runCallback(callback);
+		}
+	}
+
+	/**
+	 * Run a single callback against the completed task. Exceptions thrown by the
+	 * callback are logged rather than propagated.
+	 * 
+	 * @param callback
+	 *          the callback to run
+	 */
+	private void runCallback(final AlfrescoCallback<? super T> callback)
+	{
+		T value;
+
+		try {
+			value = getResult();
+		} catch (final AlfrescoException e) {
+			try {
+				callback.onFailure(e);
+			} catch (final RuntimeException eCallback) {
+				LOG.error("Callback failed", eCallback);
+			}
+			return;
+		}
+
+		try {
+			callback.onSuccess(value);
+		} catch (final RuntimeException eCallback) {
+			LOG.error("Callback failed", eCallback);
+		}
+	}
+
+	/**
+	 * Map the cause of a failed task onto an {@link AlfrescoException}.
+	 * 
+	 * @param cause
+	 *          the exception thrown by the task
+	 * @return The exception to report to the caller
+	 */
+	static AlfrescoException toAlfrescoException(final Throwable cause)
+	{
+		if (cause instanceof AlfrescoException) {
+			return (AlfrescoException) cause;
+		}
+
+		return new AlfrescoException("Alfresco operation failed", cause);
+	}
+}
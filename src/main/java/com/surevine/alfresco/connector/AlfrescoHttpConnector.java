@@ -26,8 +26,8 @@ import java.net.URLEncoder;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
-import org.apache.http.entity.StringEntity;
 import org.apache.log4j.Logger;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -36,6 +36,9 @@ import com.surevine.alfresco.AlfrescoException;
 import com.surevine.alfresco.Authenticator;
 import com.surevine.alfresco.PropertyException;
 import com.surevine.alfresco.PropertyWrapper;
+import com.surevine.alfresco.connector.model.AlfrescoHttpResponse;
+import com.surevine.alfresco.connector.model.JsonElementVisitor;
+import com.surevine.alfresco.connector.model.RawJsonVisitor;
 
 /**
  * Connects to alfresco using the RESTful http services.
@@ -57,6 +60,11 @@ public class AlfrescoHttpConnector extends BaseAlfrescoHttpConnector implements
 	 */
 	protected final String alfrescoShareServiceBaseUrl;
 
+	/**
+	 * Cache used to revalidate GET responses, or null if they are not cached.
+	 */
+	private volatile RevalidationCache revalidationCache;
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -71,6 +79,12 @@ public class AlfrescoHttpConnector extends BaseAlfrescoHttpConnector implements
 			alfrescoServiceBaseUrl = properties.getProperty("alfresco.url.service");
 			alfrescoShareServiceBaseUrl = properties
 					.getProperty("alfresco.share.url.service");
+
+			final int cacheEntries = properties.getIntProperty("alfresco.cache.revalidation.maxEntries", 0);
+
+			if (cacheEntries > 0) {
+				revalidationCache = new RevalidationCache(cacheEntries);
+			}
 		} catch (final PropertyException e) {
 			throw new AlfrescoException("Cannot find a required property", e);
 		}
@@ -89,7 +103,7 @@ public class AlfrescoHttpConnector extends BaseAlfrescoHttpConnector implements
 	 */
 	public JSONObject doGet(final String service) throws AlfrescoException
 	{
-		return doHttpGet(createAlfrescoServiceUrl(service, null)).asJsonObject();
+		return getJsonObject(createAlfrescoServiceUrl(service, null));
 	}
 
 	/**
@@ -98,7 +112,7 @@ public class AlfrescoHttpConnector extends BaseAlfrescoHttpConnector implements
 	public JSONObject doGet(final String service, final Map<String, String> parameters)
 			throws AlfrescoException
 	{
-		return doHttpGet(createAlfrescoServiceUrl(service, parameters)).asJsonObject();
+		return getJsonObject(createAlfrescoServiceUrl(service, parameters));
 	}
 
 	/**
@@ -106,7 +120,7 @@ public class AlfrescoHttpConnector extends BaseAlfrescoHttpConnector implements
 	 */
 	public JSONArray doGetArray(final String service) throws AlfrescoException
 	{
-		return doHttpGetArray(createAlfrescoServiceUrl(service, null)).asJsonArray();
+		return getJsonArray(createAlfrescoServiceUrl(service, null));
 	}
 
 	/**
@@ -115,7 +129,25 @@ public class AlfrescoHttpConnector extends BaseAlfrescoHttpConnector implements
 	public JSONArray doGetArray(final String service, final Map<String, String> parameters)
 			throws AlfrescoException
 	{
-		return doHttpGetArray(createAlfrescoServiceUrl(service, parameters)).asJsonArray();
+		return getJsonArray(createAlfrescoServiceUrl(service, parameters));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void doGetEach(final String service, final Map<String, String> parameters,
+			final String arrayKey, final JsonElementVisitor visitor) throws AlfrescoException
+	{
+		doHttpGet(createAlfrescoServiceUrl(service, parameters)).streamJsonArray(arrayKey, visitor);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void doGetEachRaw(final String service, final Map<String, String> parameters,
+			final String arrayKey, final RawJsonVisitor visitor) throws AlfrescoException
+	{
+		doHttpGet(createAlfrescoServiceUrl(service, parameters)).streamRawJsonArray(arrayKey, visitor);
 	}
 
 	/**
@@ -140,7 +172,7 @@ public class AlfrescoHttpConnector extends BaseAlfrescoHttpConnector implements
 	 */
 	public JSONObject doShareGet(final String service) throws AlfrescoException
 	{
-		return doHttpGet(createShareServiceUrl(service, null)).asJsonObject();
+		return getJsonObject(createShareServiceUrl(service, null));
 	}
 
 	/**
@@ -149,7 +181,7 @@ public class AlfrescoHttpConnector extends BaseAlfrescoHttpConnector implements
 	public JSONObject doShareGet(final String service, final Map<String, String> parameters)
 			throws AlfrescoException
 	{
-		return doHttpGet(createShareServiceUrl(service, parameters)).asJsonObject();
+		return getJsonObject(createShareServiceUrl(service, parameters));
 	}
 
 	/**
@@ -157,7 +189,7 @@ public class AlfrescoHttpConnector extends BaseAlfrescoHttpConnector implements
 	 */
 	public JSONArray doShareGetArray(final String service) throws AlfrescoException
 	{
-		return doHttpGetArray(createShareServiceUrl(service, null)).asJsonArray();
+		return getJsonArray(createShareServiceUrl(service, null));
 	}
 
 	/**
@@ -166,7 +198,16 @@ public class AlfrescoHttpConnector extends BaseAlfrescoHttpConnector implements
 	public JSONArray doShareGetArray(final String service,
 			final Map<String, String> parameters) throws AlfrescoException
 	{
-		return doHttpGetArray(createShareServiceUrl(service, parameters)).asJsonArray();
+		return getJsonArray(createShareServiceUrl(service, parameters));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void doShareGetEach(final String service, final Map<String, String> parameters,
+			final String arrayKey, final JsonElementVisitor visitor) throws AlfrescoException
+	{
+		doHttpGet(createShareServiceUrl(service, parameters)).streamJsonArray(arrayKey, visitor);
 	}
 
 	/**
@@ -178,6 +219,78 @@ public class AlfrescoHttpConnector extends BaseAlfrescoHttpConnector implements
 		return doHttpPost(createShareServiceUrl(service, null), json);
 	}	
 	
+	/**
+	 * Cache GET responses which carry an ETag or Last-Modified header, and
+	 * revalidate them with conditional requests. Every caller gets its own
+	 * copy of a cached response.
+	 * 
+	 * @param cache the cache to use, or null to stop caching
+	 */
+	public void setRevalidationCache(final RevalidationCache cache) {
+		revalidationCache = cache;
+	}
+
+	/**
+	 * @return the cache used to revalidate GET responses, or null if they are not cached.
+	 */
+	public RevalidationCache getRevalidationCache() {
+		return revalidationCache;
+	}
+
+	/**
+	 * GET a JSON object, revalidating any cached copy.
+	 * @param url the url to visit.
+	 * @return the JSON object.
+	 * @throws AlfrescoException on any HTTP error.
+	 */
+	private JSONObject getJsonObject(final String url) throws AlfrescoException {
+		final RevalidationCache cache = revalidationCache;
+
+		if (cache == null) {
+			return doHttpGet(url).asJsonObject();
+		}
+
+		final RevalidationCache.Entry cached = cache.lookup(url, JSONObject.class);
+		final AlfrescoHttpResponse response = doHttpGet(url, cache.getConditionalHeaders(cached));
+
+		if (cached != null && response.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+			response.release();
+			return (JSONObject) cache.hit(cached);
+		}
+
+		final JSONObject result = response.asJsonObject();
+		cache.store(url, response.getHttpResponse(), result);
+
+		return result;
+	}
+
+	/**
+	 * GET a JSON array, revalidating any cached copy.
+	 * @param url the url to visit.
+	 * @return the JSON array.
+	 * @throws AlfrescoException on any HTTP error.
+	 */
+	private JSONArray getJsonArray(final String url) throws AlfrescoException {
+		final RevalidationCache cache = revalidationCache;
+
+		if (cache == null) {
+			return doHttpGetArray(url).asJsonArray();
+		}
+
+		final RevalidationCache.Entry cached = cache.lookup(url, JSONArray.class);
+		final AlfrescoHttpResponse response = doHttpGet(url, cache.getConditionalHeaders(cached));
+
+		if (cached != null && response.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+			response.release();
+			return (JSONArray) cache.hit(cached);
+		}
+
+		final JSONArray result = response.asJsonArray();
+		cache.store(url, response.getHttpResponse(), result);
+
+		return result;
+	}
+	
 	/**
 	 * Creates the full url to access the given alfresco service
 	 * @param service the service to access.
@@ -244,14 +357,6 @@ public class AlfrescoHttpConnector extends BaseAlfrescoHttpConnector implements
 	private JSONObject doHttpPost(final String url, final JSONObject json)
 			throws AlfrescoException
 	{
-		StringEntity jsonEnt;
-
-		try {
-			jsonEnt = new StringEntity(json.toString());
-		} catch (final UnsupportedEncodingException e) {
-			throw new AlfrescoException("Failed on HTTP POST", e);
-		}
-
-		return doHttpPost(url, jsonEnt).asJsonObject();
+		return doHttpPost(url, createJsonEntity(json)).asJsonObject();
 	}
 }
@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.surevine.alfresco.AlfrescoException;
+
+/**
+ * Runs the calls of a blocking {@link IAlfrescoConnector} on a bounded pool of
+ * threads.
+ * 
+ * The wrapped connector must be safe to use from several threads at once, for
+ * example an {@link AlfrescoHttpConnector} built on a client from
+ * {@link HttpClientFactory#createPooledHttpClient(int, int)}. When both the
+ * threads and the queue are full, the submitting thread runs the call itself,
+ * which slows producers down to the rate Alfresco can sustain. Calls made after
+ * {@link #shutdown()}, or rejected by a supplied executor, return a future which
+ * has already failed.
+ */
+public class AsyncAlfrescoConnector implements IAsyncAlfrescoConnector
+{
+	/**
+	 * How long idle worker threads are kept alive for.
+	 */
+	private static final long KEEP_ALIVE_SECONDS = 60L;
+
+	/**
+	 * The blocking connector which does the work.
+	 */
+	private final IAlfrescoConnector connector;
+
+	/**
+	 * The executor calls are run on.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * @param connector
+	 *          the thread safe connector to wrap
+	 * @param threads
+	 *          the maximum number of calls to run at once
+	 * @param queueCapacity
+	 *          the maximum number of calls waiting for a thread
+	 */
+	public AsyncAlfrescoConnector(final IAlfrescoConnector connector,
+			final int threads, final int queueCapacity)
+	{
+		this(connector, createExecutor(threads, queueCapacity));
+	}
+
+	/**
+	 * @param connector
+	 *          the thread safe connector to wrap
+	 * @param executor
+	 *          the executor to run calls on, which should be bounded
+	 */
+	public AsyncAlfrescoConnector(final IAlfrescoConnector connector,
+			final ExecutorService executor)
+	{
+		this.connector = connector;
+		this.executor = executor;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public AlfrescoFuture<JSONObject> doGet(final String service)
+	{
+		return submit(new Callable<JSONObject>() {
+			public JSONObject call() throws AlfrescoException
+			{
+				return connector.doGet(service);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public AlfrescoFuture<JSONObject> doGet(final String service,
+			final Map<String, String> parameters)
+	{
+		return submit(new Callable<JSONObject>() {
+			public JSONObject call() throws AlfrescoException
+			{
+				return connector.doGet(service, parameters);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public AlfrescoFuture<JSONArray> doGetArray(final String service)
+	{
+		return submit(new Callable<JSONArray>() {
+			public JSONArray call() throws AlfrescoException
+			{
+				return connector.doGetArray(service);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public AlfrescoFuture<JSONArray> doGetArray(final String service,
+			final Map<String, String> parameters)
+	{
+		return submit(new Callable<JSONArray>() {
+			public JSONArray call() throws AlfrescoException
+			{
+				return connector.doGetArray(service, parameters);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public AlfrescoFuture<JSONObject> doPost(final String service, final JSONObject json)
+	{
+		return submit(new Callable<JSONObject>() {
+			public JSONObject call() throws AlfrescoException
+			{
+				return connector.doPost(service, json);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public AlfrescoFuture<JSONObject> doDelete(final String service)
+	{
+		return submit(new Callable<JSONObject>() {
+			public JSONObject call() throws AlfrescoException
+			{
+				return connector.doDelete(service);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public AlfrescoFuture<JSONObject> doShareGet(final String service)
+	{
+		return submit(new Callable<JSONObject>() {
+			public JSONObject call() throws AlfrescoException
+			{
+				return connector.doShareGet(service);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public AlfrescoFuture<JSONObject> doShareGet(final String service,
+			final Map<String, String> parameters)
+	{
+		return submit(new Callable<JSONObject>() {
+			public JSONObject call() throws AlfrescoException
+			{
+				return connector.doShareGet(service, parameters);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public AlfrescoFuture<JSONArray> doShareGetArray(final String service)
+	{
+		return submit(new Callable<JSONArray>() {
+			public JSONArray call() throws AlfrescoException
+			{
+				return connector.doShareGetArray(service);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public AlfrescoFuture<JSONArray> doShareGetArray(final String service,
+			final Map<String, String> parameters)
+	{
+		return submit(new Callable<JSONArray>() {
+			public JSONArray call() throws AlfrescoException
+			{
+				return connector.doShareGetArray(service, parameters);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public AlfrescoFuture<JSONObject> doSharePost(final String service,
+			final JSONObject json)
+	{
+		return submit(new Callable<JSONObject>() {
+			public JSONObject call() throws AlfrescoException
+			{
+				return connector.doSharePost(service, json);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public AlfrescoFuture<JSONObject> doShareDelete(final String service)
+	{
+		return submit(new Callable<JSONObject>() {
+			public JSONObject call() throws AlfrescoException
+			{
+				return connector.doShareDelete(service);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void shutdown()
+	{
+		executor.shutdown();
+	}
+
+	/**
+	 * Wrap a call in a future and hand it to the executor.
+	 * 
+	 * @param call
+	 *          the call to make
+	 * @return The future result of the call
+	 */
+	private <T> AlfrescoFuture<T> submit(final Callable<T> call)
+	{
+		final AlfrescoFutureTask<T> task = new AlfrescoFutureTask<T>(call);
+
+		try {
+			executor.execute(task);
+		} catch (final RejectedExecutionException e) {
+			task.fail(new AlfrescoException(executor.isShutdown() ? "Connector has been shut down"
+					: "Alfresco call rejected", e));
+		}
+
+		return task;
+	}
+
+	/**
+	 * Create a fixed size executor with a bounded queue.
+	 * 
+	 * @param threads
+	 *          the number of worker threads
+	 * @param queueCapacity
+	 *          the maximum number of queued calls
+	 * @return The executor
+	 */
+	private static ExecutorService createExecutor(final int threads,
+			final int queueCapacity)
+	{
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+				threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity),
+				new WorkerThreadFactory(), new CallerRunsUntilShutdownPolicy());
+		executor.allowCoreThreadTimeOut(true);
+
+		return executor;
+	}
+
+	/**
+	 * Runs calls the executor has no room for on the submitting thread, but
+	 * rejects them once the executor has been shut down, where
+	 * {@link ThreadPoolExecutor.CallerRunsPolicy} would silently drop them.
+	 */
+	private static class CallerRunsUntilShutdownPolicy extends ThreadPoolExecutor.CallerRunsPolicy
+	{
+		@Override
+		public void rejectedExecution(final Runnable task, final ThreadPoolExecutor executor)
+		{
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("Executor has been shut down");
+			}
+
+			super.rejectedExecution(task, executor);
+		}
+	}
+
+	/**
+	 * Creates named daemon threads, so an unused connector does not keep the
+	 * JVM alive.
+	 */
+	private static class WorkerThreadFactory implements ThreadFactory
+	{
+		private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+		private final String prefix = "alfresco-async-" + POOL_NUMBER.incrementAndGet() + "-";
+
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		public Thread newThread(final Runnable runnable)
+		{
+			final Thread thread = new Thread(runnable, prefix + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+}
@@ -21,28 +21,36 @@
 */
 package com.surevine.alfresco.connector;
 
-import java.io.IOException;
 import java.util.Map;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
 import org.apache.http.ParseException;
-import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.entity.mime.content.ContentBody;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
+import org.json.JSONException;
 
 import com.surevine.alfresco.AlfrescoException;
 import com.surevine.alfresco.Authenticator;
 import com.surevine.alfresco.CasAuthenticator;
+import com.surevine.alfresco.PropertyException;
 import com.surevine.alfresco.PropertyWrapper;
+import com.surevine.alfresco.connector.json.JsonCodec;
+import com.surevine.alfresco.connector.json.JsonCodecs;
 import com.surevine.alfresco.connector.model.AlfrescoHttpResponse;
+import com.surevine.alfresco.limit.RequestThrottle;
+import com.surevine.alfresco.metrics.ConnectorMetrics;
 
 
 /**
@@ -64,6 +72,44 @@ public abstract class BaseAlfrescoHttpConnector {
 	 */
 	private final HttpClient client;
 
+	/**
+	 * The mechanism used to authenticate the client, kept for re-authenticating
+	 * when the session expires.
+	 */
+	private final Authenticator authenticator;
+
+	/**
+	 * Recognises responses showing that the session has expired.
+	 */
+	private final SessionExpiryDetector expiryDetector;
+
+	/**
+	 * Guards re-authentication, so that only one thread logs in again however
+	 * many see the session expire.
+	 */
+	private final Object authLock = new Object();
+
+	/**
+	 * Incremented each time the client is re-authenticated.
+	 */
+	private volatile long authGeneration;
+
+	/**
+	 * Size in characters above which JSON request bodies are compressed, or -1
+	 * to never compress them.
+	 */
+	private final int compressionThreshold;
+
+	/**
+	 * Retries, throttles, measures and sends each request.
+	 */
+	private final RequestPipeline pipeline;
+
+	/**
+	 * Decodes and encodes JSON bodies.
+	 */
+	private final JsonCodec codec;
+
 	/**
 	 * @param properties
 	 *          Contains configuration for the Alfresco server to connect to
@@ -80,6 +126,26 @@ public abstract class BaseAlfrescoHttpConnector {
 	{
 		// set the HTTP client
 		client = httpClient;
+		authenticator = auth;
+		expiryDetector = new SessionExpiryDetector(properties.getProperty("cas.url.login", null));
+
+		try {
+			compressionThreshold = properties.getIntProperty("alfresco.http.compressRequestsOver", -1);
+		} catch (final PropertyException e) {
+			throw new AlfrescoException("Invalid request compression configuration", e);
+		}
+
+		try {
+			pipeline = RequestPipeline.create(properties, client, getClass());
+		} catch (final PropertyException e) {
+			throw new AlfrescoException("Invalid request pipeline configuration", e);
+		}
+
+		try {
+			codec = JsonCodecs.create(properties);
+		} catch (final PropertyException e) {
+			throw new AlfrescoException("Invalid JSON codec configuration", e);
+		}
 
 		// login
 		if (!auth.authenticate(client)) {
@@ -87,6 +153,46 @@ public abstract class BaseAlfrescoHttpConnector {
 		}
 	}
 	
+	/**
+	 * @return The pool backing this connector's HTTP client, or null if the
+	 *         client does not use a {@link PooledConnectionManager}
+	 */
+	public PooledConnectionManager getConnectionPool()
+	{
+		final ClientConnectionManager manager = client.getConnectionManager();
+
+		if (manager instanceof PooledConnectionManager) {
+			return (PooledConnectionManager) manager;
+		}
+
+		return null;
+	}
+	
+	/**
+	 * @return The latency and traffic of each endpoint used by this connector
+	 */
+	public ConnectorMetrics getMetrics()
+	{
+		return pipeline.getMetrics();
+	}
+	
+	/**
+	 * @return The throttle holding requests back when Alfresco is struggling
+	 */
+	public RequestThrottle getThrottle()
+	{
+		return pipeline.getThrottle();
+	}
+
+	/**
+	 * Release what this connector registered outside itself: its metrics are
+	 * removed from JMX. The HTTP client is left open, as it may be shared.
+	 */
+	public void close()
+	{
+		pipeline.getMetrics().unpublish();
+	}
+	
 	/**
 	 * Visit a URL using an HTTP GET and parse out a JSON object from the response.
 	 * 
@@ -103,6 +209,29 @@ public abstract class BaseAlfrescoHttpConnector {
 		return fetch(request);
 	}
 	
+	/**
+	 * Visit a URL using an HTTP GET with extra request headers.
+	 * 
+	 * @param url
+	 *          URL to visit
+	 * @param headers
+	 *          Headers to add to the request, such as conditional headers
+	 * @return The response
+	 * @throws AlfrescoException
+	 *           On any HTTP error
+	 */
+	protected AlfrescoHttpResponse doHttpGet(final String url, final Header[] headers)
+			throws AlfrescoException
+	{
+		final HttpGet request = new HttpGet(url);
+
+		for (final Header header : headers) {
+			request.addHeader(header);
+		}
+
+		return fetch(request);
+	}
+	
 	/**
 	 * Visit a URL using an HTTP GET and parse out a JSON array from the response.
 	 * 
@@ -137,6 +266,26 @@ public abstract class BaseAlfrescoHttpConnector {
 		return fetch(request);
 	}
 
+	/**
+	 * Create the body of a JSON request with the configured {@link JsonCodec},
+	 * compressed if it is larger than
+	 * <code>alfresco.http.compressRequestsOver</code> bytes.
+	 * 
+	 * @param json
+	 *          The JSON to send, typically a JSONObject or JSONArray
+	 * @return The request body
+	 * @throws AlfrescoException
+	 *           If the body cannot be encoded
+	 */
+	protected HttpEntity createJsonEntity(final Object json) throws AlfrescoException
+	{
+		try {
+			return RequestEntities.createJsonEntity(json, codec, compressionThreshold);
+		} catch (final JSONException e) {
+			throw new AlfrescoException("Failed to encode HTTP request", e);
+		}
+	}
+
 	/**
 	 * POST name value pairs to a URL using JSON encoding and parse out a JSON
 	 * object from the response.
@@ -149,13 +298,13 @@ public abstract class BaseAlfrescoHttpConnector {
 	 * @throws AlfrescoException
 	 *           On any HTTP error
 	 */
-	protected AlfrescoHttpResponse doHttpPost(final String url, final StringEntity jsonEnt)
+	protected AlfrescoHttpResponse doHttpPost(final String url, final HttpEntity jsonEnt)
 			throws AlfrescoException
 	{
 		final HttpPost request = new HttpPost(url);
 		request.setEntity(jsonEnt);
 		request.setHeader("Accept", "application/json");
-		request.setHeader("Content-type", "application/json");
+		request.setHeader("Content-type", RequestEntities.getJsonContentType(jsonEnt));
 
 		return fetch(request);
 	}
@@ -190,17 +339,89 @@ public abstract class BaseAlfrescoHttpConnector {
 	/**
 	 * This should be the only place our connectors exercise an {@link HttpUriRequest}.
 	 * 
+	 * If the response shows the session has expired the client is
+	 * re-authenticated, and idempotent requests are then sent again.
+	 * 
 	 * @param request The URI we want to retrieve.
 	 * @return A wrapped HttpResponse allowing us to request Strings, JSON Objects, Arrays, etc.
 	 * @throws AlfrescoException On error.
 	 */
 	private AlfrescoHttpResponse fetch(final HttpUriRequest request) throws AlfrescoException {
-		try {
-			return new AlfrescoHttpResponse(client.execute(request));
-		} catch (final ClientProtocolException e) {
-			throw new AlfrescoException("Failed on HTTP " + request.getMethod(), e);
-		} catch (final IOException e) {
-			throw new AlfrescoException("Failed on HTTP " + request.getMethod(), e);
+		final long generation = authGeneration;
+
+		HttpContext context = new BasicHttpContext();
+		HttpResponse response = execute(request, context);
+
+		if (expiryDetector.isExpired(response, context)) {
+			new AlfrescoHttpResponse(response).release();
+
+			reauthenticate(generation);
+
+			if (!isIdempotent(request)) {
+				throw new AlfrescoException("Alfresco session expired during HTTP "
+						+ request.getMethod() + ", which has not been repeated");
+			}
+
+			context = new BasicHttpContext();
+			response = execute(request, context);
+
+			if (expiryDetector.isExpired(response, context)) {
+				new AlfrescoHttpResponse(response).release();
+
+				throw new AlfrescoException("Alfresco session expired again after re-authenticating");
+			}
 		}
+
+		return new AlfrescoHttpResponse(response, codec);
+	}
+
+	/**
+	 * Send a request through the {@link RequestPipeline}.
+	 * 
+	 * @param request The request to send.
+	 * @param context The context to send the request in.
+	 * @return The response.
+	 * @throws AlfrescoException On error.
+	 */
+	private HttpResponse execute(final HttpUriRequest request, final HttpContext context)
+			throws AlfrescoException {
+		return pipeline.execute(request, context);
+	}
+
+	/**
+	 * Log in again after the session has expired. If several threads find the
+	 * session has expired at once, only the first logs in and the others wait
+	 * for it to finish.
+	 * 
+	 * @param observedGeneration The value of {@link #authGeneration} when the
+	 *          failed request was sent.
+	 * @throws AlfrescoException If authentication fails.
+	 */
+	private void reauthenticate(final long observedGeneration) throws AlfrescoException {
+		synchronized (authLock) {
+			if (authGeneration != observedGeneration) {
+				// another thread has already logged in since our request was sent
+				return;
+			}
+
+			LOG.info("Alfresco session has expired, authenticating again");
+
+			if (!authenticator.authenticate(client)) {
+				throw new AlfrescoException("Cannot log back into Alfresco");
+			}
+
+			authGeneration++;
+		}
+	}
+
+	/**
+	 * @param request The request.
+	 * @return True if the request can safely be sent more than once.
+	 */
+	private static boolean isIdempotent(final HttpUriRequest request) {
+		final String method = request.getMethod();
+
+		return "GET".equals(method) || "HEAD".equals(method)
+				|| "PUT".equals(method) || "DELETE".equals(method);
 	}
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * Compresses a request body with gzip as it is written.
+ */
+public class GzipCompressingEntity extends HttpEntityWrapper {
+
+	/**
+	 * The content encoding header sent with compressed bodies.
+	 */
+	private static final Header CONTENT_ENCODING = new BasicHeader("Content-Encoding", "gzip");
+
+	/**
+	 * @param entity
+	 *          the uncompressed body
+	 */
+	public GzipCompressingEntity(final HttpEntity entity)
+	{
+		super(entity);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Header getContentEncoding()
+	{
+		return CONTENT_ENCODING;
+	}
+
+	/**
+	 * The compressed length is not known until the body has been written.
+	 * 
+	 * @return -1
+	 */
+	@Override
+	public long getContentLength()
+	{
+		return -1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isChunked()
+	{
+		return true;
+	}
+
+	/**
+	 * Compress the body into memory, for wrappers which read the content rather
+	 * than writing it. Request bodies are already held in memory, so this at
+	 * most doubles what is held.
+	 * 
+	 * @return A stream of the compressed body
+	 */
+	@Override
+	public InputStream getContent() throws IOException
+	{
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+		writeTo(compressed);
+
+		return new ByteArrayInputStream(compressed.toByteArray());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void writeTo(final OutputStream outstream) throws IOException
+	{
+		final GZIPOutputStream gzip = new GZIPOutputStream(outstream);
+
+		wrappedEntity.writeTo(gzip);
+		gzip.finish();
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+
+import com.surevine.alfresco.AlfrescoException;
+import com.surevine.alfresco.PropertyException;
+import com.surevine.alfresco.PropertyWrapper;
+import com.surevine.alfresco.metrics.ResponseWireMetering;
+
+/**
+ * Creates the {@link DefaultHttpClient} instances used to talk to Alfresco.
+ * 
+ * By default a client with a single connection is returned, which must only be
+ * used from one thread at a time. Setting <code>alfresco.http.pool.enabled</code>
+ * to <code>true</code> returns a client backed by a
+ * {@link PooledConnectionManager} instead, sized by
+ * <code>alfresco.http.pool.maxTotal</code> and
+ * <code>alfresco.http.pool.maxPerRoute</code>.
+ * 
+ * Clients ask for gzip or deflate compressed responses and decompress them
+ * before they are parsed, unless <code>alfresco.http.compression</code> is
+ * <code>false</code>. Response bytes are metered before they are decompressed,
+ * so the metrics show the traffic on the wire.
+ * 
+ * When the {@link RetryPolicy} allows retries the client's own retry handler
+ * is turned off, so that a failure is only repeated by the
+ * {@link RequestPipeline}, within its limits on attempts and time.
+ */
+public final class HttpClientFactory {
+
+	/**
+	 * Default maximum number of pooled connections across all routes.
+	 */
+	private static final int DEFAULT_MAX_TOTAL = 20;
+
+	/**
+	 * Default maximum number of pooled connections to a single route.
+	 */
+	private static final int DEFAULT_MAX_PER_ROUTE = 10;
+
+	/**
+	 * Standard HTTP port.
+	 */
+	private static final int HTTP_PORT = 80;
+
+	/**
+	 * Standard HTTPS port.
+	 */
+	private static final int HTTPS_PORT = 443;
+
+	private HttpClientFactory()
+	{
+	}
+
+	/**
+	 * Create an HTTP client configured from the given properties.
+	 * 
+	 * @param properties
+	 *          Contains configuration for the Alfresco server to connect to
+	 * @return A new HTTP client
+	 * @throws AlfrescoException
+	 *           If the pool or retry properties are invalid
+	 */
+	public static DefaultHttpClient createHttpClient(final PropertyWrapper properties)
+			throws AlfrescoException
+	{
+		final DefaultHttpClient client;
+
+		if (Boolean.valueOf(properties.getProperty("alfresco.http.pool.enabled", "false"))) {
+			try {
+				client = createPooledHttpClient(
+						properties.getIntProperty("alfresco.http.pool.maxTotal", DEFAULT_MAX_TOTAL),
+						properties.getIntProperty("alfresco.http.pool.maxPerRoute", DEFAULT_MAX_PER_ROUTE));
+			} catch (final PropertyException e) {
+				throw new AlfrescoException("Invalid connection pool configuration", e);
+			}
+		} else {
+			client = new DefaultHttpClient();
+		}
+
+		if (Boolean.valueOf(properties.getProperty("alfresco.http.compression", "true"))) {
+			enableCompression(client);
+		}
+
+		try {
+			if (RetryPolicy.create(properties).isEnabled()) {
+				client.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
+			}
+		} catch (final PropertyException e) {
+			throw new AlfrescoException("Invalid retry configuration", e);
+		}
+
+		return client;
+	}
+
+	/**
+	 * Make a client ask for compressed responses, and transparently decompress
+	 * them after their compressed size has been metered.
+	 * 
+	 * @param client
+	 *          the client to configure
+	 */
+	public static void enableCompression(final DefaultHttpClient client)
+	{
+		client.addRequestInterceptor(new RequestAcceptEncoding());
+		client.addResponseInterceptor(new ResponseWireMetering());
+		client.addResponseInterceptor(new ResponseContentEncoding());
+	}
+
+	/**
+	 * Create an HTTP client which pools its connections and may be shared
+	 * between threads.
+	 * 
+	 * @param maxTotal
+	 *          the maximum number of connections across all routes
+	 * @param maxPerRoute
+	 *          the maximum number of connections to any one route
+	 * @return A new HTTP client
+	 */
+	public static DefaultHttpClient createPooledHttpClient(final int maxTotal,
+			final int maxPerRoute)
+	{
+		final SchemeRegistry schemeRegistry = new SchemeRegistry();
+		schemeRegistry.register(new Scheme("http", HTTP_PORT, PlainSocketFactory.getSocketFactory()));
+		schemeRegistry.register(new Scheme("https", HTTPS_PORT, SSLSocketFactory.getSocketFactory()));
+
+		return new DefaultHttpClient(new PooledConnectionManager(schemeRegistry,
+				maxTotal, maxPerRoute));
+	}
+}
@@ -27,6 +27,8 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import com.surevine.alfresco.AlfrescoException;
+import com.surevine.alfresco.connector.model.JsonElementVisitor;
+import com.surevine.alfresco.connector.model.RawJsonVisitor;
 
 /**
  * Basic interface for classes which allow communication to Alfresco
@@ -85,6 +87,47 @@ public interface IAlfrescoConnector
 	JSONArray doGetArray(String service, Map<String, String> parameters)
 			throws AlfrescoException;
 
+	/**
+	 * Calls an alfresco service using an HTTP GET and passes each object of a
+	 * JSON array in the response to a visitor as it is decoded, without holding
+	 * the whole response in memory.
+	 * 
+	 * @param service
+	 *          the service to call (e.g. "api/people")
+	 * @param parameters
+	 *          the name/value pairs of parameters to pass to the webscript, or
+	 *          null
+	 * @param arrayKey
+	 *          the key of the array in the response (e.g. "people"), or null if
+	 *          the response is itself an array
+	 * @param visitor
+	 *          receives each object of the array in turn
+	 * @throws AlfrescoException
+	 *           On any HTTP error, or if the visitor fails
+	 */
+	void doGetEach(String service, Map<String, String> parameters,
+			String arrayKey, JsonElementVisitor visitor) throws AlfrescoException;
+
+	/**
+	 * Visit an alfresco service using an HTTP GET and pass each object of a JSON
+	 * array in the response to a visitor without decoding it.
+	 * 
+	 * @param service
+	 *          the service to call (e.g. "api/people")
+	 * @param parameters
+	 *          the name/value pairs of parameters to pass to the webscript, or
+	 *          null
+	 * @param arrayKey
+	 *          the key of the array in the response (e.g. "people"), or null if
+	 *          the response is itself an array
+	 * @param visitor
+	 *          receives each object of the array in turn
+	 * @throws AlfrescoException
+	 *           On any HTTP error, or if the visitor fails
+	 */
+	void doGetEachRaw(String service, Map<String, String> parameters,
+			String arrayKey, RawJsonVisitor visitor) throws AlfrescoException;
+
 	/**
 	 * POST a JSON object to an alfresco service and parse out a JSON object from the response.
 	 * 
@@ -162,6 +205,27 @@ public interface IAlfrescoConnector
 	JSONArray doShareGetArray(String service, Map<String, String> parameters)
 			throws AlfrescoException;
 
+	/**
+	 * Calls an alfresco share service using an HTTP GET and passes each object
+	 * of a JSON array in the response to a visitor as it is decoded, without
+	 * holding the whole response in memory.
+	 * 
+	 * @param service
+	 *          the service to call (e.g. "api/people")
+	 * @param parameters
+	 *          the name/value pairs of parameters to pass to the webscript, or
+	 *          null
+	 * @param arrayKey
+	 *          the key of the array in the response, or null if the response is
+	 *          itself an array
+	 * @param visitor
+	 *          receives each object of the array in turn
+	 * @throws AlfrescoException
+	 *           On any HTTP error, or if the visitor fails
+	 */
+	void doShareGetEach(String service, Map<String, String> parameters,
+			String arrayKey, JsonElementVisitor visitor) throws AlfrescoException;
+
 	/**
 	 * POST a JSON object to an alfresco share service and parse out a JSON object from the response.
 	 * 
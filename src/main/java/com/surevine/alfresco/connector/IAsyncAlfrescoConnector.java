@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Non-blocking counterpart of {@link IAlfrescoConnector}.
+ * 
+ * Each call returns immediately with an {@link AlfrescoFuture}, which fails
+ * with the same {@link com.surevine.alfresco.AlfrescoException} that the
+ * blocking call would have thrown.
+ */
+public interface IAsyncAlfrescoConnector
+{
+	/**
+	 * @see IAlfrescoConnector#doGet(String)
+	 */
+	AlfrescoFuture<JSONObject> doGet(String service);
+
+	/**
+	 * @see IAlfrescoConnector#doGet(String, Map)
+	 */
+	AlfrescoFuture<JSONObject> doGet(String service, Map<String, String> parameters);
+
+	/**
+	 * @see IAlfrescoConnector#doGetArray(String)
+	 */
+	AlfrescoFuture<JSONArray> doGetArray(String service);
+
+	/**
+	 * @see IAlfrescoConnector#doGetArray(String, Map)
+	 */
+	AlfrescoFuture<JSONArray> doGetArray(String service, Map<String, String> parameters);
+
+	/**
+	 * @see IAlfrescoConnector#doPost(String, JSONObject)
+	 */
+	AlfrescoFuture<JSONObject> doPost(String service, JSONObject json);
+
+	/**
+	 * @see IAlfrescoConnector#doDelete(String)
+	 */
+	AlfrescoFuture<JSONObject> doDelete(String service);
+
+	/**
+	 * @see IAlfrescoConnector#doShareGet(String)
+	 */
+	AlfrescoFuture<JSONObject> doShareGet(String service);
+
+	/**
+	 * @see IAlfrescoConnector#doShareGet(String, Map)
+	 */
+	AlfrescoFuture<JSONObject> doShareGet(String service, Map<String, String> parameters);
+
+	/**
+	 * @see IAlfrescoConnector#doShareGetArray(String)
+	 */
+	AlfrescoFuture<JSONArray> doShareGetArray(String service);
+
+	/**
+	 * @see IAlfrescoConnector#doShareGetArray(String, Map)
+	 */
+	AlfrescoFuture<JSONArray> doShareGetArray(String service, Map<String, String> parameters);
+
+	/**
+	 * @see IAlfrescoConnector#doSharePost(String, JSONObject)
+	 */
+	AlfrescoFuture<JSONObject> doSharePost(String service, JSONObject json);
+
+	/**
+	 * @see IAlfrescoConnector#doShareDelete(String)
+	 */
+	AlfrescoFuture<JSONObject> doShareDelete(String service);
+
+	/**
+	 * Stop accepting new requests. Requests already submitted are completed, and
+	 * requests made afterwards fail with an {@link com.surevine.alfresco.AlfrescoException}.
+	 */
+	void shutdown();
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+
+/**
+ * A thread safe connection manager which pools connections to Alfresco.
+ * 
+ * A single {@link org.apache.http.impl.client.DefaultHttpClient} using this
+ * manager may be shared between threads, so that all of them run under the one
+ * authenticated session held in the client's cookie store.
+ * 
+ * It also keeps gauges of the state of the pool so that it can be sized
+ * against the Alfresco cluster.
+ */
+public class PooledConnectionManager extends ThreadSafeClientConnManager {
+
+	/**
+	 * Number of connections currently handed out to callers.
+	 */
+	private final AtomicInteger leased = new AtomicInteger();
+
+	/**
+	 * Number of callers currently waiting for a connection.
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
+
+	/**
+	 * @param schemeRegistry
+	 *          the scheme registry to use for new connections
+	 * @param maxTotal
+	 *          the maximum number of connections across all routes
+	 * @param maxPerRoute
+	 *          the maximum number of connections to any one route
+	 */
+	public PooledConnectionManager(final SchemeRegistry schemeRegistry,
+			final int maxTotal, final int maxPerRoute)
+	{
+		super(schemeRegistry);
+
+		if (maxTotal < 1 || maxPerRoute < 1) {
+			throw new IllegalArgumentException("Pool limits must be positive");
+		}
+
+		setMaxTotal(maxTotal);
+		setDefaultMaxPerRoute(maxPerRoute);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ClientConnectionRequest requestConnection(final HttpRoute route,
+			final Object state)
+	{
+		final ClientConnectionRequest request = super.requestConnection(route, state);
+
+		return new ClientConnectionRequest() {
+			public ManagedClientConnection getConnection(final long timeout,
+					final TimeUnit tunit) throws InterruptedException,
+					ConnectionPoolTimeoutException
+			{
+				pending.incrementAndGet();
+
+				try {
+					final ManagedClientConnection connection = request.getConnection(timeout, tunit);
+					leased.incrementAndGet();
+
+					return connection;
+				} finally {
+					pending.decrementAndGet();
+				}
+			}
+
+			public void abortRequest()
+			{
+				request.abortRequest();
+			}
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void releaseConnection(final ManagedClientConnection connection,
+			final long validDuration, final TimeUnit timeUnit)
+	{
+		try {
+			super.releaseConnection(connection, validDuration, timeUnit);
+		} finally {
+			leased.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return The number of connections currently in use.
+	 */
+	public int getLeasedConnections()
+	{
+		return Math.max(0, leased.get());
+	}
+
+	/**
+	 * @return The number of open connections sitting idle in the pool.
+	 */
+	public int getAvailableConnections()
+	{
+		return Math.max(0, getConnectionsInPool() - getLeasedConnections());
+	}
+
+	/**
+	 * @return The number of requests waiting for a connection to become free.
+	 */
+	public int getPendingRequests()
+	{
+		return pending.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString()
+	{
+		return "PooledConnectionManager[leased=" + getLeasedConnections()
+				+ ", available=" + getAvailableConnections() + ", pending="
+				+ getPendingRequests() + ", maxTotal=" + getMaxTotal()
+				+ ", maxPerRoute=" + getDefaultMaxPerRoute() + "]";
+	}
+}
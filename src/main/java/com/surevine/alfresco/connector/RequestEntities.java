@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.json.JSONException;
+
+import com.surevine.alfresco.connector.json.JsonCodec;
+
+/**
+ * Builds the bodies of requests sent to Alfresco.
+ */
+public final class RequestEntities {
+
+	/**
+	 * The MIME type of JSON request bodies.
+	 */
+	private static final String JSON_CONTENT_TYPE = "application/json";
+
+	private RequestEntities()
+	{
+	}
+
+	/**
+	 * Create the body for a JSON request, encoded by the given codec and
+	 * compressed if it is large.
+	 * 
+	 * @param json
+	 *          the JSON to send, typically a JSONObject or JSONArray
+	 * @param codec
+	 *          the codec to encode it with
+	 * @param compressionThreshold
+	 *          the size in bytes above which the body is sent gzipped, or a
+	 *          negative number to never compress
+	 * @return The request body
+	 * @throws JSONException
+	 *           If the body cannot be encoded
+	 */
+	public static HttpEntity createJsonEntity(final Object json, final JsonCodec codec,
+			final int compressionThreshold) throws JSONException
+	{
+		final byte[] body = codec.encode(json);
+		final ByteArrayEntity entity = new ByteArrayEntity(body);
+
+		entity.setContentType(JSON_CONTENT_TYPE + "; charset=" + codec.getCharset());
+
+		if (compressionThreshold >= 0 && body.length > compressionThreshold) {
+			return new GzipCompressingEntity(entity);
+		}
+
+		return entity;
+	}
+
+	/**
+	 * @param entity
+	 *          the body of a JSON request
+	 * @return The Content-Type to send with the body, which names its
+	 *         character set if it was encoded by a {@link JsonCodec}
+	 */
+	public static String getJsonContentType(final HttpEntity entity)
+	{
+		final Header type = entity == null ? null : entity.getContentType();
+
+		if (type != null && type.getValue().startsWith(JSON_CONTENT_TYPE)) {
+			return type.getValue();
+		}
+
+		return JSON_CONTENT_TYPE;
+	}
+}
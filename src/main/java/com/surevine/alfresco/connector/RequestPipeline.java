@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import java.io.IOException;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.protocol.HttpContext;
+import org.apache.log4j.Logger;
+
+import com.surevine.alfresco.AlfrescoException;
+import com.surevine.alfresco.PropertyException;
+import com.surevine.alfresco.PropertyWrapper;
+import com.surevine.alfresco.connector.model.AlfrescoHttpResponse;
+import com.surevine.alfresco.limit.CircuitBreaker;
+import com.surevine.alfresco.limit.CircuitBreakers;
+import com.surevine.alfresco.limit.CircuitOpenException;
+import com.surevine.alfresco.limit.RequestThrottle;
+import com.surevine.alfresco.metrics.ConnectorMetrics;
+import com.surevine.alfresco.metrics.EndpointTemplates;
+
+/**
+ * The stages each request to Alfresco passes through: retrying under a
+ * {@link RetryPolicy}, checking the endpoint's {@link CircuitBreaker}, waiting
+ * for the {@link RequestThrottle}, recording {@link ConnectorMetrics} and
+ * finally sending with the HTTP client. The throttle is released once a
+ * streamed response body has been read, closed or consumed.
+ */
+public class RequestPipeline
+{
+	private final Logger LOG = Logger.getLogger(RequestPipeline.class);
+
+	/**
+	 * The first status code which counts against an endpoint's circuit breaker.
+	 */
+	private static final int SERVER_ERROR = 500;
+
+	/**
+	 * Sends the requests.
+	 */
+	private final HttpClient client;
+
+	/**
+	 * Records the latency and traffic of each endpoint.
+	 */
+	private final ConnectorMetrics metrics;
+
+	/**
+	 * Holds requests back when Alfresco is struggling.
+	 */
+	private final RequestThrottle throttle;
+
+	/**
+	 * Decides which failed requests are repeated.
+	 */
+	private final RetryPolicy retryPolicy;
+
+	/**
+	 * Fails requests to broken endpoints fast, or null.
+	 */
+	private final CircuitBreakers circuitBreakers;
+
+	/**
+	 * @param client
+	 *          sends the requests
+	 * @param metrics
+	 *          records the latency and traffic of each endpoint
+	 * @param throttle
+	 *          holds requests back when Alfresco is struggling
+	 * @param retryPolicy
+	 *          decides which failed requests are repeated
+	 */
+	public RequestPipeline(final HttpClient client, final ConnectorMetrics metrics,
+			final RequestThrottle throttle, final RetryPolicy retryPolicy)
+	{
+		this(client, metrics, throttle, retryPolicy, null);
+	}
+
+	/**
+	 * @param client
+	 *          sends the requests
+	 * @param metrics
+	 *          records the latency and traffic of each endpoint
+	 * @param throttle
+	 *          holds requests back when Alfresco is struggling
+	 * @param retryPolicy
+	 *          decides which failed requests are repeated
+	 * @param circuitBreakers
+	 *          fails requests to broken endpoints fast, or null
+	 */
+	public RequestPipeline(final HttpClient client, final ConnectorMetrics metrics,
+			final RequestThrottle throttle, final RetryPolicy retryPolicy,
+			final CircuitBreakers circuitBreakers)
+	{
+		this.client = client;
+		this.metrics = metrics;
+		this.throttle = throttle;
+		this.retryPolicy = retryPolicy;
+		this.circuitBreakers = circuitBreakers;
+	}
+
+	/**
+	 * Create the pipeline for a connector from its configuration.
+	 * 
+	 * @param properties
+	 *          the connector's configuration
+	 * @param client
+	 *          sends the requests
+	 * @param connectorType
+	 *          the type of connector, used to name its metrics
+	 * @return The pipeline
+	 * @throws PropertyException
+	 *           If a setting is invalid
+	 */
+	public static RequestPipeline create(final PropertyWrapper properties, final HttpClient client,
+			final Class<?> connectorType) throws PropertyException
+	{
+		return new RequestPipeline(client, ConnectorMetrics.create(properties, connectorType),
+				RequestThrottle.create(properties), RetryPolicy.create(properties),
+				CircuitBreakers.create(properties));
+	}
+
+	/**
+	 * Send a request, repeating it if it fails and the {@link RetryPolicy}
+	 * allows.
+	 * 
+	 * @param request
+	 *          the request
+	 * @param context
+	 *          the context to send the request in, or null
+	 * @return The response, which may have an error status if retries were not
+	 *         allowed or did not help
+	 * @throws AlfrescoException
+	 *           If no response was received
+	 */
+	public HttpResponse execute(final HttpUriRequest request, final HttpContext context)
+			throws AlfrescoException
+	{
+		final boolean retryable = retryPolicy.isRetryable(request);
+		final long start = System.currentTimeMillis();
+
+		int attempts = 0;
+
+		while (true) {
+			attempts++;
+
+			final HttpResponse response;
+
+			try {
+				response = send(request, context);
+			} catch (final ClientProtocolException e) {
+				throw new AlfrescoException("Failed on HTTP " + request.getMethod(), e);
+			} catch (final IOException e) {
+				final long delay = retryable
+						? retryPolicy.getRetryDelay(attempts, System.currentTimeMillis() - start) : -1;
+
+				if (delay < 0) {
+					throw new AlfrescoException("Failed on HTTP " + request.getMethod(), e);
+				}
+
+				LOG.warn("HTTP " + request.getMethod() + " " + request.getURI() + " failed, retrying: " + e);
+				pause(request, delay);
+				continue;
+			}
+
+			final int status = response.getStatusLine().getStatusCode();
+
+			if (retryable && retryPolicy.isRetryableStatus(status)) {
+				final long delay = retryPolicy.getRetryDelay(attempts, System.currentTimeMillis() - start);
+
+				if (delay >= 0) {
+					new AlfrescoHttpResponse(response).release();
+
+					LOG.warn("HTTP " + request.getMethod() + " " + request.getURI() + " returned " + status
+							+ ", retrying");
+					pause(request, delay);
+					continue;
+				}
+			}
+
+			return response;
+		}
+	}
+
+	/**
+	 * @return The metrics recorded for each endpoint
+	 */
+	public ConnectorMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * @return The throttle holding requests back
+	 */
+	public RequestThrottle getThrottle()
+	{
+		return throttle;
+	}
+
+	/**
+	 * @return The circuit breakers of each endpoint, or null if not used
+	 */
+	public CircuitBreakers getCircuitBreakers()
+	{
+		return circuitBreakers;
+	}
+
+	/**
+	 * @return The policy deciding which failed requests are repeated
+	 */
+	public RetryPolicy getRetryPolicy()
+	{
+		return retryPolicy;
+	}
+
+	/**
+	 * Send a request once, through the endpoint's circuit breaker and the
+	 * throttle.
+	 * 
+	 * @param request
+	 *          the request
+	 * @param context
+	 *          the context to send the request in, or null
+	 * @return The response
+	 * @throws AlfrescoException
+	 *           If the circuit breaker or throttle would not let the request
+	 *           through
+	 * @throws IOException
+	 *           If no response was received
+	 */
+	private HttpResponse send(final HttpUriRequest request, final HttpContext context)
+			throws AlfrescoException, IOException
+	{
+		final CircuitBreaker breaker = circuitBreakers == null ? null : circuitBreakers.get(request);
+
+		final long ticket = breaker == null ? CircuitBreaker.REFUSED : breaker.tryAcquire();
+
+		if (breaker != null && ticket == CircuitBreaker.REFUSED) {
+			throw new CircuitOpenException(EndpointTemplates.templateOf(request.getURI().toString()));
+		}
+
+		boolean healthy = false;
+
+		try {
+			throttle.acquire();
+		} catch (final AlfrescoException e) {
+			if (breaker != null) {
+				breaker.cancel(ticket);
+			}
+
+			throw e;
+		}
+
+		final long start = System.nanoTime();
+		int status = -1;
+		boolean releaseWithBody = false;
+
+		try {
+			final HttpResponse response = metrics.execute(client, request, context);
+			final long latency = System.nanoTime() - start;
+			status = response.getStatusLine().getStatusCode();
+			healthy = status < SERVER_ERROR;
+
+			final HttpEntity entity = response.getEntity();
+
+			// a streamed body is still being downloaded, so the request stays in flight until it is read
+			if (entity != null && entity.isStreaming()) {
+				response.setEntity(new ThrottledEntity(entity, throttle, request, status, latency));
+				releaseWithBody = true;
+			}
+
+			return response;
+		} finally {
+			if (!releaseWithBody) {
+				throttle.release(request, status, System.nanoTime() - start);
+			}
+
+			if (breaker != null) {
+				if (healthy) {
+					breaker.onSuccess(ticket);
+				} else {
+					breaker.onFailure(ticket);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wait before retrying a request.
+	 * 
+	 * @param request
+	 *          the request to be retried
+	 * @param delayMillis
+	 *          how long to wait
+	 * @throws AlfrescoException
+	 *           If interrupted while waiting
+	 */
+	private void pause(final HttpUriRequest request, final long delayMillis) throws AlfrescoException
+	{
+		metrics.recordRetry(request);
+
+		try {
+			Thread.sleep(delayMillis);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AlfrescoException("Interrupted waiting to retry HTTP " + request.getMethod(), e);
+		}
+	}
+}
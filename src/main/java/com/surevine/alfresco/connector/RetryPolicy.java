@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import com.surevine.alfresco.PropertyException;
+import com.surevine.alfresco.PropertyWrapper;
+import com.surevine.alfresco.metrics.EndpointTemplates;
+
+/**
+ * Decides which failed requests are repeated, and how long to wait first.
+ * 
+ * Only requests which are safe to repeat are retried: GET, HEAD, OPTIONS, PUT
+ * and DELETE, and POSTs to endpoints listed as idempotent. A request is
+ * retried after a connection failure or a 500, 502, 503 or 504 response, up to
+ * a number of attempts and a total time for the operation. The wait before
+ * each retry is chosen at random up to an exponentially growing cap ("full
+ * jitter"), so that many clients failing together do not retry together.
+ * 
+ * Configured with the properties:
+ * <ul>
+ * <li><code>alfresco.retry.maxAttempts</code> - attempts per operation,
+ * including the first (default 1, so requests are not retried)</li>
+ * <li><code>alfresco.retry.baseDelay</code> - the cap on the first wait in
+ * milliseconds (default 100)</li>
+ * <li><code>alfresco.retry.maxDelay</code> - the cap on any wait in
+ * milliseconds (default 5000)</li>
+ * <li><code>alfresco.retry.budget</code> - the longest an operation may spend
+ * retrying in milliseconds (default 15000)</li>
+ * <li><code>alfresco.retry.postEndpoints</code> - comma separated endpoint
+ * templates, as produced by {@link EndpointTemplates}, of POSTs which are
+ * safe to repeat</li>
+ * </ul>
+ */
+public class RetryPolicy
+{
+	/**
+	 * A policy which never retries.
+	 */
+	public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, 0, Collections.<String> emptySet());
+
+	/**
+	 * Attempts per operation unless configured, so that nothing is retried.
+	 */
+	private static final int DEFAULT_MAX_ATTEMPTS = 1;
+
+	/**
+	 * Methods which are safe to repeat.
+	 */
+	private static final Set<String> IDEMPOTENT_METHODS = new HashSet<String>(Arrays.asList("GET",
+			"HEAD", "OPTIONS", "PUT", "DELETE"));
+
+	/**
+	 * Attempts per operation, including the first.
+	 */
+	private final int maxAttempts;
+
+	/**
+	 * The cap on the first wait in milliseconds.
+	 */
+	private final long baseDelayMillis;
+
+	/**
+	 * The cap on any wait in milliseconds.
+	 */
+	private final long maxDelayMillis;
+
+	/**
+	 * The longest an operation may spend retrying in milliseconds.
+	 */
+	private final long budgetMillis;
+
+	/**
+	 * Endpoint templates of POSTs which are safe to repeat.
+	 */
+	private final Set<String> idempotentPosts;
+
+	/**
+	 * Chooses the waits.
+	 */
+	private final Random random = new Random();
+
+	/**
+	 * @param maxAttempts
+	 *          attempts per operation, including the first
+	 * @param baseDelayMillis
+	 *          the cap on the first wait in milliseconds
+	 * @param maxDelayMillis
+	 *          the cap on any wait in milliseconds
+	 * @param budgetMillis
+	 *          the longest an operation may spend retrying in milliseconds
+	 * @param idempotentPosts
+	 *          endpoint templates of POSTs which are safe to repeat
+	 */
+	public RetryPolicy(final int maxAttempts, final long baseDelayMillis, final long maxDelayMillis,
+			final long budgetMillis, final Collection<String> idempotentPosts)
+	{
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelayMillis = baseDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.budgetMillis = budgetMillis;
+		this.idempotentPosts = new HashSet<String>(idempotentPosts);
+	}
+
+	/**
+	 * Create a policy from a connector's configuration.
+	 * 
+	 * @param properties
+	 *          the connector's configuration
+	 * @return The policy
+	 * @throws PropertyException
+	 *           If a setting is not a number
+	 */
+	public static RetryPolicy create(final PropertyWrapper properties) throws PropertyException
+	{
+		final Set<String> posts = new HashSet<String>();
+
+		for (final String endpoint : properties.getProperty("alfresco.retry.postEndpoints", "").split(",")) {
+			if (endpoint.trim().length() > 0) {
+				posts.add(endpoint.trim());
+			}
+		}
+
+		return new RetryPolicy(properties.getIntProperty("alfresco.retry.maxAttempts", DEFAULT_MAX_ATTEMPTS),
+				properties.getIntProperty("alfresco.retry.baseDelay", 100),
+				properties.getIntProperty("alfresco.retry.maxDelay", 5000),
+				properties.getIntProperty("alfresco.retry.budget", 15000), posts);
+	}
+
+	/**
+	 * @return True if any request may be retried
+	 */
+	public boolean isEnabled()
+	{
+		return maxAttempts > 1;
+	}
+
+	/**
+	 * @param request
+	 *          a request
+	 * @return True if the request may be sent again after failing
+	 */
+	public boolean isRetryable(final HttpUriRequest request)
+	{
+		if (!isEnabled()) {
+			return false;
+		}
+
+		final String method = request.getMethod();
+
+		if (!IDEMPOTENT_METHODS.contains(method)
+				&& !("POST".equals(method) && idempotentPosts.contains(EndpointTemplates.templateOf(request
+						.getURI().toString())))) {
+			return false;
+		}
+
+		if (request instanceof HttpEntityEnclosingRequest) {
+			final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+
+			return entity == null || entity.isRepeatable();
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param status
+	 *          the status code of a response
+	 * @return True if the status suggests the request may succeed if repeated
+	 */
+	public boolean isRetryableStatus(final int status)
+	{
+		return status == 500 || status == 502 || status == 503 || status == 504;
+	}
+
+	/**
+	 * Decide whether to retry, and how long to wait first.
+	 * 
+	 * @param attempts
+	 *          the number of attempts made so far
+	 * @param elapsedMillis
+	 *          the time spent on the operation so far
+	 * @return The time to wait in milliseconds before retrying, or -1 if the
+	 *         operation has used up its retries
+	 */
+	public long getRetryDelay(final int attempts, final long elapsedMillis)
+	{
+		if (attempts >= maxAttempts) {
+			return -1;
+		}
+
+		final long cap = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempts - 1, 30));
+		final long delay;
+
+		synchronized (random) {
+			delay = cap <= 0 ? 0 : (long) (random.nextDouble() * cap);
+		}
+
+		if (elapsedMillis + delay > budgetMillis) {
+			return -1;
+		}
+
+		return delay;
+	}
+
+	/**
+	 * @return Attempts per operation, including the first
+	 */
+	public int getMaxAttempts()
+	{
+		return maxAttempts;
+	}
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.message.BasicHeader;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.surevine.alfresco.AlfrescoException;
+
+/**
+ * Remembers the validators (ETag and Last-Modified) and the bodies of GET
+ * responses, so that they can be re-requested conditionally and a
+ * <code>304 Not Modified</code> answered from the stored copy without
+ * downloading the body again.
+ * 
+ * Bodies are kept decoded. Each hit returns a deep copy built from the
+ * decoded values without parsing any text, so each caller gets its own copy
+ * which it is free to modify.
+ */
+public class RevalidationCache
+{
+	/**
+	 * Headers to send when there is nothing cached.
+	 */
+	private static final Header[] NO_HEADERS = new Header[0];
+
+	/**
+	 * Cached entries by URL, least recently used first.
+	 */
+	private final Map<String, Entry> entries;
+
+	/**
+	 * Number of requests answered from the cache after a 304.
+	 */
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * Number of requests for which nothing was cached.
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Number of conditional requests sent.
+	 */
+	private final AtomicLong revalidations = new AtomicLong();
+
+	/**
+	 * @param maxEntries
+	 *          the maximum number of responses to keep
+	 */
+	public RevalidationCache(final int maxEntries)
+	{
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, RevalidationCache.Entry> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Look up a URL before requesting it.
+	 * 
+	 * @param url
+	 *          the URL about to be requested
+	 * @param type
+	 *          the type of body the caller expects, {@link JSONObject} or
+	 *          {@link JSONArray}
+	 * @return The cached entry, or null if there is none of the right type
+	 */
+	public Entry lookup(final String url, final Class<?> type)
+	{
+		final Entry entry;
+
+		synchronized (entries) {
+			entry = entries.get(url);
+		}
+
+		if (entry == null || !type.equals(entry.type)) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		revalidations.incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * @param entry
+	 *          the cached entry, or null
+	 * @return The headers which make a request conditional on the entry
+	 */
+	public Header[] getConditionalHeaders(final Entry entry)
+	{
+		if (entry == null) {
+			return NO_HEADERS;
+		}
+
+		return getConditionalHeaders(entry.etag, entry.lastModified);
+	}
+
+	/**
+	 * @param etag
+	 *          the ETag of the copy held, or null
+	 * @param lastModified
+	 *          the Last-Modified date of the copy held, or null
+	 * @return The headers which make a request conditional on the copy
+	 */
+	public static Header[] getConditionalHeaders(final String etag, final String lastModified)
+	{
+		final List<Header> headers = new ArrayList<Header>(2);
+
+		if (etag != null) {
+			headers.add(new BasicHeader("If-None-Match", etag));
+		}
+
+		if (lastModified != null) {
+			headers.add(new BasicHeader("If-Modified-Since", lastModified));
+		}
+
+		return headers.toArray(new Header[headers.size()]);
+	}
+
+	/**
+	 * Record that a conditional request was answered with a 304.
+	 * 
+	 * @param entry
+	 *          the entry the request was conditional on
+	 * @return A new copy of the cached body
+	 * @throws AlfrescoException
+	 *           if the cached body cannot be copied
+	 */
+	public Object hit(final Entry entry) throws AlfrescoException
+	{
+		hits.incrementAndGet();
+
+		try {
+			return copy(entry.body);
+		} catch (JSONException e) {
+			throw new AlfrescoException("Failed to copy cached response", e);
+		}
+	}
+
+	/**
+	 * Store the body of a full response, if it carries validators.
+	 * 
+	 * @param url
+	 *          the URL requested
+	 * @param response
+	 *          the response received
+	 * @param body
+	 *          the decoded body of the response, a {@link JSONObject} or
+	 *          {@link JSONArray}
+	 */
+	public void store(final String url, final HttpResponse response, final Object body)
+	{
+		final Header etag = response.getFirstHeader("ETag");
+		final Header lastModified = response.getFirstHeader("Last-Modified");
+		final Header cacheControl = response.getFirstHeader("Cache-Control");
+
+		final boolean storable = (etag != null || lastModified != null)
+				&& (cacheControl == null || !cacheControl.getValue().contains("no-store"));
+
+		Entry entry = null;
+
+		if (storable) {
+			try {
+				// the caller keeps the body it was given, so the cache keeps its own copy
+				entry = new Entry(etag == null ? null : etag.getValue(),
+						lastModified == null ? null : lastModified.getValue(), body.getClass(), copy(body));
+			} catch (JSONException e) {
+				entry = null;
+			}
+		}
+
+		synchronized (entries) {
+			if (entry != null) {
+				entries.put(url, entry);
+			} else {
+				entries.remove(url);
+			}
+		}
+	}
+
+	/**
+	 * @param value
+	 *          a decoded JSON value
+	 * @return A deep copy of the value. Strings, numbers, booleans and nulls
+	 *         are immutable, so are returned as they are.
+	 * @throws JSONException
+	 *           if the value cannot be copied
+	 */
+	static Object copy(final Object value) throws JSONException
+	{
+		if (value instanceof JSONObject) {
+			final JSONObject source = (JSONObject) value;
+			final JSONObject copy = new JSONObject();
+
+			for (final Iterator<?> keys = source.keys(); keys.hasNext();) {
+				final String key = (String) keys.next();
+				copy.put(key, copy(source.opt(key)));
+			}
+
+			return copy;
+		}
+
+		if (value instanceof JSONArray) {
+			final JSONArray source = (JSONArray) value;
+			final JSONArray copy = new JSONArray();
+
+			for (int i = 0; i < source.length(); i++) {
+				copy.put(copy(source.opt(i)));
+			}
+
+			return copy;
+		}
+
+		return value;
+	}
+
+	/**
+	 * Forget everything cached.
+	 */
+	public void clear()
+	{
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @return The number of requests answered from the cache after a 304
+	 */
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * @return The number of requests for which nothing was cached
+	 */
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * @return The number of conditional requests sent
+	 */
+	public long getRevalidationCount()
+	{
+		return revalidations.get();
+	}
+
+	/**
+	 * @return The number of responses currently cached
+	 */
+	public int size()
+	{
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * A cached response.
+	 */
+	public static final class Entry
+	{
+		/**
+		 * The ETag of the response, or null.
+		 */
+		private final String etag;
+
+		/**
+		 * The Last-Modified date of the response, or null.
+		 */
+		private final String lastModified;
+
+		/**
+		 * The type of the decoded body.
+		 */
+		private final Class<?> type;
+
+		/**
+		 * The decoded body, never handed out.
+		 */
+		private final Object body;
+
+		/**
+		 * @param etag
+		 *          the ETag of the response, or null
+		 * @param lastModified
+		 *          the Last-Modified date of the response, or null
+		 * @param type
+		 *          the type of the decoded body
+		 * @param body
+		 *          the decoded body, which is not shared with any caller
+		 */
+		Entry(final String etag, final String lastModified, final Class<?> type, final Object body)
+		{
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.type = type;
+			this.body = body;
+		}
+	}
+}
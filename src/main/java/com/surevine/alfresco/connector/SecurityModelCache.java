@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.log4j.Logger;
+
+import com.surevine.alfresco.AlfrescoException;
+import com.surevine.alfresco.connector.model.AlfrescoHttpResponse;
+import com.surevine.alfresco.connector.model.SecurityModel;
+
+/**
+ * A local copy of the security model, held in memory and optionally on disk,
+ * so that services which poll the model need not download it every time.
+ * 
+ * Once the copy is older than a given age the next caller refreshes it with a
+ * conditional request. Callers arriving meanwhile are given the copy they
+ * already have rather than waiting. A model whose content has not changed is
+ * ignored even if Alfresco does not support conditional requests, and
+ * listeners are only told about real changes.
+ * 
+ * If a refresh fails the old copy is kept and served, so a service can start
+ * from the disk copy while Alfresco is down. The next attempt is made once the
+ * copy is a further maximum age older, so callers do not each wait for
+ * Alfresco to time out.
+ */
+public class SecurityModelCache {
+
+	private final Logger LOG = Logger.getLogger(SecurityModelCache.class);
+
+	/**
+	 * The connector used to download the model.
+	 */
+	private final SecurityModelConnector connector;
+
+	/**
+	 * Where the model is kept on disk, or null to keep it in memory only.
+	 */
+	private final File file;
+
+	/**
+	 * How long a copy is used before it is checked, in milliseconds.
+	 */
+	private final long maxAgeMillis;
+
+	/**
+	 * Held by the thread refreshing the model.
+	 */
+	private final ReentrantLock refreshLock = new ReentrantLock();
+
+	/**
+	 * Told about each change to the model.
+	 */
+	private final List<SecurityModelListener> listeners = new CopyOnWriteArrayList<SecurityModelListener>();
+
+	/**
+	 * The current copy, or null if there is none yet.
+	 */
+	private volatile SecurityModel model;
+
+	/**
+	 * When the current copy was last checked against Alfresco.
+	 */
+	private volatile long checkedAt;
+
+	/**
+	 * @param connector
+	 *          the connector used to download the model
+	 * @param file
+	 *          where to keep the model on disk, or null to keep it in memory
+	 *          only
+	 * @param maxAgeMillis
+	 *          how long a copy is used before it is checked, in milliseconds
+	 */
+	public SecurityModelCache(final SecurityModelConnector connector, final File file,
+			final long maxAgeMillis)
+	{
+		this.connector = connector;
+		this.file = file;
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	/**
+	 * @param listener
+	 *          a listener to tell about each change to the model
+	 */
+	public void addListener(final SecurityModelListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	/**
+	 * @param listener
+	 *          a listener to stop telling about changes
+	 */
+	public void removeListener(final SecurityModelListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Get the model, refreshing it first if it is too old.
+	 * 
+	 * @return The model
+	 * @throws AlfrescoException
+	 *           If there is no copy of the model and it cannot be downloaded
+	 */
+	public SecurityModel getModel() throws AlfrescoException
+	{
+		final SecurityModel current = model;
+
+		if (current != null) {
+			if (System.currentTimeMillis() - checkedAt < maxAgeMillis || !refreshLock.tryLock()) {
+				return current;
+			}
+		} else {
+			refreshLock.lock();
+		}
+
+		try {
+			if (model == null) {
+				model = load();
+			} else if (System.currentTimeMillis() - checkedAt < maxAgeMillis) {
+				// refreshed by another thread while we waited
+				return model;
+			}
+
+			try {
+				refresh();
+			} catch (final AlfrescoException e) {
+				if (model == null) {
+					throw e;
+				}
+
+				LOG.warn("Failed to refresh the security model, using the copy we have", e);
+
+				// don't try again until the copy is due another check
+				checkedAt = System.currentTimeMillis();
+			}
+
+			return model;
+		} finally {
+			refreshLock.unlock();
+		}
+	}
+
+	/**
+	 * Check the model against Alfresco now, whatever its age.
+	 * 
+	 * @return True if the model had changed
+	 * @throws AlfrescoException
+	 *           If the model cannot be downloaded
+	 */
+	public boolean refresh() throws AlfrescoException
+	{
+		refreshLock.lock();
+
+		try {
+			final SecurityModel current = model;
+			final AlfrescoHttpResponse response = connector.getSecurityModel(current == null ? new Header[0]
+					: RevalidationCache.getConditionalHeaders(current.getETag(), current.getLastModified()));
+
+			if (current != null && response.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+				response.release();
+				checkedAt = System.currentTimeMillis();
+				return false;
+			}
+
+			final ByteArrayOutputStream body = new ByteArrayOutputStream();
+			response.writeTo(body);
+
+			final SecurityModel fetched = new SecurityModel(body.toByteArray(),
+					getHeader(response, "ETag"), getHeader(response, "Last-Modified"));
+			final boolean changed = !fetched.hasSameContent(current);
+
+			model = fetched;
+			checkedAt = System.currentTimeMillis();
+
+			// save even when unchanged, to keep the validators on disk current
+			save(fetched);
+
+			if (changed) {
+				for (final SecurityModelListener listener : listeners) {
+					try {
+						listener.securityModelChanged(fetched);
+					} catch (final RuntimeException e) {
+						LOG.error("Security model listener failed", e);
+					}
+				}
+			}
+
+			return changed;
+		} finally {
+			refreshLock.unlock();
+		}
+	}
+
+	/**
+	 * @param response
+	 *          a response
+	 * @param name
+	 *          a header name
+	 * @return The value of the header, or null if it was not sent
+	 */
+	private static String getHeader(final AlfrescoHttpResponse response, final String name)
+	{
+		final Header header = response.getHttpResponse().getFirstHeader(name);
+
+		return header == null ? null : header.getValue();
+	}
+
+	/**
+	 * @return The file holding the validators of the copy on disk
+	 */
+	private File getValidatorsFile()
+	{
+		return new File(file.getPath() + ".properties");
+	}
+
+	/**
+	 * Read the copy kept on disk.
+	 * 
+	 * @return The copy, or null if there is none or it cannot be read
+	 */
+	private SecurityModel load()
+	{
+		if (file == null || !file.isFile()) {
+			return null;
+		}
+
+		try {
+			final ByteArrayOutputStream content = new ByteArrayOutputStream((int) file.length());
+			final Properties validators = new Properties();
+
+			InputStream in = new FileInputStream(file);
+
+			try {
+				AlfrescoHttpResponse.copy(in, content);
+			} finally {
+				in.close();
+			}
+
+			if (getValidatorsFile().isFile()) {
+				in = new FileInputStream(getValidatorsFile());
+
+				try {
+					validators.load(in);
+				} finally {
+					in.close();
+				}
+			}
+
+			return new SecurityModel(content.toByteArray(), validators.getProperty("etag"),
+					validators.getProperty("lastModified"));
+		} catch (final IOException e) {
+			LOG.warn("Failed to read the security model from " + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Replace the copy kept on disk. Each file is written alongside and then
+	 * renamed, so a reader never sees half a model.
+	 * 
+	 * @param saved
+	 *          the copy to keep
+	 */
+	private void save(final SecurityModel saved)
+	{
+		if (file == null) {
+			return;
+		}
+
+		final Properties validators = new Properties();
+
+		if (saved.getETag() != null) {
+			validators.setProperty("etag", saved.getETag());
+		}
+
+		if (saved.getLastModified() != null) {
+			validators.setProperty("lastModified", saved.getLastModified());
+		}
+
+		try {
+			final File content = new File(file.getPath() + ".tmp");
+			OutputStream out = new FileOutputStream(content);
+
+			try {
+				saved.writeTo(out);
+			} finally {
+				out.close();
+			}
+
+			final File props = new File(getValidatorsFile().getPath() + ".tmp");
+			out = new FileOutputStream(props);
+
+			try {
+				validators.store(out, "Validators of " + file.getName());
+			} finally {
+				out.close();
+			}
+
+			replace(content, file);
+			replace(props, getValidatorsFile());
+		} catch (final IOException e) {
+			LOG.warn("Failed to save the security model to " + file, e);
+		}
+	}
+
+	/**
+	 * @param from
+	 *          the new file
+	 * @param to
+	 *          the file to replace
+	 * @throws IOException
+	 *           if the file cannot be replaced
+	 */
+	private static void replace(final File from, final File to) throws IOException
+	{
+		// renameTo will not replace an existing file on every platform
+		if (!from.renameTo(to) && !(to.delete() && from.renameTo(to))) {
+			throw new IOException("Cannot rename " + from + " to " + to);
+		}
+	}
+}
@@ -22,15 +22,17 @@
 package com.surevine.alfresco.connector;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.http.Header;
 import org.apache.http.HttpStatus;
 import org.apache.http.entity.mime.content.ContentBody;
-import org.apache.http.entity.mime.content.InputStreamBody;
+import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.StringBody;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.log4j.Logger;
 
 import com.surevine.alfresco.AlfrescoException;
@@ -46,11 +48,20 @@ public class SecurityModelConnector extends BaseAlfrescoHttpConnector {
 
 	private final Logger LOG = Logger.getLogger(SecurityModelConnector.class);
 	
+	/**
+	 * Character set used to send a model given as a String.
+	 */
+	private static final String MODEL_CHARSET = "UTF-8";
+	
+	private static final String MODEL_MIME_TYPE = "text/xml";
+	
+	private static final String MODEL_FILENAME = "enhancedSecurityCustomModel.xml";
+	
 	private String alfrescoUrlBase;
 	
 	public SecurityModelConnector(PropertyWrapper properties, Authenticator auth)
 			throws AlfrescoException {
-		super(properties, auth, new DefaultHttpClient());
+		super(properties, auth, HttpClientFactory.createHttpClient(properties));
 		
 		try {
 			this.alfrescoUrlBase = properties.getProperty("alfresco.url.base");
@@ -63,22 +74,88 @@ public class SecurityModelConnector extends BaseAlfrescoHttpConnector {
     	return doHttpGet(alfrescoUrlBase + "/wcs/surevine/security-model");
     }
     
+    /**
+     * Download the security model with extra request headers, typically
+     * conditional ones, in which case the response may be a 304.
+     * 
+     * @param headers the headers to send
+     * @return The response
+     * @throws AlfrescoException if the request fails
+     */
+    public AlfrescoHttpResponse getSecurityModel(final Header[] headers) throws AlfrescoException {
+    	return doHttpGet(alfrescoUrlBase + "/wcs/surevine/security-model", headers);
+    }
+    
+    /**
+     * Upload a new security model.
+     * 
+     * @param securityModel the model XML
+     * @throws AlfrescoException if the upload fails
+     */
     public void setSecurityModel(final String securityModel) throws AlfrescoException {
+    	final byte[] content;
+    	
+    	try {
+    		content = securityModel.getBytes(MODEL_CHARSET);
+    	} catch (final UnsupportedEncodingException e) {
+    		throw new AlfrescoException("Cannot encode the security model", e);
+    	}
+    	
+    	setSecurityModel(new ByteArrayInputStream(content), content.length, MODEL_CHARSET);
+    }
+    
+    /**
+     * Upload a new security model straight from a file, without reading it into
+     * memory first.
+     * 
+     * @param securityModel the file holding the model XML
+     * @param charset the character set the file is encoded in
+     * @throws AlfrescoException if the upload fails
+     */
+    public void setSecurityModel(final File securityModel, final String charset)
+    		throws AlfrescoException {
+    	if (!securityModel.isFile()) {
+    		throw new AlfrescoException("Cannot find the security model " + securityModel);
+    	}
+    	
+    	uploadSecurityModel(new FileBody(securityModel, MODEL_FILENAME, MODEL_MIME_TYPE, charset));
+    }
+    
+    /**
+     * Upload a new security model straight from a stream, without reading it
+     * into memory first. The stream is read once and is not closed; the caller
+     * owns it and must close it, whether or not the upload succeeds.
+     * 
+     * @param securityModel the stream holding the model XML
+     * @param length the number of bytes the stream will provide
+     * @param charset the character set the stream is encoded in
+     * @throws AlfrescoException if the upload fails
+     */
+    public void setSecurityModel(final InputStream securityModel, final long length,
+    		final String charset) throws AlfrescoException {
+    	uploadSecurityModel(new SizedInputStreamBody(securityModel, length,
+    			MODEL_MIME_TYPE, charset, MODEL_FILENAME));
+    }
+    
+    private void uploadSecurityModel(final ContentBody model) throws AlfrescoException {
     	final Map<String, ContentBody> parts = new HashMap<String, ContentBody>();
     	
     	try {
 			parts.put("updateNodeRef", new StringBody("workspace://SpacesStore/enhanced_security_custom_model"));
-	    	parts.put("filedata", new InputStreamBody(new ByteArrayInputStream(securityModel.getBytes()),
-	    			"text/xml", "enhancedSecurityCustomModel.xml"));
 		} catch (final UnsupportedEncodingException e) {
 			LOG.error("Failed to populate multipart form for updating security model.", e);
 		}
     	
+    	parts.put("filedata", model);
+    	
     	final AlfrescoHttpResponse response = doHttpPost(alfrescoUrlBase +"/wcservice/api/upload.html", parts);
     	
-    	if (response.getHttpResponse().getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+    	// we only need the status, so hand the connection straight back
+    	response.release();
+    	
+    	if (response.getStatusCode() != HttpStatus.SC_OK) {
     		throw new AlfrescoException("Update of security model failed with status code "
-    				+ response.getHttpResponse().getStatusLine().getStatusCode());
+    				+ response.getStatusCode());
     	}
     }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Recognises responses which show that the session with Alfresco has expired.
+ * 
+ * An expired session shows up either as a 401, or as a redirect to the CAS
+ * login page. The redirect is followed automatically for GETs, so the final
+ * request made is also checked.
+ */
+class SessionExpiryDetector {
+
+	/**
+	 * Path of the CAS login page if none is configured.
+	 */
+	private static final String DEFAULT_LOGIN_PATH = "/cas/login";
+
+	/**
+	 * Host of the CAS login page, or null to match any host.
+	 */
+	private final String loginHost;
+
+	/**
+	 * Path of the CAS login page.
+	 */
+	private final String loginPath;
+
+	/**
+	 * @param loginUrl
+	 *          URL of the CAS login page, or null to use the default path
+	 */
+	SessionExpiryDetector(final String loginUrl)
+	{
+		URI uri = null;
+
+		if (loginUrl != null) {
+			try {
+				uri = new URI(loginUrl);
+			} catch (final URISyntaxException e) {
+				uri = null;
+			}
+		}
+
+		if (uri == null || uri.getPath() == null || uri.getPath().length() == 0) {
+			loginHost = null;
+			loginPath = DEFAULT_LOGIN_PATH;
+		} else {
+			loginHost = uri.getHost();
+			loginPath = uri.getPath();
+		}
+	}
+
+	/**
+	 * @param response
+	 *          the response received
+	 * @param context
+	 *          the context the request was executed in
+	 * @return True if the response shows the session has expired
+	 */
+	boolean isExpired(final HttpResponse response, final HttpContext context)
+	{
+		final int status = response.getStatusLine().getStatusCode();
+
+		if (status == HttpStatus.SC_UNAUTHORIZED) {
+			return true;
+		}
+
+		if (status >= HttpStatus.SC_MULTIPLE_CHOICES && status < HttpStatus.SC_BAD_REQUEST) {
+			final Header location = response.getFirstHeader("Location");
+
+			if (location != null && isLoginPage(location.getValue(), null)) {
+				return true;
+			}
+		}
+
+		// redirects followed by the client leave the last request in the context
+		final HttpRequest finalRequest = (HttpRequest) context.getAttribute(ExecutionContext.HTTP_REQUEST);
+		final HttpHost finalHost = (HttpHost) context.getAttribute(ExecutionContext.HTTP_TARGET_HOST);
+
+		if (finalRequest instanceof HttpUriRequest) {
+			return isLoginPage(((HttpUriRequest) finalRequest).getURI().toString(),
+					finalHost == null ? null : finalHost.getHostName());
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param url
+	 *          an absolute or relative URL
+	 * @param defaultHost
+	 *          the host of a relative URL, if known
+	 * @return True if the URL is the CAS login page
+	 */
+	private boolean isLoginPage(final String url, final String defaultHost)
+	{
+		final URI uri;
+
+		try {
+			uri = new URI(url);
+		} catch (final URISyntaxException e) {
+			return false;
+		}
+
+		final String path = uri.getPath();
+
+		if (path == null || !path.startsWith(loginPath)) {
+			return false;
+		}
+
+		final String host = uri.getHost() == null ? defaultHost : uri.getHost();
+
+		return loginHost == null || host == null || loginHost.equalsIgnoreCase(host);
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.mime.content.InputStreamBody;
+
+/**
+ * A multipart body read from a stream whose length and character set are known
+ * up front, so the request can be sent with a Content-Length rather than
+ * chunked, and the part declares its charset.
+ * 
+ * Exactly the declared number of bytes is sent. A stream which ends early or
+ * holds more fails the request, rather than stalling it or sending a truncated
+ * body. Like any stream body it can only be sent once.
+ * 
+ * Unlike {@link InputStreamBody}, the stream is not closed once sent. It
+ * belongs to the caller, who must close it whether or not the request
+ * succeeds.
+ */
+public class SizedInputStreamBody extends InputStreamBody {
+
+	/**
+	 * Size of the buffer used to copy the stream.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The number of bytes the stream will provide.
+	 */
+	private final long length;
+
+	/**
+	 * The character set of the content, or null if it is not text.
+	 */
+	private final String charset;
+
+	/**
+	 * @param in
+	 *          the stream to send
+	 * @param length
+	 *          the number of bytes the stream will provide
+	 * @param mimeType
+	 *          the MIME type of the content
+	 * @param charset
+	 *          the character set of the content, or null if it is not text
+	 * @param filename
+	 *          the filename to send with the part
+	 */
+	public SizedInputStreamBody(final InputStream in, final long length,
+			final String mimeType, final String charset, final String filename)
+	{
+		super(in, mimeType, filename);
+
+		if (length < 0) {
+			throw new IllegalArgumentException("Length must not be negative: " + length);
+		}
+
+		this.length = length;
+		this.charset = charset;
+	}
+
+	@Override
+	public void writeTo(final OutputStream out) throws IOException
+	{
+		if (out == null) {
+			throw new IllegalArgumentException("Output stream may not be null");
+		}
+
+		final InputStream in = getInputStream();
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		long remaining = length;
+
+		while (remaining > 0) {
+			final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+
+			if (read == -1) {
+				throw new IOException("Stream ended " + remaining + " bytes short of the declared length "
+						+ length);
+			}
+
+			out.write(buffer, 0, read);
+			remaining -= read;
+		}
+
+		if (in.read() != -1) {
+			throw new IOException("Stream holds more than the declared length " + length);
+		}
+
+		out.flush();
+	}
+
+	@Override
+	public long getContentLength()
+	{
+		return length;
+	}
+
+	@Override
+	public String getCharset()
+	{
+		return charset;
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import com.surevine.alfresco.limit.RequestThrottle;
+
+/**
+ * Keeps a request counted by the {@link RequestThrottle} until its response
+ * body has been read to the end, closed or consumed, so that the time spent
+ * streaming a large body counts as in flight.
+ * 
+ * As a {@link ConnectionReleaseTrigger} it also lets a reader abandoning the
+ * body abort the request, rather than download the rest of it.
+ */
+class ThrottledEntity extends HttpEntityWrapper implements ConnectionReleaseTrigger
+{
+	/**
+	 * The throttle to release.
+	 */
+	private final RequestThrottle throttle;
+
+	/**
+	 * The request the body answers.
+	 */
+	private final HttpUriRequest request;
+
+	/**
+	 * The status code of the response.
+	 */
+	private final int status;
+
+	/**
+	 * How long the response headers took to arrive.
+	 */
+	private final long latencyNanos;
+
+	/**
+	 * Set once the throttle has been released.
+	 */
+	private final AtomicBoolean released = new AtomicBoolean();
+
+	/**
+	 * @param wrapped
+	 *          the response body
+	 * @param throttle
+	 *          the throttle to release
+	 * @param request
+	 *          the request the body answers
+	 * @param status
+	 *          the status code of the response
+	 * @param latencyNanos
+	 *          how long the response headers took to arrive
+	 */
+	ThrottledEntity(final HttpEntity wrapped, final RequestThrottle throttle, final HttpUriRequest request,
+			final int status, final long latencyNanos)
+	{
+		super(wrapped);
+		this.throttle = throttle;
+		this.request = request;
+		this.status = status;
+		this.latencyNanos = latencyNanos;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException
+	{
+		final InputStream content;
+
+		try {
+			content = wrappedEntity.getContent();
+		} catch (final IOException e) {
+			release();
+			throw e;
+		}
+
+		if (content == null) {
+			release();
+			return null;
+		}
+
+		return new ReleasingInputStream(content);
+	}
+
+	@Override
+	public void writeTo(final OutputStream out) throws IOException
+	{
+		try {
+			wrappedEntity.writeTo(out);
+		} finally {
+			release();
+		}
+	}
+
+	@Override
+	public void consumeContent() throws IOException
+	{
+		try {
+			wrappedEntity.consumeContent();
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Read the rest of the body so the connection can be reused.
+	 */
+	public void releaseConnection() throws IOException
+	{
+		consumeContent();
+	}
+
+	/**
+	 * Abort the request, closing its connection without reading the rest of
+	 * the body.
+	 */
+	public void abortConnection() throws IOException
+	{
+		try {
+			request.abort();
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Release the throttle, if not already done.
+	 */
+	private void release()
+	{
+		if (released.compareAndSet(false, true)) {
+			throttle.release(request, status, latencyNanos);
+		}
+	}
+
+	/**
+	 * Releases the throttle at the end of the body or when closed.
+	 */
+	private final class ReleasingInputStream extends FilterInputStream
+	{
+		ReleasingInputStream(final InputStream in)
+		{
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			final int b = super.read();
+
+			if (b < 0) {
+				release();
+			}
+
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException
+		{
+			final int n = super.read(b, off, len);
+
+			if (n < 0) {
+				release();
+			}
+
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			try {
+				super.close();
+			} finally {
+				release();
+			}
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.json.JSONException;
+
+/**
+ * A fast implementation of {@link JsonCodec} which works on UTF-8 bytes
+ * directly, rather than a character at a time through a Reader.
+ * 
+ * Decoding reads through its own buffer and builds the usual org.json values.
+ * Encoding writes straight to a byte buffer in UTF-8, escaping strings exactly
+ * as org.json does. Streams in other character sets are decoded by
+ * {@link OrgJsonCodec}.
+ */
+public class FastJsonCodec implements JsonCodec {
+
+	/**
+	 * Character set of encoded requests.
+	 */
+	private static final String CHARSET = "UTF-8";
+
+	/**
+	 * Decodes streams which are not UTF-8.
+	 */
+	private final JsonCodec fallback = new OrgJsonCodec();
+
+	public JsonParser createParser(final InputStream in, final String charset)
+			throws IOException
+	{
+		if (CHARSET.equalsIgnoreCase(charset) || "US-ASCII".equalsIgnoreCase(charset)) {
+			return new Utf8JsonParser(in);
+		}
+
+		return fallback.createParser(in, charset);
+	}
+
+	public byte[] encode(final Object value) throws JSONException
+	{
+		final Utf8JsonWriter writer = new Utf8JsonWriter();
+
+		writer.writeValue(value);
+
+		return writer.toByteArray();
+	}
+
+	public String getCharset()
+	{
+		return CHARSET;
+	}
+}
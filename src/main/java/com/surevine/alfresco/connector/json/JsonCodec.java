@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.json.JSONException;
+
+/**
+ * Decodes and encodes the JSON exchanged with Alfresco.
+ * 
+ * Whatever the implementation, values are always the org.json types callers
+ * already use: {@link org.json.JSONObject}, {@link org.json.JSONArray},
+ * String, Boolean, Number and {@link org.json.JSONObject#NULL}. Implementations
+ * must be thread safe.
+ * 
+ * @see JsonCodecs
+ */
+public interface JsonCodec {
+
+	/**
+	 * Start decoding a stream.
+	 * 
+	 * @param in
+	 *          the stream to read, which is not closed by the parser
+	 * @param charset
+	 *          the character set of the stream
+	 * @return A parser reading the stream
+	 * @throws IOException
+	 *           If the character set is not supported
+	 */
+	JsonParser createParser(InputStream in, String charset) throws IOException;
+
+	/**
+	 * Encode a value, typically a JSONObject or JSONArray.
+	 * 
+	 * @param value
+	 *          the value to encode
+	 * @return The encoded value, in the character set given by
+	 *         {@link #getCharset()}
+	 * @throws JSONException
+	 *           If the value cannot be encoded
+	 */
+	byte[] encode(Object value) throws JSONException;
+
+	/**
+	 * @return The character set of the bytes returned by {@link #encode(Object)}
+	 */
+	String getCharset();
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.json;
+
+import com.surevine.alfresco.PropertyException;
+import com.surevine.alfresco.PropertyWrapper;
+
+/**
+ * Chooses the {@link JsonCodec} the connectors use.
+ */
+public final class JsonCodecs {
+
+	/**
+	 * The codec used unless another is configured.
+	 */
+	public static final JsonCodec DEFAULT = new OrgJsonCodec();
+
+	/**
+	 * The fast codec.
+	 */
+	public static final JsonCodec FAST = new FastJsonCodec();
+
+	private JsonCodecs()
+	{
+	}
+
+	/**
+	 * Create the codec named by <code>alfresco.json.codec</code>: "org.json"
+	 * (the default), "fast", or the name of a class implementing
+	 * {@link JsonCodec} with a public no argument constructor.
+	 * 
+	 * @param properties
+	 *          the connector configuration
+	 * @return The codec
+	 * @throws PropertyException
+	 *           If the codec cannot be created
+	 */
+	public static JsonCodec create(final PropertyWrapper properties) throws PropertyException
+	{
+		final String name = properties.getProperty("alfresco.json.codec", "org.json").trim();
+
+		if (name.equals("org.json")) {
+			return DEFAULT;
+		} else if (name.equals("fast")) {
+			return FAST;
+		}
+
+		try {
+			return (JsonCodec) Class.forName(name).newInstance();
+		} catch (final ClassNotFoundException e) {
+			throw new PropertyException("Unknown JSON codec: " + name, e);
+		} catch (final InstantiationException e) {
+			throw new PropertyException("Cannot create JSON codec: " + name, e);
+		} catch (final IllegalAccessException e) {
+			throw new PropertyException("Cannot create JSON codec: " + name, e);
+		} catch (final ClassCastException e) {
+			throw new PropertyException(name + " is not a JSON codec", e);
+		}
+	}
+}
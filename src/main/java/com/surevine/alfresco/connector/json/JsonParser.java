@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.json;
+
+import org.json.JSONException;
+
+/**
+ * Reads JSON values from a stream one at a time, with enough access to the
+ * structural characters in between to skip through a document without
+ * decoding all of it.
+ * 
+ * The methods mirror those of {@link org.json.JSONTokener}.
+ */
+public interface JsonParser {
+
+	/**
+	 * @return The next character which is not white space, or 0 at the end of
+	 *         the stream
+	 * @throws JSONException
+	 *           If the stream cannot be read
+	 */
+	char nextClean() throws JSONException;
+
+	/**
+	 * Step back one character, so that the last character returned by
+	 * {@link #nextClean()} is read again. Only one step back is allowed.
+	 * 
+	 * @throws JSONException
+	 *           If the parser cannot step back
+	 */
+	void back() throws JSONException;
+
+	/**
+	 * @return The next value: a JSONObject, JSONArray, String, Boolean, Number or
+	 *         JSONObject.NULL
+	 * @throws JSONException
+	 *           If the stream does not hold a valid value
+	 */
+	Object nextValue() throws JSONException;
+
+	/**
+	 * Read the next value without decoding it.
+	 * 
+	 * @return The UTF-8 JSON text of the next value
+	 * @throws JSONException
+	 *           If the stream does not hold a valid value
+	 */
+	byte[] nextRawValue() throws JSONException;
+
+	/**
+	 * @param message
+	 *          what went wrong
+	 * @return An exception describing a syntax error at the current position
+	 */
+	JSONException syntaxError(String message);
+}
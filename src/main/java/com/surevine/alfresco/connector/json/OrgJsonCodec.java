@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.json;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * The org.json implementation of {@link JsonCodec}, matching what the
+ * connectors have always done.
+ * 
+ * Requests are encoded with {@link Object#toString()} in ISO-8859-1, the
+ * default character set of HttpClient's StringEntity.
+ */
+public class OrgJsonCodec implements JsonCodec {
+
+	/**
+	 * Character set of encoded requests.
+	 */
+	private static final String CHARSET = "ISO-8859-1";
+
+	public JsonParser createParser(final InputStream in, final String charset)
+			throws IOException
+	{
+		return new TokenerParser(new JSONTokener(new BufferedReader(new InputStreamReader(in,
+				charset))));
+	}
+
+	public byte[] encode(final Object value) throws JSONException
+	{
+		try {
+			return String.valueOf(value).getBytes(CHARSET);
+		} catch (final UnsupportedEncodingException e) {
+			throw new JSONException(e);
+		}
+	}
+
+	public String getCharset()
+	{
+		return CHARSET;
+	}
+
+	/**
+	 * Adapts a {@link JSONTokener} to {@link JsonParser}.
+	 */
+	private static class TokenerParser implements JsonParser {
+
+		/**
+		 * The tokener doing the work.
+		 */
+		private final JSONTokener tokener;
+
+		/**
+		 * @param tokener
+		 *          the tokener doing the work
+		 */
+		TokenerParser(final JSONTokener tokener)
+		{
+			this.tokener = tokener;
+		}
+
+		public char nextClean() throws JSONException
+		{
+			return tokener.nextClean();
+		}
+
+		public void back() throws JSONException
+		{
+			tokener.back();
+		}
+
+		public Object nextValue() throws JSONException
+		{
+			return tokener.nextValue();
+		}
+
+		public byte[] nextRawValue() throws JSONException
+		{
+			final Object value = tokener.nextValue();
+			final String text = value instanceof String ? JSONObject.quote((String) value) : value.toString();
+
+			try {
+				return text.getBytes("UTF-8");
+			} catch (final UnsupportedEncodingException e) {
+				throw new JSONException(e);
+			}
+		}
+
+		public JSONException syntaxError(final String message)
+		{
+			return tokener.syntaxError(message);
+		}
+	}
+}
@@ -0,0 +1,523 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.json;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A JSON object kept as its UTF-8 text, whose top level fields are only
+ * found and decoded when asked for.
+ * 
+ * Holding the text costs a fraction of the memory of a decoded
+ * {@link JSONObject}, so this suits records of which only a few fields are
+ * read. Each lookup scans the text, so callers reading a field repeatedly
+ * should keep the result. Instances are immutable and thread safe.
+ */
+public final class RawJson {
+
+	/**
+	 * The character set of the text.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Holds the text.
+	 */
+	private final byte[] bytes;
+
+	/**
+	 * Where the object starts in {@link #bytes}.
+	 */
+	private final int start;
+
+	/**
+	 * Where the object ends in {@link #bytes}, exclusive.
+	 */
+	private final int end;
+
+	/**
+	 * @param bytes
+	 *          the UTF-8 text of a JSON object, which must not be changed
+	 *          afterwards
+	 */
+	public RawJson(final byte[] bytes)
+	{
+		this(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * @param bytes
+	 *          holds the text
+	 * @param start
+	 *          where the object starts
+	 * @param end
+	 *          where the object ends, exclusive
+	 */
+	private RawJson(final byte[] bytes, final int start, final int end)
+	{
+		this.bytes = bytes;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * @param key
+	 *          a top level key
+	 * @return True if the object has the key, even if its value is null
+	 */
+	public boolean has(final String key)
+	{
+		return find(key) >= 0;
+	}
+
+	/**
+	 * @param key
+	 *          a top level key
+	 * @return The value of the key as a String, or null if it is missing or
+	 *         null. Values which are not strings are given as their JSON text.
+	 */
+	public String getString(final String key)
+	{
+		final int pos = find(key);
+
+		if (pos < 0 || isNull(pos)) {
+			return null;
+		}
+
+		return bytes[pos] == '"' ? decodeString(pos) : text(pos, skipValue(pos));
+	}
+
+	/**
+	 * @param key
+	 *          a top level key
+	 * @param defaultValue
+	 *          the value to use if the key is missing or not a boolean
+	 * @return The value of the key
+	 */
+	public boolean getBoolean(final String key, final boolean defaultValue)
+	{
+		final String value = getString(key);
+
+		if ("true".equalsIgnoreCase(value)) {
+			return true;
+		} else if ("false".equalsIgnoreCase(value)) {
+			return false;
+		}
+
+		return defaultValue;
+	}
+
+	/**
+	 * @param key
+	 *          a top level key
+	 * @param defaultValue
+	 *          the value to use if the key is missing or not a whole number
+	 * @return The value of the key
+	 */
+	public long getLong(final String key, final long defaultValue)
+	{
+		final String value = getString(key);
+
+		if (value != null) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch (final NumberFormatException e) {
+				// use the default
+			}
+		}
+
+		return defaultValue;
+	}
+
+	/**
+	 * @param key
+	 *          a top level key
+	 * @return The value of the key, or null if it is missing or not an object
+	 */
+	public RawJson getObject(final String key)
+	{
+		final int pos = find(key);
+
+		if (pos < 0 || bytes[pos] != '{') {
+			return null;
+		}
+
+		return new RawJson(bytes, pos, skipValue(pos));
+	}
+
+	/**
+	 * @param key
+	 *          a top level key
+	 * @return The objects in the array value of the key, which is empty if the
+	 *         key is missing or not an array. Other values in the array are
+	 *         skipped.
+	 */
+	public List<RawJson> getObjects(final String key)
+	{
+		final List<RawJson> objects = new ArrayList<RawJson>();
+
+		for (final int pos : findElements(key)) {
+			if (bytes[pos] == '{') {
+				objects.add(new RawJson(bytes, pos, skipValue(pos)));
+			}
+		}
+
+		return objects;
+	}
+
+	/**
+	 * @param key
+	 *          a top level key
+	 * @return The strings in the array value of the key, which is empty if the
+	 *         key is missing or not an array. Other values in the array are
+	 *         skipped.
+	 */
+	public List<String> getStrings(final String key)
+	{
+		final List<String> strings = new ArrayList<String>();
+
+		for (final int pos : findElements(key)) {
+			if (bytes[pos] == '"') {
+				strings.add(decodeString(pos));
+			}
+		}
+
+		return strings;
+	}
+
+	/**
+	 * @return The size of the text in bytes
+	 */
+	public int getSize()
+	{
+		return end - start;
+	}
+
+	/**
+	 * Decode the whole object.
+	 * 
+	 * @return The object
+	 * @throws JSONException
+	 *           If the text is not a valid object
+	 */
+	public JSONObject toJSONObject() throws JSONException
+	{
+		final Object value = new Utf8JsonParser(new ByteArrayInputStream(bytes, start, end - start))
+				.nextValue();
+
+		if (!(value instanceof JSONObject)) {
+			throw new JSONException("Not a JSON object: " + this);
+		}
+
+		return (JSONObject) value;
+	}
+
+	/**
+	 * @return The JSON text
+	 */
+	@Override
+	public String toString()
+	{
+		return text(start, end);
+	}
+
+	/**
+	 * Find the value of a top level key.
+	 * 
+	 * @param key
+	 *          the key
+	 * @return The position of the value, or -1 if the key is missing
+	 */
+	private int find(final String key)
+	{
+		final byte[] wanted = key.getBytes(UTF8);
+		int pos = skipSpace(start);
+
+		if (pos >= end || bytes[pos] != '{') {
+			return -1;
+		}
+
+		pos = skipSpace(pos + 1);
+
+		while (pos < end && bytes[pos] == '"') {
+			final int keyEnd = skipValue(pos);
+			final boolean match = keyMatches(pos, keyEnd, wanted, key);
+
+			pos = skipSpace(keyEnd);
+
+			if (pos >= end || bytes[pos] != ':') {
+				return -1;
+			}
+
+			pos = skipSpace(pos + 1);
+
+			if (match) {
+				return pos < end ? pos : -1;
+			}
+
+			pos = skipSpace(skipValue(pos));
+
+			if (pos >= end || bytes[pos] != ',') {
+				return -1;
+			}
+
+			pos = skipSpace(pos + 1);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @param key
+	 *          a top level key
+	 * @return The positions of the elements of the array value of the key
+	 */
+	private List<Integer> findElements(final String key)
+	{
+		final int pos = find(key);
+
+		if (pos < 0 || bytes[pos] != '[') {
+			return Collections.emptyList();
+		}
+
+		final List<Integer> elements = new ArrayList<Integer>();
+		int i = skipSpace(pos + 1);
+
+		while (i < end && bytes[i] != ']') {
+			elements.add(i);
+			i = skipSpace(skipValue(i));
+
+			if (i < end && bytes[i] == ',') {
+				i = skipSpace(i + 1);
+			}
+		}
+
+		return elements;
+	}
+
+	/**
+	 * @param from
+	 *          the opening quote of a key
+	 * @param to
+	 *          just after its closing quote
+	 * @param wanted
+	 *          the UTF-8 bytes of the key wanted
+	 * @param key
+	 *          the key wanted
+	 * @return True if the key is the one wanted
+	 */
+	private boolean keyMatches(final int from, final int to, final byte[] wanted, final String key)
+	{
+		final int length = to - from - 2;
+		boolean escaped = false;
+
+		for (int i = from + 1; i < to - 1; i++) {
+			if (bytes[i] == '\\') {
+				escaped = true;
+				break;
+			}
+		}
+
+		if (escaped) {
+			return key.equals(decodeString(from));
+		}
+
+		if (length != wanted.length) {
+			return false;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (bytes[from + 1 + i] != wanted[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param pos
+	 *          the start of a value
+	 * @return True if the value is null
+	 */
+	private boolean isNull(final int pos)
+	{
+		return pos + 4 <= end && bytes[pos] == 'n' && bytes[pos + 1] == 'u' && bytes[pos + 2] == 'l'
+				&& bytes[pos + 3] == 'l';
+	}
+
+	/**
+	 * @param pos
+	 *          a position in the text
+	 * @return The first position from there which is not white space
+	 */
+	private int skipSpace(final int pos)
+	{
+		int i = pos;
+
+		while (i < end && bytes[i] >= 0 && bytes[i] <= ' ') {
+			i++;
+		}
+
+		return i;
+	}
+
+	/**
+	 * @param pos
+	 *          the start of a value
+	 * @return The position just after the value
+	 */
+	private int skipValue(final int pos)
+	{
+		int i = pos;
+		int depth = 0;
+
+		while (i < end) {
+			final byte b = bytes[i];
+
+			if (b == '"') {
+				i = skipString(i);
+
+				if (depth == 0) {
+					return i;
+				}
+
+				continue;
+			} else if (b == '{' || b == '[') {
+				depth++;
+			} else if (b == '}' || b == ']') {
+				if (depth == 0) {
+					return i;
+				}
+
+				depth--;
+
+				if (depth == 0) {
+					return i + 1;
+				}
+			} else if (depth == 0 && (b == ',' || b == ':' || (b >= 0 && b <= ' '))) {
+				return i;
+			}
+
+			i++;
+		}
+
+		return i;
+	}
+
+	/**
+	 * @param pos
+	 *          the opening quote of a string
+	 * @return The position just after its closing quote
+	 */
+	private int skipString(final int pos)
+	{
+		int i = pos + 1;
+
+		while (i < end && bytes[i] != '"') {
+			i += bytes[i] == '\\' ? 2 : 1;
+		}
+
+		return Math.min(i + 1, end);
+	}
+
+	/**
+	 * @param pos
+	 *          the opening quote of a string
+	 * @return The decoded string
+	 */
+	private String decodeString(final int pos)
+	{
+		final int close = skipString(pos) - 1;
+		final String raw = text(pos + 1, close);
+
+		if (raw.indexOf('\\') < 0) {
+			return raw;
+		}
+
+		final StringBuilder sb = new StringBuilder(raw.length());
+
+		for (int i = 0; i < raw.length(); i++) {
+			final char c = raw.charAt(i);
+
+			if (c != '\\' || i + 1 == raw.length()) {
+				sb.append(c);
+				continue;
+			}
+
+			final char escape = raw.charAt(++i);
+
+			switch (escape) {
+				case 'b':
+					sb.append('\b');
+					break;
+				case 't':
+					sb.append('\t');
+					break;
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'f':
+					sb.append('\f');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				case 'u':
+					if (i + 4 < raw.length()) {
+						try {
+							sb.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+							i += 4;
+							break;
+						} catch (final NumberFormatException e) {
+							// keep it as it is
+						}
+					}
+					sb.append(escape);
+					break;
+				default:
+					sb.append(escape);
+			}
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * @param from
+	 *          where the text starts
+	 * @param to
+	 *          where the text ends, exclusive
+	 * @return The decoded text
+	 */
+	private String text(final int from, final int to)
+	{
+		return new String(bytes, from, to - from, UTF8);
+	}
+}
@@ -0,0 +1,584 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Parses JSON from a stream of UTF-8 bytes, producing the same values as
+ * {@link org.json.JSONTokener#nextValue()}: unquoted words are accepted, and
+ * numbers become an Integer, Long or Double depending on their size.
+ */
+class Utf8JsonParser implements JsonParser {
+
+	/**
+	 * Size of the read buffer.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Marks the end of the stream.
+	 */
+	private static final int EOF = -1;
+
+	/**
+	 * The stream being parsed.
+	 */
+	private final InputStream in;
+
+	/**
+	 * Bytes read from the stream.
+	 */
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	/**
+	 * The position of the next byte in the buffer.
+	 */
+	private int pos;
+
+	/**
+	 * The number of bytes in the buffer.
+	 */
+	private int limit;
+
+	/**
+	 * The number of bytes consumed before the start of the buffer.
+	 */
+	private long offset;
+
+	/**
+	 * A byte stepped back over, to be read again, or EOF if there is none.
+	 */
+	private int pushedBack = EOF;
+
+	/**
+	 * The last byte read, or EOF.
+	 */
+	private int last = EOF;
+
+	/**
+	 * Characters of the string being decoded.
+	 */
+	private char[] chars = new char[64];
+
+	/**
+	 * Bytes of the raw value being copied.
+	 */
+	private byte[] raw = new byte[256];
+
+	/**
+	 * @param in
+	 *          the stream to parse
+	 */
+	Utf8JsonParser(final InputStream in)
+	{
+		this.in = in;
+	}
+
+	public char nextClean() throws JSONException
+	{
+		int c;
+
+		do {
+			c = read();
+		} while (c != EOF && c <= ' ');
+
+		return c == EOF ? 0 : (char) c;
+	}
+
+	public void back() throws JSONException
+	{
+		if (pushedBack != EOF || last == EOF) {
+			throw new JSONException("Stepping back two steps is not supported");
+		}
+
+		pushedBack = last;
+	}
+
+	public Object nextValue() throws JSONException
+	{
+		final char c = nextClean();
+
+		switch (c) {
+			case '"':
+				return readString();
+			case '{':
+				return readObject();
+			case '[':
+				return readArray();
+			default:
+				return readWord(c);
+		}
+	}
+
+	public byte[] nextRawValue() throws JSONException
+	{
+		int c = nextClean();
+		int length = 0;
+
+		if (c == 0) {
+			throw syntaxError("Missing value");
+		}
+
+		if (c == '{' || c == '[') {
+			int depth = 0;
+
+			do {
+				raw = appendRaw(raw, length++, c);
+
+				if (c == '"') {
+					length = copyRawString(length);
+				} else if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					depth--;
+				}
+
+				if (depth > 0) {
+					c = read();
+
+					if (c == EOF) {
+						throw syntaxError("Unterminated " + (raw[0] == '{' ? "object" : "array"));
+					}
+				}
+			} while (depth > 0);
+		} else if (c == '"') {
+			raw = appendRaw(raw, length++, c);
+			length = copyRawString(length);
+		} else {
+			while (c != EOF && c > ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
+				raw = appendRaw(raw, length++, c);
+				c = read();
+			}
+
+			if (c != EOF) {
+				back();
+			}
+
+			if (length == 0) {
+				throw syntaxError("Missing value");
+			}
+		}
+
+		final byte[] result = new byte[length];
+		System.arraycopy(raw, 0, result, 0, length);
+
+		return result;
+	}
+
+	/**
+	 * Copy the rest of a string into {@link #raw}, having copied its opening
+	 * quote.
+	 * 
+	 * @param length
+	 *          the number of bytes copied so far
+	 * @return The number of bytes copied, including the closing quote
+	 * @throws JSONException
+	 *           If the string is not terminated
+	 */
+	private int copyRawString(final int length) throws JSONException
+	{
+		int copied = length;
+		int c;
+
+		do {
+			c = read();
+
+			if (c == EOF) {
+				throw syntaxError("Unterminated string");
+			}
+
+			raw = appendRaw(raw, copied++, c);
+
+			if (c == '\\') {
+				final int escaped = read();
+
+				if (escaped == EOF) {
+					throw syntaxError("Unterminated string");
+				}
+
+				raw = appendRaw(raw, copied++, escaped);
+			}
+		} while (c != '"');
+
+		return copied;
+	}
+
+	/**
+	 * @param target
+	 *          the buffer to append to
+	 * @param index
+	 *          where to put the byte
+	 * @param b
+	 *          the byte
+	 * @return The buffer, which is a larger copy if it was full
+	 */
+	private static byte[] appendRaw(final byte[] target, final int index, final int b)
+	{
+		byte[] result = target;
+
+		if (index == result.length) {
+			result = new byte[result.length * 2];
+			System.arraycopy(target, 0, result, 0, target.length);
+		}
+
+		result[index] = (byte) b;
+
+		return result;
+	}
+
+	public JSONException syntaxError(final String message)
+	{
+		return new JSONException(message + " at byte " + (offset + pos));
+	}
+
+	/**
+	 * Read an object, having read its opening brace.
+	 * 
+	 * @return The object
+	 * @throws JSONException
+	 *           If the object is not valid
+	 */
+	private JSONObject readObject() throws JSONException
+	{
+		final JSONObject object = new JSONObject();
+
+		char c = nextClean();
+
+		while (c != '}') {
+			final String key;
+
+			if (c == '"') {
+				key = readString();
+			} else if (c == 0) {
+				throw syntaxError("A JSONObject text must end with '}'");
+			} else {
+				key = readWord(c).toString();
+			}
+
+			if (nextClean() != ':') {
+				throw syntaxError("Expected a ':' after a key");
+			}
+
+			object.put(key, nextValue());
+
+			c = nextClean();
+
+			if (c == ',' || c == ';') {
+				c = nextClean();
+			} else if (c != '}') {
+				throw syntaxError("Expected a ',' or '}'");
+			}
+		}
+
+		return object;
+	}
+
+	/**
+	 * Read an array, having read its opening bracket.
+	 * 
+	 * @return The array
+	 * @throws JSONException
+	 *           If the array is not valid
+	 */
+	private JSONArray readArray() throws JSONException
+	{
+		final JSONArray array = new JSONArray();
+
+		char c = nextClean();
+
+		while (c != ']') {
+			if (c == 0) {
+				throw syntaxError("A JSONArray text must end with ']'");
+			}
+
+			back();
+			array.put(nextValue());
+
+			c = nextClean();
+
+			if (c == ',' || c == ';') {
+				c = nextClean();
+			} else if (c != ']') {
+				throw syntaxError("Expected a ',' or ']'");
+			}
+		}
+
+		return array;
+	}
+
+	/**
+	 * Read an unquoted word, such as a number, true, false or null.
+	 * 
+	 * @param first
+	 *          the first character of the word, already read
+	 * @return The value of the word
+	 * @throws JSONException
+	 *           If there is no word
+	 */
+	private Object readWord(final char first) throws JSONException
+	{
+		int length = 0;
+		int c = first == 0 ? EOF : first;
+
+		while (c != EOF && c > ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
+			append(length++, (char) c);
+			c = read();
+		}
+
+		if (c != EOF) {
+			back();
+		}
+
+		if (length == 0) {
+			throw syntaxError("Missing value");
+		}
+
+		final String word = new String(chars, 0, length);
+
+		if (word.equalsIgnoreCase("true")) {
+			return Boolean.TRUE;
+		} else if (word.equalsIgnoreCase("false")) {
+			return Boolean.FALSE;
+		} else if (word.equalsIgnoreCase("null")) {
+			return JSONObject.NULL;
+		}
+
+		if ((first >= '0' && first <= '9') || first == '-' || first == '.' || first == '+') {
+			try {
+				return Integer.valueOf(word);
+			} catch (final NumberFormatException e) {
+				try {
+					return Long.valueOf(word);
+				} catch (final NumberFormatException e2) {
+					try {
+						return Double.valueOf(word);
+					} catch (final NumberFormatException e3) {
+						// not a number after all
+					}
+				}
+			}
+		}
+
+		return word;
+	}
+
+	/**
+	 * Read a string, having read its opening quote.
+	 * 
+	 * @return The string
+	 * @throws JSONException
+	 *           If the string is not valid
+	 */
+	private String readString() throws JSONException
+	{
+		int length = 0;
+
+		while (true) {
+			// copy plain ASCII straight out of the buffer
+			if (pushedBack == EOF) {
+				final int end = limit;
+				int i = pos;
+
+				while (i < end) {
+					final byte b = buffer[i];
+
+					if (b == '"' || b == '\\' || b < 0) {
+						break;
+					}
+
+					append(length++, (char) b);
+					i++;
+				}
+
+				pos = i;
+			}
+
+			final int c = read();
+
+			if (c == '"') {
+				return new String(chars, 0, length);
+			} else if (c == '\\') {
+				append(length++, readEscape());
+			} else if (c == EOF) {
+				throw syntaxError("Unterminated string");
+			} else if (c < 0x80) {
+				append(length++, (char) c);
+			} else {
+				final int codePoint = readMultiByte(c);
+
+				if (codePoint >= 0x10000) {
+					append(length++, (char) (0xD800 + ((codePoint - 0x10000) >> 10)));
+					append(length++, (char) (0xDC00 + ((codePoint - 0x10000) & 0x3FF)));
+				} else {
+					append(length++, (char) codePoint);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read an escape sequence, having read its backslash.
+	 * 
+	 * @return The escaped character
+	 * @throws JSONException
+	 *           If the escape is not valid
+	 */
+	private char readEscape() throws JSONException
+	{
+		final int c = read();
+
+		switch (c) {
+			case 'b':
+				return '\b';
+			case 't':
+				return '\t';
+			case 'n':
+				return '\n';
+			case 'f':
+				return '\f';
+			case 'r':
+				return '\r';
+			case 'u':
+				int value = 0;
+
+				for (int i = 0; i < 4; i++) {
+					final int digit = Character.digit(read(), 16);
+
+					if (digit < 0) {
+						throw syntaxError("Illegal escape.");
+					}
+
+					value = (value << 4) | digit;
+				}
+
+				return (char) value;
+			case '"':
+			case '\'':
+			case '\\':
+			case '/':
+				return (char) c;
+			default:
+				throw syntaxError("Illegal escape.");
+		}
+	}
+
+	/**
+	 * Decode a character of more than one byte. Malformed input becomes
+	 * U+FFFD, as it would with an InputStreamReader.
+	 * 
+	 * @param first
+	 *          the first byte, already read
+	 * @return The code point
+	 * @throws JSONException
+	 *           If the stream cannot be read
+	 */
+	private int readMultiByte(final int first) throws JSONException
+	{
+		final int extra;
+		int codePoint;
+
+		if ((first & 0xE0) == 0xC0) {
+			extra = 1;
+			codePoint = first & 0x1F;
+		} else if ((first & 0xF0) == 0xE0) {
+			extra = 2;
+			codePoint = first & 0x0F;
+		} else if ((first & 0xF8) == 0xF0) {
+			extra = 3;
+			codePoint = first & 0x07;
+		} else {
+			return 0xFFFD;
+		}
+
+		for (int i = 0; i < extra; i++) {
+			final int c = read();
+
+			if (c == EOF || (c & 0xC0) != 0x80) {
+				if (c != EOF) {
+					back();
+				}
+				return 0xFFFD;
+			}
+
+			codePoint = (codePoint << 6) | (c & 0x3F);
+		}
+
+		return codePoint;
+	}
+
+	/**
+	 * @param index
+	 *          where to put the character
+	 * @param c
+	 *          a character of the string being decoded
+	 */
+	private void append(final int index, final char c)
+	{
+		if (index == chars.length) {
+			final char[] larger = new char[chars.length * 2];
+			System.arraycopy(chars, 0, larger, 0, chars.length);
+			chars = larger;
+		}
+
+		chars[index] = c;
+	}
+
+	/**
+	 * @return The next byte, or EOF at the end of the stream
+	 * @throws JSONException
+	 *           If the stream cannot be read
+	 */
+	private int read() throws JSONException
+	{
+		if (pushedBack != EOF) {
+			last = pushedBack;
+			pushedBack = EOF;
+			return last;
+		}
+
+		if (pos == limit) {
+			offset += limit;
+			pos = 0;
+
+			try {
+				limit = Math.max(in.read(buffer), 0);
+			} catch (final IOException e) {
+				throw new JSONException(e);
+			}
+
+			if (limit == 0) {
+				last = EOF;
+				return EOF;
+			}
+		}
+
+		last = buffer[pos++] & 0xFF;
+
+		return last;
+	}
+}
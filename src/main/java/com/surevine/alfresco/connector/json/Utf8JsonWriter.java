@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.json;
+
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+/**
+ * Writes JSON values straight to a growing byte buffer in UTF-8, producing
+ * the same text as org.json's toString methods without building any Strings.
+ */
+class Utf8JsonWriter {
+
+	/**
+	 * Hex digits for escapes.
+	 */
+	private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+	/**
+	 * The character set written.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The encoded bytes.
+	 */
+	private byte[] buffer = new byte[256];
+
+	/**
+	 * The number of bytes in the buffer.
+	 */
+	private int length;
+
+	/**
+	 * @return The encoded bytes
+	 */
+	byte[] toByteArray()
+	{
+		final byte[] result = new byte[length];
+		System.arraycopy(buffer, 0, result, 0, length);
+
+		return result;
+	}
+
+	/**
+	 * @param value
+	 *          a value to encode
+	 * @throws JSONException
+	 *           If the value cannot be encoded
+	 */
+	void writeValue(final Object value) throws JSONException
+	{
+		if (value == null || value == JSONObject.NULL) {
+			writeAscii("null");
+		} else if (value instanceof String) {
+			writeString((String) value);
+		} else if (value.getClass() == JSONObject.class) {
+			writeObject((JSONObject) value);
+		} else if (value.getClass() == JSONArray.class) {
+			writeArray((JSONArray) value);
+		} else if (value instanceof Number) {
+			writeAscii(JSONObject.numberToString((Number) value));
+		} else if (value instanceof Boolean) {
+			writeAscii(value.toString());
+		} else if (value instanceof JSONString) {
+			writeRaw(((JSONString) value).toJSONString());
+		} else if (value instanceof JSONObject || value instanceof JSONArray) {
+			// subclasses may write themselves differently
+			writeRaw(value.toString());
+		} else if (value instanceof Map) {
+			writeObject(new JSONObject((Map) value));
+		} else if (value instanceof Collection) {
+			writeArray(new JSONArray((Collection) value));
+		} else if (value.getClass().isArray()) {
+			writeArray(new JSONArray(value));
+		} else {
+			writeString(value.toString());
+		}
+	}
+
+	/**
+	 * @param object
+	 *          an object to encode
+	 * @throws JSONException
+	 *           If the object cannot be encoded
+	 */
+	private void writeObject(final JSONObject object) throws JSONException
+	{
+		write('{');
+
+		final Iterator<?> keys = object.keys();
+		boolean first = true;
+
+		while (keys.hasNext()) {
+			final String key = keys.next().toString();
+
+			if (!first) {
+				write(',');
+			}
+
+			first = false;
+			writeString(key);
+			write(':');
+			writeValue(object.opt(key));
+		}
+
+		write('}');
+	}
+
+	/**
+	 * @param array
+	 *          an array to encode
+	 * @throws JSONException
+	 *           If the array cannot be encoded
+	 */
+	private void writeArray(final JSONArray array) throws JSONException
+	{
+		write('[');
+
+		for (int i = 0; i < array.length(); i++) {
+			if (i > 0) {
+				write(',');
+			}
+
+			writeValue(array.opt(i));
+		}
+
+		write(']');
+	}
+
+	/**
+	 * Write a quoted string, escaped as {@link JSONObject#quote(String)} does.
+	 * 
+	 * @param string
+	 *          the string to write
+	 */
+	private void writeString(final String string)
+	{
+		ensureCapacity(string.length() + 2);
+		write('"');
+
+		char previous = 0;
+
+		for (int i = 0; i < string.length(); i++) {
+			final char c = string.charAt(i);
+
+			switch (c) {
+				case '\\':
+				case '"':
+					write('\\');
+					write(c);
+					break;
+				case '/':
+					if (previous == '<') {
+						write('\\');
+					}
+					write(c);
+					break;
+				case '\b':
+					write('\\');
+					write('b');
+					break;
+				case '\t':
+					write('\\');
+					write('t');
+					break;
+				case '\n':
+					write('\\');
+					write('n');
+					break;
+				case '\f':
+					write('\\');
+					write('f');
+					break;
+				case '\r':
+					write('\\');
+					write('r');
+					break;
+				default:
+					if (c < ' ' || (c >= 0x80 && c < 0xA0) || (c >= 0x2000 && c < 0x2100)) {
+						write('\\');
+						write('u');
+						write(HEX[(c >> 12) & 0xF]);
+						write(HEX[(c >> 8) & 0xF]);
+						write(HEX[(c >> 4) & 0xF]);
+						write(HEX[c & 0xF]);
+					} else if (c < 0x80) {
+						write(c);
+					} else if (c < 0x800) {
+						write(0xC0 | (c >> 6));
+						write(0x80 | (c & 0x3F));
+					} else if (Character.isHighSurrogate(c) && i + 1 < string.length()
+							&& Character.isLowSurrogate(string.charAt(i + 1))) {
+						final int codePoint = Character.toCodePoint(c, string.charAt(++i));
+
+						write(0xF0 | (codePoint >> 18));
+						write(0x80 | ((codePoint >> 12) & 0x3F));
+						write(0x80 | ((codePoint >> 6) & 0x3F));
+						write(0x80 | (codePoint & 0x3F));
+					} else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+						// unpaired, as String.getBytes would encode it
+						write('?');
+					} else {
+						write(0xE0 | (c >> 12));
+						write(0x80 | ((c >> 6) & 0x3F));
+						write(0x80 | (c & 0x3F));
+					}
+			}
+
+			previous = c;
+		}
+
+		write('"');
+	}
+
+	/**
+	 * @param text
+	 *          JSON text to write as it is
+	 */
+	private void writeRaw(final String text)
+	{
+		for (int i = 0; i < text.length(); i++) {
+			final char c = text.charAt(i);
+
+			if (c < 0x80) {
+				write(c);
+			} else {
+				// rare, so let the JDK deal with surrogates and the like
+				final byte[] bytes = text.substring(i).getBytes(UTF8);
+
+				ensureCapacity(bytes.length);
+				System.arraycopy(bytes, 0, buffer, length, bytes.length);
+				length += bytes.length;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @param text
+	 *          ASCII text to write
+	 */
+	private void writeAscii(final String text)
+	{
+		ensureCapacity(text.length());
+
+		for (int i = 0; i < text.length(); i++) {
+			buffer[length++] = (byte) text.charAt(i);
+		}
+	}
+
+	/**
+	 * @param b
+	 *          a byte to write
+	 */
+	private void write(final int b)
+	{
+		if (length == buffer.length) {
+			ensureCapacity(1);
+		}
+
+		buffer[length++] = (byte) b;
+	}
+
+	/**
+	 * @param extra
+	 *          the number of bytes about to be written
+	 */
+	private void ensureCapacity(final int extra)
+	{
+		if (length + extra > buffer.length) {
+			final byte[] larger = new byte[Math.max(buffer.length * 2, length + extra)];
+			System.arraycopy(buffer, 0, larger, 0, length);
+			buffer = larger;
+		}
+	}
+}
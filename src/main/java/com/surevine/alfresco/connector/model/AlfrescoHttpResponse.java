@@ -21,20 +21,31 @@
 */
 package com.surevine.alfresco.connector.model;
 
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
 import com.surevine.alfresco.AlfrescoException;
+import com.surevine.alfresco.connector.json.JsonCodec;
+import com.surevine.alfresco.connector.json.JsonCodecs;
+import com.surevine.alfresco.connector.json.JsonParser;
 
 /**
  * @author richardm
@@ -51,10 +62,32 @@ public class AlfrescoHttpResponse {
 	 */
 	private static final int HTTP_ERROR_CODE = 400;
 
+	/**
+	 * Character set assumed for responses which do not declare one.
+	 */
+	private static final String DEFAULT_CHARSET = "UTF-8";
+
+	/**
+	 * Size of the buffer used when copying a response body.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Largest body which is read to the end when abandoned, so that its
+	 * connection can be reused. Anything larger, or of unknown length, is
+	 * cheaper to abort than to download.
+	 */
+	static final long MAX_DRAIN_BYTES = 64 * 1024;
+
 	/**
 	 * An HTTP response as provided by the underlying Apache library.
 	 */
 	private HttpResponse response;
+
+	/**
+	 * Decodes JSON bodies.
+	 */
+	private final JsonCodec codec;
 	
 	/**
 	 * @return The underlying {@link HttpResponse} element.
@@ -78,7 +111,16 @@ public class AlfrescoHttpResponse {
 	 * @param response The HTTP response provided by the underlying Apache library.
 	 */
 	public AlfrescoHttpResponse(final HttpResponse response) {
+		this(response, JsonCodecs.DEFAULT);
+	}
+
+	/**
+	 * @param response The HTTP response provided by the underlying Apache library.
+	 * @param codec The codec used to decode JSON bodies.
+	 */
+	public AlfrescoHttpResponse(final HttpResponse response, final JsonCodec codec) {
 		this.response = response;
+		this.codec = codec;
 	}
 	
 	/**
@@ -101,8 +143,9 @@ public class AlfrescoHttpResponse {
 
 		if (responseEnt != null) {
 			try {
-				jsonResponse = new JSONArray(new JSONTokener(new InputStreamReader(
-						responseEnt.getContent())));
+				final Object value = parse(responseEnt).nextValue();
+
+				jsonResponse = value instanceof JSONArray ? (JSONArray) value : null;
 			} catch (final JSONException e) {
 				jsonResponse = null;
 			} catch (final IOException e) {
@@ -111,7 +154,7 @@ public class AlfrescoHttpResponse {
 
 			// make sure response buffer is flushed so we can use the client
 			// again
-			flushBuffer(responseEnt);
+			release(responseEnt, jsonResponse != null);
 
 			// debugging
 			if(LOG.isDebugEnabled()) {
@@ -151,8 +194,9 @@ public class AlfrescoHttpResponse {
 
 		if (responseEnt != null) {
 			try {
-				jsonResponse = new JSONObject(new JSONTokener(new InputStreamReader(
-						responseEnt.getContent())));
+				final Object value = parse(responseEnt).nextValue();
+
+				jsonResponse = value instanceof JSONObject ? (JSONObject) value : null;
 			} catch (final JSONException e) {
 				jsonResponse = null;
 			} catch (final IOException e) {
@@ -161,7 +205,7 @@ public class AlfrescoHttpResponse {
 
 			// make sure response buffer is flushed so we can use the client
 			// again
-			flushBuffer(responseEnt);
+			release(responseEnt, jsonResponse != null);
 
 			// debugging
 			if(LOG.isDebugEnabled()) {
@@ -189,52 +233,430 @@ public class AlfrescoHttpResponse {
 		return jsonResponse;
 	}
 	
-	public String asString() throws AlfrescoException {
-		final HttpEntity responseEnt = response.getEntity();
+	/**
+	 * Decode the objects of a JSON array in the response one at a time, without
+	 * building the whole array in memory.
+	 * 
+	 * The caller must read to the end of the iterator or close it.
+	 * 
+	 * @param arrayKey
+	 *          the key of the array within the top level object of the
+	 *          response, or null if the response is itself an array
+	 * @return An iterator over the objects in the array
+	 * @throws AlfrescoException
+	 *           If the HTTP response had an error or did not contain the array
+	 */
+	public JsonArrayIterator iterateJsonArray(final String arrayKey)
+			throws AlfrescoException
+	{
+		return iterate(arrayKey, false);
+	}
+
+	/**
+	 * Read the objects of a JSON array in the response one at a time without
+	 * decoding them, for {@link JsonArrayIterator#nextRaw()}.
+	 * 
+	 * The caller must read to the end of the iterator or close it.
+	 * 
+	 * @param arrayKey
+	 *          the key of the array within the top level object of the
+	 *          response, or null if the response is itself an array
+	 * @return An iterator over the objects in the array
+	 * @throws AlfrescoException
+	 *           If the HTTP response had an error or did not contain the array
+	 */
+	public JsonArrayIterator iterateRawJsonArray(final String arrayKey)
+			throws AlfrescoException
+	{
+		return iterate(arrayKey, true);
+	}
+
+	/**
+	 * Pass each object of a JSON array in the response to a visitor as soon as
+	 * it has been decoded, without building the whole array in memory.
+	 * 
+	 * @param arrayKey
+	 *          the key of the array within the top level object of the
+	 *          response, or null if the response is itself an array
+	 * @param visitor
+	 *          the visitor to receive each object
+	 * @throws AlfrescoException
+	 *           If the HTTP response had an error or did not contain the array,
+	 *           or if the visitor failed
+	 */
+	public void streamJsonArray(final String arrayKey,
+			final JsonElementVisitor visitor) throws AlfrescoException
+	{
+		final JsonArrayIterator iterator = iterateJsonArray(arrayKey);
+
+		try {
+			while (iterator.hasNext()) {
+				visitor.visit(iterator.next());
+			}
+		} finally {
+			iterator.close();
+		}
+	}
+	
+	/**
+	 * Pass each object of a JSON array in the response to a visitor, undecoded,
+	 * as soon as it has been read.
+	 * 
+	 * @param arrayKey
+	 *          the key of the array within the top level object of the
+	 *          response, or null if the response is itself an array
+	 * @param visitor
+	 *          the visitor to receive each object
+	 * @throws AlfrescoException
+	 *           If the HTTP response had an error or did not contain the array,
+	 *           or if the visitor failed
+	 */
+	public void streamRawJsonArray(final String arrayKey,
+			final RawJsonVisitor visitor) throws AlfrescoException
+	{
+		final JsonArrayIterator iterator = iterateRawJsonArray(arrayKey);
+
+		try {
+			while (iterator.hasNext()) {
+				visitor.visit(iterator.nextRaw());
+			}
+		} finally {
+			iterator.close();
+		}
+	}
+
+	/**
+	 * @param arrayKey
+	 *          the key of the array, or null if the response is itself an array
+	 * @param raw
+	 *          whether to keep elements undecoded
+	 * @return An iterator over the objects in the array
+	 * @throws AlfrescoException
+	 *           If the HTTP response had an error or did not contain the array
+	 */
+	private JsonArrayIterator iterate(final String arrayKey, final boolean raw)
+			throws AlfrescoException
+	{
 		final StatusLine status = response.getStatusLine();
-		
+		final HttpEntity responseEnt = response.getEntity();
+
 		if (status == null) {
 			throw new AlfrescoException("Alfresco action failed to return a status");
-		} else if (status.getStatusCode() >= HTTP_ERROR_CODE) {
+		} else if (responseEnt != null && status.getStatusCode() >= HTTP_ERROR_CODE) {
+			try {
+				// throws with Alfresco's error message, if the body has one
+				asJsonObject();
+			} finally {
+				release();
+			}
+		}
+
+		if (responseEnt == null || status.getStatusCode() >= HTTP_ERROR_CODE) {
+			release();
+
 			throw new AlfrescoException("Alfresco action failed: "
-					+ status.getStatusCode() + ": " + status.getReasonPhrase() + "\"");
+					+ status.getStatusCode() + ": " + status.getReasonPhrase());
 		}
-		
-		final StringBuilder sb = new StringBuilder();
 
 		try {
-			if (responseEnt != null) {
-				String line;
-				BufferedReader reader;
-					reader = new BufferedReader(new InputStreamReader(responseEnt.getContent()));
-		
-					while ((line = reader.readLine()) != null) {
-						sb.append(line);
-						sb.append('\n');
-					}
-			}
-		} catch (final IllegalStateException e) {
+			return new JsonArrayIterator(parse(responseEnt), responseEnt, arrayKey, raw);
+		} catch (final IOException e) {
+			throw new AlfrescoException("Failed parsing HTTP response", e);
+		}
+	}
+
+
+	/**
+	 * Read the whole response body as a String, decoded with the character set
+	 * the response declares (UTF-8 if it declares none).
+	 * 
+	 * @return The response body, or an empty String if there is none
+	 * @throws AlfrescoException
+	 *           If the HTTP response had an error or could not be read
+	 */
+	public String asString() throws AlfrescoException {
+		final HttpEntity responseEnt = checkStatus();
+
+		if (responseEnt == null) {
+			return "";
+		}
+
+		boolean complete = false;
+
+		try {
+			final String body = EntityUtils.toString(responseEnt, DEFAULT_CHARSET);
+			complete = true;
+
+			return body;
+		} catch (final IOException e) {
 			throw new AlfrescoException("Alfresco failed to read the response", e);
+		} finally {
+			release(responseEnt, complete);
+		}
+	}
+
+	/**
+	 * Copy the response body, undecoded, to a stream. The stream is not closed,
+	 * but the connection is always released.
+	 * 
+	 * @param out
+	 *          the stream to write the body to
+	 * @return The number of bytes written
+	 * @throws AlfrescoException
+	 *           If the HTTP response had an error or could not be copied
+	 */
+	public long writeTo(final OutputStream out) throws AlfrescoException {
+		final HttpEntity responseEnt = checkStatus();
+
+		if (responseEnt == null) {
+			return 0;
+		}
+
+		boolean complete = false;
+
+		try {
+			final long total = copy(responseEnt.getContent(), out);
+			complete = true;
+
+			return total;
 		} catch (final IOException e) {
 			throw new AlfrescoException("Alfresco failed to read the response", e);
+		} finally {
+			release(responseEnt, complete);
+		}
+	}
+
+	/**
+	 * Copy the rest of a stream to another. Neither stream is closed.
+	 * 
+	 * @param in
+	 *          the stream to read
+	 * @param out
+	 *          the stream to write to
+	 * @return The number of bytes copied
+	 * @throws IOException
+	 *           If either stream fails
+	 */
+	public static long copy(final InputStream in, final OutputStream out) throws IOException {
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		long total = 0;
+		int read;
+
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+			total += read;
 		}
 
-		return sb.toString();
+		return total;
+	}
+
+	/**
+	 * Copy the response body, undecoded, to a channel. The channel is not
+	 * closed, but the connection is always released.
+	 * 
+	 * @param out
+	 *          the channel to write the body to
+	 * @return The number of bytes written
+	 * @throws AlfrescoException
+	 *           If the HTTP response had an error or could not be copied
+	 */
+	public long transferTo(final WritableByteChannel out) throws AlfrescoException {
+		final HttpEntity responseEnt = checkStatus();
+
+		if (responseEnt == null) {
+			return 0;
+		}
+
+		boolean complete = false;
+
+		try {
+			final ReadableByteChannel in = Channels.newChannel(responseEnt.getContent());
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			long total = 0;
+
+			while (in.read(buffer) != -1) {
+				buffer.flip();
+
+				while (buffer.hasRemaining()) {
+					total += out.write(buffer);
+				}
+
+				buffer.clear();
+			}
+
+			complete = true;
+
+			return total;
+		} catch (final IOException e) {
+			throw new AlfrescoException("Alfresco failed to read the response", e);
+		} finally {
+			release(responseEnt, complete);
+		}
+	}
+
+	/**
+	 * Save the response body, undecoded, to a file, replacing anything already
+	 * there. A partly written file is deleted if the copy fails.
+	 * 
+	 * @param file
+	 *          the file to write the body to
+	 * @return The number of bytes written
+	 * @throws AlfrescoException
+	 *           If the HTTP response had an error or could not be saved
+	 */
+	public long saveTo(final File file) throws AlfrescoException {
+		final HttpEntity responseEnt = checkStatus();
+		boolean saved = false;
+		FileOutputStream out = null;
+
+		try {
+			out = new FileOutputStream(file);
+
+			long total = 0;
+
+			if (responseEnt != null) {
+				final FileChannel channel = out.getChannel();
+				final ReadableByteChannel in = Channels.newChannel(responseEnt.getContent());
+				long written;
+
+				// transferFrom may copy less than asked, so carry on until the end
+				while ((written = channel.transferFrom(in, total, Long.MAX_VALUE - total)) > 0) {
+					total += written;
+				}
+			}
+
+			out.close();
+			out = null;
+			saved = true;
+
+			return total;
+		} catch (final IOException e) {
+			throw new AlfrescoException("Failed to save the response to " + file, e);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (final IOException e) {
+					LOG.warn("Failed to close " + file, e);
+				}
+			}
+
+			if (!saved && file.exists() && !file.delete()) {
+				LOG.warn("Failed to delete partly written " + file);
+			}
+
+			if (responseEnt != null) {
+				release(responseEnt, saved);
+			}
+		}
+	}
+
+	/**
+	 * @return The character set declared by the response, or UTF-8 if it
+	 *         declares none
+	 */
+	public String getCharset() {
+		final HttpEntity responseEnt = response.getEntity();
+
+		return responseEnt == null ? DEFAULT_CHARSET : getCharset(responseEnt);
+	}
+	
+	/**
+	 * Release the underlying connection without reading the response body.
+	 * 
+	 * Must be called for any response whose body is not otherwise consumed,
+	 * or a pooled connection will never be returned to its pool. A small body
+	 * is read to the end so the connection can be reused; a large one, or one
+	 * of unknown length, is aborted instead.
+	 * 
+	 * @throws AlfrescoException
+	 *           If the connection could not be released
+	 */
+	public void release() throws AlfrescoException {
+		final HttpEntity responseEnt = response.getEntity();
+		
+		if (responseEnt != null) {
+			release(responseEnt, false);
+		}
+	}
+	
+	/**
+	 * Check the status of the response before its body is read, releasing the
+	 * connection if the body will not be wanted.
+	 * 
+	 * @return The response entity, which may be null
+	 * @throws AlfrescoException
+	 *           If the HTTP response had an error
+	 */
+	private HttpEntity checkStatus() throws AlfrescoException
+	{
+		final StatusLine status = response.getStatusLine();
+
+		if (status == null) {
+			release();
+
+			throw new AlfrescoException("Alfresco action failed to return a status");
+		} else if (status.getStatusCode() >= HTTP_ERROR_CODE) {
+			release();
+
+			throw new AlfrescoException("Alfresco action failed: "
+					+ status.getStatusCode() + ": " + status.getReasonPhrase());
+		}
+
+		return response.getEntity();
+	}
+	
+	/**
+	 * @param ent
+	 *          The HTTP entity being read
+	 * @return A parser reading the entity
+	 * @throws IOException
+	 *           If the entity cannot be read
+	 */
+	private JsonParser parse(final HttpEntity ent) throws IOException
+	{
+		return codec.createParser(ent.getContent(), getCharset(ent));
 	}
 	
 	/**
-	 * Flush out any unused content in an HTTP entity (otherwise the HTTP Client
-	 * cannot be re-used).
+	 * @param ent
+	 *          The HTTP entity being read
+	 * @return The character set declared for the entity, or UTF-8 if none is
+	 */
+	private static String getCharset(final HttpEntity ent)
+	{
+		final String charset = EntityUtils.getContentCharSet(ent);
+
+		return charset == null ? DEFAULT_CHARSET : charset;
+	}
+	
+	/**
+	 * Release the connection an HTTP entity is read from (otherwise the HTTP
+	 * Client cannot be re-used).
+	 * 
+	 * Whatever is left of a body which has been read to the end, or which is
+	 * small, is flushed out so that the connection can be reused. A larger
+	 * remainder, or one of unknown length, is not worth downloading just to
+	 * throw away, so the request is aborted instead where the entity allows it.
 	 * 
 	 * @param ent
-	 *          The HTTP entity to flush
+	 *          The HTTP entity to release
+	 * @param complete
+	 *          Whether the body has been read to the end
 	 * @throws AlfrescoException
-	 *           If the flush failed
+	 *           If the connection could not be released
 	 */
-	private void flushBuffer(final HttpEntity ent) throws AlfrescoException
+	static void release(final HttpEntity ent, final boolean complete) throws AlfrescoException
 	{
 		try {
-			ent.consumeContent();
+			final long length = ent.getContentLength();
+
+			if (!complete && ent.isStreaming() && ent instanceof ConnectionReleaseTrigger
+					&& (length < 0 || length > MAX_DRAIN_BYTES)) {
+				((ConnectionReleaseTrigger) ent).abortConnection();
+			} else {
+				ent.consumeContent();
+			}
 		} catch (final IOException e) {
 			throw new AlfrescoException("Cannot flush HTTP buffer", e);
 		}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.model;
+
+import com.surevine.alfresco.connector.json.RawJson;
+
+/**
+ * A member of an Alfresco group, as listed by the
+ * <code>api/groups/{group}/children</code> service.
+ */
+public final class GroupMember extends JsonRecord {
+
+	/**
+	 * The short name, once read.
+	 */
+	private volatile String shortName;
+
+	/**
+	 * @param json
+	 *          the JSON text of the member
+	 */
+	public GroupMember(final RawJson json) {
+		super(json);
+	}
+
+	/**
+	 * @return The short name, which for a user is the user name, or null if
+	 *         there is none
+	 */
+	public String getShortName() {
+		String result = shortName;
+
+		if (result == null) {
+			result = getJson().getString("shortName");
+			shortName = result;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The full authority name, such as GROUP_admins, or null if there
+	 *         is none
+	 */
+	public String getFullName() {
+		return getJson().getString("fullName");
+	}
+
+	/**
+	 * @return The display name, or null if there is none
+	 */
+	public String getDisplayName() {
+		return getJson().getString("displayName");
+	}
+
+	/**
+	 * @return The authority type, USER or GROUP, or null if there is none
+	 */
+	public String getAuthorityType() {
+		return getJson().getString("authorityType");
+	}
+}
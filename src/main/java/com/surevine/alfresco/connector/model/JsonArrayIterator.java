@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.model;
+
+import java.io.UnsupportedEncodingException;
+
+import org.apache.http.HttpEntity;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.surevine.alfresco.AlfrescoException;
+import com.surevine.alfresco.connector.json.JsonParser;
+import com.surevine.alfresco.connector.json.RawJson;
+
+/**
+ * Decodes the objects of a JSON array one at a time straight off the wire.
+ * 
+ * Only the current element is held in memory, so the heap used is independent
+ * of the size of the response, and the first element is available as soon as
+ * it has been received. The underlying connection is released once the end of
+ * the array is reached or {@link #close()} is called.
+ */
+public class JsonArrayIterator
+{
+	/**
+	 * The parser reading the response body.
+	 */
+	private final JsonParser tokener;
+
+	/**
+	 * The entity being read, flushed when we are done with it.
+	 */
+	private final HttpEntity entity;
+
+	/**
+	 * Whether elements are kept as {@link RawJson} rather than decoded.
+	 */
+	private final boolean raw;
+
+	/**
+	 * The next element to return, a JSONObject or RawJson, or null if not yet
+	 * read.
+	 */
+	private Object next;
+
+	/**
+	 * Whether the first element of the array has been read.
+	 */
+	private boolean started;
+
+	/**
+	 * Whether the end of the array has been reached.
+	 */
+	private boolean finished;
+
+	/**
+	 * Whether the underlying connection has been released.
+	 */
+	private boolean released;
+
+	/**
+	 * @param parser
+	 *          the parser reading the response body
+	 * @param entity
+	 *          the entity the body comes from
+	 * @param arrayKey
+	 *          the key of the array within the top level object, or null if the
+	 *          body is itself an array
+	 * @param raw
+	 *          whether to keep elements as {@link RawJson} rather than decode
+	 *          them, for {@link #nextRaw()}
+	 * @throws AlfrescoException
+	 *           If the array cannot be found
+	 */
+	JsonArrayIterator(final JsonParser parser, final HttpEntity entity,
+			final String arrayKey, final boolean raw) throws AlfrescoException
+	{
+		this.tokener = parser;
+		this.entity = entity;
+		this.raw = raw;
+
+		try {
+			if (arrayKey == null) {
+				expect('[');
+			} else {
+				seekArray(arrayKey);
+			}
+		} catch (final JSONException e) {
+			close();
+			throw new AlfrescoException("Failed parsing HTTP response", e);
+		} catch (final AlfrescoException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return Whether there is another element in the array
+	 * @throws AlfrescoException
+	 *           If the response is not valid JSON
+	 */
+	public boolean hasNext() throws AlfrescoException
+	{
+		if (next == null && !finished) {
+			advance();
+		}
+
+		return next != null;
+	}
+
+	/**
+	 * @return The next element of the array
+	 * @throws AlfrescoException
+	 *           If the response is not valid JSON or there are no more elements
+	 */
+	public JSONObject next() throws AlfrescoException
+	{
+		final Object result = take();
+
+		if (result instanceof RawJson) {
+			try {
+				return ((RawJson) result).toJSONObject();
+			} catch (final JSONException e) {
+				throw new AlfrescoException("Failed parsing HTTP response", e);
+			}
+		}
+
+		return (JSONObject) result;
+	}
+
+	/**
+	 * @return The next element of the array, undecoded. This is cheapest if
+	 *         the iterator was created to keep elements raw.
+	 * @throws AlfrescoException
+	 *           If the response is not valid JSON or there are no more elements
+	 */
+	public RawJson nextRaw() throws AlfrescoException
+	{
+		final Object result = take();
+
+		if (result instanceof JSONObject) {
+			try {
+				return new RawJson(result.toString().getBytes("UTF-8"));
+			} catch (final UnsupportedEncodingException e) {
+				throw new AlfrescoException("Failed encoding JSON element", e);
+			}
+		}
+
+		return (RawJson) result;
+	}
+
+	/**
+	 * @return The next element, which is then forgotten
+	 * @throws AlfrescoException
+	 *           If the response is not valid JSON or there are no more elements
+	 */
+	private Object take() throws AlfrescoException
+	{
+		if (!hasNext()) {
+			throw new AlfrescoException("No more elements in the JSON array");
+		}
+
+		final Object result = next;
+		next = null;
+
+		return result;
+	}
+
+	/**
+	 * Stop reading and release the underlying connection. If the end of the
+	 * array has not been reached, a large or unknown remainder of the body is
+	 * aborted rather than downloaded.
+	 * 
+	 * @throws AlfrescoException
+	 *           If the connection could not be released
+	 */
+	public void close() throws AlfrescoException
+	{
+		finish(false);
+	}
+
+	/**
+	 * Stop reading and release the underlying connection, if not already done.
+	 * 
+	 * @param complete
+	 *          whether the end of the array has been reached
+	 * @throws AlfrescoException
+	 *           If the connection could not be released
+	 */
+	private void finish(final boolean complete) throws AlfrescoException
+	{
+		finished = true;
+		next = null;
+
+		if (!released) {
+			released = true;
+			AlfrescoHttpResponse.release(entity, complete);
+		}
+	}
+
+	/**
+	 * Read forward to the next object in the array, skipping any other values.
+	 * 
+	 * @throws AlfrescoException
+	 *           If the response is not valid JSON
+	 */
+	private void advance() throws AlfrescoException
+	{
+		try {
+			while (next == null) {
+				char c = tokener.nextClean();
+
+				if (!started) {
+					started = true;
+					if (c == ']') {
+						finish(true);
+						return;
+					}
+					tokener.back();
+				} else if (c == ']') {
+					finish(true);
+					return;
+				} else if (c != ',') {
+					throw tokener.syntaxError("Expected a ',' or ']'");
+				}
+
+				if (raw) {
+					final byte[] value = tokener.nextRawValue();
+
+					if (value[0] == '{') {
+						next = new RawJson(value);
+					}
+				} else {
+					final Object value = tokener.nextValue();
+
+					if (value instanceof JSONObject) {
+						next = value;
+					}
+				}
+			}
+		} catch (final JSONException e) {
+			close();
+			throw new AlfrescoException("Failed parsing HTTP response", e);
+		}
+	}
+
+	/**
+	 * Skip through the top level object until the value of the given key is
+	 * reached.
+	 * 
+	 * @param arrayKey
+	 *          the key to look for
+	 * @throws JSONException
+	 *           If the response is not valid JSON
+	 * @throws AlfrescoException
+	 *           If the key is not present or is not an array
+	 */
+	private void seekArray(final String arrayKey) throws JSONException,
+			AlfrescoException
+	{
+		expect('{');
+
+		while (true) {
+			char c = tokener.nextClean();
+
+			if (c == '}') {
+				throw new AlfrescoException("JSON response has no array \"" + arrayKey + "\"");
+			}
+
+			tokener.back();
+			final String key = tokener.nextValue().toString();
+
+			expect(':');
+
+			if (arrayKey.equals(key)) {
+				if (tokener.nextClean() != '[') {
+					throw new AlfrescoException("JSON value \"" + arrayKey + "\" is not an array");
+				}
+				return;
+			}
+
+			// not the array we want, so parse it and throw it away
+			tokener.nextValue();
+
+			c = tokener.nextClean();
+
+			if (c == '}') {
+				throw new AlfrescoException("JSON response has no array \"" + arrayKey + "\"");
+			} else if (c != ',') {
+				throw tokener.syntaxError("Expected a ',' or '}'");
+			}
+		}
+	}
+
+	/**
+	 * Read the next non-whitespace character and check it is as expected.
+	 * 
+	 * @param expected
+	 *          the expected character
+	 * @throws JSONException
+	 *           If a different character was found
+	 */
+	private void expect(final char expected) throws JSONException
+	{
+		if (tokener.nextClean() != expected) {
+			throw tokener.syntaxError("Expected a '" + expected + "'");
+		}
+	}
+}
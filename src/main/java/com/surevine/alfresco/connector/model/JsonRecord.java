@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.model;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.surevine.alfresco.connector.json.RawJson;
+
+/**
+ * A read only record returned by Alfresco, kept as its JSON text and decoded
+ * a field at a time as the getters are called.
+ */
+public abstract class JsonRecord {
+
+	/**
+	 * The JSON text of the record.
+	 */
+	private final RawJson json;
+
+	/**
+	 * @param json
+	 *          the JSON text of the record
+	 */
+	protected JsonRecord(final RawJson json) {
+		this.json = json;
+	}
+
+	/**
+	 * @return The JSON text of the record, for fields without a getter
+	 */
+	public RawJson getJson() {
+		return json;
+	}
+
+	/**
+	 * @return The whole record, decoded
+	 * @throws JSONException
+	 *           If the record is not valid JSON
+	 */
+	public JSONObject toJSONObject() throws JSONException {
+		return json.toJSONObject();
+	}
+
+	@Override
+	public String toString() {
+		return json.toString();
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.model;
+
+import com.surevine.alfresco.connector.json.RawJson;
+
+/**
+ * A person, as listed by the Alfresco <code>api/people</code> service.
+ */
+public final class Person extends JsonRecord {
+
+	/**
+	 * The user name, once read.
+	 */
+	private volatile String userName;
+
+	/**
+	 * @param json
+	 *          the JSON text of the person
+	 */
+	public Person(final RawJson json) {
+		super(json);
+	}
+
+	/**
+	 * @return The user name, or null if there is none
+	 */
+	public String getUserName() {
+		String result = userName;
+
+		if (result == null) {
+			result = getJson().getString("userName");
+			userName = result;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The first name, or null if there is none
+	 */
+	public String getFirstName() {
+		return getJson().getString("firstName");
+	}
+
+	/**
+	 * @return The last name, or null if there is none
+	 */
+	public String getLastName() {
+		return getJson().getString("lastName");
+	}
+
+	/**
+	 * @return The email address, or null if there is none
+	 */
+	public String getEmail() {
+		return getJson().getString("email");
+	}
+
+	/**
+	 * @return The job title, or null if there is none
+	 */
+	public String getJobTitle() {
+		return getJson().getString("jobtitle");
+	}
+
+	/**
+	 * @return The organisation, or null if there is none
+	 */
+	public String getOrganization() {
+		return getJson().getString("organization");
+	}
+
+	/**
+	 * @return False if the account has been disabled
+	 */
+	public boolean isEnabled() {
+		return getJson().getBoolean("enabled", true);
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.surevine.alfresco.connector.json.RawJson;
+
+/**
+ * A value of a Records Management constraint and the authorities allowed it,
+ * as listed by the <code>api/rma/admin/rmconstraints/{constraint}/values</code>
+ * service.
+ */
+public final class RmConstraintValue extends JsonRecord {
+
+	/**
+	 * @param json
+	 *          the JSON text of the value
+	 */
+	public RmConstraintValue(final RawJson json) {
+		super(json);
+	}
+
+	/**
+	 * @return The value, or null if there is none
+	 */
+	public String getValueName() {
+		final String name = getJson().getString("valueName");
+
+		return name == null ? getJson().getString("value") : name;
+	}
+
+	/**
+	 * @return The title of the value, or null if there is none
+	 */
+	public String getValueTitle() {
+		return getJson().getString("valueTitle");
+	}
+
+	/**
+	 * @return The names of the authorities allowed the value
+	 */
+	public List<String> getAuthorities() {
+		final List<String> authorities = new ArrayList<String>(getJson().getStrings("authorities"));
+
+		for (final RawJson authority : getJson().getObjects("authorities")) {
+			final String name = authority.getString("authorityName");
+
+			if (name != null) {
+				authorities.add(name);
+			}
+		}
+
+		return authorities;
+	}
+}
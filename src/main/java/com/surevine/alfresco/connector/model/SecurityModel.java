@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * An immutable copy of the security model, as held by the
+ * {@link com.surevine.alfresco.connector.SecurityModelCache}.
+ */
+public final class SecurityModel {
+
+	/**
+	 * Character set of the model XML.
+	 */
+	public static final String CHARSET = "UTF-8";
+
+	/**
+	 * The raw model XML.
+	 */
+	private final byte[] content;
+
+	/**
+	 * The model XML, decoded.
+	 */
+	private final String xml;
+
+	/**
+	 * SHA-256 digest of the content.
+	 */
+	private final byte[] digest;
+
+	/**
+	 * The ETag Alfresco sent with the model, or null.
+	 */
+	private final String eTag;
+
+	/**
+	 * The Last-Modified date Alfresco sent with the model, or null.
+	 */
+	private final String lastModified;
+
+	/**
+	 * @param content
+	 *          the raw model XML, which must not be changed afterwards
+	 * @param eTag
+	 *          the ETag Alfresco sent with the model, or null
+	 * @param lastModified
+	 *          the Last-Modified date Alfresco sent with the model, or null
+	 */
+	public SecurityModel(final byte[] content, final String eTag, final String lastModified) {
+		this.content = content;
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+
+		try {
+			this.xml = new String(content, CHARSET);
+			this.digest = MessageDigest.getInstance("SHA-256").digest(content);
+		} catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException("The JVM does not support " + CHARSET, e);
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("The JVM does not support SHA-256", e);
+		}
+	}
+
+	/**
+	 * @return The model XML
+	 */
+	public String getXml() {
+		return xml;
+	}
+
+	/**
+	 * @return The size of the model XML in bytes
+	 */
+	public int getLength() {
+		return content.length;
+	}
+
+	/**
+	 * Write the raw model XML to a stream, which is not closed.
+	 * 
+	 * @param out
+	 *          the stream to write to
+	 * @throws IOException
+	 *           if the write fails
+	 */
+	public void writeTo(final OutputStream out) throws IOException {
+		out.write(content);
+	}
+
+	/**
+	 * @return The ETag Alfresco sent with the model, or null
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+	/**
+	 * @return The Last-Modified date Alfresco sent with the model, or null
+	 */
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * @param other
+	 *          another copy of the model, or null
+	 * @return True if the other copy has exactly the same content
+	 */
+	public boolean hasSameContent(final SecurityModel other) {
+		return other != null && MessageDigest.isEqual(digest, other.digest);
+	}
+}
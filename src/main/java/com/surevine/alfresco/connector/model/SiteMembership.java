@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.model;
+
+import com.surevine.alfresco.AlfrescoConnector.RoleType;
+import com.surevine.alfresco.connector.json.RawJson;
+
+/**
+ * A member of an Alfresco site, as listed by the
+ * <code>api/sites/{site}/memberships</code> service.
+ */
+public final class SiteMembership extends JsonRecord {
+
+	/**
+	 * The user name, once read.
+	 */
+	private volatile String userName;
+
+	/**
+	 * @param json
+	 *          the JSON text of the membership
+	 */
+	public SiteMembership(final RawJson json) {
+		super(json);
+	}
+
+	/**
+	 * @return The user name of the member, or null if the member is not a user
+	 */
+	public String getUserName() {
+		String result = userName;
+
+		if (result == null) {
+			final RawJson authority = getJson().getObject("authority");
+
+			result = authority == null ? null : authority.getString("userName");
+			userName = result;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The role, such as SiteManager, or null if there is none
+	 */
+	public String getRole() {
+		return getJson().getString("role");
+	}
+
+	/**
+	 * @return The role, or null if it is not one of the {@link RoleType}s
+	 */
+	public RoleType getRoleType() {
+		return RoleType.fromSiteRole(getRole());
+	}
+}
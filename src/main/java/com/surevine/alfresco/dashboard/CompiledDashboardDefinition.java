@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.dashboard;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * An immutable snapshot of a {@link DashboardDefinition}, ready to be sent to
+ * many users.
+ * 
+ * The dashlets are held by column index and the JSON describing them is
+ * serialised once, so building the request for a user only has to insert the
+ * user's dashboard page.
+ */
+public final class CompiledDashboardDefinition {
+	/**
+	 * The template id
+	 */
+	private final String templateId;
+
+	/**
+	 * The dashlet urls, indexed by column then row
+	 */
+	private final String[][] columns;
+
+	/**
+	 * The dashlets as sent to share, or null if there are none
+	 */
+	private final JSONArray dashletsJson;
+
+	/**
+	 * The serialised request up to the value of the dashboard page
+	 */
+	private final String requestPrefix;
+
+	/**
+	 * The hash code, computed once
+	 */
+	private final int hashCode;
+
+	/**
+	 * Compile a dashboard definition. Later changes to the definition do not
+	 * affect the compiled form.
+	 * 
+	 * @param definition
+	 *            the definition to compile
+	 */
+	public CompiledDashboardDefinition(final DashboardDefinition definition) {
+		templateId = definition.getTemplateId();
+
+		if (templateId == null) {
+			throw new NullPointerException("templateId cannot be null");
+		}
+
+		columns = toColumns(definition.getDashlets());
+
+		try {
+			final JSONObject template = new JSONObject();
+			template.put("templateId", templateId);
+
+			for (int column = 0; column < columns.length; ++column) {
+				for (int row = 0; row < columns[column].length; ++row) {
+					final JSONObject dashlet = new JSONObject();
+
+					dashlet.put("regionId", "component-" + (column + 1) + "-" + (row + 1));
+					dashlet.put("url", columns[column][row]);
+
+					template.append("dashlets", dashlet);
+				}
+			}
+
+			dashletsJson = template.optJSONArray("dashlets");
+		} catch (JSONException e) {
+			throw new IllegalArgumentException("Invalid dashboard definition: " + definition, e);
+		}
+
+		final StringBuilder prefix = new StringBuilder("{\"templateId\":");
+		prefix.append(JSONObject.quote(templateId));
+
+		if (dashletsJson != null) {
+			prefix.append(",\"dashlets\":").append(dashletsJson.toString());
+		}
+
+		requestPrefix = prefix.append(",\"dashboardPage\":").toString();
+
+		hashCode = 31 * templateId.hashCode() + Arrays.deepHashCode(columns);
+	}
+
+	/**
+	 * Create the request which sets a user's dashboard to this definition. The
+	 * returned object shares its dashlets with other requests and must not be
+	 * modified.
+	 * 
+	 * @param username
+	 *            the user whose dashboard is to be set
+	 * @return the request to post to share
+	 */
+	public JSONObject createRequest(final String username) {
+		return new DashboardRequest("user/" + username + "/dashboard");
+	}
+
+	/**
+	 * Gets the template ID for the dashboard
+	 */
+	public String getTemplateId() {
+		return templateId;
+	}
+
+	/**
+	 * Gets the number of columns
+	 */
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	/**
+	 * Gets the dashlet urls in a column
+	 * 
+	 * @param column
+	 *            the column, starting at zero
+	 */
+	public List<String> getDashlets(final int column) {
+		return Collections.unmodifiableList(Arrays.asList(columns[column]));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		ToStringBuilder builder = new ToStringBuilder(this);
+		builder.append("templateId", templateId);
+		builder.append("columns", columns);
+		return builder.toString();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		if (!(o instanceof CompiledDashboardDefinition)) {
+			return false;
+		}
+
+		CompiledDashboardDefinition rhs = (CompiledDashboardDefinition) o;
+		return hashCode == rhs.hashCode && templateId.equals(rhs.templateId)
+				&& Arrays.deepEquals(columns, rhs.columns);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	/**
+	 * Copy the dashlets map, keyed by the column number as a string, into an
+	 * array indexed by column.
+	 * 
+	 * @param dashlets
+	 *            the dashlets of a {@link DashboardDefinition}
+	 * @return the dashlets by column then row
+	 */
+	private static String[][] toColumns(final Map<String, List<String>> dashlets) {
+		int count = 0;
+
+		for (String key : dashlets.keySet()) {
+			count = Math.max(count, Integer.parseInt(key) + 1);
+		}
+
+		final String[][] result = new String[count][];
+		Arrays.fill(result, new String[0]);
+
+		for (Entry<String, List<String>> entry : dashlets.entrySet()) {
+			final List<String> rows = entry.getValue();
+
+			result[Integer.parseInt(entry.getKey())] = rows.toArray(new String[rows.size()]);
+		}
+
+		return result;
+	}
+
+	/**
+	 * A request for one user, which serialises by appending the user's
+	 * dashboard page to the precomputed prefix.
+	 */
+	private final class DashboardRequest extends JSONObject {
+		/**
+		 * The user's dashboard page
+		 */
+		private final String dashboardPage;
+
+		/**
+		 * @param dashboardPage
+		 *            the user's dashboard page
+		 */
+		DashboardRequest(final String dashboardPage) {
+			this.dashboardPage = dashboardPage;
+
+			try {
+				put("templateId", templateId);
+				put("dashlets", dashletsJson);
+				put("dashboardPage", dashboardPage);
+			} catch (JSONException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String toString() {
+			return requestPrefix + JSONObject.quote(dashboardPage) + "}";
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.limit;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of requests in flight, adapting the limit to how Alfresco
+ * is coping (additive increase, multiplicative decrease).
+ * 
+ * The limit grows by about one for each limit's worth of requests which
+ * complete without trouble while the limit is in use. It is cut by a tenth,
+ * at most once per round trip, when a request fails, receives a 5xx response
+ * or takes more than twice the usual latency of its endpoint. The usual
+ * latency is the lowest seen for the endpoint, drifting slowly upwards so that
+ * a server which has become permanently slower is eventually accepted. Keeping
+ * it per endpoint means that a listing which always takes seconds is compared
+ * with earlier listings, not with quick updates.
+ */
+public class AdaptiveConcurrencyLimiter
+{
+	/**
+	 * The factor by which the limit is cut.
+	 */
+	private static final double BACKOFF_RATIO = 0.9;
+
+	/**
+	 * How many times the usual latency a response may take before it counts as
+	 * a sign of overload.
+	 */
+	private static final double LATENCY_TOLERANCE = 2.0;
+
+	/**
+	 * How far the usual latency moves towards each slower sample.
+	 */
+	private static final double BASELINE_DRIFT = 0.01;
+
+	/**
+	 * The most endpoints whose usual latency is kept separately.
+	 */
+	private static final int MAX_ENDPOINTS = 500;
+
+	/**
+	 * The endpoint which stands for all those beyond {@link #MAX_ENDPOINTS}.
+	 */
+	private static final String OTHER_ENDPOINT = "{other}";
+
+	/**
+	 * The lowest the limit may go.
+	 */
+	private final int minLimit;
+
+	/**
+	 * The highest the limit may go.
+	 */
+	private final int maxLimit;
+
+	/**
+	 * Guards the state below.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Signalled when a request completes or the limit rises.
+	 */
+	private final Condition available = lock.newCondition();
+
+	/**
+	 * The current limit, fractional so that it can grow gradually.
+	 */
+	private double limit;
+
+	/**
+	 * The number of requests in flight.
+	 */
+	private int inFlight;
+
+	/**
+	 * The usual latency of each endpoint.
+	 */
+	private final Map<String, Baseline> baselines = new HashMap<String, Baseline>();
+
+	/**
+	 * When the limit was last cut.
+	 */
+	private long lastBackoffNanos = System.nanoTime();
+
+	/**
+	 * @param initialLimit
+	 *          the limit to start with
+	 * @param minLimit
+	 *          the lowest the limit may go
+	 * @param maxLimit
+	 *          the highest the limit may go
+	 */
+	public AdaptiveConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit)
+	{
+		if (minLimit < 1 || maxLimit < minLimit) {
+			throw new IllegalArgumentException("Invalid limits: " + minLimit + " to " + maxLimit);
+		}
+
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+	}
+
+	/**
+	 * Wait until another request may be sent.
+	 * 
+	 * @param timeout
+	 *          the longest to wait
+	 * @param unit
+	 *          the unit of the timeout
+	 * @return True if the request may be sent, false if the timeout expired
+	 * @throws InterruptedException
+	 *           If interrupted while waiting
+	 */
+	public boolean acquire(final long timeout, final TimeUnit unit) throws InterruptedException
+	{
+		long remaining = unit.toNanos(timeout);
+
+		lock.lock();
+
+		try {
+			while (inFlight >= (int) limit) {
+				if (remaining <= 0) {
+					return false;
+				}
+
+				remaining = available.awaitNanos(remaining);
+			}
+
+			inFlight++;
+
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Record the completion of a request sent after {@link #acquire}.
+	 * 
+	 * @param endpoint
+	 *          the endpoint requested, such as the method and URL template
+	 * @param latencyNanos
+	 *          how long the request took
+	 * @param overloaded
+	 *          true if the request failed in a way which suggests that Alfresco
+	 *          is overloaded
+	 */
+	public void release(final String endpoint, final long latencyNanos, final boolean overloaded)
+	{
+		lock.lock();
+
+		try {
+			final int used = inFlight--;
+			final Baseline baseline = getBaseline(endpoint);
+
+			final boolean slow = baseline.nanos > 0 && latencyNanos > baseline.nanos * LATENCY_TOLERANCE;
+
+			if (overloaded || slow) {
+				final long now = System.nanoTime();
+
+				if (now - lastBackoffNanos > Math.max(latencyNanos, baseline.nanos)) {
+					limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+					lastBackoffNanos = now;
+				}
+			} else if (used * 2 >= (int) limit) {
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+
+			if (!overloaded) {
+				if (baseline.nanos == 0 || latencyNanos < baseline.nanos) {
+					baseline.nanos = latencyNanos;
+				} else {
+					baseline.nanos += (latencyNanos - baseline.nanos) * BASELINE_DRIFT;
+				}
+			}
+
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param endpoint
+	 *          the endpoint requested
+	 * @return The endpoint's usual latency, created if necessary. The caller
+	 *         must hold {@link #lock}.
+	 */
+	private Baseline getBaseline(final String endpoint)
+	{
+		Baseline baseline = baselines.get(endpoint);
+
+		if (baseline == null) {
+			final String key = baselines.size() < MAX_ENDPOINTS ? endpoint : OTHER_ENDPOINT;
+
+			baseline = baselines.get(key);
+
+			if (baseline == null) {
+				baseline = new Baseline();
+				baselines.put(key, baseline);
+			}
+		}
+
+		return baseline;
+	}
+
+	/**
+	 * @return The current limit
+	 */
+	public int getLimit()
+	{
+		lock.lock();
+
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The number of requests in flight
+	 */
+	public int getInFlight()
+	{
+		lock.lock();
+
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The usual latency of one endpoint.
+	 */
+	private static final class Baseline
+	{
+		/**
+		 * The usual latency in nanoseconds, or zero before the first sample.
+		 */
+		private double nanos;
+	}
+}
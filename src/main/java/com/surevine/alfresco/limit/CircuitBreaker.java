@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.limit;
+
+/**
+ * Stops requests to an endpoint which keeps failing, so that callers fail
+ * fast rather than each waiting for it to time out.
+ * 
+ * The breaker opens after a number of failures in a row. While open every
+ * request is refused. Once the open period has passed, a few probe requests
+ * are let through: if they all succeed the breaker closes, and if any fails it
+ * opens again.
+ * 
+ * Each request is given a ticket naming the state it was let through in. A
+ * request which completes after the breaker has changed state, such as one let
+ * through while closed which returns once the breaker is probing, says nothing
+ * about the current state and is ignored.
+ */
+public class CircuitBreaker
+{
+	/**
+	 * The states of a breaker.
+	 */
+	public static enum State
+	{
+		/**
+		 * Requests are sent.
+		 */
+		CLOSED,
+		/**
+		 * Requests are refused.
+		 */
+		OPEN,
+		/**
+		 * Probe requests are sent to see whether the endpoint has recovered.
+		 */
+		HALF_OPEN
+	}
+
+	/**
+	 * The ticket returned by {@link #tryAcquire()} when a request is refused.
+	 */
+	public static final long REFUSED = -1L;
+
+	/**
+	 * The number of failures in a row which open the breaker.
+	 */
+	private final int failureThreshold;
+
+	/**
+	 * How long the breaker stays open before probing, in milliseconds.
+	 */
+	private final long openMillis;
+
+	/**
+	 * The number of probes which must succeed to close the breaker.
+	 */
+	private final int probes;
+
+	/**
+	 * The current state.
+	 */
+	private State state = State.CLOSED;
+
+	/**
+	 * Incremented on every change of state.
+	 */
+	private long generation;
+
+	/**
+	 * Failures in a row while closed.
+	 */
+	private int consecutiveFailures;
+
+	/**
+	 * When the breaker last opened.
+	 */
+	private long openedAt;
+
+	/**
+	 * Probes sent since the breaker half opened.
+	 */
+	private int probesSent;
+
+	/**
+	 * Probes which have succeeded since the breaker half opened.
+	 */
+	private int probesSucceeded;
+
+	/**
+	 * Requests refused since the breaker was created.
+	 */
+	private long rejected;
+
+	/**
+	 * @param failureThreshold
+	 *          the number of failures in a row which open the breaker
+	 * @param openMillis
+	 *          how long the breaker stays open before probing, in milliseconds
+	 * @param probes
+	 *          the number of probes which must succeed to close the breaker
+	 */
+	public CircuitBreaker(final int failureThreshold, final long openMillis, final int probes)
+	{
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.openMillis = openMillis;
+		this.probes = Math.max(1, probes);
+	}
+
+	/**
+	 * Ask to send a request. Every call which is not refused must be followed by
+	 * a call to {@link #onSuccess(long)}, {@link #onFailure(long)} or
+	 * {@link #cancel(long)} with the ticket returned.
+	 * 
+	 * @return The ticket of the request, or {@link #REFUSED} if it may not be
+	 *         sent
+	 */
+	public synchronized long tryAcquire()
+	{
+		if (state == State.OPEN) {
+			if (System.currentTimeMillis() - openedAt < openMillis) {
+				rejected++;
+				return REFUSED;
+			}
+
+			moveTo(State.HALF_OPEN);
+			probesSent = 0;
+			probesSucceeded = 0;
+		}
+
+		if (state == State.HALF_OPEN) {
+			if (probesSent >= probes) {
+				rejected++;
+				return REFUSED;
+			}
+
+			probesSent++;
+		}
+
+		return generation;
+	}
+
+	/**
+	 * Record that a request succeeded.
+	 * 
+	 * @param ticket
+	 *          the ticket the request was let through with
+	 */
+	public synchronized void onSuccess(final long ticket)
+	{
+		if (ticket != generation) {
+			return;
+		}
+
+		if (state == State.HALF_OPEN) {
+			if (++probesSucceeded >= probes) {
+				moveTo(State.CLOSED);
+				consecutiveFailures = 0;
+			}
+		} else if (state == State.CLOSED) {
+			consecutiveFailures = 0;
+		}
+	}
+
+	/**
+	 * Record that a request failed.
+	 * 
+	 * @param ticket
+	 *          the ticket the request was let through with
+	 */
+	public synchronized void onFailure(final long ticket)
+	{
+		if (ticket != generation) {
+			return;
+		}
+
+		if (state == State.HALF_OPEN || (state == State.CLOSED && ++consecutiveFailures >= failureThreshold)) {
+			moveTo(State.OPEN);
+			openedAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Record that a request allowed by {@link #tryAcquire()} was not sent after
+	 * all, so says nothing about the endpoint.
+	 * 
+	 * @param ticket
+	 *          the ticket the request was let through with
+	 */
+	public synchronized void cancel(final long ticket)
+	{
+		if (ticket == generation && state == State.HALF_OPEN && probesSent > probesSucceeded) {
+			probesSent--;
+		}
+	}
+
+	/**
+	 * @param next
+	 *          the state to change to, which ends the current generation
+	 */
+	private void moveTo(final State next)
+	{
+		state = next;
+		generation++;
+	}
+
+	/**
+	 * @return The current state
+	 */
+	public synchronized State getState()
+	{
+		return state;
+	}
+
+	/**
+	 * @return The number of requests refused
+	 */
+	public synchronized long getRejectedCount()
+	{
+		return rejected;
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.limit;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+import com.surevine.alfresco.PropertyException;
+import com.surevine.alfresco.PropertyWrapper;
+import com.surevine.alfresco.metrics.EndpointTemplates;
+
+/**
+ * Keeps a {@link CircuitBreaker} for each endpoint template, so that a failing
+ * webscript does not stop requests to the others. The template includes the
+ * webapp, so Alfresco and Share endpoints are tracked separately.
+ * 
+ * Configured with the properties:
+ * <ul>
+ * <li><code>alfresco.circuit.enabled</code> - true to use circuit breakers
+ * (default false)</li>
+ * <li><code>alfresco.circuit.failureThreshold</code> - failures in a row which
+ * open a breaker (default 5)</li>
+ * <li><code>alfresco.circuit.openPeriod</code> - how long a breaker stays open
+ * before probing, in milliseconds (default 30000)</li>
+ * <li><code>alfresco.circuit.probes</code> - probes which must succeed to close
+ * a breaker (default 1)</li>
+ * </ul>
+ */
+public class CircuitBreakers
+{
+	/**
+	 * The most endpoints tracked separately. Further endpoints share one
+	 * breaker.
+	 */
+	private static final int MAX_ENDPOINTS = 500;
+
+	/**
+	 * The key of the breaker shared by endpoints beyond {@link #MAX_ENDPOINTS}.
+	 */
+	private static final String OTHER_ENDPOINT = "{other}";
+
+	/**
+	 * Failures in a row which open a breaker.
+	 */
+	private final int failureThreshold;
+
+	/**
+	 * How long a breaker stays open before probing, in milliseconds.
+	 */
+	private final long openMillis;
+
+	/**
+	 * Probes which must succeed to close a breaker.
+	 */
+	private final int probes;
+
+	/**
+	 * The breakers by endpoint template.
+	 */
+	private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+	/**
+	 * @param failureThreshold
+	 *          failures in a row which open a breaker
+	 * @param openMillis
+	 *          how long a breaker stays open before probing, in milliseconds
+	 * @param probes
+	 *          probes which must succeed to close a breaker
+	 */
+	public CircuitBreakers(final int failureThreshold, final long openMillis, final int probes)
+	{
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+		this.probes = probes;
+	}
+
+	/**
+	 * Create the breakers for a connector from its configuration.
+	 * 
+	 * @param properties
+	 *          the connector's configuration
+	 * @return The breakers, or null if they are not enabled
+	 * @throws PropertyException
+	 *           If a setting is not a number
+	 */
+	public static CircuitBreakers create(final PropertyWrapper properties) throws PropertyException
+	{
+		if (!Boolean.valueOf(properties.getProperty("alfresco.circuit.enabled", "false"))) {
+			return null;
+		}
+
+		return new CircuitBreakers(properties.getIntProperty("alfresco.circuit.failureThreshold", 5),
+				properties.getIntProperty("alfresco.circuit.openPeriod", 30000),
+				properties.getIntProperty("alfresco.circuit.probes", 1));
+	}
+
+	/**
+	 * @param request
+	 *          a request
+	 * @return The breaker for the request's endpoint, created if necessary
+	 */
+	public CircuitBreaker get(final HttpUriRequest request)
+	{
+		String endpoint = EndpointTemplates.templateOf(request.getURI().toString());
+
+		CircuitBreaker breaker = breakers.get(endpoint);
+
+		if (breaker != null) {
+			return breaker;
+		}
+
+		if (breakers.size() >= MAX_ENDPOINTS) {
+			endpoint = OTHER_ENDPOINT;
+		}
+
+		breaker = new CircuitBreaker(failureThreshold, openMillis, probes);
+
+		final CircuitBreaker existing = breakers.putIfAbsent(endpoint, breaker);
+
+		return existing == null ? breaker : existing;
+	}
+
+	/**
+	 * @return The state of each endpoint's breaker, by endpoint template
+	 */
+	public Map<String, CircuitBreaker.State> getStates()
+	{
+		final Map<String, CircuitBreaker.State> states = new HashMap<String, CircuitBreaker.State>();
+
+		for (final Map.Entry<String, CircuitBreaker> entry : breakers.entrySet()) {
+			states.put(entry.getKey(), entry.getValue().getState());
+		}
+
+		return Collections.unmodifiableMap(states);
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.limit;
+
+import com.surevine.alfresco.AlfrescoException;
+
+/**
+ * Thrown instead of sending a request to an endpoint whose
+ * {@link CircuitBreaker} is open.
+ */
+public class CircuitOpenException extends AlfrescoException {
+	/**
+	 * Required for serialisable classes.
+	 */
+	private static final long serialVersionUID = 2672407254081093127L;
+
+	/**
+	 * The endpoint which is failing.
+	 */
+	private final String endpoint;
+
+	/**
+	 * @param endpoint
+	 *            the endpoint which is failing
+	 */
+	public CircuitOpenException(final String endpoint) {
+		super("Alfresco endpoint " + endpoint + " is failing, not sending the request");
+		this.endpoint = endpoint;
+	}
+
+	/**
+	 * @return The endpoint which is failing
+	 */
+	public String getEndpoint() {
+		return endpoint;
+	}
+}
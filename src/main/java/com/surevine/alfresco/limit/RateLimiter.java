@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.limit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces requests evenly so that no more than a fixed number are started per
+ * second.
+ */
+public class RateLimiter
+{
+	/**
+	 * The time between requests in nanoseconds.
+	 */
+	private final long intervalNanos;
+
+	/**
+	 * When the next request may start.
+	 */
+	private long nextFreeNanos = System.nanoTime();
+
+	/**
+	 * @param requestsPerSecond
+	 *          the most requests to start each second
+	 */
+	public RateLimiter(final int requestsPerSecond)
+	{
+		if (requestsPerSecond < 1) {
+			throw new IllegalArgumentException("requestsPerSecond must be positive: " + requestsPerSecond);
+		}
+
+		intervalNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+	}
+
+	/**
+	 * Wait until the next request may start.
+	 * 
+	 * @throws InterruptedException
+	 *           If interrupted while waiting
+	 */
+	public void acquire() throws InterruptedException
+	{
+		final long wait = reserve();
+
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	/**
+	 * Claim the next free slot.
+	 * 
+	 * @return How long to wait for the slot, in nanoseconds
+	 */
+	private synchronized long reserve()
+	{
+		final long now = System.nanoTime();
+
+		if (nextFreeNanos - now < 0) {
+			nextFreeNanos = now;
+		}
+
+		final long wait = nextFreeNanos - now;
+		nextFreeNanos += intervalNanos;
+
+		return wait;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.limit;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+import com.surevine.alfresco.AlfrescoException;
+import com.surevine.alfresco.PropertyException;
+import com.surevine.alfresco.PropertyWrapper;
+import com.surevine.alfresco.metrics.EndpointTemplates;
+
+/**
+ * Holds requests back so that a connector does not overload Alfresco, using
+ * an {@link AdaptiveConcurrencyLimiter} and a {@link RateLimiter}, each of
+ * which is optional.
+ * 
+ * Configured with the properties:
+ * <ul>
+ * <li><code>alfresco.limit.adaptive</code> - true to limit the requests in
+ * flight (default false)</li>
+ * <li><code>alfresco.limit.initial</code>, <code>alfresco.limit.min</code>,
+ * <code>alfresco.limit.max</code> - the starting, lowest and highest limits
+ * (default 8, 1 and 64)</li>
+ * <li><code>alfresco.limit.acquireTimeout</code> - the longest a request waits
+ * to be sent in milliseconds (default 60000)</li>
+ * <li><code>alfresco.limit.requestsPerSecond</code> - the most requests to
+ * start each second, or 0 for no limit (default 0)</li>
+ * </ul>
+ * 
+ * A request counts as in flight until its response body has been read or
+ * released. Its latency, which the adaptive limit compares with the usual
+ * latency of the same method and endpoint template, is the time until the
+ * response headers arrive.
+ */
+public class RequestThrottle
+{
+	/**
+	 * A throttle which never holds requests back.
+	 */
+	public static final RequestThrottle NONE = new RequestThrottle(null, null, 0);
+
+	/**
+	 * The first status code which suggests that Alfresco is overloaded.
+	 */
+	private static final int SERVER_ERROR = 500;
+
+	/**
+	 * Limits the requests in flight, or null.
+	 */
+	private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+	/**
+	 * Limits the requests started per second, or null.
+	 */
+	private final RateLimiter rateLimiter;
+
+	/**
+	 * The longest a request waits to be sent in milliseconds.
+	 */
+	private final long acquireTimeoutMillis;
+
+	/**
+	 * @param concurrencyLimiter
+	 *          limits the requests in flight, or null
+	 * @param rateLimiter
+	 *          limits the requests started per second, or null
+	 * @param acquireTimeoutMillis
+	 *          the longest a request waits to be sent in milliseconds
+	 */
+	public RequestThrottle(final AdaptiveConcurrencyLimiter concurrencyLimiter, final RateLimiter rateLimiter,
+			final long acquireTimeoutMillis)
+	{
+		this.concurrencyLimiter = concurrencyLimiter;
+		this.rateLimiter = rateLimiter;
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+	}
+
+	/**
+	 * Create a throttle from a connector's configuration.
+	 * 
+	 * @param properties
+	 *          the connector's configuration
+	 * @return The throttle, which is {@link #NONE} unless a limit is configured
+	 * @throws PropertyException
+	 *           If a limit is not a number
+	 */
+	public static RequestThrottle create(final PropertyWrapper properties) throws PropertyException
+	{
+		AdaptiveConcurrencyLimiter concurrencyLimiter = null;
+
+		if (Boolean.valueOf(properties.getProperty("alfresco.limit.adaptive", "false"))) {
+			concurrencyLimiter = new AdaptiveConcurrencyLimiter(properties.getIntProperty("alfresco.limit.initial", 8),
+					properties.getIntProperty("alfresco.limit.min", 1), properties.getIntProperty("alfresco.limit.max", 64));
+		}
+
+		final int requestsPerSecond = properties.getIntProperty("alfresco.limit.requestsPerSecond", 0);
+		final RateLimiter rateLimiter = requestsPerSecond > 0 ? new RateLimiter(requestsPerSecond) : null;
+
+		if (concurrencyLimiter == null && rateLimiter == null) {
+			return NONE;
+		}
+
+		return new RequestThrottle(concurrencyLimiter, rateLimiter,
+				properties.getIntProperty("alfresco.limit.acquireTimeout", 60000));
+	}
+
+	/**
+	 * Wait until a request may be sent. Every successful call must be followed
+	 * by a call to {@link #release(HttpUriRequest, int, long)}.
+	 * 
+	 * @throws AlfrescoException
+	 *           If the request has waited too long or the thread was interrupted
+	 */
+	public void acquire() throws AlfrescoException
+	{
+		try {
+			if (rateLimiter != null) {
+				rateLimiter.acquire();
+			}
+
+			if (concurrencyLimiter != null
+					&& !concurrencyLimiter.acquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new AlfrescoException("Timed out waiting to send a request to Alfresco, "
+						+ concurrencyLimiter.getInFlight() + " requests are in flight");
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AlfrescoException("Interrupted waiting to send a request to Alfresco", e);
+		}
+	}
+
+	/**
+	 * Record the outcome of a request.
+	 * 
+	 * @param request
+	 *          the request
+	 * @param status
+	 *          the status code of the response, or -1 if there was none
+	 * @param latencyNanos
+	 *          how long the response headers took to arrive
+	 */
+	public void release(final HttpUriRequest request, final int status, final long latencyNanos)
+	{
+		if (concurrencyLimiter != null) {
+			concurrencyLimiter.release(
+					request.getMethod() + " " + EndpointTemplates.templateOf(request.getURI().toString()),
+					latencyNanos, status < 0 || status >= SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * @return The limiter of requests in flight, or null if there is none
+	 */
+	public AdaptiveConcurrencyLimiter getConcurrencyLimiter()
+	{
+		return concurrencyLimiter;
+	}
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.log4j.Logger;
+
+import com.surevine.alfresco.PropertyWrapper;
+
+/**
+ * Sends requests for a connector and records {@link EndpointMetrics} for each
+ * endpoint template and method, optionally publishing them as JMX MBeans named
+ * <code>com.surevine.alfresco:type=Endpoint,connector=...,method=...,endpoint=...</code>.
+ * 
+ * Publishing is controlled by the <code>alfresco.metrics.jmx</code> property
+ * (default false) and the connector name by <code>alfresco.metrics.name</code>.
+ * Published MBeans stay registered until {@link #unpublish()} is called, which
+ * the connectors do when they are closed.
+ */
+public class ConnectorMetrics
+{
+	private static final Logger LOG = Logger.getLogger(ConnectorMetrics.class);
+
+	/**
+	 * The JMX domain of the MBeans.
+	 */
+	public static final String DOMAIN = "com.surevine.alfresco";
+
+	/**
+	 * The most endpoints tracked separately, in case a URL's identifiers are not
+	 * recognised. Further endpoints share one entry.
+	 */
+	private static final int MAX_ENDPOINTS = 500;
+
+	/**
+	 * The endpoint under which requests beyond {@link #MAX_ENDPOINTS} are counted.
+	 */
+	private static final String OTHER_ENDPOINT = "{other}";
+
+	/**
+	 * Numbers the connectors which are not given a name.
+	 */
+	private static final AtomicInteger CONNECTOR_NUMBER = new AtomicInteger();
+
+	/**
+	 * The name of the connector.
+	 */
+	private final String name;
+
+	/**
+	 * The server to publish to, or null if not publishing.
+	 */
+	private final MBeanServer server;
+
+	/**
+	 * Set once the MBeans have been removed, so that no more are registered.
+	 */
+	private volatile boolean unpublished;
+
+	/**
+	 * The metrics by method and endpoint template.
+	 */
+	private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+
+	/**
+	 * @param name
+	 *          the name of the connector, used in the MBean names
+	 * @param publish
+	 *          whether to publish the metrics to the platform MBean server
+	 */
+	public ConnectorMetrics(final String name, final boolean publish)
+	{
+		this.name = name;
+		this.server = publish ? ManagementFactory.getPlatformMBeanServer() : null;
+	}
+
+	/**
+	 * Create the metrics for a connector from its configuration.
+	 * 
+	 * @param properties
+	 *          the connector's configuration
+	 * @param type
+	 *          the type of connector, used to name it if no name is configured
+	 * @return The metrics
+	 */
+	public static ConnectorMetrics create(final PropertyWrapper properties, final Class<?> type)
+	{
+		final String name = properties.getProperty("alfresco.metrics.name",
+				type.getSimpleName() + "-" + CONNECTOR_NUMBER.incrementAndGet());
+
+		return new ConnectorMetrics(name, Boolean.valueOf(properties.getProperty("alfresco.metrics.jmx", "false")));
+	}
+
+	/**
+	 * Send a request and record its metrics. Bytes received are counted as the
+	 * response body is read.
+	 * 
+	 * @param client
+	 *          the client to send the request with
+	 * @param request
+	 *          the request
+	 * @param context
+	 *          the context to send the request in, or null
+	 * @return The response
+	 * @throws IOException
+	 *           If the request failed
+	 */
+	public HttpResponse execute(final HttpClient client, final HttpUriRequest request, final HttpContext context)
+			throws IOException
+	{
+		final EndpointMetrics metrics = getEndpoint(request.getMethod(), request.getURI().toString());
+
+		if (request instanceof HttpEntityEnclosingRequest) {
+			final HttpEntityEnclosingRequest enclosing = (HttpEntityEnclosingRequest) request;
+			final HttpEntity entity = enclosing.getEntity();
+
+			if (entity != null && !(entity instanceof MeteredEntity)) {
+				enclosing.setEntity(new MeteredEntity(entity, metrics.getBytesSentCounter()));
+			}
+		}
+
+		// lets a ResponseWireMetering interceptor count the body before it is decoded
+		final HttpContext executionContext = context == null ? new BasicHttpContext() : context;
+		executionContext.setAttribute(ResponseWireMetering.COUNTER_ATTRIBUTE, metrics.getBytesReceivedCounter());
+		executionContext.removeAttribute(ResponseWireMetering.METERED_ATTRIBUTE);
+
+		final long start = System.nanoTime();
+		final HttpResponse response;
+
+		try {
+			response = client.execute(request, executionContext);
+		} catch (final IOException e) {
+			metrics.recordError();
+			throw e;
+		} catch (final RuntimeException e) {
+			metrics.recordError();
+			throw e;
+		} finally {
+			executionContext.removeAttribute(ResponseWireMetering.COUNTER_ATTRIBUTE);
+		}
+
+		metrics.recordResponse(response.getStatusLine().getStatusCode(), System.nanoTime() - start);
+
+		final HttpEntity entity = response.getEntity();
+
+		if (entity != null && executionContext.removeAttribute(ResponseWireMetering.METERED_ATTRIBUTE) == null) {
+			response.setEntity(new MeteredEntity(entity, metrics.getBytesReceivedCounter()));
+		}
+
+		return response;
+	}
+
+	/**
+	 * Record that a failed request is being repeated.
+	 * 
+	 * @param request
+	 *          the request
+	 */
+	public void recordRetry(final HttpUriRequest request)
+	{
+		getEndpoint(request.getMethod(), request.getURI().toString()).recordRetry();
+	}
+
+	/**
+	 * @param method
+	 *          the HTTP method
+	 * @param url
+	 *          the URL requested
+	 * @return The metrics for the URL's endpoint, created if necessary
+	 */
+	public EndpointMetrics getEndpoint(final String method, final String url)
+	{
+		String endpoint = EndpointTemplates.templateOf(url);
+		String key = method + " " + endpoint;
+
+		EndpointMetrics metrics = endpoints.get(key);
+
+		if (metrics != null) {
+			return metrics;
+		}
+
+		if (endpoints.size() >= MAX_ENDPOINTS) {
+			endpoint = OTHER_ENDPOINT;
+			key = method + " " + endpoint;
+
+			metrics = endpoints.get(key);
+
+			if (metrics != null) {
+				return metrics;
+			}
+		}
+
+		final EndpointMetrics created = new EndpointMetrics(method, endpoint);
+		metrics = endpoints.putIfAbsent(key, created);
+
+		if (metrics != null) {
+			return metrics;
+		}
+
+		publish(created);
+
+		return created;
+	}
+
+	/**
+	 * @return The metrics of every endpoint requested so far
+	 */
+	public Collection<EndpointMetrics> getEndpoints()
+	{
+		return new ArrayList<EndpointMetrics>(endpoints.values());
+	}
+
+	/**
+	 * @return The name of the connector
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Remove the MBeans from the MBean server. Endpoints requested afterwards are
+	 * still measured but not published.
+	 */
+	public void unpublish()
+	{
+		if (server == null) {
+			return;
+		}
+
+		unpublished = true;
+
+		for (final EndpointMetrics metrics : endpoints.values()) {
+			try {
+				server.unregisterMBean(getObjectName(metrics));
+			} catch (final JMException e) {
+				LOG.debug("Cannot unregister metrics for " + metrics.getEndpoint(), e);
+			}
+		}
+	}
+
+	/**
+	 * Register an endpoint's MBean, if publishing.
+	 * 
+	 * @param metrics
+	 *          the endpoint's metrics
+	 */
+	private void publish(final EndpointMetrics metrics)
+	{
+		if (server == null || unpublished) {
+			return;
+		}
+
+		try {
+			server.registerMBean(metrics, getObjectName(metrics));
+		} catch (final JMException e) {
+			LOG.warn("Cannot register metrics for " + metrics.getMethod() + " " + metrics.getEndpoint(), e);
+		}
+	}
+
+	/**
+	 * @param metrics
+	 *          an endpoint's metrics
+	 * @return The name of the endpoint's MBean
+	 * @throws JMException
+	 *           If the name is invalid
+	 */
+	private ObjectName getObjectName(final EndpointMetrics metrics) throws JMException
+	{
+		return new ObjectName(DOMAIN + ":type=Endpoint,connector=" + ObjectName.quote(name) + ",method="
+				+ metrics.getMethod() + ",endpoint=" + ObjectName.quote(metrics.getEndpoint()));
+	}
+}
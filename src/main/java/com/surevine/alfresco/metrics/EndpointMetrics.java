@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.metrics;
+
+/**
+ * Latency, status and traffic counts for the requests made to one endpoint
+ * with one method.
+ */
+public class EndpointMetrics implements EndpointMetricsMBean
+{
+	/**
+	 * The HTTP method.
+	 */
+	private final String method;
+
+	/**
+	 * The endpoint template.
+	 */
+	private final String endpoint;
+
+	/**
+	 * The latency of each request which received a response.
+	 */
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	/**
+	 * The number of requests which received no response.
+	 */
+	private final StripedCounter errors = new StripedCounter();
+
+	/**
+	 * The number of requests which were repeats of a failed request.
+	 */
+	private final StripedCounter retries = new StripedCounter();
+
+	/**
+	 * The number of responses in each status class, 1xx to 5xx.
+	 */
+	private final StripedCounter[] statusClasses = new StripedCounter[5];
+
+	/**
+	 * The number of request body bytes sent.
+	 */
+	private final StripedCounter bytesSent = new StripedCounter();
+
+	/**
+	 * The number of response body bytes read.
+	 */
+	private final StripedCounter bytesReceived = new StripedCounter();
+
+	/**
+	 * @param method
+	 *          the HTTP method
+	 * @param endpoint
+	 *          the endpoint template
+	 */
+	EndpointMetrics(final String method, final String endpoint)
+	{
+		this.method = method;
+		this.endpoint = endpoint;
+
+		for (int i = 0; i < statusClasses.length; i++) {
+			statusClasses[i] = new StripedCounter();
+		}
+	}
+
+	/**
+	 * Record a response.
+	 * 
+	 * @param status
+	 *          the status code
+	 * @param nanos
+	 *          the time taken to receive the response
+	 */
+	void recordResponse(final int status, final long nanos)
+	{
+		latency.record(nanos);
+
+		final int statusClass = status / 100 - 1;
+
+		if (statusClass >= 0 && statusClass < statusClasses.length) {
+			statusClasses[statusClass].increment();
+		}
+	}
+
+	/**
+	 * Record a request which received no response.
+	 */
+	void recordError()
+	{
+		errors.increment();
+	}
+
+	/**
+	 * Record that a failed request is being repeated.
+	 */
+	void recordRetry()
+	{
+		retries.increment();
+	}
+
+	/**
+	 * @return The counter of request body bytes
+	 */
+	StripedCounter getBytesSentCounter()
+	{
+		return bytesSent;
+	}
+
+	/**
+	 * @return The counter of response body bytes
+	 */
+	StripedCounter getBytesReceivedCounter()
+	{
+		return bytesReceived;
+	}
+
+	public String getMethod()
+	{
+		return method;
+	}
+
+	public String getEndpoint()
+	{
+		return endpoint;
+	}
+
+	public long getRequestCount()
+	{
+		return latency.getCount() + errors.sum();
+	}
+
+	public long getErrorCount()
+	{
+		return errors.sum();
+	}
+
+	public long getRetryCount()
+	{
+		return retries.sum();
+	}
+
+	public long getInformationalCount()
+	{
+		return statusClasses[0].sum();
+	}
+
+	public long getSuccessCount()
+	{
+		return statusClasses[1].sum();
+	}
+
+	public long getRedirectionCount()
+	{
+		return statusClasses[2].sum();
+	}
+
+	public long getClientErrorCount()
+	{
+		return statusClasses[3].sum();
+	}
+
+	public long getServerErrorCount()
+	{
+		return statusClasses[4].sum();
+	}
+
+	public long getBytesSent()
+	{
+		return bytesSent.sum();
+	}
+
+	public long getBytesReceived()
+	{
+		return bytesReceived.sum();
+	}
+
+	public double getMeanLatencyMillis()
+	{
+		return latency.getMeanMillis();
+	}
+
+	public double getMaxLatencyMillis()
+	{
+		return latency.getMaxMillis();
+	}
+
+	public double getMedianLatencyMillis()
+	{
+		return latency.getPercentileMillis(50);
+	}
+
+	public double getPercentile95LatencyMillis()
+	{
+		return latency.getPercentileMillis(95);
+	}
+
+	public double getPercentile99LatencyMillis()
+	{
+		return latency.getPercentileMillis(99);
+	}
+
+	public long[] getLatencyHistogram()
+	{
+		return latency.getBucketCounts();
+	}
+
+	@Override
+	public String toString()
+	{
+		return method + " " + endpoint + ": requests=" + getRequestCount() + ", errors=" + getErrorCount()
+				+ ", retries=" + getRetryCount()
+				+ ", meanMillis=" + getMeanLatencyMillis() + ", p99Millis=" + getPercentile99LatencyMillis();
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.metrics;
+
+/**
+ * The JMX view of the requests made to one endpoint with one method.
+ * 
+ * Bytes are counted as they pass between the connector and HttpClient, so
+ * compressed responses are counted after they have been decompressed and
+ * compressed requests after they have been compressed. Latency is the time
+ * until the response headers have been received.
+ */
+public interface EndpointMetricsMBean
+{
+	/**
+	 * @return The HTTP method
+	 */
+	String getMethod();
+
+	/**
+	 * @return The endpoint template, with identifiers replaced by placeholders
+	 */
+	String getEndpoint();
+
+	/**
+	 * @return The number of requests sent, including those which failed
+	 */
+	long getRequestCount();
+
+	/**
+	 * @return The number of requests which received no response
+	 */
+	long getErrorCount();
+
+	/**
+	 * @return The number of requests which were repeats of a failed request
+	 */
+	long getRetryCount();
+
+	/**
+	 * @return The number of 1xx responses
+	 */
+	long getInformationalCount();
+
+	/**
+	 * @return The number of 2xx responses
+	 */
+	long getSuccessCount();
+
+	/**
+	 * @return The number of 3xx responses
+	 */
+	long getRedirectionCount();
+
+	/**
+	 * @return The number of 4xx responses
+	 */
+	long getClientErrorCount();
+
+	/**
+	 * @return The number of 5xx responses
+	 */
+	long getServerErrorCount();
+
+	/**
+	 * @return The number of request body bytes sent
+	 */
+	long getBytesSent();
+
+	/**
+	 * @return The number of response body bytes read, as received on the wire
+	 *         if the client has a {@link ResponseWireMetering} interceptor (as
+	 *         clients from <code>HttpClientFactory</code> do), otherwise after
+	 *         the client has decoded them
+	 */
+	long getBytesReceived();
+
+	/**
+	 * @return The mean latency in milliseconds
+	 */
+	double getMeanLatencyMillis();
+
+	/**
+	 * @return The greatest latency in milliseconds
+	 */
+	double getMaxLatencyMillis();
+
+	/**
+	 * @return The estimated median latency in milliseconds
+	 */
+	double getMedianLatencyMillis();
+
+	/**
+	 * @return The estimated 95th percentile latency in milliseconds
+	 */
+	double getPercentile95LatencyMillis();
+
+	/**
+	 * @return The estimated 99th percentile latency in milliseconds
+	 */
+	double getPercentile99LatencyMillis();
+
+	/**
+	 * @return The number of requests in each bucket of the
+	 *         {@link LatencyHistogram}
+	 */
+	long[] getLatencyHistogram();
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.metrics;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Reduces request URLs to endpoint templates, so that requests for different
+ * users, sites or groups are counted against the same endpoint.
+ * 
+ * The scheme, host and query are dropped. A path segment is replaced by
+ * <code>{id}</code> if it follows the name of a collection whose members are
+ * addressed by name, such as <code>people</code> or <code>sites</code>, or if
+ * it looks like a number or node id.
+ */
+public final class EndpointTemplates
+{
+	/**
+	 * The placeholder which replaces identifiers.
+	 */
+	public static final String PLACEHOLDER = "{id}";
+
+	/**
+	 * Path segments which are followed by an identifier.
+	 */
+	private static final Set<String> COLLECTIONS = new HashSet<String>(Arrays.asList("people", "person",
+			"sites", "memberships", "groups", "children", "rmconstraints", "node", "nodes", "users"));
+
+	/**
+	 * Segments which are identifiers whatever precedes them.
+	 */
+	private static final Pattern IDENTIFIER = Pattern.compile("\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F-]{27}");
+
+	private EndpointTemplates()
+	{
+	}
+
+	/**
+	 * @param url
+	 *          the URL requested
+	 * @return The endpoint template for the URL
+	 */
+	public static String templateOf(final String url)
+	{
+		int start = url.indexOf("://");
+		start = start < 0 ? 0 : url.indexOf('/', start + 3);
+
+		if (start < 0) {
+			return "/";
+		}
+
+		int end = url.length();
+
+		final int query = url.indexOf('?', start);
+
+		if (query >= 0) {
+			end = query;
+		}
+
+		final int fragment = url.indexOf('#', start);
+
+		if (fragment >= 0 && fragment < end) {
+			end = fragment;
+		}
+
+		final StringBuilder template = new StringBuilder(end - start);
+
+		boolean identifierNext = false;
+		int segmentStart = start + 1;
+
+		while (segmentStart <= end) {
+			int segmentEnd = url.indexOf('/', segmentStart);
+
+			if (segmentEnd < 0 || segmentEnd > end) {
+				segmentEnd = end;
+			}
+
+			final String segment = url.substring(segmentStart, segmentEnd);
+
+			template.append('/');
+
+			if (segment.length() > 0 && (identifierNext || IDENTIFIER.matcher(segment).matches())) {
+				template.append(PLACEHOLDER);
+				identifierNext = false;
+			} else {
+				template.append(segment);
+				identifierNext = COLLECTIONS.contains(segment);
+			}
+
+			segmentStart = segmentEnd + 1;
+		}
+
+		return template.toString();
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records latencies into buckets whose widths double, so that percentiles can
+ * be estimated to within a factor of two over a range from microseconds to
+ * hours in a fixed, small amount of memory.
+ * 
+ * Bucket <i>i</i> counts latencies of at least 2<sup><i>i</i></sup> and less
+ * than 2<sup><i>i</i>+1</sup> microseconds; the first bucket also counts
+ * anything faster and the last anything slower.
+ */
+public final class LatencyHistogram
+{
+	/**
+	 * The number of buckets, enough for just over half an hour.
+	 */
+	public static final int BUCKETS = 32;
+
+	/**
+	 * The number of latencies in each bucket.
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * The number of latencies recorded.
+	 */
+	private final StripedCounter count = new StripedCounter();
+
+	/**
+	 * The sum of the latencies recorded, in nanoseconds.
+	 */
+	private final StripedCounter totalNanos = new StripedCounter();
+
+	/**
+	 * The greatest latency recorded, in nanoseconds.
+	 */
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * @param nanos
+	 *          a latency in nanoseconds
+	 */
+	public void record(final long nanos)
+	{
+		buckets.incrementAndGet(bucketOf(nanos));
+		count.increment();
+		totalNanos.add(nanos);
+
+		long max = maxNanos.get();
+
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	/**
+	 * @return The number of latencies recorded
+	 */
+	public long getCount()
+	{
+		return count.sum();
+	}
+
+	/**
+	 * @return The mean latency in milliseconds, or zero if none were recorded
+	 */
+	public double getMeanMillis()
+	{
+		final long n = count.sum();
+
+		return n == 0 ? 0 : toMillis(totalNanos.sum()) / n;
+	}
+
+	/**
+	 * @return The greatest latency recorded in milliseconds
+	 */
+	public double getMaxMillis()
+	{
+		return toMillis(maxNanos.get());
+	}
+
+	/**
+	 * Estimate a percentile as the upper bound of the bucket which contains it.
+	 * 
+	 * @param percentile
+	 *          the percentile, between 0 and 100
+	 * @return The estimated latency in milliseconds, or zero if none were
+	 *         recorded
+	 */
+	public double getPercentileMillis(final double percentile)
+	{
+		final long[] counts = getBucketCounts();
+
+		long total = 0;
+
+		for (final long c : counts) {
+			total += c;
+		}
+
+		if (total == 0) {
+			return 0;
+		}
+
+		final double rank = total * percentile / 100;
+
+		long seen = 0;
+
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+
+			if (seen >= rank && counts[i] > 0) {
+				return Math.min(toMillis(TimeUnit.MICROSECONDS.toNanos(1L << (i + 1))), getMaxMillis());
+			}
+		}
+
+		return getMaxMillis();
+	}
+
+	/**
+	 * @return A snapshot of the number of latencies in each bucket
+	 */
+	public long[] getBucketCounts()
+	{
+		final long[] counts = new long[BUCKETS];
+
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+		}
+
+		return counts;
+	}
+
+	/**
+	 * @param nanos
+	 *          a latency in nanoseconds
+	 * @return The bucket for the latency
+	 */
+	static int bucketOf(final long nanos)
+	{
+		final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+
+		if (micros <= 1) {
+			return 0;
+		}
+
+		return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+	}
+
+	/**
+	 * @param nanos
+	 *          a duration in nanoseconds
+	 * @return The duration in milliseconds
+	 */
+	private static double toMillis(final long nanos)
+	{
+		return nanos / 1000000.0;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.metrics;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * Counts the bytes read from or written by an entity.
+ */
+class MeteredEntity extends HttpEntityWrapper
+{
+	/**
+	 * Receives the number of bytes which pass through.
+	 */
+	private final StripedCounter counter;
+
+	/**
+	 * @param wrapped
+	 *          the entity to count
+	 * @param counter
+	 *          receives the number of bytes which pass through
+	 */
+	MeteredEntity(final HttpEntity wrapped, final StripedCounter counter)
+	{
+		super(wrapped);
+		this.counter = counter;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException
+	{
+		final InputStream content = wrappedEntity.getContent();
+
+		return content == null ? null : new CountingInputStream(content, counter);
+	}
+
+	@Override
+	public void writeTo(final OutputStream out) throws IOException
+	{
+		wrappedEntity.writeTo(new CountingOutputStream(out, counter));
+	}
+
+	/**
+	 * Counts the bytes read.
+	 */
+	private static class CountingInputStream extends FilterInputStream
+	{
+		private final StripedCounter counter;
+
+		CountingInputStream(final InputStream in, final StripedCounter counter)
+		{
+			super(in);
+			this.counter = counter;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			final int b = super.read();
+
+			if (b >= 0) {
+				counter.increment();
+			}
+
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException
+		{
+			final int n = super.read(b, off, len);
+
+			if (n > 0) {
+				counter.add(n);
+			}
+
+			return n;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException
+		{
+			final long skipped = super.skip(n);
+			counter.add(skipped);
+
+			return skipped;
+		}
+	}
+
+	/**
+	 * Counts the bytes written.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream
+	{
+		private final StripedCounter counter;
+
+		CountingOutputStream(final OutputStream out, final StripedCounter counter)
+		{
+			super(out);
+			this.counter = counter;
+		}
+
+		@Override
+		public void write(final int b) throws IOException
+		{
+			out.write(b);
+			counter.increment();
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException
+		{
+			out.write(b, off, len);
+			counter.add(len);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.metrics;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Counts response body bytes as they arrive on the wire, for requests sent
+ * through {@link ConnectorMetrics}.
+ * 
+ * It must be added to a client before any interceptor which decodes the body,
+ * such as <code>ResponseContentEncoding</code>, so that compressed bodies are
+ * counted compressed. Without it {@link ConnectorMetrics} counts the bytes as
+ * the client hands them over, after any decoding.
+ */
+public class ResponseWireMetering implements HttpResponseInterceptor
+{
+	/**
+	 * Context attribute holding the counter of bytes received.
+	 */
+	static final String COUNTER_ATTRIBUTE = "com.surevine.alfresco.metrics.bytes-received";
+
+	/**
+	 * Context attribute set once a response body has been wrapped.
+	 */
+	static final String METERED_ATTRIBUTE = "com.surevine.alfresco.metrics.metered";
+
+	public void process(final HttpResponse response, final HttpContext context)
+	{
+		final Object counter = context.getAttribute(COUNTER_ATTRIBUTE);
+		final HttpEntity entity = response.getEntity();
+
+		if (counter instanceof StripedCounter && entity != null) {
+			response.setEntity(new MeteredEntity(entity, (StripedCounter) counter));
+			context.setAttribute(METERED_ATTRIBUTE, Boolean.TRUE);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which many threads can add to without contending on a single
+ * memory location.
+ * 
+ * Each thread adds to one of several cells, chosen by its id and spaced a
+ * cache line apart, and reading the value sums the cells. Reads are therefore
+ * slower than with an AtomicLong, and may miss concurrent additions.
+ */
+public final class StripedCounter
+{
+	/**
+	 * Longs per cache line, so that cells do not share a line.
+	 */
+	private static final int PADDING = 8;
+
+	/**
+	 * The number of cells, a power of two.
+	 */
+	private static final int STRIPES = stripes();
+
+	/**
+	 * The cells, one used in every {@link #PADDING}.
+	 */
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+	/**
+	 * @param delta
+	 *          the amount to add
+	 */
+	public void add(final long delta)
+	{
+		cells.addAndGet(index(), delta);
+	}
+
+	/**
+	 * Add one.
+	 */
+	public void increment()
+	{
+		add(1);
+	}
+
+	/**
+	 * @return The total of everything added
+	 */
+	public long sum()
+	{
+		long sum = 0;
+
+		for (int i = 0; i < STRIPES; i++) {
+			sum += cells.get(i * PADDING);
+		}
+
+		return sum;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.valueOf(sum());
+	}
+
+	/**
+	 * @return The cell used by the current thread
+	 */
+	private static int index()
+	{
+		return (int) (Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+	}
+
+	/**
+	 * @return Twice the number of processors rounded up to a power of two, at
+	 *         most 64
+	 */
+	private static int stripes()
+	{
+		final int wanted = Math.min(64, 2 * Runtime.getRuntime().availableProcessors());
+
+		int stripes = 1;
+
+		while (stripes < wanted) {
+			stripes <<= 1;
+		}
+
+		return stripes;
+	}
+}
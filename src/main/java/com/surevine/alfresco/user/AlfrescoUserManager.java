@@ -21,17 +21,24 @@
 */
 package com.surevine.alfresco.user;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.surevine.alfresco.AlfrescoException;
+import com.surevine.alfresco.BulkOperation;
+import com.surevine.alfresco.BulkOperationRunner;
 import com.surevine.alfresco.connector.IAlfrescoConnector;
+import com.surevine.alfresco.connector.json.RawJson;
+import com.surevine.alfresco.connector.model.Person;
+import com.surevine.alfresco.connector.model.RawJsonVisitor;
+import com.surevine.alfresco.dashboard.CompiledDashboardDefinition;
 import com.surevine.alfresco.dashboard.DashboardDefinition;
 
 /**
@@ -79,6 +86,50 @@ public class AlfrescoUserManager {
 		return result.getJSONArray("people");
 	}
 
+	/**
+	 * Returns the people within the database. Each person is kept as the JSON
+	 * Alfresco sent and decoded only as its fields are read, which takes far
+	 * less memory than {@link #getPeople(String)}.
+	 * 
+	 * @param filter
+	 *            an optional string filter
+	 * @return the people
+	 * @throws AlfrescoException
+	 */
+	public List<Person> listPeople(final String filter) throws AlfrescoException {
+		final HashMap<String, String> parameters = new HashMap<String, String>();
+
+		if (filter != null) {
+			parameters.put("filter", filter);
+		}
+
+		final List<Person> people = new ArrayList<Person>();
+
+		connector.doGetEachRaw(SERVICE_API_PEOPLE, parameters, "people", new RawJsonVisitor() {
+			public void visit(final RawJson element) {
+				people.add(new Person(element));
+			}
+		});
+
+		return people;
+	}
+
+	/**
+	 * Returns an iterator over the people within the database, fetched a page
+	 * at a time. The next page is fetched in the background while the current
+	 * one is processed. The iterator should be closed if it is abandoned
+	 * before the end.
+	 * 
+	 * @param filter
+	 *            an optional string filter
+	 * @param pageSize
+	 *            the number of people to fetch at once
+	 * @return the {@link PeopleIterator}
+	 */
+	public PeopleIterator iteratePeople(final String filter, final int pageSize) {
+		return new PeopleIterator(connector, filter, pageSize);
+	}
+
 	/**
 	 * Updates the user's dashboard to the supplied definition.
 	 * 
@@ -86,41 +137,24 @@ public class AlfrescoUserManager {
 	 *            the username of the user to update.
 	 * @param dashboardDef
 	 *            the dashboard definition to update the user's dashboard to.
-	 * @throws JSONException 
 	 */
 	public void setUserDashboard(final String username,
 			final DashboardDefinition dashboardDef) throws AlfrescoException {
-		
-		// Construct the request JSON
-		JSONObject request = new JSONObject();
-		
-		try {
-			request.put("dashboardPage", "user/" + username + "/dashboard");
-			request.put("templateId", dashboardDef.getTemplateId());
-			
-			Map<String, List<String>> dashletDefs = dashboardDef.getDashlets();
-			
-			for(Entry<String,List<String>> entry : dashletDefs.entrySet()) {
-				int column = Integer.valueOf(entry.getKey()) + 1;
-				
-				int row = 0;
-				
-				for( String dashletUrl : entry.getValue()) {
-					++row;
-					
-					JSONObject dashlet = new JSONObject();
-					
-					dashlet.put("regionId", "component-" + column + "-" + row);
-					dashlet.put("url", dashletUrl);
-					
-					request.append("dashlets", dashlet);
-				}
-			}
-		} catch(JSONException eJSON) {
-			throw new AlfrescoException("An error occurred creating the json request", eJSON);
-		}
-		
-		JSONObject result = connector.doSharePost(SERVICE_SHARE_SET_DASHBOARD, request);
+		setUserDashboard(username, compile(dashboardDef));
+	}
+
+	/**
+	 * Updates the user's dashboard to the supplied compiled definition.
+	 * 
+	 * @param username
+	 *            the username of the user to update.
+	 * @param dashboardDef
+	 *            the dashboard definition to update the user's dashboard to.
+	 */
+	public void setUserDashboard(final String username,
+			final CompiledDashboardDefinition dashboardDef) throws AlfrescoException {
+		JSONObject result = connector.doSharePost(SERVICE_SHARE_SET_DASHBOARD,
+				dashboardDef.createRequest(username));
 		
 		try {
 			if(!result.getBoolean("success")) {
@@ -130,4 +164,74 @@ public class AlfrescoUserManager {
 			throw new AlfrescoException(SERVICE_SHARE_SET_DASHBOARD + " did not return a valid response", eJSON);
 		}
 	}
+
+	/**
+	 * Updates the dashboards of many users to the supplied definition. A
+	 * failure for one user does not stop the others. Using more than one
+	 * thread requires a connector which is safe to share between threads,
+	 * such as one built on a pooled HTTP client.
+	 * 
+	 * @param usernames
+	 *            the usernames of the users to update.
+	 * @param dashboardDef
+	 *            the dashboard definition to update the users' dashboards to.
+	 * @param parallelism
+	 *            the maximum number of dashboards to update at once.
+	 * @return the users whose dashboards could not be updated, mapped to the
+	 *         reason, in the order given. Empty if all succeeded.
+	 * @throws AlfrescoException
+	 *             if interrupted while waiting for the updates.
+	 */
+	public Map<String, AlfrescoException> setUserDashboards(
+			final Collection<String> usernames,
+			final DashboardDefinition dashboardDef, final int parallelism)
+			throws AlfrescoException {
+		return setUserDashboards(usernames, compile(dashboardDef), parallelism);
+	}
+
+	/**
+	 * Updates the dashboards of many users to the supplied compiled
+	 * definition.
+	 * 
+	 * @param usernames
+	 *            the usernames of the users to update.
+	 * @param dashboardDef
+	 *            the dashboard definition to update the users' dashboards to.
+	 * @param parallelism
+	 *            the maximum number of dashboards to update at once.
+	 * @return the users whose dashboards could not be updated, mapped to the
+	 *         reason, in the order given. Empty if all succeeded.
+	 * @throws AlfrescoException
+	 *             if interrupted while waiting for the updates.
+	 * @see #setUserDashboards(Collection, DashboardDefinition, int)
+	 */
+	public Map<String, AlfrescoException> setUserDashboards(
+			final Collection<String> usernames,
+			final CompiledDashboardDefinition dashboardDef, final int parallelism)
+			throws AlfrescoException {
+		return BulkOperationRunner.run(usernames, new BulkOperation<String>() {
+			public void apply(final String username) throws AlfrescoException {
+				setUserDashboard(username, dashboardDef);
+			}
+		}, parallelism);
+	}
+
+	/**
+	 * Compiles a dashboard definition, reporting an invalid one as an
+	 * {@link AlfrescoException}.
+	 * 
+	 * @param dashboardDef
+	 *            the definition to compile.
+	 * @return the compiled definition.
+	 * @throws AlfrescoException
+	 *             if the definition cannot be turned into a request.
+	 */
+	private static CompiledDashboardDefinition compile(
+			final DashboardDefinition dashboardDef) throws AlfrescoException {
+		try {
+			return new CompiledDashboardDefinition(dashboardDef);
+		} catch (IllegalArgumentException e) {
+			throw new AlfrescoException("An error occurred creating the json request", e);
+		}
+	}
 }
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.user;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.surevine.alfresco.AlfrescoException;
+import com.surevine.alfresco.connector.AlfrescoFutureTask;
+import com.surevine.alfresco.connector.IAlfrescoConnector;
+
+/**
+ * Pages through the people known to alfresco, fetching the next page in the
+ * background while the current one is being processed.
+ * 
+ * At most two pages are held in memory at once. The background thread is a
+ * daemon and is stopped once the last page has been fetched or
+ * {@link #close()} is called, so callers which stop early should close the
+ * iterator.
+ */
+public class PeopleIterator {
+	private static final String SERVICE_API_PEOPLE = "api/people";
+
+	/**
+	 * The AlfrescoConnector to use for communication
+	 */
+	private final IAlfrescoConnector connector;
+
+	/**
+	 * The filter to apply, or null
+	 */
+	private final String filter;
+
+	/**
+	 * The number of people to request at once
+	 */
+	private final int pageSize;
+
+	/**
+	 * Runs the prefetch of the next page
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * The page being iterated over
+	 */
+	private JSONArray page;
+
+	/**
+	 * The position of the next person within the current page
+	 */
+	private int index;
+
+	/**
+	 * The page being fetched in the background, or null if there are no more
+	 */
+	private AlfrescoFutureTask<JSONArray> nextPage;
+
+	/**
+	 * The skipCount of the next page to fetch
+	 */
+	private int nextSkipCount;
+
+	/**
+	 * The username of the first person on the current page, used to notice a
+	 * server which ignores skipCount
+	 */
+	private String firstUsername;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param connector
+	 *            the {@link IAlfrescoConnector} to use for communication
+	 * @param filter
+	 *            an optional string filter
+	 * @param pageSize
+	 *            the number of people to request at once
+	 */
+	PeopleIterator(final IAlfrescoConnector connector, final String filter, final int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+		}
+
+		this.connector = connector;
+		this.filter = filter;
+		this.pageSize = pageSize;
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "alfresco-people-prefetch");
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+
+		prefetch();
+	}
+
+	/**
+	 * @return whether there are more people
+	 * @throws AlfrescoException
+	 *             if the next page could not be fetched
+	 */
+	public boolean hasNext() throws AlfrescoException {
+		while (page == null || index >= page.length()) {
+			if (nextPage == null) {
+				return false;
+			}
+
+			advance();
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the next person
+	 * @throws AlfrescoException
+	 *             if the next page could not be fetched, or there are no more
+	 *             people
+	 */
+	public JSONObject next() throws AlfrescoException {
+		if (!hasNext()) {
+			throw new AlfrescoException("No more people");
+		}
+
+		try {
+			return page.getJSONObject(index++);
+		} catch (JSONException e) {
+			throw new AlfrescoException("Invalid person in " + SERVICE_API_PEOPLE, e);
+		}
+	}
+
+	/**
+	 * Stop fetching pages and release the background thread.
+	 */
+	public void close() {
+		if (nextPage != null) {
+			nextPage.cancel(true);
+			nextPage = null;
+		}
+
+		page = null;
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Wait for the page being prefetched, make it current and start fetching
+	 * the one after.
+	 */
+	private void advance() throws AlfrescoException {
+		final JSONArray fetched;
+
+		try {
+			fetched = nextPage.getResult();
+		} catch (AlfrescoException e) {
+			close();
+			throw e;
+		}
+
+		final String first = getUsername(fetched);
+
+		if (page != null && first != null && first.equals(firstUsername)) {
+			// The server ignored skipCount and sent the same page again
+			close();
+			return;
+		}
+
+		page = fetched;
+		index = 0;
+		firstUsername = first;
+
+		// A short page is the last one, and a long one means maxResults was
+		// ignored and we were sent everything
+		if (fetched.length() == pageSize) {
+			prefetch();
+		} else {
+			nextPage = null;
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Start fetching the next page in the background.
+	 */
+	private void prefetch() {
+		final Map<String, String> parameters = new HashMap<String, String>();
+
+		if (filter != null) {
+			parameters.put("filter", filter);
+		}
+
+		parameters.put("skipCount", String.valueOf(nextSkipCount));
+		parameters.put("maxResults", String.valueOf(pageSize));
+
+		nextSkipCount += pageSize;
+
+		nextPage = new AlfrescoFutureTask<JSONArray>(new Callable<JSONArray>() {
+			public JSONArray call() throws AlfrescoException, JSONException {
+				return connector.doGet(SERVICE_API_PEOPLE, parameters).getJSONArray("people");
+			}
+		});
+
+		executor.execute(nextPage);
+	}
+
+	/**
+	 * @param people
+	 *            a page of people
+	 * @return the username of the first person, or null
+	 */
+	private static String getUsername(final JSONArray people) {
+		final JSONObject person = people.optJSONObject(0);
+
+		return person == null ? null : person.optString("userName", null);
+	}
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListResourceBundle;
+import java.util.Map;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.surevine.alfresco.AlfrescoConnector.RoleType;
+
+/**
+ * Test case for the membership synchronisation of the {@link AlfrescoConnector} class
+ */
+public class AlfrescoConnectorTest {
+
+    /**
+     * Base URL of the Alfresco REST API
+     */
+    private static final String BASE = "http://alfresco.example.com/alfresco/service";
+
+    /**
+     * The (mocked) HTTP client
+     */
+    @Mock
+    HttpClient httpClient;
+
+    /**
+     * The (mocked) authenticator
+     */
+    @Mock
+    Authenticator authenticator;
+
+    /**
+     * The body returned for each GET, by path and query
+     */
+    final Map<String, String> gets = new LinkedHashMap<String, String>();
+
+    /**
+     * The changes requested, as "METHOD path body"
+     */
+    final List<String> changes = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * The class under test
+     */
+    AlfrescoConnector connector;
+
+    /**
+     * Initialise everything
+     *
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        when(authenticator.authenticate(httpClient)).thenReturn(true);
+        when(httpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenAnswer(
+            new Answer<HttpResponse>() {
+                public HttpResponse answer(final InvocationOnMock invocation) throws Throwable {
+                    return respond((HttpUriRequest) invocation.getArguments()[0]);
+                }
+            });
+
+        connector = new AlfrescoConnector(new PropertyWrapper(new ListResourceBundle() {
+            @Override
+            protected Object[][] getContents() {
+                return new Object[][] {{"alfresco.url.base", BASE}};
+            }
+        }), authenticator, httpClient);
+    }
+
+    /**
+     * Answer a request from {@link #gets}, recording any change it asks for
+     */
+    HttpResponse respond(final HttpUriRequest request) throws Exception {
+        String path = request.getURI().getRawPath().substring("/alfresco/service".length());
+        String query = request.getURI().getRawQuery();
+        String body = "{}";
+
+        if ("GET".equals(request.getMethod())) {
+            body = gets.get(query == null ? path : path + "?" + query);
+        } else {
+            String sent = "";
+
+            if (request instanceof HttpEntityEnclosingRequest) {
+                sent = " " + EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity());
+            }
+
+            changes.add(request.getMethod() + " " + path + sent);
+        }
+
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, body == null ? 404 : 200, "Test");
+        response.setEntity(new StringEntity(body == null ? "{}" : body, "UTF-8"));
+
+        return response;
+    }
+
+    /**
+     * Reconciling a site should add missing members, remove extra ones and change wrong roles, leaving the
+     * rest alone
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReconcileSiteMembers() throws Exception {
+        gets.put("/api/sites/team/memberships?authorityType=USER", "["
+            + "{\"role\":\"SiteManager\",\"authority\":{\"userName\":\"alice\"}},"
+            + "{\"role\":\"SiteConsumer\",\"authority\":{\"userName\":\"bob\"}},"
+            + "{\"role\":\"SiteConsumer\",\"authority\":{\"userName\":\"carol\"}}]");
+
+        Map<String, RoleType> desired = new LinkedHashMap<String, RoleType>();
+        desired.put("alice", RoleType.MANAGER);
+        desired.put("bob", RoleType.COLLABORATOR);
+        desired.put("dave", RoleType.CONSUMER);
+
+        MembershipSyncResult result = connector.reconcileSiteMembers("team", desired, 1);
+
+        assertTrue("Unexpected failures", result.isSuccessful());
+        assertEquals("Wrong additions", Arrays.asList("dave"), result.getAdded());
+        assertEquals("Wrong role changes", Arrays.asList("bob"), result.getChanged());
+        assertEquals("Wrong removals", Arrays.asList("carol"), result.getRemoved());
+
+        assertEquals("Wrong requests", Arrays.asList(
+            "POST /api/sites/team/memberships {\"role\":\"SiteConsumer\",\"person\":{\"userName\":\"dave\"}}",
+            "PUT /api/sites/team/memberships {\"role\":\"SiteCollaborator\",\"person\":{\"userName\":\"bob\"}}",
+            "DELETE /api/sites/team/memberships/carol"), changes);
+    }
+
+    /**
+     * Usernames differing only in case are the same Alfresco user, so should have their role changed rather
+     * than be removed and re-added
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReconcileSiteMembersIgnoresCase() throws Exception {
+        gets.put("/api/sites/team/memberships?authorityType=USER", "["
+            + "{\"role\":\"SiteConsumer\",\"authority\":{\"userName\":\"Bob\"}},"
+            + "{\"role\":\"SiteConsumer\",\"authority\":{\"userName\":\"Carol\"}}]");
+
+        Map<String, RoleType> desired = new LinkedHashMap<String, RoleType>();
+        desired.put("bob", RoleType.COLLABORATOR);
+        desired.put("carol", RoleType.CONSUMER);
+
+        MembershipSyncResult result = connector.reconcileSiteMembers("team", desired, 1);
+
+        assertTrue("Unexpected failures", result.isSuccessful());
+        assertTrue("Wrong additions", result.getAdded().isEmpty());
+        assertTrue("Wrong removals", result.getRemoved().isEmpty());
+        assertEquals("Wrong role changes", Arrays.asList("bob"), result.getChanged());
+
+        assertEquals("Wrong requests", Arrays.asList(
+            "PUT /api/sites/team/memberships {\"role\":\"SiteCollaborator\",\"person\":{\"userName\":\"bob\"}}"),
+            changes);
+    }
+
+    /**
+     * A cached membership should be trusted whatever the case of the username, but a cached absence should be
+     * checked with the server before the removal is skipped
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRemoveMemberFromSiteIfPresent() throws Exception {
+        gets.put("/api/people/bob/sites", "[]");
+        gets.put("/api/people/Bob/sites", "[]");
+
+        connector.removeMemberFromSiteIfPresent("team", "bob");
+
+        assertTrue("Removed a non-member", changes.isEmpty());
+
+        // joined the site outside this connector, so the cached entry is now wrong
+        gets.put("/api/people/Bob/sites", "[{\"shortName\":\"Team\"}]");
+
+        connector.removeMemberFromSiteIfPresent("team", "Bob");
+
+        assertEquals("Wrong requests", Arrays.asList("DELETE /api/sites/team/memberships/Bob"), changes);
+
+        changes.clear();
+        gets.clear();
+        connector.addMemberToSite("projects", "BOB", RoleType.CONSUMER);
+        connector.removeMemberFromSiteIfPresent("projects", "bob");
+
+        assertEquals("Wrong requests", Arrays.asList(
+            "POST /api/sites/projects/memberships {\"role\":\"SiteConsumer\",\"person\":{\"userName\":\"BOB\"}}",
+            "DELETE /api/sites/projects/memberships/bob"), changes);
+    }
+
+    /**
+     * A failed change should be reported without stopping the others
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReconcileReportsFailures() throws Exception {
+        gets.put("/api/sites/team/memberships?authorityType=USER", "[]");
+
+        doAnswer(new Answer<HttpResponse>() {
+            public HttpResponse answer(final InvocationOnMock invocation) throws Throwable {
+                HttpResponse response = respond((HttpUriRequest) invocation.getArguments()[0]);
+
+                if (!changes.isEmpty() && changes.get(changes.size() - 1).contains("erin")) {
+                    response.setStatusCode(500);
+                }
+
+                return response;
+            }
+        }).when(httpClient).execute(any(HttpUriRequest.class), any(HttpContext.class));
+
+        Map<String, RoleType> desired = new LinkedHashMap<String, RoleType>();
+        desired.put("dave", RoleType.CONSUMER);
+        desired.put("erin", RoleType.CONSUMER);
+
+        MembershipSyncResult result = connector.reconcileSiteMembers("team", desired, 1);
+
+        assertEquals("Wrong additions", Arrays.asList("dave"), result.getAdded());
+        assertEquals("Wrong failures", Collections.singleton("erin"), result.getFailures().keySet());
+    }
+
+    /**
+     * Usernames differing only in case are the same Alfresco user, so should not be removed and re-added
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSyncGroupMembersIgnoresCase() throws Exception {
+        gets.put("/api/groups/staff/children?authorityType=USER", "{\"data\":["
+            + "{\"shortName\":\"Bob\"},"
+            + "{\"shortName\":\"carol\"}]}");
+
+        MembershipSyncResult result = connector.syncGroupMembers("staff", Arrays.asList("bob", "Dave"), 1);
+
+        assertTrue("Unexpected failures", result.isSuccessful());
+        assertEquals("Wrong additions", Arrays.asList("Dave"), result.getAdded());
+        assertEquals("Wrong removals", Arrays.asList("carol"), result.getRemoved());
+
+        assertEquals("Wrong requests", Arrays.asList(
+            "PUT /api/people/Dave {\"addGroups\":[\"GROUP_staff\"]}",
+            "PUT /api/people/carol {\"removeGroups\":[\"GROUP_staff\"]}"), changes);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test case for the {@link BulkOperationRunner} class
+ */
+public class BulkOperationRunnerTest {
+
+	/**
+	 * The users operated on in each test
+	 */
+	static final List<String> USERS = Arrays.asList("alice", "bob", "carol", "dave");
+
+	/**
+	 * Failures should be collected per item without stopping the other items
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailuresAreCollected() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+
+		Map<String, AlfrescoException> failures = BulkOperationRunner.run(USERS,
+				new BulkOperation<String>() {
+					public void apply(String user) throws AlfrescoException {
+						calls.incrementAndGet();
+
+						if (user.startsWith("b") || user.startsWith("d")) {
+							throw new AlfrescoException("Failed for " + user);
+						}
+					}
+				}, 3);
+
+		assertEquals("Not every item was attempted", USERS.size(), calls.get());
+		assertEquals("Wrong failures", Arrays.asList("bob", "dave"), Arrays
+				.asList(failures.keySet().toArray()));
+		assertEquals("Wrong successes", Arrays.asList("alice", "carol"),
+				BulkOperationRunner.succeeded(USERS, failures));
+	}
+
+	/**
+	 * A sequential run should succeed for every item
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSequentialRun() throws Exception {
+		final StringBuilder order = new StringBuilder();
+
+		Map<String, AlfrescoException> failures = BulkOperationRunner.run(USERS,
+				new BulkOperation<String>() {
+					public void apply(String user) {
+						order.append(user.charAt(0));
+					}
+				}, 1);
+
+		assertTrue("Unexpected failures", failures.isEmpty());
+		assertEquals("Items not run in order", "abcd", order.toString());
+	}
+}
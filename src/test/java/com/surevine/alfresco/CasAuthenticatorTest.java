@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ListResourceBundle;
+
+import org.apache.http.ConnectionReuseStrategy;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.AuthenticationHandler;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.RedirectStrategy;
+import org.apache.http.client.RequestDirector;
+import org.apache.http.client.UserTokenHandler;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoutePlanner;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Test case for the session reuse of the {@link CasAuthenticator} class
+ */
+public class CasAuthenticatorTest {
+
+    /**
+     * URL of the CAS login page
+     */
+    private static final String LOGIN_URL = "https://cas.example.com/cas/login";
+
+    /**
+     * URL of the page protected by CAS
+     */
+    private static final String POSTLOGIN_URL = "https://alfresco.example.com/share/page";
+
+    /**
+     * The (mocked) director which answers the client's requests
+     */
+    @Mock
+    RequestDirector director;
+
+    /**
+     * The HTTP client, sending its requests to {@link #director}
+     */
+    DefaultHttpClient httpClient;
+
+    /**
+     * The requests made, as "METHOD url"
+     */
+    final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Whether the protected page accepts the client's session
+     */
+    boolean sessionValid;
+
+    /**
+     * The file the session is stored in
+     */
+    File file;
+
+    /**
+     * The class under test
+     */
+    CasAuthenticator authenticator;
+
+    /**
+     * Initialise everything
+     *
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        file = File.createTempFile("cas-session", ".txt");
+        file.delete();
+
+        when(director.execute(any(HttpHost.class), any(HttpRequest.class), any(HttpContext.class))).thenAnswer(
+            new Answer<HttpResponse>() {
+                public HttpResponse answer(final InvocationOnMock invocation) throws Throwable {
+                    return respond((HttpUriRequest) invocation.getArguments()[1],
+                        (HttpContext) invocation.getArguments()[2]);
+                }
+            });
+
+        httpClient = new DefaultHttpClient() {
+            @Override
+            protected RequestDirector createClientRequestDirector(final HttpRequestExecutor requestExec,
+                    final ClientConnectionManager conman, final ConnectionReuseStrategy reustrat,
+                    final ConnectionKeepAliveStrategy kastrat, final HttpRoutePlanner rouplan,
+                    final HttpProcessor httpProcessor, final HttpRequestRetryHandler retryHandler,
+                    final RedirectStrategy redirectStrategy, final AuthenticationHandler targetAuthHandler,
+                    final AuthenticationHandler proxyAuthHandler, final UserTokenHandler stateHandler,
+                    final HttpParams params) {
+                return director;
+            }
+        };
+
+        authenticator = new CasAuthenticator(new PropertyWrapper(new ListResourceBundle() {
+            @Override
+            protected Object[][] getContents() {
+                return new Object[][] {
+                    {"cas.url.login", LOGIN_URL},
+                    {"cas.url.postlogin", POSTLOGIN_URL},
+                    {"alfresco.username", "admin"},
+                    {"alfresco.password", "secret"},
+                    {"cas.session.store", file.getPath()}};
+            }
+        }));
+    }
+
+    /**
+     * Tear everything down
+     *
+     * @throws Exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    /**
+     * Answer a request as CAS and the protected application would
+     */
+    HttpResponse respond(final HttpUriRequest request, final HttpContext context) throws Exception {
+        String url = request.getURI().toString();
+        String body = "";
+
+        requests.add(request.getMethod() + " " + url);
+
+        if (url.equals(POSTLOGIN_URL) && !sessionValid) {
+            // an expired session is redirected to the login form
+            url = LOGIN_URL;
+        }
+
+        // as if any redirect had been followed
+        context.setAttribute(ExecutionContext.HTTP_REQUEST, new HttpGet(url));
+
+        if (url.equals(LOGIN_URL)) {
+            if ("POST".equals(request.getMethod())) {
+                sessionValid = true;
+                httpClient.getCookieStore().addCookie(new BasicClientCookie("JSESSIONID", "new"));
+                body = "<div class=\"success\">Logged in</div>";
+            } else {
+                body = "<input type=\"hidden\" name=\"lt\" value=\"LT-1\" />";
+            }
+        }
+
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new StringEntity(body, "UTF-8"));
+
+        return response;
+    }
+
+    /**
+     * Store a session as a previous run would have
+     */
+    void storeSession() {
+        CookieStore previous = new BasicCookieStore();
+        previous.addCookie(new BasicClientCookie("JSESSIONID", "old"));
+
+        new CasSessionStore(file).save(previous);
+    }
+
+    /**
+     * @param cookieStore A cookie store
+     * @return The values of its cookies
+     */
+    static List<String> cookieValues(final CookieStore cookieStore) {
+        List<String> values = new ArrayList<String>();
+
+        for (Cookie cookie : cookieStore.getCookies()) {
+            values.add(cookie.getValue());
+        }
+
+        return values;
+    }
+
+    /**
+     * A stored session which is still accepted should be reused without logging in
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReusesValidSession() throws Exception {
+        storeSession();
+        sessionValid = true;
+
+        assertTrue("Authentication failed", authenticator.authenticate(httpClient));
+
+        assertEquals("Wrong requests", Collections.singletonList("GET " + POSTLOGIN_URL), requests);
+        assertEquals("Stored session not restored", "old",
+            httpClient.getCookieStore().getCookies().get(0).getValue());
+    }
+
+    /**
+     * A stored session which has expired should be discarded and a full login done
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLogsInAgainWhenSessionExpired() throws Exception {
+        storeSession();
+        sessionValid = false;
+
+        assertTrue("Authentication failed", authenticator.authenticate(httpClient));
+
+        assertTrue("Did not log in", requests.contains("POST " + LOGIN_URL));
+        assertEquals("Wrong session in client", Collections.singletonList("new"),
+            cookieValues(httpClient.getCookieStore()));
+
+        CookieStore stored = new BasicCookieStore();
+        new CasSessionStore(file).restore(stored);
+
+        assertEquals("Wrong session stored", Collections.singletonList("new"), cookieValues(stored));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Date;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the {@link CasSessionStore} class
+ */
+public class CasSessionStoreTest {
+
+	/**
+	 * The file the session is stored in
+	 */
+	File file;
+
+	/**
+	 * The class under test
+	 */
+	CasSessionStore sessionStore;
+
+	/**
+	 * Initialise everything
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("cas-session", ".txt");
+		file.delete();
+
+		sessionStore = new CasSessionStore(file);
+	}
+
+	/**
+	 * Tear everything down
+	 * 
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		sessionStore.clear();
+	}
+
+	/**
+	 * Live cookies should survive a save and restore, expired ones should not
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSaveAndRestore() throws Exception {
+		CookieStore original = new BasicCookieStore();
+
+		BasicClientCookie live = new BasicClientCookie("JSESSIONID", "abc\t123 =%");
+		live.setDomain("alfresco.example.com");
+		live.setPath("/alfresco");
+		original.addCookie(live);
+
+		BasicClientCookie expired = new BasicClientCookie("CASTGC", "TGT-1");
+		expired.setDomain("cas.example.com");
+		expired.setExpiryDate(new Date(System.currentTimeMillis() + 200));
+		original.addCookie(expired);
+
+		sessionStore.save(original);
+
+		assertTrue("Session not stored", file.isFile());
+
+		Thread.sleep(300);
+
+		CookieStore restored = new BasicCookieStore();
+
+		assertTrue("Session not restored", sessionStore.restore(restored));
+		assertEquals("Wrong cookies restored", 1, restored.getCookies().size());
+		assertEquals("abc\t123 =%", restored.getCookies().get(0).getValue());
+		assertEquals("alfresco.example.com", restored.getCookies().get(0).getDomain());
+		assertEquals("/alfresco", restored.getCookies().get(0).getPath());
+	}
+
+	/**
+	 * A session which other users can read should not be restored
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testRefusesSessionOthersCanRead() throws Exception {
+		CookieStore original = new BasicCookieStore();
+		original.addCookie(new BasicClientCookie("JSESSIONID", "abc123"));
+		sessionStore.save(original);
+
+		CookieStore restored = new BasicCookieStore();
+		assertTrue("Session not restored", sessionStore.restore(restored));
+
+		assertTrue(file.setReadable(true, false));
+
+		assertFalse("Restored a session others can read", sessionStore.restore(new BasicCookieStore()));
+		assertTrue("Session deleted", file.isFile());
+	}
+
+	/**
+	 * A file which is not a stored session should be discarded
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDiscardsUnknownFormat() throws Exception {
+		sessionStore.save(new BasicCookieStore());
+
+		FileOutputStream out = new FileOutputStream(file);
+
+		try {
+			out.write(new byte[] { (byte) 0xac, (byte) 0xed, 0, 5 });
+		} finally {
+			out.close();
+		}
+
+		assertFalse("Restored an unknown format", sessionStore.restore(new BasicCookieStore()));
+		assertFalse("File not discarded", file.exists());
+	}
+
+	/**
+	 * Nothing should be restored when no session has been stored
+	 */
+	@Test
+	public void testRestoreWithoutSession() {
+		assertFalse("Restored a missing session", sessionStore
+				.restore(new BasicCookieStore()));
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Test case for the {@link GroupMembershipCoalescer} class
+ */
+public class GroupMembershipCoalescerTest {
+
+    /**
+     * The (mocked) connector
+     */
+    @Mock
+    AlfrescoConnector connector;
+
+    /**
+     * The class under test
+     */
+    GroupMembershipCoalescer coalescer;
+
+    /**
+     * Initialise everything
+     *
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        coalescer = new GroupMembershipCoalescer(connector, 60000, 10);
+    }
+
+    /**
+     * Tear everything down
+     *
+     * @throws Exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        coalescer.close();
+    }
+
+    /**
+     * A burst of changes should be sent as one request, with only the last change to each group kept
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testChangesAreCombined() throws Exception {
+        coalescer.addMemberToGroup("bob", "one");
+        coalescer.addMemberToGroup("bob", "two");
+        coalescer.removeMemberFromGroup("bob", "three");
+        coalescer.addMemberToGroup("bob", "four");
+        coalescer.removeMemberFromGroup("bob", "four");
+
+        assertTrue("Unexpected failures", coalescer.flush().isEmpty());
+
+        verify(connector).updateGroupMembership("bob", new LinkedHashSet<String>(Arrays.asList("one", "two")),
+                new LinkedHashSet<String>(Arrays.asList("three", "four")));
+        verify(connector, never()).addMemberToGroup(eq("bob"), eq("four"));
+        assertEquals("Changes left over", 0, coalescer.getPendingUserCount());
+    }
+
+    /**
+     * If the combined request fails each change should be made on its own
+     *
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testFallsBackToSingleChanges() throws Exception {
+        doThrow(new AlfrescoException("already a member")).when(connector)
+                .updateGroupMembership(eq("bob"), anyCollection(), anyCollection());
+
+        coalescer.addMemberToGroup("bob", "one");
+        coalescer.removeMemberFromGroup("bob", "two");
+
+        assertTrue("Unexpected failures", coalescer.flush().isEmpty());
+
+        verify(connector).addMemberToGroup("bob", "one");
+        verify(connector).removeMemberFromGroupIfPresent("bob", "two");
+    }
+
+    /**
+     * Adding an existing member to a group and then removing them should leave them removed
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAddThenRemoveExistingMember() throws Exception {
+        coalescer.addMemberToGroup("bob", "one");
+        coalescer.removeMemberFromGroup("bob", "one");
+
+        assertTrue("Unexpected failures", coalescer.flush().isEmpty());
+
+        verify(connector).updateGroupMembership("bob", Collections.<String>emptySet(), Collections.singleton("one"));
+    }
+
+    /**
+     * Failures of changes sent when their window ends should be returned by the next flush
+     *
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBackgroundFailuresAreReported() throws Exception {
+        AlfrescoException failure = new AlfrescoException("no such group");
+        doThrow(failure).when(connector).updateGroupMembership(eq("bob"), anyCollection(), anyCollection());
+        doThrow(failure).when(connector).addMemberToGroup("bob", "missing");
+
+        GroupMembershipCoalescer windowed = new GroupMembershipCoalescer(connector, 1, 10);
+        windowed.addMemberToGroup("bob", "missing");
+
+        while (windowed.getPendingUserCount() > 0) {
+            Thread.sleep(10);
+        }
+
+        Map<String, AlfrescoException> failures = windowed.close();
+
+        assertEquals("Wrong failures", Collections.singletonMap("bob", failure), failures);
+        assertTrue("Failures reported twice", windowed.flush().isEmpty());
+    }
+}
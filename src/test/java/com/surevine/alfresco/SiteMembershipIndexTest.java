@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the {@link SiteMembershipIndex} class
+ */
+public class SiteMembershipIndexTest {
+
+    /**
+     * The class under test
+     */
+    SiteMembershipIndex index;
+
+    /**
+     * Initialise everything
+     */
+    @Before
+    public void setUp() {
+        index = new SiteMembershipIndex(60000);
+    }
+
+    /**
+     * Cached sites should be returned in lower case, and unknown users should not be found
+     */
+    @Test
+    public void testLookup() {
+        index.putSites("alice", Arrays.asList("Team", "PROJECTS"), index.getVersion());
+
+        assertEquals("Wrong sites", new HashSet<String>(Arrays.asList("team", "projects")), index.getSites("alice"));
+        assertNull("Unknown user found", index.getSites("bob"));
+    }
+
+    /**
+     * Joining and leaving sites should update a cached user, whatever the case of the site name
+     */
+    @Test
+    public void testSiteAddedAndRemoved() {
+        index.putSites("alice", Collections.singleton("team"), index.getVersion());
+
+        index.siteAdded("alice", "Projects");
+        index.siteRemoved("alice", "TEAM");
+
+        assertEquals("Wrong sites", Collections.singleton("projects"), index.getSites("alice"));
+    }
+
+    /**
+     * Usernames should be looked up and updated ignoring case
+     */
+    @Test
+    public void testUsernamesIgnoreCase() {
+        index.putSites("bob", Collections.singleton("team"), index.getVersion());
+
+        index.siteAdded("Bob", "projects");
+
+        assertEquals("Wrong sites", new HashSet<String>(Arrays.asList("team", "projects")), index.getSites("BOB"));
+
+        index.invalidate("BoB");
+
+        assertNull("Invalidated user found", index.getSites("bob"));
+    }
+
+    /**
+     * Sites fetched before a membership changed may be out of date, so should not be cached
+     */
+    @Test
+    public void testPutSitesIgnoresChangeDuringFetch() {
+        long version = index.getVersion();
+
+        index.siteAdded("alice", "projects");
+        index.putSites("alice", Collections.singleton("team"), version);
+
+        assertNull("Out of date sites cached", index.getSites("alice"));
+    }
+
+    /**
+     * Sites fetched again should replace the cached entry, which may be out of date
+     */
+    @Test
+    public void testPutSitesReplacesEntry() {
+        index.putSites("alice", Collections.singleton("team"), index.getVersion());
+        index.putSites("Alice", Collections.singleton("projects"), index.getVersion());
+
+        assertEquals("Entry not replaced", Collections.singleton("projects"), index.getSites("alice"));
+    }
+
+    /**
+     * Joining a site should not start caching a user who was not already cached, as their other sites are
+     * unknown
+     */
+    @Test
+    public void testSiteAddedIgnoresUncachedUser() {
+        index.siteAdded("bob", "team");
+
+        assertNull("Partial entry cached", index.getSites("bob"));
+    }
+
+    /**
+     * Invalidating a user should forget only that user, and clearing should forget everyone
+     */
+    @Test
+    public void testInvalidateAndClear() {
+        index.putSites("alice", Collections.singleton("team"), index.getVersion());
+        index.putSites("bob", Collections.singleton("team"), index.getVersion());
+
+        index.invalidate("alice");
+
+        assertNull("Invalidated user found", index.getSites("alice"));
+        assertEquals("Other user forgotten", Collections.singleton("team"), index.getSites("bob"));
+
+        index.clear();
+
+        assertNull("Cleared user found", index.getSites("bob"));
+    }
+
+    /**
+     * Entries should stop being returned once they have expired
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExpiry() throws Exception {
+        index = new SiteMembershipIndex(1);
+        index.putSites("alice", Collections.singleton("team"), index.getVersion());
+
+        Thread.sleep(10);
+
+        assertNull("Expired entry found", index.getSites("alice"));
+    }
+
+    /**
+     * A zero time to live should disable the cache
+     */
+    @Test
+    public void testDisabled() {
+        index = new SiteMembershipIndex(0);
+        index.putSites("alice", Collections.singleton("team"), index.getVersion());
+
+        assertNull("Disabled cache returned an entry", index.getSites("alice"));
+    }
+
+    /**
+     * The returned sites should not be modifiable
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSitesAreUnmodifiable() {
+        index.putSites("alice", Collections.singleton("team"), index.getVersion());
+
+        index.getSites("alice").add("projects");
+    }
+}
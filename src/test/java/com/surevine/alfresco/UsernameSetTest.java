@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Test case for the {@link UsernameSet} class
+ */
+public class UsernameSetTest {
+
+    /**
+     * Names should come back sorted and without duplicates, and be found by contains
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSortedAndDeduplicated() throws Exception {
+        UsernameSet set = UsernameSet.copyOf(Arrays.asList("carol", "alice", "bob", "alice", "", "\u00e9mile", "al"));
+
+        assertEquals("[, al, alice, bob, carol, \u00e9mile]", set.toString());
+        assertEquals(6, set.size());
+
+        assertTrue(set.contains("alice"));
+        assertTrue(set.contains(""));
+        assertTrue(set.contains("\u00e9mile"));
+        assertFalse(set.contains("ali"));
+        assertFalse(set.contains("alicea"));
+        assertFalse(set.contains("dave"));
+        assertFalse(set.contains(null));
+
+        Set<String> expected = new HashSet<String>(set);
+        assertEquals(expected, set);
+        assertEquals(set, expected);
+        assertEquals(expected.hashCode(), set.hashCode());
+        assertSame(set, UsernameSet.copyOf(set));
+    }
+
+    /**
+     * Union, difference and intersection should match the equivalent hash set operations
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSetAlgebra() throws Exception {
+        UsernameSet current = UsernameSet.copyOf(Arrays.asList("alice", "bob", "carol", "dave"));
+        UsernameSet desired = UsernameSet.copyOf(Arrays.asList("erin", "bob", "alice", "ann"));
+
+        assertEquals("[alice, ann, bob, carol, dave, erin]", current.union(desired).toString());
+        assertEquals("[ann, erin]", desired.difference(current).toString());
+        assertEquals("[carol, dave]", current.difference(desired).toString());
+        assertEquals("[alice, bob]", current.intersection(Arrays.asList("bob", "alice", "zoe")).toString());
+
+        assertEquals(UsernameSet.EMPTY, current.intersection(UsernameSet.EMPTY));
+        assertEquals(current, current.difference(UsernameSet.EMPTY));
+        assertTrue(current.difference(current).isEmpty());
+    }
+
+    /**
+     * A set should not be changeable, even when the change would have no effect
+     *
+     * @throws Exception
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() throws Exception {
+        UsernameSet.copyOf(Arrays.asList("alice")).removeAll(Arrays.asList("bob"));
+    }
+}
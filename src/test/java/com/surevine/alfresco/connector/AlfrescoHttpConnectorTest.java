@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ListResourceBundle;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.surevine.alfresco.AlfrescoException;
+import com.surevine.alfresco.Authenticator;
+import com.surevine.alfresco.PropertyWrapper;
+
+/**
+ * Test case for the {@link AlfrescoHttpConnector} class
+ */
+public class AlfrescoHttpConnectorTest {
+
+	/**
+	 * The properties used to configure the connector
+	 */
+	static PropertyWrapper createProperties(final String... extra) {
+		return new PropertyWrapper(new ListResourceBundle() {
+			@Override
+			protected Object[][] getContents() {
+				Object[][] contents = new Object[3 + extra.length / 2][];
+				contents[0] = new Object[] { "alfresco.url.service", "http://alfresco.example.com/alfresco/service/" };
+				contents[1] = new Object[] { "alfresco.share.url.service", "http://alfresco.example.com/share/service/" };
+				contents[2] = new Object[] { "cas.url.login", "https://cas.example.com/cas/login" };
+
+				for (int i = 0; i < extra.length; i += 2) {
+					contents[3 + i / 2] = new Object[] { extra[i], extra[i + 1] };
+				}
+
+				return contents;
+			}
+		});
+	}
+
+	/**
+	 * Build a response with the given status and body
+	 */
+	static HttpResponse createResponse(int status, String body) throws Exception {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "Test");
+		response.setEntity(new StringEntity(body, "UTF-8"));
+
+		return response;
+	}
+
+	/**
+	 * The (mocked) HTTP client
+	 */
+	@Mock
+	HttpClient httpClient;
+
+	/**
+	 * The (mocked) authenticator
+	 */
+	@Mock
+	Authenticator authenticator;
+
+	/**
+	 * Initialise everything
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		MockitoAnnotations.initMocks(this);
+
+		when(authenticator.authenticate(httpClient)).thenReturn(true);
+	}
+
+	/**
+	 * A GET which finds the session has expired should log in again and be
+	 * repeated
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testExpiredSessionIsRenewedForGet() throws Exception {
+		when(httpClient.execute(any(HttpUriRequest.class), any(HttpContext.class)))
+				.thenReturn(createResponse(401, "Unauthorized"))
+				.thenReturn(createResponse(200, "{\"people\":[]}"));
+
+		AlfrescoHttpConnector connector = new AlfrescoHttpConnector(
+				createProperties(), authenticator, httpClient);
+
+		JSONObject result = connector.doGet("api/people");
+
+		assertEquals("Wrong response", 0, result.getJSONArray("people").length());
+		verify(authenticator, times(2)).authenticate(httpClient);
+	}
+
+	/**
+	 * A POST which finds the session has expired should log in again but not be
+	 * repeated
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testExpiredSessionIsRenewedButPostNotRepeated() throws Exception {
+		HttpResponse redirect = createResponse(302, "");
+		redirect.setHeader("Location", "https://cas.example.com/cas/login?service=x");
+
+		when(httpClient.execute(any(HttpUriRequest.class), any(HttpContext.class)))
+				.thenReturn(redirect);
+
+		AlfrescoHttpConnector connector = new AlfrescoHttpConnector(
+				createProperties(), authenticator, httpClient);
+
+		try {
+			connector.doSharePost("sv-theme/set-dashboard", new JSONObject());
+			fail("Expected an AlfrescoException");
+		} catch (AlfrescoException e) {
+			// expected
+		}
+
+		verify(authenticator, times(2)).authenticate(httpClient);
+		verify(httpClient, times(1)).execute(any(HttpUriRequest.class), any(HttpContext.class));
+	}
+
+	/**
+	 * A GET answered with a 304 should be served from the cached copy, without
+	 * seeing changes previous callers made to their own copies, however deep
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testNotModifiedIsServedFromRevalidationCache() throws Exception {
+		HttpResponse first = createResponse(200, "{\"people\":[\"alice\"]}");
+		first.setHeader("ETag", "\"v1\"");
+
+		when(httpClient.execute(any(HttpUriRequest.class), any(HttpContext.class)))
+				.thenReturn(first)
+				.thenReturn(createResponse(304, ""))
+				.thenReturn(createResponse(304, ""));
+
+		AlfrescoHttpConnector connector = new AlfrescoHttpConnector(
+				createProperties("alfresco.cache.revalidation.maxEntries", "10"), authenticator, httpClient);
+
+		JSONObject original = connector.doGet("api/people");
+		JSONObject revalidated = connector.doGet("api/people");
+
+		assertEquals("Cached copy not used", "alice", revalidated.getJSONArray("people").getString(0));
+
+		original.put("people", "changed");
+		revalidated.getJSONArray("people").put(0, "bob");
+		assertNotSame("Cached copy shared", original, revalidated);
+		assertEquals("Cached copy modified", "alice",
+				connector.doGet("api/people").getJSONArray("people").getString(0));
+
+		RevalidationCache cache = connector.getRevalidationCache();
+		assertEquals("Wrong hit count", 2, cache.getHitCount());
+		assertEquals("Wrong miss count", 1, cache.getMissCount());
+		assertEquals("Wrong revalidation count", 2, cache.getRevalidationCount());
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.surevine.alfresco.AlfrescoException;
+
+/**
+ * Test case for the {@link AsyncAlfrescoConnector} class
+ */
+public class AsyncAlfrescoConnectorTest {
+	/**
+	 * The class under test
+	 */
+	AsyncAlfrescoConnector asyncConnector;
+
+	/**
+	 * The (mocked) blocking connector
+	 */
+	@Mock
+	IAlfrescoConnector alfrescoConnector;
+
+	/**
+	 * Initialise everything
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		MockitoAnnotations.initMocks(this);
+
+		asyncConnector = new AsyncAlfrescoConnector(alfrescoConnector, 2, 10);
+	}
+
+	/**
+	 * Tear everything down
+	 * 
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		asyncConnector.shutdown();
+		asyncConnector = null;
+	}
+
+	/**
+	 * A successful call should complete the future with the connector's result
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDoGetSuccess() throws Exception {
+		JSONObject expected = new JSONObject();
+		when(alfrescoConnector.doGet(eq("api/people"))).thenReturn(expected);
+
+		assertSame("Result not passed through", expected, asyncConnector
+				.doGet("api/people").getResult());
+	}
+
+	/**
+	 * A failed call should rethrow the connector's own exception
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDoGetFailure() throws Exception {
+		AlfrescoException expected = new AlfrescoException("Alfresco call failed");
+		when(alfrescoConnector.doGet(eq("api/people"))).thenThrow(expected);
+
+		try {
+			asyncConnector.doGet("api/people").getResult();
+		} catch (AlfrescoException e) {
+			assertSame("Exception not passed through", expected, e);
+			return;
+		}
+
+		fail("Expected an AlfrescoException");
+	}
+
+	/**
+	 * A call made after shutdown should fail rather than never complete
+	 * 
+	 * @throws Exception
+	 */
+	@Test(expected = AlfrescoException.class)
+	public void testCallAfterShutdownFails() throws Exception {
+		asyncConnector.shutdown();
+
+		asyncConnector.doGet("api/people").getResult();
+	}
+
+	/**
+	 * Transformed futures should see the result of the original call, and
+	 * callbacks should be run on completion
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testTransformAndCallback() throws Exception {
+		JSONObject result = new JSONObject();
+		result.put("success", true);
+		when(alfrescoConnector.doSharePost(eq("sv-theme/set-dashboard"),
+				eq(result))).thenReturn(result);
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicReference<Boolean> seen = new AtomicReference<Boolean>();
+
+		AlfrescoFuture<Boolean> success = asyncConnector.doSharePost(
+				"sv-theme/set-dashboard", result).transform(
+				new AlfrescoFunction<JSONObject, Boolean>() {
+					public Boolean apply(JSONObject input) {
+						return input.optBoolean("success");
+					}
+				});
+
+		success.addCallback(new AlfrescoCallback<Boolean>() {
+			public void onSuccess(Boolean value) {
+				seen.set(value);
+				latch.countDown();
+			}
+
+			public void onFailure(AlfrescoException e) {
+				latch.countDown();
+			}
+		});
+
+		assertEquals("Transform not applied", Boolean.TRUE, success.getResult());
+		latch.await(5, TimeUnit.SECONDS);
+		assertEquals("Callback not run", Boolean.TRUE, seen.get());
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.entity.StringEntity;
+import org.junit.Test;
+
+/**
+ * Test case for the {@link GzipCompressingEntity} class
+ */
+public class GzipCompressingEntityTest {
+
+	/**
+	 * The body written or read should gunzip back to the original, and be
+	 * labelled as gzipped
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testBodyIsGzipped() throws Exception {
+		String body = "{\"users\":[\"caf\u00e9\",\"bob\",\"bob\",\"bob\"]}";
+		GzipCompressingEntity entity = new GzipCompressingEntity(new StringEntity(body, "UTF-8"));
+
+		assertEquals("gzip", entity.getContentEncoding().getValue());
+
+		ByteArrayOutputStream written = new ByteArrayOutputStream();
+		entity.writeTo(written);
+
+		assertEquals(body, gunzip(new ByteArrayInputStream(written.toByteArray())));
+		assertEquals(body, gunzip(entity.getContent()));
+	}
+
+	/**
+	 * @param in
+	 *          a gzipped stream
+	 * @return The stream uncompressed and decoded as UTF-8
+	 */
+	private static String gunzip(final InputStream in) throws Exception {
+		InputStream gunzip = new GZIPInputStream(in);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+
+		while ((read = gunzip.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+
+		return out.toString("UTF-8");
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.junit.Test;
+
+/**
+ * Test case for the {@link HttpClientFactory} and
+ * {@link PooledConnectionManager} classes
+ */
+public class HttpClientFactoryTest {
+
+	/**
+	 * By default a client should have a single connection
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDefaultClientIsNotPooled() throws Exception {
+		DefaultHttpClient client = HttpClientFactory.createHttpClient(
+				AlfrescoHttpConnectorTest.createProperties());
+
+		assertFalse("Client is pooled", client.getConnectionManager() instanceof PooledConnectionManager);
+		client.getConnectionManager().shutdown();
+	}
+
+	/**
+	 * A pooled client should be sized from the properties
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testPoolIsConfigured() throws Exception {
+		DefaultHttpClient client = HttpClientFactory.createHttpClient(
+				AlfrescoHttpConnectorTest.createProperties("alfresco.http.pool.enabled", "true",
+						"alfresco.http.pool.maxTotal", "5", "alfresco.http.pool.maxPerRoute", "2"));
+
+		assertTrue("Client is not pooled", client.getConnectionManager() instanceof PooledConnectionManager);
+
+		PooledConnectionManager pool = (PooledConnectionManager) client.getConnectionManager();
+
+		assertEquals("Wrong total limit", 5, pool.getMaxTotal());
+		assertEquals("Wrong per route limit", 2, pool.getDefaultMaxPerRoute());
+		pool.shutdown();
+	}
+
+	/**
+	 * The client should keep its own retries only while the pipeline does not
+	 * retry, so that failures are not retried twice over
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testClientRetriesOnlyWithoutPipelineRetries() throws Exception {
+		DefaultHttpClient client = HttpClientFactory.createHttpClient(
+				AlfrescoHttpConnectorTest.createProperties());
+
+		assertEquals("Client retries changed", 3,
+				((DefaultHttpRequestRetryHandler) client.getHttpRequestRetryHandler()).getRetryCount());
+		client.getConnectionManager().shutdown();
+
+		client = HttpClientFactory.createHttpClient(
+				AlfrescoHttpConnectorTest.createProperties("alfresco.retry.maxAttempts", "3"));
+
+		assertEquals("Client retries not disabled", 0,
+				((DefaultHttpRequestRetryHandler) client.getHttpRequestRetryHandler()).getRetryCount());
+		client.getConnectionManager().shutdown();
+	}
+
+	/**
+	 * The pool should count connections while they are leased
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testLeasedConnectionsAreCounted() throws Exception {
+		PooledConnectionManager pool = (PooledConnectionManager) HttpClientFactory
+				.createPooledHttpClient(2, 2).getConnectionManager();
+
+		// connections are only opened when used, so no server is needed
+		ManagedClientConnection connection = pool.requestConnection(
+				new HttpRoute(new HttpHost("alfresco.example.com", 80)), null).getConnection(1, TimeUnit.SECONDS);
+
+		assertEquals("Lease not counted", 1, pool.getLeasedConnections());
+		assertEquals("Wrong pending count", 0, pool.getPendingRequests());
+
+		pool.releaseConnection(connection, 0, TimeUnit.MILLISECONDS);
+
+		assertEquals("Release not counted", 0, pool.getLeasedConnections());
+		pool.shutdown();
+	}
+
+	/**
+	 * Pool limits must be positive
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLimit() {
+		HttpClientFactory.createPooledHttpClient(0, 2);
+	}
+}
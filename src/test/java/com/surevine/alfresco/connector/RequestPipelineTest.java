@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.surevine.alfresco.AlfrescoException;
+import com.surevine.alfresco.limit.AdaptiveConcurrencyLimiter;
+import com.surevine.alfresco.connector.model.AlfrescoHttpResponse;
+import com.surevine.alfresco.limit.RequestThrottle;
+import com.surevine.alfresco.metrics.ConnectorMetrics;
+
+/**
+ * Test case for the {@link RequestPipeline} class
+ */
+public class RequestPipelineTest {
+
+	/**
+	 * The URL requested
+	 */
+	static final String URL = "http://alfresco.example.com/alfresco/service/api/people";
+
+	/**
+	 * The (mocked) HTTP client
+	 */
+	@Mock
+	HttpClient httpClient;
+
+	/**
+	 * The metrics recorded by the pipeline
+	 */
+	ConnectorMetrics metrics;
+
+	/**
+	 * The class under test
+	 */
+	RequestPipeline pipeline;
+
+	/**
+	 * Initialise everything
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		MockitoAnnotations.initMocks(this);
+
+		metrics = new ConnectorMetrics("pipeline-test", false);
+		pipeline = new RequestPipeline(httpClient, metrics, RequestThrottle.NONE,
+				new RetryPolicy(3, 0, 0, 10000, Collections.<String> emptySet()));
+	}
+
+	/**
+	 * A GET answered with a 503 should be retried and the retry counted
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetIsRetriedAfterServerError() throws Exception {
+		when(httpClient.execute(any(HttpUriRequest.class), any(HttpContext.class)))
+				.thenReturn(AlfrescoHttpConnectorTest.createResponse(503, "busy"))
+				.thenReturn(AlfrescoHttpConnectorTest.createResponse(200, "{}"));
+
+		HttpResponse response = pipeline.execute(new HttpGet(URL), new BasicHttpContext());
+
+		assertEquals("Wrong status", 200, response.getStatusLine().getStatusCode());
+		assertEquals("Wrong retry count", 1, metrics.getEndpoint("GET", URL).getRetryCount());
+	}
+
+	/**
+	 * A POST which fails should not be repeated
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testPostIsNotRetried() throws Exception {
+		when(httpClient.execute(any(HttpUriRequest.class), any(HttpContext.class)))
+				.thenThrow(new IOException("Connection reset"));
+
+		try {
+			pipeline.execute(new HttpPost(URL), new BasicHttpContext());
+			fail("Expected an AlfrescoException");
+		} catch (AlfrescoException e) {
+			// expected
+		}
+
+		verify(httpClient, times(1)).execute(any(HttpUriRequest.class), any(HttpContext.class));
+	}
+
+	/**
+	 * A request should stay in flight until its streamed response body has
+	 * been read
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testStreamedBodyIsInFlightUntilRead() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 4);
+		RequestPipeline throttled = new RequestPipeline(httpClient, metrics,
+				new RequestThrottle(limiter, null, 1000), new RetryPolicy(1, 0, 0, 10000,
+						Collections.<String> emptySet()));
+
+		BasicHttpEntity entity = new BasicHttpEntity();
+		entity.setContent(new ByteArrayInputStream("{}".getBytes("UTF-8")));
+
+		HttpResponse streamed = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		streamed.setEntity(entity);
+
+		when(httpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenReturn(streamed);
+
+		HttpResponse response = throttled.execute(new HttpGet(URL), new BasicHttpContext());
+
+		assertEquals("Released before the body was read", 1, limiter.getInFlight());
+		assertEquals("Wrong body", "{}", EntityUtils.toString(response.getEntity()));
+		assertEquals("Not released after the body was read", 0, limiter.getInFlight());
+	}
+
+	/**
+	 * Abandoning a body of unknown length should abort the request rather than
+	 * download the rest of it, and still release the throttle
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testAbandonedBodyIsAborted() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 4);
+		RequestPipeline throttled = new RequestPipeline(httpClient, metrics,
+				new RequestThrottle(limiter, null, 1000), new RetryPolicy(1, 0, 0, 10000,
+						Collections.<String> emptySet()));
+
+		BasicHttpEntity entity = new BasicHttpEntity();
+		entity.setContent(new ByteArrayInputStream("{\"data\":[{},{}]}".getBytes("UTF-8")));
+
+		HttpResponse streamed = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		streamed.setEntity(entity);
+
+		when(httpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenReturn(streamed);
+
+		HttpGet request = new HttpGet(URL);
+
+		new AlfrescoHttpResponse(throttled.execute(request, new BasicHttpContext())).release();
+
+		assertTrue("Request not aborted", request.isAborted());
+		assertEquals("Not released after the request was aborted", 0, limiter.getInFlight());
+	}
+}
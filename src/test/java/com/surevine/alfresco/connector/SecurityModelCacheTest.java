@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.surevine.alfresco.AlfrescoException;
+import com.surevine.alfresco.connector.model.AlfrescoHttpResponse;
+import com.surevine.alfresco.connector.model.SecurityModel;
+
+/**
+ * Test case for the {@link SecurityModelCache} class
+ */
+public class SecurityModelCacheTest {
+
+	/**
+	 * Downloads the model
+	 */
+	@Mock
+	private SecurityModelConnector connector;
+
+	/**
+	 * Where the model is kept on disk
+	 */
+	private File file;
+
+	/**
+	 * The models passed to the listener
+	 */
+	private final List<String> changes = new ArrayList<String>();
+
+	/**
+	 * Initialise everything
+	 */
+	@Before
+	public void setUp() throws Exception {
+		MockitoAnnotations.initMocks(this);
+
+		file = File.createTempFile("security-model", ".xml");
+		file.delete();
+	}
+
+	/**
+	 * Tear everything down
+	 */
+	@After
+	public void tearDown() {
+		file.delete();
+		new File(file.getPath() + ".properties").delete();
+	}
+
+	/**
+	 * Build a response with the given status, body and ETag
+	 */
+	static AlfrescoHttpResponse createResponse(int status, String body, String etag)
+			throws Exception {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "Test");
+		response.setEntity(new StringEntity(body, "UTF-8"));
+
+		if (etag != null) {
+			response.setHeader("ETag", etag);
+		}
+
+		return new AlfrescoHttpResponse(response);
+	}
+
+	/**
+	 * @return A cache which checks the model on every call
+	 */
+	private SecurityModelCache createCache() {
+		SecurityModelCache cache = new SecurityModelCache(connector, file, 0);
+
+		cache.addListener(new SecurityModelListener() {
+			public void securityModelChanged(SecurityModel model) {
+				changes.add(model.getXml());
+			}
+		});
+
+		return cache;
+	}
+
+	/**
+	 * Listeners should only hear about real changes, whether Alfresco answers
+	 * with a 304 or sends the same model again
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testListenerOnlyToldOfChanges() throws Exception {
+		when(connector.getSecurityModel(any(Header[].class))).thenReturn(
+				createResponse(200, "<model>1</model>", "\"1\""),
+				createResponse(304, "", null),
+				createResponse(200, "<model>1</model>", null),
+				createResponse(200, "<model>2</model>", "\"2\""));
+
+		SecurityModelCache cache = createCache();
+
+		assertEquals("<model>1</model>", cache.getModel().getXml());
+		assertEquals("<model>1</model>", cache.getModel().getXml());
+		assertEquals("<model>1</model>", cache.getModel().getXml());
+		assertEquals("<model>2</model>", cache.getModel().getXml());
+
+		assertEquals("Wrong changes", "[<model>1</model>, <model>2</model>]", changes.toString());
+	}
+
+	/**
+	 * A new cache should start from the copy on disk, and serve it when
+	 * Alfresco cannot be reached
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testServesDiskCopyWhenAlfrescoFails() throws Exception {
+		when(connector.getSecurityModel(any(Header[].class))).thenReturn(
+				createResponse(200, "<model>1</model>", "\"1\""));
+
+		assertTrue("Model not changed", createCache().refresh());
+		assertTrue("Model not saved", file.isFile());
+
+		when(connector.getSecurityModel(any(Header[].class))).thenThrow(
+				new AlfrescoException("Alfresco is down"));
+		changes.clear();
+
+		SecurityModel model = createCache().getModel();
+
+		assertEquals("<model>1</model>", model.getXml());
+		assertEquals("\"1\"", model.getETag());
+		assertTrue("Listener told of a change", changes.isEmpty());
+	}
+
+	/**
+	 * After a failed refresh the copy should be served without asking
+	 * Alfresco again until it is due another check
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailedRefreshIsNotRetriedAtOnce() throws Exception {
+		when(connector.getSecurityModel(any(Header[].class))).thenReturn(
+				createResponse(200, "<model>1</model>", "\"1\""));
+
+		assertTrue("Model not changed", createCache().refresh());
+
+		when(connector.getSecurityModel(any(Header[].class))).thenThrow(
+				new AlfrescoException("Alfresco is down"));
+
+		SecurityModelCache cache = new SecurityModelCache(connector, file, 60000);
+
+		assertEquals("<model>1</model>", cache.getModel().getXml());
+		assertEquals("<model>1</model>", cache.getModel().getXml());
+
+		verify(connector, times(2)).getSecurityModel(any(Header[].class));
+	}
+}
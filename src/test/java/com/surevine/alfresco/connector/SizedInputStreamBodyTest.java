@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.entity.mime.MultipartEntity;
+import org.junit.Test;
+
+/**
+ * Test case for the {@link SizedInputStreamBody} class
+ */
+public class SizedInputStreamBodyTest {
+
+	/**
+	 * A multipart entity made of sized bodies should know its length, and send
+	 * the charset with the part
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testMultipartHasKnownLength() throws Exception {
+		byte[] model = "<model name=\"caf\u00e9\"/>".getBytes("UTF-8");
+
+		MultipartEntity entity = new MultipartEntity();
+		entity.addPart("filedata", new SizedInputStreamBody(new ByteArrayInputStream(model),
+				model.length, "text/xml", "UTF-8", "model.xml"));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+
+		assertEquals("Wrong content length", out.size(), entity.getContentLength());
+		assertTrue("Charset not sent", out.toString("UTF-8").contains("text/xml; charset=UTF-8"));
+	}
+
+	/**
+	 * A stream shorter than its declared length should fail rather than
+	 * leave the request waiting
+	 * 
+	 * @throws Exception
+	 */
+	@Test(expected = IOException.class)
+	public void testShortStream() throws Exception {
+		new SizedInputStreamBody(new ByteArrayInputStream(new byte[10]), 11, "text/xml", "UTF-8",
+				"model.xml").writeTo(new ByteArrayOutputStream());
+	}
+
+	/**
+	 * A stream longer than its declared length should fail rather than be
+	 * silently truncated
+	 * 
+	 * @throws Exception
+	 */
+	@Test(expected = IOException.class)
+	public void testLongStream() throws Exception {
+		new SizedInputStreamBody(new ByteArrayInputStream(new byte[10]), 9, "text/xml", "UTF-8",
+				"model.xml").writeTo(new ByteArrayOutputStream());
+	}
+
+	/**
+	 * The stream belongs to the caller, so should not be closed once sent
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testStreamIsNotClosed() throws Exception {
+		final boolean[] closed = new boolean[1];
+
+		InputStream in = new ByteArrayInputStream(new byte[10]) {
+			@Override
+			public void close() throws IOException {
+				closed[0] = true;
+				super.close();
+			}
+		};
+
+		new SizedInputStreamBody(in, 10, "text/xml", "UTF-8", "model.xml").writeTo(new ByteArrayOutputStream());
+
+		assertFalse("Caller's stream closed", closed[0]);
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.json;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.Test;
+
+import com.surevine.alfresco.connector.model.AlfrescoHttpResponse;
+import com.surevine.alfresco.connector.model.JsonElementVisitor;
+
+/**
+ * Test case for the {@link FastJsonCodec} class
+ */
+public class FastJsonCodecTest {
+
+	/**
+	 * A document exercising escapes, non-ASCII characters and number types
+	 */
+	static final String DOCUMENT = "{\"name\":\"caf\\u00e9 \u00e9\u4e2d\ud83d\ude00 \\\"q\\\" \\\\ \\/ \\n\\t\","
+			+ "\"int\":42,\"negative\":-7,\"long\":12345678901,\"double\":1.5e3,"
+			+ "\"yes\":true,\"no\":false,\"nothing\":null,\"empty\":{},\"list\":[],"
+			+ "\"nested\":[{\"a\":[1,2,{\"b\":\"c\"}]},\"x\" , 3 ]}";
+
+	/**
+	 * Decoding should give the same values as org.json, including across
+	 * buffer boundaries
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDecodeMatchesOrgJson() throws Exception {
+		StringBuilder big = new StringBuilder("[");
+
+		for (int i = 0; i < 200; i++) {
+			big.append(i == 0 ? "" : ",").append(DOCUMENT);
+		}
+
+		big.append("]");
+
+		for (String json : new String[] {DOCUMENT, big.toString()}) {
+			Object expected = new JSONTokener(json).nextValue();
+			Object actual = JsonCodecs.FAST.createParser(
+					new ByteArrayInputStream(json.getBytes("UTF-8")), "UTF-8").nextValue();
+
+			assertEquals("Decoded differently", canonical(expected), canonical(actual));
+		}
+	}
+
+	/**
+	 * Encoding should give exactly the text org.json does, in UTF-8
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testEncodeMatchesOrgJson() throws Exception {
+		JSONObject json = new JSONObject(DOCUMENT);
+		json.put("script", "</script>\u0001 \u0085");
+
+		assertEquals(json.toString(), new String(JsonCodecs.FAST.encode(json), "UTF-8"));
+		assertEquals(json.getJSONArray("nested").toString(), new String(
+				JsonCodecs.FAST.encode(json.getJSONArray("nested")), "UTF-8"));
+	}
+
+	/**
+	 * Responses decoded with the codec should stream arrays as usual
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testStreamArray() throws Exception {
+		HttpResponse http = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		http.setEntity(new StringEntity("{\"skip\":[1,{\"x\":2}],\"people\":[{\"userName\":\"a\"},"
+				+ "{\"userName\":\"\u00e9\"}]}", "UTF-8"));
+
+		final List<String> seen = new ArrayList<String>();
+
+		new AlfrescoHttpResponse(http, JsonCodecs.FAST).streamJsonArray("people",
+				new JsonElementVisitor() {
+					public void visit(JSONObject element) {
+						seen.add(element.optString("userName"));
+					}
+				});
+
+		assertEquals("[a, \u00e9]", seen.toString());
+	}
+
+	/**
+	 * @param value
+	 *          a decoded value
+	 * @return The value as text with object keys sorted and number types shown
+	 */
+	private static String canonical(Object value) throws Exception {
+		if (value instanceof JSONObject) {
+			JSONObject object = (JSONObject) value;
+			StringBuilder sb = new StringBuilder("{");
+			Iterator<?> keys = object.sortedKeys();
+
+			while (keys.hasNext()) {
+				String key = keys.next().toString();
+				sb.append(key).append('=').append(canonical(object.get(key))).append(';');
+			}
+
+			return sb.append('}').toString();
+		} else if (value instanceof JSONArray) {
+			JSONArray array = (JSONArray) value;
+			StringBuilder sb = new StringBuilder("[");
+
+			for (int i = 0; i < array.length(); i++) {
+				sb.append(canonical(array.get(i))).append(';');
+			}
+
+			return sb.append(']').toString();
+		}
+
+		return value.getClass().getSimpleName() + ":" + value;
+	}
+}
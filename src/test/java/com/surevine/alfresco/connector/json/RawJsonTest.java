@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test case for the {@link RawJson} class
+ */
+public class RawJsonTest {
+
+	/**
+	 * A person record with nested values, escapes and non-ASCII text
+	 */
+	static final String PERSON = " { \"url\" : \"\\/api\\/people\\/jo\", \"capabilities\":{\"userName\":\"nested\","
+			+ "\"isAdmin\":false}, \"groups\":[{\"itemName\":\"GROUP_a\"},\"x\",{\"itemName\":\"GROUP_b\"}],"
+			+ "\"userName\" : \"jo\", \"firstName\":\"J\\u00f6 \\\"Q\\\"\", \"lastName\":\"\u00c5se\","
+			+ "\"quota\":-1, \"enabled\":true, \"email\":null, \"nicks\":[\"a\",\"b\"] } ";
+
+	/**
+	 * Top level fields should be found, skipping nested objects and arrays
+	 * with the same keys
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFieldLookup() throws Exception {
+		RawJson json = new RawJson(PERSON.getBytes("UTF-8"));
+
+		assertEquals("jo", json.getString("userName"));
+		assertEquals("J\u00f6 \"Q\"", json.getString("firstName"));
+		assertEquals("\u00c5se", json.getString("lastName"));
+		assertEquals("/api/people/jo", json.getString("url"));
+		assertEquals(-1, json.getLong("quota", 0));
+		assertTrue(json.getBoolean("enabled", false));
+		assertNull("null not null", json.getString("email"));
+		assertTrue("null value missing", json.has("email"));
+		assertFalse("missing key found", json.has("itemName"));
+		assertNull(json.getString("missing"));
+
+		assertFalse(json.getObject("capabilities").getBoolean("isAdmin", true));
+		assertEquals("nested", json.getObject("capabilities").getString("userName"));
+		assertEquals(2, json.getObjects("groups").size());
+		assertEquals("GROUP_b", json.getObjects("groups").get(1).getString("itemName"));
+		assertEquals("[a, b]", json.getStrings("nicks").toString());
+		assertTrue(json.getObjects("missing").isEmpty());
+	}
+
+	/**
+	 * Decoding the whole record should give the same as org.json
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testToJSONObject() throws Exception {
+		RawJson json = new RawJson(PERSON.getBytes("UTF-8"));
+
+		assertEquals(new org.json.JSONObject(PERSON).toString(), json.toJSONObject().toString());
+		assertEquals(PERSON.getBytes("UTF-8").length, json.getSize());
+	}
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.connector.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import com.surevine.alfresco.AlfrescoException;
+import com.surevine.alfresco.connector.json.JsonCodec;
+import com.surevine.alfresco.connector.json.JsonCodecs;
+import com.surevine.alfresco.connector.json.RawJson;
+
+/**
+ * Test case for the streaming methods of {@link AlfrescoHttpResponse}
+ */
+public class AlfrescoHttpResponseTest {
+
+	/**
+	 * Build a response with the given status and body
+	 */
+	static AlfrescoHttpResponse createResponse(int status, String body)
+			throws Exception {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+				status, "Test");
+		response.setEntity(new StringEntity(body, "UTF-8"));
+
+		return new AlfrescoHttpResponse(response);
+	}
+
+	/**
+	 * Visit every element of an array nested in an object, skipping the other
+	 * keys around it
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testStreamNestedArray() throws Exception {
+		AlfrescoHttpResponse response = createResponse(200,
+				"{\"paging\":{\"total\":3,\"list\":[1,2]},\"people\":["
+						+ "{\"userName\":\"a\"},{\"userName\":\"b\"},"
+						+ "{\"userName\":\"c\",\"groups\":[{\"x\":1}]}],\"after\":true}");
+
+		final List<String> seen = new ArrayList<String>();
+
+		response.streamJsonArray("people", new JsonElementVisitor() {
+			public void visit(JSONObject element) {
+				seen.add(element.optString("userName"));
+			}
+		});
+
+		assertEquals("Wrong elements visited", "[a, b, c]", seen.toString());
+	}
+
+	/**
+	 * Iterate a top level array, including an empty one
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testIterateTopLevelArray() throws Exception {
+		JsonArrayIterator iterator = createResponse(200,
+				" [ {\"shortName\":\"site1\"} , \"ignored\", {\"shortName\":\"site2\"} ] ")
+				.iterateJsonArray(null);
+
+		assertEquals("site1", iterator.next().getString("shortName"));
+		assertEquals("site2", iterator.next().getString("shortName"));
+		assertFalse("Too many elements", iterator.hasNext());
+
+		assertFalse("Empty array has elements", createResponse(200, "[]")
+				.iterateJsonArray(null).hasNext());
+	}
+
+	/**
+	 * A missing array should raise an AlfrescoException
+	 * 
+	 * @throws Exception
+	 */
+	@Test(expected = AlfrescoException.class)
+	public void testMissingArray() throws Exception {
+		createResponse(200, "{\"data\":{}}").iterateJsonArray("people");
+	}
+
+	/**
+	 * An HTTP error should raise an AlfrescoException carrying Alfresco's message
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testHttpError() throws Exception {
+		try {
+			createResponse(500, "{\"message\":\"broken\"}").iterateJsonArray("data");
+		} catch (AlfrescoException e) {
+			assertTrue("Alfresco's message not reported", e.getMessage().contains("\"broken\""));
+			return;
+		}
+
+		fail("No exception raised");
+	}
+
+	/**
+	 * The body should be decoded with the declared charset and come back
+	 * exactly as sent
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testAsStringUsesDeclaredCharset() throws Exception {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+				200, "Test");
+		ByteArrayEntity entity = new ByteArrayEntity("caf\u00e9\nno newline"
+				.getBytes("ISO-8859-1"));
+		entity.setContentType("text/plain; charset=ISO-8859-1");
+		response.setEntity(entity);
+
+		assertEquals("caf\u00e9\nno newline",
+				new AlfrescoHttpResponse(response).asString());
+	}
+
+	/**
+	 * The body should be copied byte for byte to a stream, a channel and a file
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCopyBody() throws Exception {
+		String body = "<model name=\"caf\u00e9\"/>\n";
+		byte[] expected = body.getBytes("UTF-8");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(expected.length, createResponse(200, body).writeTo(out));
+		assertEquals(body, out.toString("UTF-8"));
+
+		out.reset();
+		assertEquals(expected.length, createResponse(200, body)
+				.transferTo(Channels.newChannel(out)));
+		assertEquals(body, out.toString("UTF-8"));
+
+		File file = File.createTempFile("response", ".xml");
+
+		try {
+			assertEquals(expected.length, createResponse(200, body).saveTo(file));
+
+			byte[] saved = new byte[(int) file.length()];
+			FileInputStream in = new FileInputStream(file);
+
+			try {
+				assertEquals(expected.length, in.read(saved));
+			} finally {
+				in.close();
+			}
+
+			assertEquals(body, new String(saved, "UTF-8"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * An HTTP error should not write anything, or leave a file behind
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSaveHttpError() throws Exception {
+		File file = new File(System.getProperty("java.io.tmpdir"),
+				"response-" + System.nanoTime() + ".xml");
+
+		try {
+			createResponse(500, "broken").saveTo(file);
+		} catch (AlfrescoException e) {
+			assertFalse("File left behind", file.exists());
+			return;
+		}
+
+		fail("No exception raised");
+	}
+
+	/**
+	 * Elements streamed raw should decode lazily to the same values with
+	 * either codec
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testStreamRawArray() throws Exception {
+		String body = "{\"data\":[{\"role\":\"SiteManager\",\"authority\":{\"userName\":\"a\"}},"
+				+ "3,{\"role\":\"SiteConsumer\",\"authority\":{\"userName\":\"\u00e9\","
+				+ "\"firstName\":\"E\"}}]}";
+
+		for (JsonCodec codec : new JsonCodec[] {JsonCodecs.DEFAULT, JsonCodecs.FAST}) {
+			HttpResponse http = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "Test");
+			http.setEntity(new StringEntity(body, "UTF-8"));
+
+			final List<String> seen = new ArrayList<String>();
+
+			new AlfrescoHttpResponse(http, codec).streamRawJsonArray("data", new RawJsonVisitor() {
+				public void visit(RawJson element) {
+					SiteMembership membership = new SiteMembership(element);
+					seen.add(membership.getUserName() + "=" + membership.getRoleType());
+				}
+			});
+
+			assertEquals("Wrong elements visited", "[a=MANAGER, \u00e9=CONSUMER]",
+					seen.toString());
+		}
+	}
+
+	/**
+	 * Build a response whose body can be aborted
+	 */
+	static AlfrescoHttpResponse createResponse(AbortableEntity entity) {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+				200, "Test");
+		response.setEntity(entity);
+
+		return new AlfrescoHttpResponse(response);
+	}
+
+	/**
+	 * Closing an iterator early on a body of unknown length should abort the
+	 * request rather than read the rest of the body
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCloseEarlyAbortsUnknownLength() throws Exception {
+		AbortableEntity entity = new AbortableEntity("{\"data\":[{},{},{}]}", -1);
+
+		JsonArrayIterator iterator = createResponse(entity).iterateJsonArray("data");
+		iterator.next();
+		iterator.close();
+
+		assertTrue("Not aborted", entity.aborted);
+		assertFalse("Drained", entity.consumed);
+	}
+
+	/**
+	 * Releasing a large body should abort the request
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testReleaseAbortsLargeBody() throws Exception {
+		AbortableEntity entity = new AbortableEntity("[]",
+				AlfrescoHttpResponse.MAX_DRAIN_BYTES + 1);
+
+		createResponse(entity).release();
+
+		assertTrue("Not aborted", entity.aborted);
+		assertFalse("Drained", entity.consumed);
+	}
+
+	/**
+	 * Releasing a small body should drain it so the connection can be reused
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testReleaseDrainsSmallBody() throws Exception {
+		AbortableEntity entity = new AbortableEntity("[{},{}]", 7);
+
+		createResponse(entity).release();
+
+		assertFalse("Aborted", entity.aborted);
+		assertTrue("Not drained", entity.consumed);
+	}
+
+	/**
+	 * Reading an array to the end should drain what little is left, whatever
+	 * the length of the body
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadToEndDrains() throws Exception {
+		AbortableEntity entity = new AbortableEntity("{\"data\":[{},{}]}", -1);
+
+		final List<JSONObject> seen = new ArrayList<JSONObject>();
+
+		createResponse(entity).streamJsonArray("data", new JsonElementVisitor() {
+			public void visit(JSONObject element) {
+				seen.add(element);
+			}
+		});
+
+		assertEquals("Wrong number of elements", 2, seen.size());
+		assertFalse("Aborted", entity.aborted);
+		assertTrue("Not drained", entity.consumed);
+	}
+
+	/**
+	 * A streamed body which records whether it was drained or aborted
+	 */
+	static class AbortableEntity extends InputStreamEntity implements ConnectionReleaseTrigger {
+
+		boolean consumed;
+
+		boolean aborted;
+
+		AbortableEntity(String body, long length) throws IOException {
+			super(new ByteArrayInputStream(body.getBytes("UTF-8")), length);
+		}
+
+		@Override
+		public void consumeContent() throws IOException {
+			consumed = true;
+			super.consumeContent();
+		}
+
+		public void releaseConnection() throws IOException {
+			consumeContent();
+		}
+
+		public void abortConnection() throws IOException {
+			aborted = true;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.dashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the {@link CompiledDashboardDefinition} class
+ */
+public class CompiledDashboardDefinitionTest {
+	/**
+	 * The definition being compiled
+	 */
+	DashboardDefinition dashboardDefinition;
+
+	/**
+	 * Initialise everything
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		dashboardDefinition = new DashboardDefinition("template_id", 2);
+		dashboardDefinition.addDashlet(0, "dashlet/one");
+		dashboardDefinition.addDashlet(1, "dashlet/two");
+		dashboardDefinition.addDashlet(1, "dashlet/three");
+	}
+
+	/**
+	 * The serialised request should contain the user's page and every dashlet
+	 * in its region
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCreateRequest() throws Exception {
+		CompiledDashboardDefinition compiled = new CompiledDashboardDefinition(dashboardDefinition);
+
+		JSONObject request = new JSONObject(compiled.createRequest("bob").toString());
+
+		assertEquals("Wrong template", "template_id", request.getString("templateId"));
+		assertEquals("Wrong page", "user/bob/dashboard", request.getString("dashboardPage"));
+
+		JSONArray dashlets = request.getJSONArray("dashlets");
+		assertEquals("Wrong dashlet count", 3, dashlets.length());
+		assertEquals("Wrong region", "component-2-2", dashlets.getJSONObject(2).getString("regionId"));
+		assertEquals("Wrong url", "dashlet/three", dashlets.getJSONObject(2).getString("url"));
+	}
+
+	/**
+	 * The compiled form should not change when the definition does
+	 */
+	@Test
+	public void testIsSnapshot() {
+		CompiledDashboardDefinition compiled = new CompiledDashboardDefinition(dashboardDefinition);
+		CompiledDashboardDefinition copy = new CompiledDashboardDefinition(dashboardDefinition);
+
+		dashboardDefinition.addDashlet(0, "dashlet/four");
+
+		assertEquals("Compiled definitions differ", compiled, copy);
+		assertEquals("Hash codes differ", compiled.hashCode(), copy.hashCode());
+		assertEquals("Compiled definition changed", 1, compiled.getDashlets(0).size());
+		assertFalse("Changed definition is equal",
+				compiled.equals(new CompiledDashboardDefinition(dashboardDefinition)));
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.limit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Test case for the {@link AdaptiveConcurrencyLimiter} class
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+	/**
+	 * Requests with steady latency which use the whole limit should raise it
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testLimitGrowsWhileLatencyIsSteady() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10);
+
+		for (int round = 0; round < 3; round++) {
+			assertTrue("First request refused", limiter.acquire(0, TimeUnit.MILLISECONDS));
+			assertTrue("Second request refused", limiter.acquire(0, TimeUnit.MILLISECONDS));
+
+			limiter.release("GET /alfresco/service/api/people", 1000000, false);
+			limiter.release("GET /alfresco/service/api/people", 1000000, false);
+		}
+
+		assertTrue("Limit did not grow", limiter.getLimit() > 2);
+		assertEquals("Requests still in flight", 0, limiter.getInFlight());
+	}
+
+	/**
+	 * A server error should cut the limit
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testLimitShrinksOnOverload() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 10);
+
+		assertTrue("Request refused", limiter.acquire(0, TimeUnit.MILLISECONDS));
+		limiter.release("GET /alfresco/service/api/people", 1, true);
+
+		assertEquals("Limit not cut", 9, limiter.getLimit());
+	}
+
+	/**
+	 * Slow listings mixed with quick updates should not cut the limit, as each
+	 * is compared with the usual latency of its own endpoint
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testMixedEndpointsDoNotCutLimit() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 10);
+
+		for (int round = 0; round < 5; round++) {
+			assertTrue("Update refused", limiter.acquire(0, TimeUnit.MILLISECONDS));
+			limiter.release("PUT /alfresco/service/api/people/{id}", TimeUnit.MICROSECONDS.toNanos(10), false);
+
+			assertTrue("Listing refused", limiter.acquire(0, TimeUnit.MILLISECONDS));
+			limiter.release("GET /alfresco/service/api/people", TimeUnit.MICROSECONDS.toNanos(200), false);
+
+			// longer than either latency, so that a cut would not be held back
+			Thread.sleep(1);
+		}
+
+		assertEquals("Limit cut", 10, limiter.getLimit());
+	}
+
+	/**
+	 * A request much slower than is usual for its endpoint should cut the limit
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSlowRequestCutsLimit() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 10);
+
+		assertTrue("Request refused", limiter.acquire(0, TimeUnit.MILLISECONDS));
+		limiter.release("PUT /alfresco/service/api/people/{id}", 1, false);
+
+		assertTrue("Request refused", limiter.acquire(0, TimeUnit.MILLISECONDS));
+		limiter.release("PUT /alfresco/service/api/people/{id}", 100, false);
+
+		assertEquals("Limit not cut", 9, limiter.getLimit());
+	}
+
+	/**
+	 * A request beyond the limit should wait, then give up
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testAcquireTimesOutAtLimit() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+
+		assertTrue("First request refused", limiter.acquire(0, TimeUnit.MILLISECONDS));
+		assertFalse("Second request allowed", limiter.acquire(10, TimeUnit.MILLISECONDS));
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.limit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test case for the {@link CircuitBreaker} class
+ */
+public class CircuitBreakerTest {
+
+	/**
+	 * Failures in a row should open the breaker and refuse requests
+	 */
+	@Test
+	public void testOpensAfterConsecutiveFailures() {
+		CircuitBreaker breaker = new CircuitBreaker(2, 60000, 1);
+
+		long ticket = breaker.tryAcquire();
+		assertTrue("Request refused", ticket != CircuitBreaker.REFUSED);
+		breaker.onFailure(ticket);
+		ticket = breaker.tryAcquire();
+		assertTrue("Request refused", ticket != CircuitBreaker.REFUSED);
+		breaker.onFailure(ticket);
+
+		assertEquals("Breaker not open", CircuitBreaker.State.OPEN, breaker.getState());
+		assertEquals("Request allowed", CircuitBreaker.REFUSED, breaker.tryAcquire());
+		assertEquals("Wrong rejected count", 1, breaker.getRejectedCount());
+	}
+
+	/**
+	 * Once the open period has passed a successful probe should close the
+	 * breaker, and only one probe be allowed meanwhile
+	 */
+	@Test
+	public void testProbeClosesBreaker() {
+		CircuitBreaker breaker = new CircuitBreaker(1, 0, 1);
+
+		breaker.onFailure(breaker.tryAcquire());
+
+		long probe = breaker.tryAcquire();
+		assertTrue("Probe refused", probe != CircuitBreaker.REFUSED);
+		assertEquals("Breaker not half open", CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertEquals("Second probe allowed", CircuitBreaker.REFUSED, breaker.tryAcquire());
+
+		breaker.onSuccess(probe);
+
+		assertEquals("Breaker not closed", CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	/**
+	 * A request let through while closed which succeeds once the breaker is
+	 * probing should not count as a probe
+	 */
+	@Test
+	public void testLateSuccessIsIgnored() {
+		CircuitBreaker breaker = new CircuitBreaker(1, 0, 1);
+
+		long slow = breaker.tryAcquire();
+		breaker.onFailure(breaker.tryAcquire());
+
+		long probe = breaker.tryAcquire();
+		assertEquals("Breaker not half open", CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+		breaker.onSuccess(slow);
+		assertEquals("Late success closed the breaker", CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+		breaker.onSuccess(probe);
+		assertEquals("Breaker not closed", CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.zip.GZIPOutputStream;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Test case for the {@link ConnectorMetrics} class
+ */
+public class ConnectorMetricsTest {
+
+	/**
+	 * The (mocked) HTTP client
+	 */
+	@Mock
+	HttpClient httpClient;
+
+	/**
+	 * The class under test
+	 */
+	ConnectorMetrics metrics;
+
+	/**
+	 * Initialise everything
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		MockitoAnnotations.initMocks(this);
+
+		metrics = new ConnectorMetrics("test", true);
+	}
+
+	/**
+	 * Tear everything down
+	 * 
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		metrics.unpublish();
+	}
+
+	/**
+	 * A request should be counted against its endpoint, with its status and
+	 * bytes, and be visible over JMX
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testRequestIsRecorded() throws Exception {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 404, "Not Found");
+		response.setEntity(new StringEntity("{\"status\":404}", "UTF-8"));
+
+		when(httpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenReturn(response);
+
+		HttpPost post = new HttpPost("http://host/alfresco/service/api/sites/team/memberships");
+		post.setEntity(new StringEntity("{\"role\":\"SiteManager\"}", "UTF-8"));
+
+		EntityUtils.toString(metrics.execute(httpClient, post, new BasicHttpContext()).getEntity());
+
+		EndpointMetrics endpoint = metrics.getEndpoint("POST",
+				"http://host/alfresco/service/api/sites/other/memberships");
+
+		assertEquals("Wrong request count", 1, endpoint.getRequestCount());
+		assertEquals("Wrong 4xx count", 1, endpoint.getClientErrorCount());
+		assertEquals("Wrong bytes received", 14, endpoint.getBytesReceived());
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(ConnectorMetrics.DOMAIN + ":type=Endpoint,connector=\"test\",method=POST,"
+				+ "endpoint=\"/alfresco/service/api/sites/{id}/memberships\"");
+
+		assertEquals("Wrong JMX request count", 1L, server.getAttribute(name, "RequestCount"));
+	}
+
+	/**
+	 * With a {@link ResponseWireMetering} interceptor ahead of decompression, a
+	 * compressed body should be counted as the bytes on the wire
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCompressedBodyIsCountedOnTheWire() throws Exception {
+		final String body = "{\"people\":[\"alice\",\"bob\",\"carol\"]}";
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+		for (int i = 0; i < 100; i++) {
+			gzip.write(body.getBytes("UTF-8"));
+		}
+		gzip.close();
+
+		final byte[] wire = compressed.toByteArray();
+
+		when(httpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenAnswer(
+				new Answer<HttpResponse>() {
+					public HttpResponse answer(final InvocationOnMock invocation) throws Throwable {
+						HttpContext context = (HttpContext) invocation.getArguments()[1];
+
+						ByteArrayEntity entity = new ByteArrayEntity(wire);
+						entity.setContentEncoding("gzip");
+
+						HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+						response.setEntity(entity);
+
+						// as a client configured by HttpClientFactory would
+						new ResponseWireMetering().process(response, context);
+						new ResponseContentEncoding().process(response, context);
+
+						return response;
+					}
+				});
+
+		String decoded = EntityUtils.toString(metrics.execute(httpClient,
+				new HttpGet("http://host/alfresco/service/api/people"), null).getEntity(), "UTF-8");
+
+		assertEquals("Wrong body", 100 * body.length(), decoded.length());
+		assertEquals("Wrong bytes received", wire.length,
+				metrics.getEndpoint("GET", "http://host/alfresco/service/api/people").getBytesReceived());
+	}
+
+	/**
+	 * Unpublishing should remove the MBeans and stop new endpoints being
+	 * registered
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testUnpublish() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName pattern = new ObjectName(ConnectorMetrics.DOMAIN + ":type=Endpoint,connector=\"test\",*");
+
+		metrics.getEndpoint("GET", "http://host/alfresco/service/api/people");
+		assertEquals("MBean not registered", 1, server.queryNames(pattern, null).size());
+
+		metrics.unpublish();
+		metrics.getEndpoint("GET", "http://host/alfresco/service/api/groups");
+
+		assertTrue("MBeans left registered", server.queryNames(pattern, null).isEmpty());
+	}
+}
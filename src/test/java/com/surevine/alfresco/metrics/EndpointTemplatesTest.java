@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2008-2010 Surevine Limited.
+ *   
+ * Although intended for deployment and use alongside Alfresco this module should
+ * be considered 'Not a Contribution' as defined in Alfresco'sstandard contribution agreement, see
+ * http://www.alfresco.org/resource/AlfrescoContributionAgreementv2.pdf
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+package com.surevine.alfresco.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Test case for the {@link EndpointTemplates} class
+ */
+public class EndpointTemplatesTest {
+
+	/**
+	 * Names following a collection should be replaced, and the host and query
+	 * dropped
+	 */
+	@Test
+	public void testIdentifiersAreReplaced() {
+		assertEquals("/alfresco/service/api/sites/{id}/memberships/{id}",
+				EndpointTemplates.templateOf("http://host:8080/alfresco/service/api/sites/team/memberships/bob"));
+		assertEquals("/alfresco/service/api/groups/{id}/children",
+				EndpointTemplates.templateOf("http://host/alfresco/service/api/groups/admins/children?authorityType=USER"));
+		assertEquals("/alfresco/service/api/rma/admin/rmconstraints/{id}/values",
+				EndpointTemplates.templateOf("https://host/alfresco/service/api/rma/admin/rmconstraints/groups/values"));
+	}
+
+	/**
+	 * Fixed paths should be left alone
+	 */
+	@Test
+	public void testFixedPathsAreUnchanged() {
+		assertEquals("/share/service/sv-theme/set-dashboard",
+				EndpointTemplates.templateOf("http://host/share/service/sv-theme/set-dashboard"));
+		assertEquals("/alfresco/service/api/people/",
+				EndpointTemplates.templateOf("http://host/alfresco/service/api/people/"));
+	}
+}
@@ -29,6 +29,8 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -370,4 +372,73 @@ public class AlfrescoUserManagerTest {
 		// Do that actual test call
 		alfrescoUserManager.setUserDashboard(testUsername, dashboardDef);
 	}
+
+	/**
+	 * Test the {@link AlfrescoUserManager#iteratePeople(String, int)} method
+	 * pages through all the people
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testIteratePeoplePages() throws Exception {
+		when(alfrescoConnector.doGet(eq("api/people"), Matchers.anyMap()))
+				.thenReturn(createPeoplePage("a", "b"))
+				.thenReturn(createPeoplePage("c", "d"))
+				.thenReturn(createPeoplePage("e"));
+
+		PeopleIterator people = alfrescoUserManager.iteratePeople(null, 2);
+
+		StringBuilder usernames = new StringBuilder();
+
+		while (people.hasNext()) {
+			usernames.append(people.next().getString("userName"));
+		}
+
+		assertEquals("Wrong people returned", "abcde", usernames.toString());
+		Mockito.verify(alfrescoConnector, Mockito.times(3)).doGet(
+				eq("api/people"), Matchers.anyMap());
+	}
+
+	/**
+	 * Build a page of people as returned by the people api
+	 * 
+	 * @param usernames
+	 *            the usernames on the page
+	 * @return the response
+	 * @throws JSONException
+	 */
+	static JSONObject createPeoplePage(String... usernames) throws JSONException {
+		JSONArray people = new JSONArray();
+
+		for (String username : usernames) {
+			people.put(new JSONObject().put("userName", username));
+		}
+
+		return new JSONObject().put("people", people);
+	}
+
+	/**
+	 * Test the
+	 * {@link AlfrescoUserManager#setUserDashboards(java.util.Collection, DashboardDefinition, int)}
+	 * method reports each failure without stopping the other users
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSetUserDashboardsReportsFailures() throws Exception {
+		DashboardDefinition dashboardDef = new DashboardDefinition("test_template_id", 3);
+
+		when(alfrescoConnector.doSharePost(eq(SET_USER_DASHBOARD_SERVICE),
+						Matchers.any(JSONObject.class)))
+				.thenReturn(new JSONObject().put("success", true))
+				.thenReturn(new JSONObject().put("success", false))
+				.thenReturn(new JSONObject().put("success", true));
+
+		Map<String, AlfrescoException> failures = alfrescoUserManager
+				.setUserDashboards(Arrays.asList("alice", "bob", "carol"), dashboardDef, 1);
+
+		assertEquals("Wrong failures", Collections.singleton("bob"), failures.keySet());
+		Mockito.verify(alfrescoConnector, Mockito.times(3)).doSharePost(
+				eq(SET_USER_DASHBOARD_SERVICE), Matchers.any(JSONObject.class));
+	}
 }